@@ -0,0 +1,76 @@
+package com.macasaet.fernet.benchmark;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.macasaet.fernet.Key;
+
+/**
+ * Compares encrypting a batch of payloads one at a time with encrypting them together with interleaved CBC chains.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class BatchEncryptionBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int batchSize;
+
+    @Param({"16", "256", "4096"})
+    public int payloadBytes;
+
+    private final Random random = new SecureRandom();
+    private Key key;
+    private List<byte[]> payloads;
+    private List<IvParameterSpec> initializationVectors;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        key = Key.generateKey(random);
+        payloads = new ArrayList<>(batchSize);
+        initializationVectors = new ArrayList<>(batchSize);
+        for (int i = batchSize; --i >= 0;) {
+            final byte[] payload = new byte[payloadBytes];
+            random.nextBytes(payload);
+            payloads.add(payload);
+            final byte[] iv = new byte[16];
+            random.nextBytes(iv);
+            initializationVectors.add(new IvParameterSpec(iv));
+        }
+    }
+
+    @Benchmark
+    public void sequential(final Blackhole blackhole) {
+        for (int i = 0; i < batchSize; i++) {
+            blackhole.consume(key.encrypt(payloads.get(i), initializationVectors.get(i)));
+        }
+    }
+
+    @Benchmark
+    public List<byte[]> interleaved() {
+        return key.encrypt(payloads, initializationVectors);
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.macasaet.fernet.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once for each thread count with the GC profiler enabled and writes the results of each run as
+ * JSON so that they can be compared across releases. The first argument is a comma-separated list of thread counts
+ * (default "1,4"), the second is the output directory (default "results"), and any remaining arguments are passed to
+ * JMH, e.g. a benchmark name pattern:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.macasaet.fernet.benchmark.BenchmarkRunner 1,2,4,8 results/0.5.2 TokenBenchmark
+ * </pre>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class BenchmarkRunner {
+
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+        final String threadCounts = args.length > 0 ? args[0] : "1,4";
+        final File outputDirectory = new File(args.length > 1 ? args[1] : "results");
+        final String[] jmhArguments = new String[Math.max(0, args.length - 2)];
+        System.arraycopy(args, args.length - jmhArguments.length, jmhArguments, 0, jmhArguments.length);
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Unable to create " + outputDirectory);
+        }
+
+        for (final String threadCount : threadCounts.split(",")) {
+            final int threads = Integer.parseInt(threadCount.trim());
+            final File result = new File(outputDirectory, "threads-" + threads + ".json");
+            new Runner(new OptionsBuilder()
+                    .parent(new CommandLineOptions(jmhArguments))
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result.getPath())
+                    .build()).run();
+        }
+    }
+
+}
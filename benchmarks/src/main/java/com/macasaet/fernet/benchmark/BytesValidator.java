@@ -0,0 +1,42 @@
+package com.macasaet.fernet.benchmark;
+
+import java.time.Duration;
+import java.time.temporal.TemporalAmount;
+import java.util.function.Function;
+
+import com.macasaet.fernet.KeySearchStrategy;
+import com.macasaet.fernet.Validator;
+
+/**
+ * A validator for binary payloads whose time-to-live comfortably exceeds the duration of any benchmark, so that tokens
+ * generated during set-up remain valid for every iteration.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+class BytesValidator implements Validator<byte[]> {
+
+    private final KeySearchStrategy keySearchStrategy;
+
+    BytesValidator() {
+        this(KeySearchStrategy.ADAPTIVE);
+    }
+
+    BytesValidator(final KeySearchStrategy keySearchStrategy) {
+        this.keySearchStrategy = keySearchStrategy;
+    }
+
+    public KeySearchStrategy getKeySearchStrategy() {
+        return keySearchStrategy;
+    }
+
+    public TemporalAmount getTimeToLive() {
+        return Duration.ofDays(1);
+    }
+
+    public Function<byte[], byte[]> getTransformer() {
+        return Function.identity();
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.macasaet.fernet.benchmark;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.macasaet.fernet.Key;
+import com.macasaet.fernet.Token;
+import com.macasaet.fernet.TokenCodec;
+
+/**
+ * Compares bulk token decoding and encoding with a loop over the per-token JDK codec. The <em>asciiBytes</em> counter
+ * reports throughput in bytes of token text per second; divide by 10<sup>9</sup> for GB/s.
+ *
+ * <p>On Java 17 or higher, run with <code>-jvmArgsAppend --add-modules=jdk.incubator.vector</code> to measure the SIMD
+ * codec and without it to measure the scalar codec.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"1000"})
+    public int tokenCount;
+
+    @Param({"16", "1024"})
+    public int payloadBytes;
+
+    private List<Token> tokens;
+    private List<String> strings;
+    private byte[] ascii;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+        public long asciiBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new SecureRandom();
+        final Key key = Key.generateKey(random);
+        tokens = new ArrayList<>(tokenCount);
+        strings = new ArrayList<>(tokenCount);
+        final StringBuilder builder = new StringBuilder();
+        for (int i = tokenCount; --i >= 0;) {
+            final byte[] payload = new byte[payloadBytes];
+            random.nextBytes(payload);
+            final Token token = Token.generate(random, key, payload);
+            tokens.add(token);
+            strings.add(token.serialise());
+            builder.append(token.serialise()).append('\n');
+        }
+        ascii = builder.toString().getBytes(US_ASCII);
+    }
+
+    @Benchmark
+    public void jdkDecode(final Blackhole blackhole, final Throughput throughput) {
+        for (final String string : strings) {
+            blackhole.consume(Token.fromString(string));
+        }
+        throughput.asciiBytes += ascii.length;
+    }
+
+    @Benchmark
+    public List<Token> bulkDecode(final Throughput throughput) {
+        throughput.asciiBytes += ascii.length;
+        return TokenCodec.decodeAll(ascii, 0, ascii.length);
+    }
+
+    @Benchmark
+    public void jdkEncode(final Blackhole blackhole, final Throughput throughput) {
+        for (final Token token : tokens) {
+            blackhole.consume(token.serialise());
+        }
+        throughput.asciiBytes += ascii.length;
+    }
+
+    @Benchmark
+    public byte[] bulkEncode(final Throughput throughput) {
+        throughput.asciiBytes += ascii.length;
+        return TokenCodec.encodeAll(tokens);
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.macasaet.fernet.benchmark;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.macasaet.fernet.CryptoBackend;
+import com.macasaet.fernet.CryptoEngine;
+import com.macasaet.fernet.JcaCryptoBackend;
+import com.macasaet.fernet.ThreadLocalCryptoBackend;
+
+/**
+ * Compares the per-call cost of the cryptographic primitives in each {@link CryptoBackend}. The differences are most
+ * pronounced for small payloads, for which the provider lookup and key set-up dominate.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class CryptoBackendBenchmark {
+
+    @Param({"jca", "threadLocal"})
+    public String backend;
+
+    @Param({"16", "256", "4096"})
+    public int payloadBytes;
+
+    private CryptoEngine engine;
+    private IvParameterSpec initializationVector;
+    private byte[] payload;
+    private byte[] cipherText;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new SecureRandom();
+        final byte[] signingKey = new byte[16];
+        final byte[] encryptionKey = new byte[16];
+        final byte[] iv = new byte[16];
+        random.nextBytes(signingKey);
+        random.nextBytes(encryptionKey);
+        random.nextBytes(iv);
+        final CryptoBackend cryptoBackend =
+                "threadLocal".equals(backend) ? new ThreadLocalCryptoBackend() : new JcaCryptoBackend();
+        engine = cryptoBackend.createEngine(signingKey, encryptionKey);
+        initializationVector = new IvParameterSpec(iv);
+        payload = new byte[payloadBytes];
+        random.nextBytes(payload);
+        cipherText = engine.encrypt(initializationVector, payload, 0, payload.length);
+    }
+
+    @Benchmark
+    public byte[] sign() {
+        return engine.sign(payload, 0, payload.length);
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return engine.encrypt(initializationVector, payload, 0, payload.length);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        return engine.decrypt(initializationVector, cipherText, 0, cipherText.length);
+    }
+
+}
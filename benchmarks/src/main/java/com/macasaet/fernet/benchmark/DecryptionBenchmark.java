@@ -0,0 +1,88 @@
+package com.macasaet.fernet.benchmark;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.macasaet.fernet.Key;
+
+/**
+ * Compares sequential and parallel decryption of large payloads. Vary <em>parallelism</em> to see how parallel
+ * decryption scales with the number of cores.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class DecryptionBenchmark {
+
+    @Param({"65536", "1048576", "10485760"})
+    public int payloadBytes;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private final Random random = new SecureRandom();
+    private Key sequentialKey;
+    private Key parallelKey;
+    private IvParameterSpec initializationVector;
+    private byte[] cipherText;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final String serialisedKey = Key.generateKey(random).serialise();
+        sequentialKey = new Key(serialisedKey) {
+            protected int getParallelDecryptionThreshold() {
+                return Integer.MAX_VALUE;
+            }
+        };
+        parallelKey = new Key(serialisedKey) {
+            protected int getParallelDecryptionThreshold() {
+                return 0;
+            }
+        };
+        final byte[] iv = new byte[16];
+        random.nextBytes(iv);
+        initializationVector = new IvParameterSpec(iv);
+        final byte[] payload = new byte[payloadBytes];
+        random.nextBytes(payload);
+        cipherText = sequentialKey.encrypt(payload, initializationVector);
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public byte[] sequential() {
+        return sequentialKey.decrypt(cipherText, initializationVector);
+    }
+
+    @Benchmark
+    public byte[] parallel() {
+        return pool.submit(() -> parallelKey.decrypt(cipherText, initializationVector)).join();
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.macasaet.fernet.benchmark;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.macasaet.fernet.Key;
+import com.macasaet.fernet.KeySearchStrategy;
+import com.macasaet.fernet.Token;
+import com.macasaet.fernet.Validator;
+
+/**
+ * Measures validation against a collection of keys, as during key rotation. The token is signed with the last key in
+ * the collection (the worst case when the keys are probed in order) or with none of them (a forged token). Each
+ * {@link KeySearchStrategy} is measured; <em>parallel</em> uses the common pool.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class KeyRingBenchmark {
+
+    @Param({"1", "2", "5", "20", "100"})
+    public int keyCount;
+
+    @Param({"16", "4096"})
+    public int payloadBytes;
+
+    @Param({"sequential", "adaptive", "parallel"})
+    public String strategy;
+
+    private Validator<byte[]> validator;
+    private List<Key> keys;
+    private String validToken;
+    private String forgedToken;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new SecureRandom();
+        validator = new BytesValidator(getStrategy());
+        keys = new ArrayList<>(keyCount);
+        for (int i = keyCount; --i >= 0; keys.add(Key.generateKey(random)));
+        final byte[] payload = new byte[payloadBytes];
+        random.nextBytes(payload);
+        validToken = Token.generate(random, keys.get(keyCount - 1), payload).serialise();
+        forgedToken = Token.generate(random, Key.generateKey(random), payload).serialise();
+    }
+
+    protected KeySearchStrategy getStrategy() {
+        switch (strategy) {
+        case "sequential":
+            return KeySearchStrategy.SEQUENTIAL;
+        case "adaptive":
+            return KeySearchStrategy.ADAPTIVE;
+        case "parallel":
+            return KeySearchStrategy.parallel(ForkJoinPool.commonPool());
+        default:
+            throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        }
+    }
+
+    @Benchmark
+    public byte[] validateAndDecrypt() {
+        return validator.validateAndDecrypt(keys, Token.fromString(validToken));
+    }
+
+    @Benchmark
+    public boolean rejectForgery() {
+        try {
+            validator.validateAndDecrypt(keys, Token.fromString(forgedToken));
+            return false;
+        } catch (final RuntimeException re) {
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.macasaet.fernet.benchmark;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.macasaet.fernet.Key;
+import com.macasaet.fernet.Token;
+import com.macasaet.fernet.Validator;
+
+/**
+ * Measures the single-key token life cycle: generation, serialisation, deserialisation, signature verification and
+ * validation. Run with <code>-t</code> to vary the number of threads and <code>-prof gc</code> to report allocation;
+ * see {@link BenchmarkRunner}.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class TokenBenchmark {
+
+    @Param({"16", "256", "4096", "65536", "1048576"})
+    public int payloadBytes;
+
+    private final Validator<byte[]> validator = new BytesValidator();
+    private Key key;
+    private byte[] payload;
+    private Token token;
+    private String serialisedToken;
+
+    @State(Scope.Thread)
+    public static class Entropy {
+        public final Random random = new SecureRandom();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new SecureRandom();
+        key = Key.generateKey(random);
+        payload = new byte[payloadBytes];
+        random.nextBytes(payload);
+        token = Token.generate(random, key, payload);
+        serialisedToken = token.serialise();
+    }
+
+    @Benchmark
+    public Token generate(final Entropy entropy) {
+        return Token.generate(entropy.random, key, payload);
+    }
+
+    @Benchmark
+    public String serialise() {
+        return token.serialise();
+    }
+
+    @Benchmark
+    public Token fromString() {
+        return Token.fromString(serialisedToken);
+    }
+
+    @Benchmark
+    public boolean isValidSignature() {
+        // deserialise so that state cached on the token does not carry over between invocations
+        return Token.fromString(serialisedToken).isValidSignature(key);
+    }
+
+    @Benchmark
+    public byte[] validateAndDecrypt() {
+        return Token.fromString(serialisedToken).validateAndDecrypt(key, validator);
+    }
+
+}
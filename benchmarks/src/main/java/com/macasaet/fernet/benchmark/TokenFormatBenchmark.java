@@ -0,0 +1,84 @@
+package com.macasaet.fernet.benchmark;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.temporal.TemporalAmount;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.macasaet.fernet.Key;
+import com.macasaet.fernet.Token;
+import com.macasaet.fernet.TokenFormat;
+import com.macasaet.fernet.Validator;
+
+/**
+ * Compares token generation and validation across the supported token formats and payload sizes. On Java 11 or
+ * higher, add <code>-p format=FERNET,AES_GCM,CHACHA20_POLY1305</code> to include the ChaCha20-Poly1305 format.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class TokenFormatBenchmark {
+
+    @Param({"FERNET", "AES_GCM"})
+    public TokenFormat format;
+
+    @Param({"16", "256", "4096", "65536"})
+    public int payloadBytes;
+
+    private final Random random = new SecureRandom();
+    private final Validator<byte[]> validator = new Validator<byte[]>() {
+        public Set<TokenFormat> getAcceptedFormats() {
+            return EnumSet.allOf(TokenFormat.class);
+        }
+
+        public TemporalAmount getTimeToLive() {
+            return Duration.ofDays(1);
+        }
+
+        public Function<byte[], byte[]> getTransformer() {
+            return Function.identity();
+        }
+    };
+    private Key key;
+    private byte[] payload;
+    private Token token;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        key = Key.generateKey(random);
+        payload = new byte[payloadBytes];
+        random.nextBytes(payload);
+        token = Token.generate(random, key, payload, format);
+    }
+
+    @Benchmark
+    public Token generate() {
+        return Token.generate(random, key, payload, format);
+    }
+
+    @Benchmark
+    public byte[] validateAndDecrypt() {
+        return token.validateAndDecrypt(key, validator);
+    }
+
+}
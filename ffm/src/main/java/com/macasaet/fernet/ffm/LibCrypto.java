@@ -0,0 +1,263 @@
+package com.macasaet.fernet.ffm;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.util.NoSuchElementException;
+
+/**
+ * Bindings to the parts of OpenSSL libcrypto used by {@link OpenSslCryptoBackend}: the EVP cipher interface for
+ * AES-128-CBC with PKCS #7 padding and the HMAC interface for HMAC SHA-256. The HMAC_CTX functions are deprecated in
+ * OpenSSL 3 but are still exported, and unlike EVP_MAC they are also available in OpenSSL 1.1.
+ *
+ * <p>The library is located by the system property <code>fernet.libcrypto</code>, which may be a file name or an
+ * absolute path, or else by trying the usual names for OpenSSL 3 and 1.1 on Linux and macOS.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+final class LibCrypto {
+
+    private static final String[] libraryNames = {"libcrypto.so.3", "libcrypto.so.1.1", "libcrypto.so",
+            "libcrypto.3.dylib", "libcrypto.dylib"};
+    private static final int blockBytes = 16;
+    private static final int hmacBytes = 32;
+    private static final LibCrypto instance = load();
+
+    private final MethodHandle cipherContextNew;
+    private final MethodHandle cipherContextFree;
+    private final MethodHandle encryptInit;
+    private final MethodHandle encryptUpdate;
+    private final MethodHandle encryptFinal;
+    private final MethodHandle decryptInit;
+    private final MethodHandle decryptUpdate;
+    private final MethodHandle decryptFinal;
+    private final MethodHandle hmacContextNew;
+    private final MethodHandle hmacContextFree;
+    private final MethodHandle hmacInit;
+    private final MethodHandle hmacUpdate;
+    private final MethodHandle hmacFinal;
+    private final MemorySegment aes128Cbc;
+    private final MemorySegment sha256;
+
+    private LibCrypto(final SymbolLookup lookup) throws Throwable {
+        final Linker linker = Linker.nativeLinker();
+        cipherContextNew = bind(linker, lookup, "EVP_CIPHER_CTX_new", FunctionDescriptor.of(ADDRESS));
+        cipherContextFree = bind(linker, lookup, "EVP_CIPHER_CTX_free", FunctionDescriptor.ofVoid(ADDRESS));
+        final FunctionDescriptor init = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS, ADDRESS);
+        final FunctionDescriptor update = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS,
+                JAVA_INT);
+        final FunctionDescriptor complete = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS);
+        encryptInit = bind(linker, lookup, "EVP_EncryptInit_ex", init);
+        encryptUpdate = bind(linker, lookup, "EVP_EncryptUpdate", update);
+        encryptFinal = bind(linker, lookup, "EVP_EncryptFinal_ex", complete);
+        decryptInit = bind(linker, lookup, "EVP_DecryptInit_ex", init);
+        decryptUpdate = bind(linker, lookup, "EVP_DecryptUpdate", update);
+        decryptFinal = bind(linker, lookup, "EVP_DecryptFinal_ex", complete);
+        hmacContextNew = bind(linker, lookup, "HMAC_CTX_new", FunctionDescriptor.of(ADDRESS));
+        hmacContextFree = bind(linker, lookup, "HMAC_CTX_free", FunctionDescriptor.ofVoid(ADDRESS));
+        hmacInit = bind(linker, lookup, "HMAC_Init_ex",
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_INT, ADDRESS, ADDRESS));
+        hmacUpdate = bind(linker, lookup, "HMAC_Update", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG));
+        hmacFinal = bind(linker, lookup, "HMAC_Final", complete);
+        aes128Cbc = (MemorySegment) bind(linker, lookup, "EVP_aes_128_cbc", FunctionDescriptor.of(ADDRESS))
+                .invokeExact();
+        sha256 = (MemorySegment) bind(linker, lookup, "EVP_sha256", FunctionDescriptor.of(ADDRESS)).invokeExact();
+    }
+
+    /**
+     * @return the bindings or null if libcrypto could not be loaded
+     */
+    static LibCrypto getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param key
+     *            the 128-bit AES key
+     * @param encrypt
+     *            true for an encryption context, false for a decryption context
+     * @return a new cipher context that has performed the key schedule, it must be freed with
+     *         {@link #freeCipherContext(MemorySegment)}
+     */
+    MemorySegment createCipherContext(final byte[] key, final boolean encrypt) {
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment context = (MemorySegment) cipherContextNew.invokeExact();
+            if (context.equals(MemorySegment.NULL)) {
+                throw new OutOfMemoryError("Unable to allocate cipher context");
+            }
+            final MethodHandle initialise = encrypt ? encryptInit : decryptInit;
+            final int result = (int) initialise.invokeExact(context, aes128Cbc, MemorySegment.NULL,
+                    copy(arena, key, 0, key.length), MemorySegment.NULL);
+            if (result != 1) {
+                freeCipherContext(context);
+                throw new IllegalStateException("Unable to initialise cipher");
+            }
+            return context;
+        } catch (final RuntimeException | Error e) {
+            throw e;
+        } catch (final Throwable t) {
+            throw new IllegalStateException(t.getMessage(), t);
+        }
+    }
+
+    void freeCipherContext(final MemorySegment context) {
+        try {
+            cipherContextFree.invokeExact(context);
+        } catch (final Throwable t) {
+            throw new IllegalStateException(t.getMessage(), t);
+        }
+    }
+
+    /**
+     * @param signingKey
+     *            the 128-bit HMAC SHA-256 key
+     * @return a new HMAC context bound to the key, it must be freed with {@link #freeHmacContext(MemorySegment)}
+     */
+    MemorySegment createHmacContext(final byte[] signingKey) {
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment context = (MemorySegment) hmacContextNew.invokeExact();
+            if (context.equals(MemorySegment.NULL)) {
+                throw new OutOfMemoryError("Unable to allocate HMAC context");
+            }
+            final int result = (int) hmacInit.invokeExact(context, copy(arena, signingKey, 0, signingKey.length),
+                    signingKey.length, sha256, MemorySegment.NULL);
+            if (result != 1) {
+                freeHmacContext(context);
+                throw new IllegalStateException("Unable to initialise HMAC with shared secret");
+            }
+            return context;
+        } catch (final RuntimeException | Error e) {
+            throw e;
+        } catch (final Throwable t) {
+            throw new IllegalStateException(t.getMessage(), t);
+        }
+    }
+
+    void freeHmacContext(final MemorySegment context) {
+        try {
+            hmacContextFree.invokeExact(context);
+        } catch (final Throwable t) {
+            throw new IllegalStateException(t.getMessage(), t);
+        }
+    }
+
+    /**
+     * @param context
+     *            an encryption context created by {@link #createCipherContext(byte[], boolean)}
+     * @return the padded cipher text
+     */
+    byte[] encrypt(final MemorySegment context, final byte[] initializationVector, final byte[] plainText,
+            final int offset, final int length) {
+        final byte[] retval = crypt(context, true, initializationVector, plainText, offset, length);
+        if (retval == null) {
+            throw new IllegalStateException("Unable to encrypt data");
+        }
+        return retval;
+    }
+
+    /**
+     * @param context
+     *            a decryption context created by {@link #createCipherContext(byte[], boolean)}
+     * @return the unpadded plain text or null if the padding is invalid
+     */
+    byte[] decrypt(final MemorySegment context, final byte[] initializationVector, final byte[] cipherText,
+            final int offset, final int length) {
+        return crypt(context, false, initializationVector, cipherText, offset, length);
+    }
+
+    /**
+     * @param context
+     *            a context created by {@link #createHmacContext(byte[])}
+     * @return the HMAC SHA-256 signature
+     */
+    byte[] sign(final MemorySegment context, final byte[] data, final int offset, final int length) {
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment signature = arena.allocate(hmacBytes);
+            final MemorySegment signatureLength = arena.allocate(JAVA_INT);
+            // a null key and digest re-use those of the previous initialisation
+            if ((int) hmacInit.invokeExact(context, MemorySegment.NULL, 0, MemorySegment.NULL,
+                    MemorySegment.NULL) != 1
+                    || (int) hmacUpdate.invokeExact(context, copy(arena, data, offset, length), (long) length) != 1
+                    || (int) hmacFinal.invokeExact(context, signature, signatureLength) != 1) {
+                throw new IllegalStateException("Unable to sign data");
+            }
+            return signature.asSlice(0, signatureLength.get(JAVA_INT, 0)).toArray(JAVA_BYTE);
+        } catch (final RuntimeException | Error e) {
+            throw e;
+        } catch (final Throwable t) {
+            throw new IllegalStateException(t.getMessage(), t);
+        }
+    }
+
+    private byte[] crypt(final MemorySegment context, final boolean encrypt, final byte[] initializationVector,
+            final byte[] input, final int offset, final int length) {
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment output = arena.allocate(length + blockBytes);
+            final MemorySegment outputLength = arena.allocate(JAVA_INT);
+            // a null cipher and key re-use the key schedule, only the initialisation vector changes
+            final MemorySegment iv = copy(arena, initializationVector, 0, initializationVector.length);
+            final int initialised = encrypt
+                    ? (int) encryptInit.invokeExact(context, MemorySegment.NULL, MemorySegment.NULL,
+                            MemorySegment.NULL, iv)
+                    : (int) decryptInit.invokeExact(context, MemorySegment.NULL, MemorySegment.NULL,
+                            MemorySegment.NULL, iv);
+            if (initialised != 1) {
+                throw new IllegalStateException("Unable to initialise cipher");
+            }
+            final MemorySegment in = copy(arena, input, offset, length);
+            final int updated = encrypt ? (int) encryptUpdate.invokeExact(context, output, outputLength, in, length)
+                    : (int) decryptUpdate.invokeExact(context, output, outputLength, in, length);
+            if (updated != 1) {
+                return null;
+            }
+            final int updateLength = outputLength.get(JAVA_INT, 0);
+            final MemorySegment remainder = output.asSlice(updateLength);
+            final int completed = encrypt ? (int) encryptFinal.invokeExact(context, remainder, outputLength)
+                    : (int) decryptFinal.invokeExact(context, remainder, outputLength);
+            if (completed != 1) {
+                return null;
+            }
+            return output.asSlice(0, updateLength + outputLength.get(JAVA_INT, 0)).toArray(JAVA_BYTE);
+        } catch (final RuntimeException | Error e) {
+            throw e;
+        } catch (final Throwable t) {
+            throw new IllegalStateException(t.getMessage(), t);
+        }
+    }
+
+    private static MemorySegment copy(final Arena arena, final byte[] source, final int offset, final int length) {
+        final MemorySegment retval = arena.allocate(Math.max(length, 1));
+        MemorySegment.copy(source, offset, retval, JAVA_BYTE, 0, length);
+        return retval;
+    }
+
+    private static MethodHandle bind(final Linker linker, final SymbolLookup lookup, final String name,
+            final FunctionDescriptor descriptor) {
+        return linker.downcallHandle(lookup.find(name).orElseThrow(), descriptor);
+    }
+
+    private static LibCrypto load() {
+        final String configured = System.getProperty("fernet.libcrypto");
+        for (final String name : configured == null ? libraryNames : new String[] {configured}) {
+            try {
+                return new LibCrypto(SymbolLookup.libraryLookup(name, Arena.global()));
+            } catch (final IllegalArgumentException | NoSuchElementException e) {
+                // not installed under this name or not a supported version
+            } catch (final Throwable t) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+}
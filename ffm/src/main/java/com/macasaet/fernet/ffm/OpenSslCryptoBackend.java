@@ -0,0 +1,64 @@
+package com.macasaet.fernet.ffm;
+
+import com.macasaet.fernet.CryptoBackend;
+import com.macasaet.fernet.CryptoEngine;
+import com.macasaet.fernet.Key;
+import com.macasaet.fernet.ThreadLocalCryptoBackend;
+
+/**
+ * A {@link CryptoBackend} that calls OpenSSL libcrypto directly through the Foreign Function &amp; Memory API rather
+ * than through a JCA provider. AES-128-CBC and HMAC SHA-256 use pre-keyed native contexts, one set per thread for each
+ * key (see {@link OpenSslCryptoEngine}). The operations that are always performed through the Java Cryptography
+ * Architecture, such as the authenticated encryption token formats, use the most preferred installed provider.
+ *
+ * <p>This requires Java 22 or higher. Calling native code is a restricted operation, so start the JVM with
+ * <code>--enable-native-access=ALL-UNNAMED</code> (or the name of the module that contains this class) to avoid a
+ * warning. Use {@link #createOrFallback()} to use this backend when libcrypto is installed and a JCA backend
+ * otherwise:</p>
+ *
+ * <pre>
+ * Key.setDefaultCryptoBackend(OpenSslCryptoBackend.createOrFallback());
+ * </pre>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class OpenSslCryptoBackend implements CryptoBackend {
+
+    /**
+     * @throws IllegalStateException
+     *             if libcrypto could not be loaded
+     * @see #isAvailable()
+     */
+    public OpenSslCryptoBackend() {
+        if (!isAvailable()) {
+            throw new IllegalStateException("libcrypto could not be loaded");
+        }
+    }
+
+    /**
+     * @return true if and only if libcrypto could be loaded
+     */
+    public static boolean isAvailable() {
+        return LibCrypto.getInstance() != null;
+    }
+
+    /**
+     * @return an OpenSSL backend if libcrypto could be loaded or else a {@link ThreadLocalCryptoBackend} that uses the
+     *         most preferred installed JCA provider
+     * @see Key#setDefaultCryptoBackend(CryptoBackend)
+     */
+    public static CryptoBackend createOrFallback() {
+        return isAvailable() ? new OpenSslCryptoBackend() : new ThreadLocalCryptoBackend();
+    }
+
+    public CryptoEngine createEngine(final byte[] signingKey, final byte[] encryptionKey) {
+        return new OpenSslCryptoEngine(LibCrypto.getInstance(), signingKey, encryptionKey);
+    }
+
+    public String toString() {
+        return "OpenSslCryptoBackend";
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.macasaet.fernet.ffm;
+
+import static java.util.Arrays.copyOf;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.ref.Cleaner;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import com.macasaet.fernet.CryptoEngine;
+import com.macasaet.fernet.TokenValidationException;
+
+/**
+ * The {@link CryptoEngine} created by {@link OpenSslCryptoBackend}. Each thread has its own pre-keyed libcrypto
+ * contexts for encryption, decryption and signing, so only the initialisation vector changes from one operation to the
+ * next. The contexts of all engines are held in a single {@link ThreadLocal} cache that retains those of the
+ * {@link #contextsPerThread} engines each thread used most recently. The native memory is freed when the contexts are
+ * evicted from the cache or, if the thread terminates first, when they become unreachable.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+class OpenSslCryptoEngine implements CryptoEngine {
+
+    /**
+     * The number of engines for which each thread retains native contexts.
+     */
+    static final int contextsPerThread = 64;
+    private static final Cleaner cleaner = Cleaner.create();
+    private static final ThreadLocal<ContextCache> contextCaches = ThreadLocal.withInitial(ContextCache::new);
+
+    private final LibCrypto libCrypto;
+    private final byte[] signingKey;
+    private final byte[] encryptionKey;
+
+    /**
+     * @param libCrypto the libcrypto bindings
+     * @param signingKey the 128-bit HMAC SHA-256 key
+     * @param encryptionKey the 128-bit AES key
+     */
+    OpenSslCryptoEngine(final LibCrypto libCrypto, final byte[] signingKey, final byte[] encryptionKey) {
+        this.libCrypto = libCrypto;
+        this.signingKey = copyOf(signingKey, signingKey.length);
+        this.encryptionKey = copyOf(encryptionKey, encryptionKey.length);
+    }
+
+    public byte[] encrypt(final IvParameterSpec initializationVector, final byte[] plainText, final int offset,
+            final int length) {
+        return libCrypto.encrypt(getContexts().encryption, initializationVector.getIV(), plainText, offset, length);
+    }
+
+    public byte[] decrypt(final IvParameterSpec initializationVector, final byte[] cipherText, final int offset,
+            final int length) throws TokenValidationException {
+        final byte[] retval = libCrypto.decrypt(getContexts().decryption, initializationVector.getIV(), cipherText,
+                offset, length);
+        if (retval == null) {
+            throw new TokenValidationException("Invalid padding in token");
+        }
+        return retval;
+    }
+
+    public byte[] sign(final byte[] data, final int offset, final int length) {
+        return libCrypto.sign(getContexts().signing, data, offset, length);
+    }
+
+    /**
+     * @return the number of engines for which the current thread retains native contexts, for testing
+     */
+    static int getCachedEngineCount() {
+        return contextCaches.get().size();
+    }
+
+    private Contexts getContexts() {
+        final ContextCache cache = contextCaches.get();
+        Contexts retval = cache.get(this);
+        if (retval == null) {
+            retval = new Contexts(libCrypto, signingKey, encryptionKey);
+            cache.put(this, retval);
+        }
+        return retval;
+    }
+
+    /**
+     * The native contexts that one thread uses with one engine.
+     */
+    private static final class Contexts {
+
+        final MemorySegment encryption;
+        final MemorySegment decryption;
+        final MemorySegment signing;
+        final Cleaner.Cleanable cleanable;
+
+        Contexts(final LibCrypto libCrypto, final byte[] signingKey, final byte[] encryptionKey) {
+            final MemorySegment encryption = libCrypto.createCipherContext(encryptionKey, true);
+            final MemorySegment decryption = libCrypto.createCipherContext(encryptionKey, false);
+            final MemorySegment signing = libCrypto.createHmacContext(signingKey);
+            this.encryption = encryption;
+            this.decryption = decryption;
+            this.signing = signing;
+            // the action must not refer to this object or it would never become unreachable
+            this.cleanable = cleaner.register(this, () -> {
+                libCrypto.freeCipherContext(encryption);
+                libCrypto.freeCipherContext(decryption);
+                libCrypto.freeHmacContext(signing);
+            });
+        }
+
+    }
+
+    /**
+     * The per-thread contexts of the most recently used engines, in access order.
+     */
+    private static final class ContextCache extends LinkedHashMap<OpenSslCryptoEngine, Contexts> {
+
+        private static final long serialVersionUID = 5718236441127035310L;
+
+        ContextCache() {
+            super(16, 0.75f, true);
+        }
+
+        protected boolean removeEldestEntry(final Entry<OpenSslCryptoEngine, Contexts> eldest) {
+            if (size() > contextsPerThread) {
+                eldest.getValue().cleanable.clean();
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+}
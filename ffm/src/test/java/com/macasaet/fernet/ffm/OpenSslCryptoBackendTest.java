@@ -0,0 +1,146 @@
+package com.macasaet.fernet.ffm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.macasaet.fernet.CryptoBackend;
+import com.macasaet.fernet.CryptoEngine;
+import com.macasaet.fernet.JcaCryptoBackend;
+import com.macasaet.fernet.Key;
+import com.macasaet.fernet.StringValidator;
+import com.macasaet.fernet.Token;
+import com.macasaet.fernet.TokenValidationException;
+import com.macasaet.fernet.Validator;
+
+/**
+ * Compares the output of the {@link OpenSslCryptoBackend} with that of the {@link JcaCryptoBackend}. The tests are
+ * skipped if libcrypto is not installed.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class OpenSslCryptoBackendTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final CryptoBackend reference = new JcaCryptoBackend();
+    private CryptoBackend backend;
+
+    @Before
+    public void setUp() {
+        assumeTrue(OpenSslCryptoBackend.isAvailable());
+        backend = new OpenSslCryptoBackend();
+    }
+
+    @Test
+    public final void verifyOutputMatchesJcaBackend() throws TokenValidationException {
+        // given
+        final Random random = new Random(0);
+
+        for (int i = 0; i < 256; i++) {
+            final byte[] signingKey = new byte[16];
+            final byte[] encryptionKey = new byte[16];
+            final byte[] iv = new byte[16];
+            final byte[] payload = new byte[random.nextInt(512)];
+            random.nextBytes(signingKey);
+            random.nextBytes(encryptionKey);
+            random.nextBytes(iv);
+            random.nextBytes(payload);
+            final IvParameterSpec initializationVector = new IvParameterSpec(iv);
+            final CryptoEngine expected = reference.createEngine(signingKey, encryptionKey);
+            final CryptoEngine engine = backend.createEngine(signingKey, encryptionKey);
+
+            // when
+            final byte[] cipherText = engine.encrypt(initializationVector, payload, 0, payload.length);
+            final byte[] signature = engine.sign(cipherText, 0, cipherText.length);
+            final byte[] plainText = engine.decrypt(initializationVector, cipherText, 0, cipherText.length);
+
+            // then
+            assertArrayEquals(expected.encrypt(initializationVector, payload, 0, payload.length), cipherText);
+            assertArrayEquals(expected.sign(cipherText, 0, cipherText.length), signature);
+            assertArrayEquals(payload, plainText);
+        }
+    }
+
+    @Test
+    public final void verifySpecificationTokenIsDecrypted() {
+        // given
+        final Key key = new Key("cw_0x689RpI-jtRR7oE8h_eQsKImvJapLeSbXpwF4e4=").withCryptoBackend(backend);
+        final Token token = Token.fromString(
+                "gAAAAAAdwJ6wAAECAwQFBgcICQoLDA0ODy021cpGVWKZ_eEwCGM4BLLF_5CV9dOPmrhuVUPgJobwOz7JcbmrR64jVmpU4IwqDA==");
+        final Validator<String> validator = new StringValidator() {
+            public Clock getClock() {
+                return Clock.fixed(Instant.parse("1985-10-26T08:20:01Z"), ZoneOffset.UTC);
+            }
+        };
+
+        // when
+        final String result = token.validateAndDecrypt(key, validator);
+
+        // then
+        assertEquals("hello", result);
+    }
+
+    @Test
+    public final void verifyInvalidPaddingIsRejected() throws TokenValidationException {
+        // given
+        final CryptoEngine engine = backend.createEngine(new byte[16], new byte[16]);
+        final IvParameterSpec initializationVector = new IvParameterSpec(new byte[16]);
+        final byte[] cipherText = engine.encrypt(initializationVector, new byte[] {1, 2, 3}, 0, 3);
+        cipherText[cipherText.length - 1] ^= 1;
+
+        // when
+        thrown.expect(TokenValidationException.class);
+        engine.decrypt(initializationVector, cipherText, 0, cipherText.length);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyPerThreadContextsAreBounded() throws TokenValidationException {
+        // given
+        final byte[] payload = new byte[] {1, 2, 3};
+        final IvParameterSpec initializationVector = new IvParameterSpec(new byte[16]);
+
+        for (int i = 0; i < 2 * OpenSslCryptoEngine.contextsPerThread; i++) {
+            final byte[] signingKey = new byte[16];
+            signingKey[0] = (byte) i;
+            final CryptoEngine engine = backend.createEngine(signingKey, new byte[16]);
+
+            // when
+            final byte[] cipherText = engine.encrypt(initializationVector, payload, 0, payload.length);
+
+            // then
+            assertArrayEquals(payload, engine.decrypt(initializationVector, cipherText, 0, cipherText.length));
+            assertTrue(OpenSslCryptoEngine.getCachedEngineCount() <= OpenSslCryptoEngine.contextsPerThread);
+        }
+    }
+
+    @Test
+    public final void verifyFallbackIsOpenSslWhenAvailable() {
+        // given
+
+        // when
+        final CryptoBackend result = OpenSslCryptoBackend.createOrFallback();
+
+        // then
+        assertTrue(result instanceof OpenSslCryptoBackend);
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.macasaet.fernet.flow;
+
+import java.util.Collection;
+import java.util.concurrent.Flow.Processor;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.macasaet.fernet.Key;
+import com.macasaet.fernet.TokenProcessor;
+import com.macasaet.fernet.ValidationResult;
+import com.macasaet.fernet.Validator;
+
+/**
+ * A {@link Processor} that validates a stream of serialised tokens by delegating to a {@link TokenProcessor}. The
+ * delegate determines the window, batching, parallelism and ordering. It must not be used directly by anything else.
+ *
+ * <pre>
+ * final FlowTokenProcessor&lt;User&gt; processor = new FlowTokenProcessor&lt;&gt;(validator, keys);
+ * publisher.subscribe(processor);
+ * processor.subscribe(resultSubscriber);
+ * </pre>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @param <T> the type of the payload
+ * @author Carlos Macasaet
+ */
+public class FlowTokenProcessor<T> implements Processor<String, ValidationResult<T>> {
+
+    private final TokenProcessor<T> delegate;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * Create an ordered processor with the default {@link TokenProcessor} settings.
+     *
+     * @param validator
+     *            the validation rules and the executor on which to validate tokens
+     * @param keys
+     *            the keys that may have signed the tokens, this may be modified concurrently if it is thread-safe
+     */
+    public FlowTokenProcessor(final Validator<T> validator, final Collection<? extends Key> keys) {
+        this(new TokenProcessor<>(validator, keys));
+    }
+
+    /**
+     * @param delegate
+     *            a processor that has neither an upstream publisher nor a downstream subscriber
+     */
+    public FlowTokenProcessor(final TokenProcessor<T> delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+     * Register the single subscriber to the results. Any further subscriber receives an {@link IllegalStateException}.
+     *
+     * @param subscriber the recipient of the validation results
+     */
+    public void subscribe(final Subscriber<? super ValidationResult<T>> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                public void request(final long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("TokenProcessor only supports a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Subscription() {
+            public void request(final long n) {
+                delegate.request(n);
+            }
+
+            public void cancel() {
+                delegate.cancel();
+            }
+        });
+        // the delegate emits nothing until it has a recipient, so requests made in onSubscribe are not lost
+        delegate.subscribe(subscriber::onNext, subscriber::onError, subscriber::onComplete);
+    }
+
+    public void onSubscribe(final Subscription subscription) {
+        delegate.onSubscribe(subscription::request, subscription::cancel);
+    }
+
+    public void onNext(final String item) {
+        delegate.onNext(item);
+    }
+
+    public void onError(final Throwable throwable) {
+        delegate.onError(throwable);
+    }
+
+    public void onComplete() {
+        delegate.onComplete();
+    }
+
+    /**
+     * @return the number of tokens received from upstream whose results have not been emitted
+     */
+    public int getInFlight() {
+        return delegate.getInFlight();
+    }
+
+}
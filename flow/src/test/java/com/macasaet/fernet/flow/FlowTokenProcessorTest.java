@@ -0,0 +1,151 @@
+package com.macasaet.fernet.flow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.macasaet.fernet.Key;
+import com.macasaet.fernet.StringValidator;
+import com.macasaet.fernet.Token;
+import com.macasaet.fernet.TokenProcessor;
+import com.macasaet.fernet.TokenValidationException;
+import com.macasaet.fernet.ValidationResult;
+import com.macasaet.fernet.Validator;
+
+/**
+ * Unit tests for the {@link FlowTokenProcessor} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class FlowTokenProcessorTest {
+
+    private final Random random = new Random();
+    private final Key key = Key.generateKey(random);
+    private final List<Key> keys = Collections.singletonList(key);
+    private final Validator<String> validator = new StringValidator() {
+    };
+    private TestSubscriber subscriber;
+
+    @Before
+    public void setUp() {
+        subscriber = new TestSubscriber();
+    }
+
+    @Test
+    public final void verifyResultsFromJdkPublisher() throws InterruptedException {
+        // given
+        final FlowTokenProcessor<String> processor =
+                new FlowTokenProcessor<>(new TokenProcessor<>(validator, keys, 8, 2, 4, true));
+        processor.subscribe(subscriber);
+
+        // when
+        try (SubmissionPublisher<String> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (int i = 0; i < 100; i++) {
+                publisher.submit(Token.generate(random, key, "payload-" + i).serialise());
+            }
+            publisher.submit("not a token");
+        }
+
+        // then
+        assertTrue(subscriber.awaitTermination());
+        assertNull(subscriber.error);
+        assertEquals(101, subscriber.results.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("payload-" + i, subscriber.results.get(i).getValue());
+        }
+        assertTrue(subscriber.results.get(100).getError() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public final void verifyUpstreamErrorDelivered() throws InterruptedException {
+        // given
+        final FlowTokenProcessor<String> processor = new FlowTokenProcessor<>(validator, keys);
+        processor.subscribe(subscriber);
+        final IllegalStateException error = new IllegalStateException("upstream failure");
+
+        // when
+        try (SubmissionPublisher<String> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            publisher.submit(Token.generate(random, Key.generateKey(random), "wrong key").serialise());
+            // the publisher drops items that are still buffered when it is closed exceptionally
+            subscriber.awaitResults(1);
+            publisher.closeExceptionally(error);
+        }
+
+        // then
+        assertTrue(subscriber.awaitTermination());
+        assertEquals(1, subscriber.results.size());
+        assertTrue(subscriber.results.get(0).getError() instanceof TokenValidationException);
+        assertEquals(error, subscriber.error);
+    }
+
+    @Test
+    public final void verifySecondSubscriberRejected() throws InterruptedException {
+        // given
+        final FlowTokenProcessor<String> processor = new FlowTokenProcessor<>(validator, keys);
+        processor.subscribe(subscriber);
+        final TestSubscriber second = new TestSubscriber();
+
+        // when
+        processor.subscribe(second);
+
+        // then
+        assertTrue(second.awaitTermination());
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    /**
+     * A subscriber that requests every result and records everything it receives.
+     */
+    private static class TestSubscriber implements Subscriber<ValidationResult<String>> {
+        final List<ValidationResult<String>> results = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile Throwable error;
+
+        public void onSubscribe(final Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        public void onNext(final ValidationResult<String> item) {
+            results.add(item);
+        }
+
+        public void onError(final Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        boolean awaitTermination() throws InterruptedException {
+            return completed.await(10, TimeUnit.SECONDS);
+        }
+
+        void awaitResults(final int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (results.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(count, results.size());
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.macasaet.fernet.loadgen;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import com.macasaet.fernet.Key;
+import com.macasaet.fernet.Token;
+import com.macasaet.fernet.Validator;
+
+/**
+ * The shared, read-only state for a load test: a key ring, a validator and pools of pre-generated tokens for each kind
+ * of validation request. Pre-generating the tokens keeps the cost of building the requests out of the measurements.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+class Fixture {
+
+    private static final byte version = (byte) 0x80;
+
+    private final List<Key> keys;
+    private final Validator<byte[]> validator;
+    private final byte[] payload;
+    private final List<String> validTokens;
+    private final List<String> expiredTokens;
+    private final List<String> forgedTokens;
+    private final List<String> malformedTokens;
+
+    /**
+     * @param random a source of entropy for the keys and tokens
+     * @param keyRingSize the number of keys against which tokens are validated
+     * @param payloadBytes the size of each token payload
+     * @param poolSize the number of distinct tokens of each kind
+     */
+    Fixture(final Random random, final int keyRingSize, final int payloadBytes, final int poolSize) {
+        if (keyRingSize < 1) {
+            throw new IllegalArgumentException("keyRingSize must be positive");
+        }
+        final List<Key> keys = new ArrayList<>(keyRingSize);
+        for (int i = keyRingSize; --i >= 0; keys.add(Key.generateKey(random)));
+        this.keys = Collections.unmodifiableList(keys);
+        this.validator = new Validator<byte[]>() {
+            public TemporalAmount getTimeToLive() {
+                return Duration.ofDays(1);
+            }
+
+            public Function<byte[], byte[]> getTransformer() {
+                return Function.identity();
+            }
+        };
+        this.payload = new byte[payloadBytes];
+        random.nextBytes(payload);
+
+        final Key outsider = Key.generateKey(random);
+        final Instant expired = Instant.now().minus(Duration.ofDays(2));
+        validTokens = new ArrayList<>(poolSize);
+        expiredTokens = new ArrayList<>(poolSize);
+        forgedTokens = new ArrayList<>(poolSize);
+        malformedTokens = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            // spread the tokens across the ring as if keys had been rotated
+            final Key signingKey = keys.get(i % keyRingSize);
+            final String valid = Token.generate(random, signingKey, payload).serialise();
+            validTokens.add(valid);
+            expiredTokens.add(generate(random, signingKey, expired));
+            forgedTokens.add(Token.generate(random, outsider, payload).serialise());
+            malformedTokens.add(i % 2 == 0 ? valid.substring(0, valid.length() / 2) : valid.replace('A', '%'));
+        }
+    }
+
+    /**
+     * @return a token with an arbitrary timestamp, built from the public primitives of {@link Key}
+     */
+    protected String generate(final Random random, final Key key, final Instant timestamp) {
+        final byte[] iv = new byte[16];
+        random.nextBytes(iv);
+        final IvParameterSpec initializationVector = new IvParameterSpec(iv);
+        final byte[] cipherText = key.encrypt(payload, initializationVector);
+        final byte[] hmac = key.sign(version, timestamp, initializationVector, cipherText);
+        final ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + iv.length + cipherText.length + hmac.length)
+                .put(version)
+                .putLong(timestamp.getEpochSecond())
+                .put(iv)
+                .put(cipherText)
+                .put(hmac);
+        return Base64.getUrlEncoder().encodeToString(buffer.array());
+    }
+
+    List<Key> getKeys() {
+        return keys;
+    }
+
+    Validator<byte[]> getValidator() {
+        return validator;
+    }
+
+    byte[] getPayload() {
+        return payload;
+    }
+
+    List<String> getValidTokens() {
+        return validTokens;
+    }
+
+    List<String> getExpiredTokens() {
+        return expiredTokens;
+    }
+
+    List<String> getForgedTokens() {
+        return forgedTokens;
+    }
+
+    List<String> getMalformedTokens() {
+        return malformedTokens;
+    }
+
+}
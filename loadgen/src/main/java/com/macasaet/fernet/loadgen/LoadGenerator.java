@@ -0,0 +1,149 @@
+package com.macasaet.fernet.loadgen;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a mix of token issuance and validation requests against the library, in process, at a fixed target rate and
+ * prints latency percentiles for each kind of request. Unlike a micro-benchmark, this shows how the tail latency
+ * behaves under a sustained load and how it shifts with the size of the key ring and the proportion of forged tokens.
+ *
+ * <pre>
+ * java -jar target/loadgen.jar --qps=20000 --threads=8 --duration=60 --warmup=15 --keys=1,5,20 \
+ *     --payload=256 --mix=issue=10,valid=80,expired=5,forged=4,malformed=1
+ * </pre>
+ *
+ * <p>Options: <em>qps</em> is the total target rate, which is divided evenly between the <em>threads</em>;
+ * <em>duration</em> and <em>warmup</em> are in seconds; <em>keys</em> is a comma-separated list of key ring sizes, one
+ * test is run for each; <em>payload</em> is the payload size in bytes; and <em>virtual</em> runs each worker in a
+ * virtual thread, which requires Java 21 or higher at run time.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class LoadGenerator {
+
+    private static final int tokenPoolSize = 1_024;
+
+    private final int qps;
+    private final int threads;
+    private final int durationSeconds;
+    private final int warmUpSeconds;
+    private final int keyRingSize;
+    private final int payloadBytes;
+    private final Mix mix;
+    private final boolean virtual;
+
+    LoadGenerator(final int qps, final int threads, final int durationSeconds, final int warmUpSeconds,
+            final int keyRingSize, final int payloadBytes, final Mix mix, final boolean virtual) {
+        if (qps < 1 || threads < 1 || durationSeconds < 1 || warmUpSeconds < 0) {
+            throw new IllegalArgumentException("qps, threads and duration must be positive");
+        }
+        this.qps = qps;
+        this.threads = threads;
+        this.durationSeconds = durationSeconds;
+        this.warmUpSeconds = warmUpSeconds;
+        this.keyRingSize = keyRingSize;
+        this.payloadBytes = payloadBytes;
+        this.mix = mix;
+        this.virtual = virtual;
+    }
+
+    public static void main(final String[] args) throws InterruptedException, ExecutionException {
+        final Map<String, String> options = new HashMap<>();
+        options.put("qps", "1000");
+        options.put("threads", "4");
+        options.put("duration", "30");
+        options.put("warmup", "10");
+        options.put("keys", "1");
+        options.put("payload", "256");
+        options.put("mix", "issue=10,valid=80,expired=5,forged=4,malformed=1");
+        options.put("virtual", "false");
+        for (final String argument : args) {
+            if (!argument.startsWith("--")) {
+                throw new IllegalArgumentException("Unrecognised argument: " + argument);
+            }
+            final int separator = argument.indexOf('=');
+            final String name = separator < 0 ? argument.substring(2) : argument.substring(2, separator);
+            if (!options.containsKey(name)) {
+                throw new IllegalArgumentException("Unrecognised option: " + name);
+            }
+            options.put(name, separator < 0 ? "true" : argument.substring(separator + 1));
+        }
+
+        final Mix mix = Mix.parse(options.get("mix"));
+        for (final String keyRingSize : options.get("keys").split(",")) {
+            final LoadGenerator generator = new LoadGenerator(Integer.parseInt(options.get("qps")),
+                    Integer.parseInt(options.get("threads")), Integer.parseInt(options.get("duration")),
+                    Integer.parseInt(options.get("warmup")), Integer.parseInt(keyRingSize.trim()),
+                    Integer.parseInt(options.get("payload")), mix, Boolean.parseBoolean(options.get("virtual")));
+            System.out.println(generator);
+            generator.run().print(System.out, generator.durationSeconds);
+            System.out.println();
+        }
+    }
+
+    /**
+     * @return the merged measurements of all the workers
+     */
+    Report run() throws InterruptedException, ExecutionException {
+        final Fixture fixture = new Fixture(new SecureRandom(), keyRingSize, payloadBytes, tokenPoolSize);
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(threads) / qps;
+        final long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        final long measurementStartNanos = startNanos + TimeUnit.SECONDS.toNanos(warmUpSeconds);
+        final long endNanos = measurementStartNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        final List<Worker> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            // stagger the workers so that their requests are evenly spaced
+            workers.add(new Worker(fixture, mix, new SecureRandom(), intervalNanos,
+                    startNanos + i * intervalNanos / threads, measurementStartNanos, endNanos));
+        }
+        final ExecutorService executor = createExecutor();
+        try {
+            final List<Future<?>> futures = new ArrayList<>(threads);
+            for (final Worker worker : workers) {
+                futures.add(executor.submit(worker));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        final Report retval = new Report();
+        for (final Worker worker : workers) {
+            retval.add(worker.getReport());
+        }
+        return retval;
+    }
+
+    protected ExecutorService createExecutor() {
+        if (!virtual) {
+            return Executors.newFixedThreadPool(threads);
+        }
+        try {
+            // available from Java 21
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException roe) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or higher", roe);
+        }
+    }
+
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "LoadGenerator [qps=%d, threads=%d%s, duration=%ds, warmup=%ds, keys=%d, payload=%dB, mix=%s]", qps,
+                threads, virtual ? " (virtual)" : "", durationSeconds, warmUpSeconds, keyRingSize, payloadBytes, mix);
+    }
+
+}
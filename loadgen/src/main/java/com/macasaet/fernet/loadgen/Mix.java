@@ -0,0 +1,85 @@
+package com.macasaet.fernet.loadgen;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+/**
+ * The relative frequency of each {@link Scenario}, e.g. "issue=10,valid=80,expired=5,forged=4,malformed=1".
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+class Mix {
+
+    private final Map<Scenario, Integer> weights;
+    private final Scenario[] scenarios;
+    private final int[] cumulativeWeights;
+
+    /**
+     * @param weights the relative frequency of each scenario, scenarios that are absent are never issued
+     */
+    Mix(final Map<Scenario, Integer> weights) {
+        this.weights = new EnumMap<>(weights);
+        scenarios = new Scenario[weights.size()];
+        cumulativeWeights = new int[weights.size()];
+        int i = 0;
+        int total = 0;
+        for (final Entry<Scenario, Integer> entry : this.weights.entrySet()) {
+            if (entry.getValue() < 0) {
+                throw new IllegalArgumentException("Weight cannot be negative: " + entry);
+            }
+            total += entry.getValue();
+            scenarios[i] = entry.getKey();
+            cumulativeWeights[i++] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("At least one scenario must have a positive weight");
+        }
+    }
+
+    /**
+     * @param specification comma-separated scenario=weight pairs, scenario names are case-insensitive
+     * @return the parsed mix
+     */
+    static Mix parse(final String specification) {
+        final Map<Scenario, Integer> weights = new EnumMap<>(Scenario.class);
+        for (final String pair : specification.split(",")) {
+            final String[] components = pair.split("=");
+            if (components.length != 2) {
+                throw new IllegalArgumentException("Expected scenario=weight: " + pair);
+            }
+            weights.put(Scenario.valueOf(components[0].trim().toUpperCase(Locale.ROOT)),
+                    Integer.valueOf(components[1].trim()));
+        }
+        return new Mix(weights);
+    }
+
+    /**
+     * @param random a source of randomness owned by the calling thread
+     * @return a scenario chosen in proportion to the weights
+     */
+    Scenario next(final Random random) {
+        final int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (value >= cumulativeWeights[i]) {
+            i++;
+        }
+        return scenarios[i];
+    }
+
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (final Entry<Scenario, Integer> entry : weights.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(entry.getKey().name().toLowerCase(Locale.ROOT)).append('=').append(entry.getValue());
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.macasaet.fernet.loadgen;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latency and correctness measurements for each {@link Scenario}. Each worker records into its own report and the
+ * reports are merged when the test ends, so recording never contends.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+class Report {
+
+    private static final double[] percentiles = {50, 90, 99, 99.9, 99.99};
+
+    private final Map<Scenario, Histogram> latencies = new EnumMap<>(Scenario.class);
+    private final Map<Scenario, Histogram> serviceTimes = new EnumMap<>(Scenario.class);
+    private final Map<Scenario, long[]> unexpectedOutcomes = new EnumMap<>(Scenario.class);
+
+    /**
+     * @param scenario the kind of request
+     * @param latencyNanos the time from the intended start of the request until it completed
+     * @param serviceTimeNanos the time from the actual start of the request until it completed
+     * @param asExpected whether or not the library behaved as expected
+     */
+    void record(final Scenario scenario, final long latencyNanos, final long serviceTimeNanos,
+            final boolean asExpected) {
+        latencies.computeIfAbsent(scenario, s -> Worker.createHistogram()).recordValue(latencyNanos);
+        serviceTimes.computeIfAbsent(scenario, s -> Worker.createHistogram()).recordValue(serviceTimeNanos);
+        if (!asExpected) {
+            unexpectedOutcomes.computeIfAbsent(scenario, s -> new long[1])[0]++;
+        }
+    }
+
+    /**
+     * @param other the measurements of another worker, these are added to this report
+     */
+    void add(final Report other) {
+        for (final Entry<Scenario, Histogram> entry : other.latencies.entrySet()) {
+            latencies.computeIfAbsent(entry.getKey(), s -> Worker.createHistogram()).add(entry.getValue());
+        }
+        for (final Entry<Scenario, Histogram> entry : other.serviceTimes.entrySet()) {
+            serviceTimes.computeIfAbsent(entry.getKey(), s -> Worker.createHistogram()).add(entry.getValue());
+        }
+        for (final Entry<Scenario, long[]> entry : other.unexpectedOutcomes.entrySet()) {
+            unexpectedOutcomes.computeIfAbsent(entry.getKey(), s -> new long[1])[0] += entry.getValue()[0];
+        }
+    }
+
+    /**
+     * @param scenario the kind of request
+     * @return the latencies, in nanoseconds, corrected for coordinated omission
+     */
+    Histogram getLatencies(final Scenario scenario) {
+        return latencies.getOrDefault(scenario, Worker.createHistogram());
+    }
+
+    /**
+     * @param scenario the kind of request
+     * @return the service times, in nanoseconds
+     */
+    Histogram getServiceTimes(final Scenario scenario) {
+        return serviceTimes.getOrDefault(scenario, Worker.createHistogram());
+    }
+
+    /**
+     * @param scenario the kind of request
+     * @return the number of requests for which the library did not behave as expected
+     */
+    long getUnexpectedOutcomes(final Scenario scenario) {
+        return unexpectedOutcomes.getOrDefault(scenario, new long[1])[0];
+    }
+
+    /**
+     * @param out the destination
+     * @param elapsedSeconds the duration of the measurement period
+     */
+    void print(final PrintStream out, final double elapsedSeconds) {
+        out.printf(Locale.ROOT, "%-10s %10s %10s %10s", "scenario", "requests", "req/s", "unexpected");
+        for (final double percentile : percentiles) {
+            out.printf(Locale.ROOT, " %10s", "p" + format(percentile));
+        }
+        out.printf(Locale.ROOT, " %10s%n", "max");
+        final Histogram totalLatencies = Worker.createHistogram();
+        final Histogram totalServiceTimes = Worker.createHistogram();
+        long totalUnexpected = 0;
+        for (final Scenario scenario : latencies.keySet()) {
+            printRow(out, scenario.name().toLowerCase(Locale.ROOT), getLatencies(scenario), getServiceTimes(scenario),
+                    getUnexpectedOutcomes(scenario), elapsedSeconds);
+            totalLatencies.add(getLatencies(scenario));
+            totalServiceTimes.add(getServiceTimes(scenario));
+            totalUnexpected += getUnexpectedOutcomes(scenario);
+        }
+        printRow(out, "all", totalLatencies, totalServiceTimes, totalUnexpected, elapsedSeconds);
+        out.println("Latency is measured from the intended start time (corrected for coordinated omission); service "
+                + "time from the actual start time. Times are in microseconds.");
+    }
+
+    protected void printRow(final PrintStream out, final String name, final Histogram latencies,
+            final Histogram serviceTimes, final long unexpected, final double elapsedSeconds) {
+        out.printf(Locale.ROOT, "%-10s %10d %10.0f %10d", name, latencies.getTotalCount(),
+                latencies.getTotalCount() / elapsedSeconds, unexpected);
+        printPercentiles(out, latencies);
+        out.printf(Locale.ROOT, "%n%-10s %10s %10s %10s", "  service", "", "", "");
+        printPercentiles(out, serviceTimes);
+        out.println();
+    }
+
+    protected void printPercentiles(final PrintStream out, final Histogram histogram) {
+        for (final double percentile : percentiles) {
+            out.printf(Locale.ROOT, " %10.1f", histogram.getValueAtPercentile(percentile) / 1_000.0);
+        }
+        out.printf(Locale.ROOT, " %10.1f", histogram.getMaxValue() / 1_000.0);
+    }
+
+    protected static String format(final double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+}
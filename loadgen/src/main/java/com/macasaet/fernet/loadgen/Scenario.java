@@ -0,0 +1,88 @@
+package com.macasaet.fernet.loadgen;
+
+import java.util.List;
+import java.util.Random;
+
+import com.macasaet.fernet.Token;
+import com.macasaet.fernet.TokenValidationException;
+
+/**
+ * The kinds of request that the load generator can issue. Each scenario knows its expected outcome so that the report
+ * can count responses that were wrong as well as slow.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+enum Scenario {
+
+    /**
+     * Generate and serialise a token with the primary key.
+     */
+    ISSUE {
+        boolean execute(final Fixture fixture, final Random random, final long sequence) {
+            return Token.generate(random, fixture.getKeys().get(0), fixture.getPayload()).serialise() != null;
+        }
+    },
+    /**
+     * Validate a token signed by one of the keys in the ring.
+     */
+    VALID {
+        boolean execute(final Fixture fixture, final Random random, final long sequence) {
+            final String token = select(fixture.getValidTokens(), sequence);
+            try {
+                return fixture.getValidator().validateAndDecrypt(fixture.getKeys(), Token.fromString(token))
+                        .length == fixture.getPayload().length;
+            } catch (final TokenValidationException tve) {
+                return false;
+            }
+        }
+    },
+    /**
+     * Validate a correctly signed token whose time-to-live has elapsed.
+     */
+    EXPIRED {
+        boolean execute(final Fixture fixture, final Random random, final long sequence) {
+            return isRejected(fixture, select(fixture.getExpiredTokens(), sequence));
+        }
+    },
+    /**
+     * Validate a well-formed token signed by a key that is not in the ring.
+     */
+    FORGED {
+        boolean execute(final Fixture fixture, final Random random, final long sequence) {
+            return isRejected(fixture, select(fixture.getForgedTokens(), sequence));
+        }
+    },
+    /**
+     * Validate a string that cannot be parsed as a token.
+     */
+    MALFORMED {
+        boolean execute(final Fixture fixture, final Random random, final long sequence) {
+            return isRejected(fixture, select(fixture.getMalformedTokens(), sequence));
+        }
+    };
+
+    /**
+     * @param fixture the shared state of the load test
+     * @param random a source of entropy owned by the calling thread
+     * @param sequence a number unique to this request within the calling thread
+     * @return true if and only if the library behaved as expected
+     */
+    abstract boolean execute(Fixture fixture, Random random, long sequence);
+
+    protected static String select(final List<String> tokens, final long sequence) {
+        return tokens.get((int) (sequence % tokens.size()));
+    }
+
+    protected static boolean isRejected(final Fixture fixture, final String token) {
+        try {
+            fixture.getValidator().validateAndDecrypt(fixture.getKeys(), Token.fromString(token));
+            return false;
+        } catch (final TokenValidationException | IllegalArgumentException e) {
+            // IllegalTokenException is an IllegalArgumentException
+            return true;
+        }
+    }
+
+}
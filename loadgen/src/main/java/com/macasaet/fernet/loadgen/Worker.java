@@ -0,0 +1,81 @@
+package com.macasaet.fernet.loadgen;
+
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Issues requests at a fixed rate until the end of the test. Each request has an intended start time on a fixed
+ * schedule. When a request is slow, the following requests start late but their latency is still measured from their
+ * intended start time. This corrects for coordinated omission: a stall is charged to every request that should have
+ * been issued during it, not just to the request that caused it. The time from the actual start is recorded
+ * separately as the service time.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+class Worker implements Runnable {
+
+    private final Fixture fixture;
+    private final Mix mix;
+    private final Random random;
+    private final long intervalNanos;
+    private final long startNanos;
+    private final long measurementStartNanos;
+    private final long endNanos;
+    private final Report report = new Report();
+
+    /**
+     * @param fixture the shared state of the load test
+     * @param mix the relative frequency of each scenario
+     * @param random a source of entropy owned by this worker
+     * @param intervalNanos the time between the intended start of consecutive requests
+     * @param startNanos the intended start time of the first request
+     * @param measurementStartNanos requests intended to start before this are treated as warm-up and not recorded
+     * @param endNanos no request is intended to start at or after this time
+     */
+    Worker(final Fixture fixture, final Mix mix, final Random random, final long intervalNanos, final long startNanos,
+            final long measurementStartNanos, final long endNanos) {
+        this.fixture = fixture;
+        this.mix = mix;
+        this.random = random;
+        this.intervalNanos = intervalNanos;
+        this.startNanos = startNanos;
+        this.measurementStartNanos = measurementStartNanos;
+        this.endNanos = endNanos;
+    }
+
+    public void run() {
+        long sequence = 0;
+        for (long intended = startNanos; intended < endNanos; intended += intervalNanos) {
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            final Scenario scenario = mix.next(random);
+            final boolean asExpected = scenario.execute(fixture, random, sequence++);
+            final long done = System.nanoTime();
+            if (intended >= measurementStartNanos) {
+                report.record(scenario, done - intended, done - now, asExpected);
+            }
+        }
+    }
+
+    /**
+     * @return the measurements of this worker, only valid after {@link #run()} returns
+     */
+    Report getReport() {
+        return report;
+    }
+
+    /**
+     * @return the histogram type used for all measurements, with three significant digits. It resizes itself as
+     *         needed because a sustained overload can make the corrected latency grow without bound.
+     */
+    static Histogram createHistogram() {
+        return new Histogram(3);
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.macasaet.fernet.loadgen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link LoadGenerator} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class LoadGeneratorTest {
+
+    @Test
+    public final void verifyEveryScenarioBehavesAsExpected() throws Exception {
+        // given
+        final Mix mix = Mix.parse("issue=1,valid=1,expired=1,forged=1,malformed=1");
+        final LoadGenerator generator = new LoadGenerator(500, 2, 1, 0, 3, 64, mix, false);
+
+        // when
+        final Report result = generator.run();
+
+        // then
+        long total = 0;
+        for (final Scenario scenario : Scenario.values()) {
+            assertEquals(scenario.name(), 0, result.getUnexpectedOutcomes(scenario));
+            assertTrue(scenario.name(), result.getLatencies(scenario).getTotalCount() > 0);
+            assertTrue(result.getLatencies(scenario).getMaxValue() >= result.getServiceTimes(scenario).getMinValue());
+            total += result.getLatencies(scenario).getTotalCount();
+        }
+        assertTrue("Expected about 500 requests, got " + total, total >= 450 && total <= 550);
+    }
+
+    @Test
+    public final void verifyMixHonoursWeights() {
+        // given
+        final Mix mix = Mix.parse("valid=3, forged=1");
+        final Random random = new Random(0);
+
+        // when
+        int forged = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (mix.next(random) == Scenario.FORGED) {
+                forged++;
+            }
+        }
+
+        // then
+        assertTrue("Unexpected forged count: " + forged, forged > 2_300 && forged < 2_700);
+        assertEquals("valid=3,forged=1", mix.toString());
+    }
+
+    @Test
+    public final void verifyReportAcceptsLongStalls() {
+        // given
+        final Report report = new Report();
+        final Report other = new Report();
+        final long tenMinutes = 600_000_000_000L;
+
+        // when
+        report.record(Scenario.VALID, tenMinutes, 1_000L, true);
+        other.record(Scenario.VALID, 2 * tenMinutes, 1_000L, true);
+        report.add(other);
+
+        // then
+        assertEquals(2, report.getLatencies(Scenario.VALID).getTotalCount());
+        assertTrue(report.getLatencies(Scenario.VALID).getMaxValue() >= 2 * tenMinutes);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void verifyUnknownScenarioIsRejected() {
+        Mix.parse("refresh=1");
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.macasaet.fernet;
+
+/**
+ * Base 64 URL encoding and decoding of whole blocks using SIMD instructions, used by {@link TokenCodec} before it
+ * processes the rest of the input one group of characters at a time. The Vector API is not available before Java 17,
+ * so this implementation processes nothing; the <code>META-INF/versions/17</code> layer of the JAR replaces it with one
+ * that uses the <code>jdk.incubator.vector</code> module when the JVM is started with
+ * <code>--add-modules jdk.incubator.vector</code>.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ * @see TokenCodec
+ */
+final class Base64Vectors {
+
+    private Base64Vectors() {
+    }
+
+    /**
+     * @return true if and only if the methods of this class process any input
+     */
+    static boolean isAvailable() {
+        return false;
+    }
+
+    /**
+     * Decode a prefix of a region of unpadded Base 64 URL characters. Decoding stops before the first block that
+     * contains a character outside the alphabet so that the caller can report it.
+     *
+     * @param source
+     *            the ASCII-encoded input
+     * @param sourceOffset
+     *            the position of the first character to decode
+     * @param sourceEnd
+     *            the position after the last character that may be decoded, a multiple of four characters after
+     *            <em>sourceOffset</em>
+     * @param destination
+     *            the buffer to write the decoded bytes into
+     * @param destinationOffset
+     *            the position in <em>destination</em> to write the first byte
+     * @return the number of characters decoded, a multiple of four
+     */
+    static int decode(final byte[] source, final int sourceOffset, final int sourceEnd, final byte[] destination,
+            final int destinationOffset) {
+        return 0;
+    }
+
+    /**
+     * Encode a prefix of a region of binary data.
+     *
+     * @param source
+     *            the binary input
+     * @param sourceOffset
+     *            the position of the first byte to encode
+     * @param sourceEnd
+     *            the position after the last byte that may be encoded
+     * @param destination
+     *            the buffer to write the ASCII characters into
+     * @param destinationOffset
+     *            the position in <em>destination</em> to write the first character
+     * @return the number of bytes encoded, a multiple of three
+     */
+    static int encode(final byte[] source, final int sourceOffset, final int sourceEnd, final byte[] destination,
+            final int destinationOffset) {
+        return 0;
+    }
+
+}
@@ -0,0 +1,253 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.defaultKeyRefreshJitter;
+import static com.macasaet.fernet.Constants.keyRepositoryReadAttempts;
+import static java.util.Collections.unmodifiableList;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link KeyRepository} that serves keys from memory and refreshes them from another repository in the background.
+ * Keys are retrieved and parsed once per refresh rather than once per request. Each refresh is scheduled after the
+ * refresh interval, varied by a random jitter so that many instances do not query the underlying repository in
+ * lock-step.
+ *
+ * <p>If a refresh fails, the last keys retrieved successfully continue to be served and the failure is available from
+ * {@link #getLastFailure()}. Only if the first retrieval fails does a request fail. The first retrieval happens on the
+ * first request, or on an explicit call to {@link #refresh()}.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class CachingKeyRepository implements KeyRepository, AutoCloseable {
+
+    private final KeyRepository delegate;
+    private final Duration refreshInterval;
+    private final double jitter;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final Clock clock;
+
+    private volatile Snapshot snapshot;
+    private volatile RuntimeException lastFailure;
+    private volatile ScheduledFuture<?> nextRefresh;
+    private volatile boolean closed;
+
+    /**
+     * Create a repository that refreshes on its own background thread.
+     *
+     * @param delegate
+     *            the repository from which to retrieve keys
+     * @param refreshInterval
+     *            the approximate time between refreshes
+     */
+    public CachingKeyRepository(final KeyRepository delegate, final Duration refreshInterval) {
+        this(delegate, refreshInterval, defaultKeyRefreshJitter, newScheduler(), true, Clock.systemUTC());
+    }
+
+    /**
+     * @param delegate
+     *            the repository from which to retrieve keys
+     * @param refreshInterval
+     *            the approximate time between refreshes
+     * @param jitter
+     *            the maximum fraction by which to vary each refresh interval, from 0 (inclusive) to 1 (exclusive)
+     * @param scheduler
+     *            the executor on which to refresh, it is not shut down when this repository is closed
+     */
+    public CachingKeyRepository(final KeyRepository delegate, final Duration refreshInterval, final double jitter,
+            final ScheduledExecutorService scheduler) {
+        this(delegate, refreshInterval, jitter, scheduler, false, Clock.systemUTC());
+    }
+
+    protected CachingKeyRepository(final KeyRepository delegate, final Duration refreshInterval, final double jitter,
+            final ScheduledExecutorService scheduler, final boolean ownsScheduler, final Clock clock) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        if (refreshInterval == null || refreshInterval.isNegative() || refreshInterval.isZero()) {
+            throw new IllegalArgumentException("refreshInterval must be positive");
+        }
+        if (!(jitter >= 0 && jitter < 1)) {
+            throw new IllegalArgumentException("jitter must be at least 0 and less than 1");
+        }
+        if (scheduler == null) {
+            throw new IllegalArgumentException("scheduler cannot be null");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.delegate = delegate;
+        this.refreshInterval = refreshInterval;
+        this.jitter = jitter;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+        this.clock = clock;
+    }
+
+    public Key getPrimaryKey() {
+        return getSnapshot().primaryKey;
+    }
+
+    public List<Key> getDecryptionKeys() {
+        return getSnapshot().decryptionKeys;
+    }
+
+    /**
+     * Retrieve the keys from the underlying repository now. If this is the first retrieval, also schedule the
+     * background refreshes.
+     *
+     * @return true if and only if the keys were retrieved successfully
+     */
+    public boolean refresh() {
+        final boolean retval = load();
+        if (nextRefresh == null) {
+            synchronized (this) {
+                if (nextRefresh == null) {
+                    scheduleRefresh();
+                }
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * @return the time the keys being served were retrieved, or null if they have not yet been retrieved
+     */
+    public Instant getLastRefreshed() {
+        final Snapshot current = snapshot;
+        return current == null ? null : current.retrieved;
+    }
+
+    /**
+     * @return the reason the most recent refresh failed, or null if it succeeded
+     */
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Stop refreshing the keys. The last keys retrieved continue to be served.
+     */
+    public void close() {
+        closed = true;
+        final ScheduledFuture<?> pending = nextRefresh;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    protected Snapshot getSnapshot() {
+        final Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                refresh();
+                if (snapshot == null) {
+                    throw new IllegalStateException("Unable to retrieve keys: " + lastFailure.getMessage(),
+                            lastFailure);
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * The primary key and the decryption keys are retrieved separately, so a rotation between the two reads can yield
+     * a primary key that is not among the decryption keys. Such a pair is discarded and both are read again. Loads
+     * are serialised so that a slow load cannot replace the keys retrieved by one that started after it, for example
+     * when {@link #refresh()} is invoked while a scheduled refresh is in progress.
+     *
+     * @return true if and only if the keys were retrieved successfully
+     */
+    protected synchronized boolean load() {
+        try {
+            for (int attempt = 0; attempt < keyRepositoryReadAttempts; attempt++) {
+                final Key primaryKey = getDelegate().getPrimaryKey();
+                final List<Key> decryptionKeys = unmodifiableList(new ArrayList<>(getDelegate().getDecryptionKeys()));
+                if (containsKey(decryptionKeys, primaryKey)) {
+                    snapshot = new Snapshot(primaryKey, decryptionKeys, Instant.now(clock));
+                    lastFailure = null;
+                    return true;
+                }
+            }
+            throw new IllegalStateException("The primary key is not among the decryption keys");
+        } catch (final RuntimeException re) {
+            lastFailure = re;
+            return false;
+        }
+    }
+
+    protected void scheduleRefresh() {
+        if (closed) {
+            return;
+        }
+        final long nanos = refreshInterval.toNanos();
+        final long variance = (long) (nanos * jitter);
+        final long delay = variance == 0 ? nanos
+                : nanos + ThreadLocalRandom.current().nextLong(-variance, variance + 1);
+        final ScheduledFuture<?> scheduled = scheduler.schedule(() -> {
+            load();
+            scheduleRefresh();
+        }, delay, TimeUnit.NANOSECONDS);
+        nextRefresh = scheduled;
+        if (closed) {
+            // closed while scheduling, so close() may have cancelled the previous refresh instead of this one
+            scheduled.cancel(false);
+        }
+    }
+
+    protected static boolean containsKey(final List<Key> keys, final Key key) {
+        for (final Key candidate : keys) {
+            // repositories may return a new instance of the same key on every read
+            if (Arrays.equals(candidate.getSigningKey(), key.getSigningKey())
+                    && Arrays.equals(candidate.getEncryptionKey(), key.getEncryptionKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected KeyRepository getDelegate() {
+        return delegate;
+    }
+
+    protected static ScheduledExecutorService newScheduler() {
+        final ScheduledThreadPoolExecutor retval = new ScheduledThreadPoolExecutor(1,
+                TokenExecutors.daemonThreads("fernet-key-refresh-"));
+        retval.setRemoveOnCancelPolicy(true);
+        return retval;
+    }
+
+    /**
+     * The keys retrieved by a single refresh.
+     */
+    protected static class Snapshot {
+        final Key primaryKey;
+        final List<Key> decryptionKeys;
+        final Instant retrieved;
+
+        Snapshot(final Key primaryKey, final List<Key> decryptionKeys, final Instant retrieved) {
+            this.primaryKey = primaryKey;
+            this.decryptionKeys = decryptionKeys;
+            this.retrieved = retrieved;
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.macasaet.fernet;
+
+import static javax.crypto.Cipher.DECRYPT_MODE;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.concurrent.RecursiveTask;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A block-aligned portion of a CBC cipher text that can be decrypted independently of the other portions. In CBC mode,
+ * each plaintext block depends only on the corresponding cipher text block and the one preceding it, so a segment can
+ * be decrypted using the last cipher text block of the previous segment as its initialisation vector. Only the final
+ * segment contains the PKCS #5 padding.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+class CipherTextSegment extends RecursiveTask<Integer> {
+
+    private static final long serialVersionUID = -2931958409318125402L;
+
+    private final String transformation;
+    private final Provider provider;
+    private final SecretKeySpec encryptionKeySpec;
+    private final IvParameterSpec initializationVector;
+    private final byte[] cipherText;
+    private final int offset;
+    private final int length;
+    private final byte[] plainText;
+
+    /**
+     * @param transformation
+     *            the cipher transformation, this should only include padding if the segment is at the end of the cipher
+     *            text
+     * @param provider
+     *            the JCA provider to use or null to use the most preferred installed provider
+     * @param encryptionKeySpec
+     *            the AES decryption key
+     * @param initializationVector
+     *            either the token's initialisation vector or the last cipher text block of the preceding segment
+     * @param cipherText
+     *            the complete cipher text
+     * @param offset
+     *            the position of the first byte of this segment, must be a multiple of the block size
+     * @param length
+     *            the number of bytes in this segment, must be a multiple of the block size
+     * @param plainText
+     *            the destination buffer, the decrypted segment will be written starting at <em>offset</em>
+     */
+    CipherTextSegment(final String transformation, final Provider provider, final SecretKeySpec encryptionKeySpec,
+            final IvParameterSpec initializationVector, final byte[] cipherText, final int offset, final int length,
+            final byte[] plainText) {
+        this.transformation = transformation;
+        this.provider = provider;
+        this.encryptionKeySpec = encryptionKeySpec;
+        this.initializationVector = initializationVector;
+        this.cipherText = cipherText;
+        this.offset = offset;
+        this.length = length;
+        this.plainText = plainText;
+    }
+
+    /**
+     * @return the number of plain text bytes written
+     */
+    protected Integer compute() {
+        try {
+            final Cipher cipher = JcaCryptoBackend.getCipher(transformation, provider);
+            cipher.init(DECRYPT_MODE, encryptionKeySpec, initializationVector);
+            return cipher.doFinal(cipherText, offset, length, plainText, offset);
+        } catch (final NoSuchAlgorithmException | NoSuchPaddingException e) {
+            // this should not happen as we use an algorithm (AES) and padding
+            // (PKCS5) that are guaranteed to exist.
+            throw new RuntimeException(e.getMessage(), e);
+        } catch (final InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException
+                | ShortBufferException e) {
+            // these should not happen due to upfront validation
+            throw new RuntimeException(e.getMessage(), e);
+        } catch (final BadPaddingException bpe) {
+            throw new TokenValidationException("Invalid padding in token: " + bpe.getMessage(), bpe);
+        }
+    }
+
+}
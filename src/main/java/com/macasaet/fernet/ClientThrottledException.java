@@ -0,0 +1,33 @@
+package com.macasaet.fernet;
+
+/**
+ * This is a special case of the {@link TokenValidationException} that indicates that the token was not examined because
+ * the client has presented too many invalid tokens recently. Applications can use this to respond with a "too many
+ * requests" status. See {@link FailureThrottle}.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class ClientThrottledException extends TokenValidationException {
+
+    private static final long serialVersionUID = 4920518365177362614L;
+
+    public ClientThrottledException(final String message) {
+        super(message);
+    }
+
+    public ClientThrottledException(final Throwable cause) {
+        this(cause.getMessage(), cause);
+    }
+
+    public ClientThrottledException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+
+    public ClientThrottledException(final String message, final Throwable cause, final boolean enableSuppression,
+            final boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+
+}
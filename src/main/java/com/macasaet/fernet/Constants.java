@@ -7,6 +7,9 @@ import static java.util.Base64.getUrlEncoder;
 import java.nio.charset.Charset;
 import java.util.Base64.Decoder;
 import java.util.Base64.Encoder;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
 import javax.crypto.Cipher;
 
@@ -75,6 +78,66 @@ interface Constants {
      * The Fernet token version supported by this library.
      */
     static final byte supportedVersion = (byte) 0x80;
+    /**
+     * The token version of the opt-in AES-GCM format. This is not part of the Fernet specification.
+     */
+    static final byte aesGcmVersion = (byte) 0x81;
+    /**
+     * The token formats accepted by a {@link Validator} unless it opts in to others.
+     */
+    static final Set<TokenFormat> defaultAcceptedFormats = Collections.unmodifiableSet(EnumSet.of(TokenFormat.FERNET));
+    /**
+     * The transformation used by the AES-GCM token format.
+     *
+     * @see Cipher#getInstance(String)
+     */
+    static final String aesGcmTransformation = encryptionAlgorithm + "/GCM/NoPadding";
+    /**
+     * The number of bytes in an AES-GCM nonce.
+     */
+    static final int aesGcmNonceBytes = 12;
+    /**
+     * The number of bytes in an AES-GCM authentication tag.
+     */
+    static final int aesGcmTagBytes = 16;
+    /**
+     * The number of bytes in the AES key used by the AES-GCM token format.
+     */
+    static final int aesGcmKeyBytes = 16;
+    /**
+     * The token version of the opt-in ChaCha20-Poly1305 format. This is not part of the Fernet specification.
+     */
+    static final byte chaCha20Poly1305Version = (byte) 0x82;
+    /**
+     * The transformation used by the ChaCha20-Poly1305 token format. This is only available on Java 11 or higher.
+     *
+     * @see Cipher#getInstance(String)
+     */
+    static final String chaCha20Poly1305Transformation = "ChaCha20-Poly1305";
+    /**
+     * The algorithm of the key used by the ChaCha20-Poly1305 token format.
+     */
+    static final String chaCha20KeyAlgorithm = "ChaCha20";
+    /**
+     * The number of bytes in a ChaCha20-Poly1305 nonce.
+     */
+    static final int chaCha20Poly1305NonceBytes = 12;
+    /**
+     * The number of bytes in a Poly1305 authentication tag.
+     */
+    static final int chaCha20Poly1305TagBytes = 16;
+    /**
+     * The number of bytes in a ChaCha20 key.
+     */
+    static final int chaCha20KeyBytes = 32;
+    /**
+     * The algorithm used to derive the keys for authenticated encryption token formats from a Fernet key.
+     */
+    static final String keyDerivationAlgorithm = "HmacSHA256";
+    /**
+     * The number of bytes in the authenticated header of a token (version and timestamp).
+     */
+    static final int tokenHeaderBytes = versionBytes + timestampBytes;
     /**
      * The number of bytes in the static portion of the token (excludes cipher text).
      */
@@ -83,5 +146,134 @@ interface Constants {
      * The minimum number of bytes in a token (i.e. with an empty plaintext).
      */
     static final int minimumTokenBytes = tokenStaticBytes + cipherTextBlockSize;
+    /**
+     * The transformation used to decrypt cipher text segments that do not contain the padding.
+     *
+     * @see Cipher#getInstance(String)
+     */
+    static final String unpaddedCipherTransformation = encryptionAlgorithm + "/CBC/NoPadding";
+    /**
+     * The raw block cipher used to encrypt one block from each of several independent CBC chains at a time.
+     *
+     * @see Cipher#getInstance(String)
+     */
+    static final String interleavedCipherTransformation = encryptionAlgorithm + "/ECB/NoPadding";
+    /**
+     * The default minimum cipher text length, in bytes, at which decryption is split across multiple threads.
+     */
+    static final int parallelDecryptionThresholdBytes = 64 * 1024;
+    /**
+     * The smallest cipher text segment, in bytes, that will be decrypted by a single thread during parallel decryption.
+     */
+    static final int minimumDecryptionSegmentBytes = 16 * 1024;
+    /**
+     * The default minimum estimated cost, in signed bytes, at which a key search is split across multiple threads.
+     */
+    static final int parallelKeySearchThresholdBytes = 64 * 1024;
+    /**
+     * The fixed cost of checking a signature with one key (e.g. initialising the HMAC), expressed as the number of bytes
+     * that could be signed in the same time.
+     */
+    static final int keyProbeOverheadBytes = 1024;
+    /**
+     * The number of tasks that may wait for each thread of the default asynchronous executor before further tasks are
+     * rejected.
+     */
+    static final int asyncQueueCapacityPerThread = 256;
+    /**
+     * The default maximum number of tokens that a {@link TokenProcessor} will request from upstream before emitting
+     * their results.
+     */
+    static final int defaultProcessorWindow = 256;
+    /**
+     * The default maximum number of tokens that a {@link TokenProcessor} validates in a single task.
+     */
+    static final int defaultProcessorBatchSize = 16;
+    /**
+     * The default fraction by which a {@link CachingKeyRepository} varies its refresh interval, so that many instances
+     * started together do not all query the underlying repository at the same time.
+     */
+    static final double defaultKeyRefreshJitter = 0.1;
+    /**
+     * The number of times a {@link CachingKeyRepository} re-reads its underlying repository when the primary key is
+     * not among the decryption keys, as happens when a rotation lands between the two reads, before giving up.
+     */
+    static final int keyRepositoryReadAttempts = 8;
+    /**
+     * The first four bytes of a key ring file, "FKR1" in ASCII.
+     */
+    static final int keyRingMagic = 0x464B5231;
+    /**
+     * The layout version of key ring files.
+     */
+    static final short keyRingFormatVersion = 1;
+    /**
+     * The number of bytes before the first record of a key ring file.
+     */
+    static final int keyRingHeaderBytes = 48;
+    /**
+     * The number of bytes in each key ring record: the key followed by the start and end of its validity window.
+     */
+    static final int keyRingRecordBytes = fernetKeyBytes + 2 * timestampBytes;
+    /**
+     * The default number of records for which a new key ring file has space.
+     */
+    static final int defaultKeyRingCapacity = 16;
+    /**
+     * The length in bytes of an HMAC SHA-256 output, which is also the length of an HKDF pseudorandom key.
+     */
+    static final int hmacSha256Bytes = 32;
+    /**
+     * The number of messages that {@link HmacSha256Lanes} signs together, one per 32-bit lane of a 256-bit vector.
+     */
+    static final int hmacLanes = 8;
+    /**
+     * The number of {@link ThreadLocalCryptoEngine} instances for which each thread retains a cipher and an HMAC.
+     */
+    static final int threadLocalEnginesPerThread = 64;
+    /**
+     * Prepended to a tenant identifier to form the HKDF context for that tenant's key.
+     */
+    static final String tenantKeyInfoPrefix = "fernet-java8 tenant ";
+    /**
+     * The default maximum number of derived keys that a {@link KeyDerivation} retains.
+     */
+    static final int defaultDerivedKeyCacheSize = 10_000;
+    /**
+     * The number of bytes in each {@link KeyDirectory} slot: the identifier followed by the key.
+     */
+    static final int keyDirectorySlotBytes = 8 + fernetKeyBytes;
+    /**
+     * The largest fraction of its slots that a {@link KeyDirectory} fills before it grows.
+     */
+    static final double keyDirectoryMaxLoadFactor = 0.75;
+    /**
+     * The number of times to re-read a key ring that is being modified before giving up.
+     */
+    static final int keyRingReadAttempts = 1024;
+    /**
+     * The first four bytes of a replay guard snapshot, "FRG1" in ASCII.
+     */
+    static final int replayGuardMagic = 0x46524731;
+    /**
+     * The version of the replay guard snapshot format.
+     */
+    static final int replayGuardFormatVersion = 1;
+    /**
+     * The number of time buckets across which a replay guard spreads a token's lifetime.
+     */
+    static final int defaultReplayGuardBuckets = 16;
+    /**
+     * The initial number of slots in each replay guard bucket.
+     */
+    static final int defaultReplayGuardBucketCapacity = 1024;
+    /**
+     * The number of slots in the timing wheel that schedules the removal of expired revocations.
+     */
+    static final int revocationWheelSlots = 1024;
+    /**
+     * The number of slots in each set of a {@link FailureThrottle}'s table. A client can occupy any slot in its set.
+     */
+    static final int failureThrottleWays = 8;
 
 }
\ No newline at end of file
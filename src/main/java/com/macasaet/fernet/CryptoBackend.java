@@ -0,0 +1,78 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.encryptionAlgorithm;
+import static com.macasaet.fernet.Constants.signingAlgorithm;
+import static java.util.Arrays.fill;
+
+import java.security.Provider;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A service provider interface for the cryptographic primitives used by {@link Key}: AES-128-CBC with PKCS #5 padding
+ * and HMAC SHA-256. Implement this to route token generation and validation to a different cryptographic engine. The
+ * default is {@link JcaCryptoBackend}, which uses the Java Cryptography Architecture.
+ *
+ * <p>A backend can be selected for every key with {@link Key#setDefaultCryptoBackend(CryptoBackend)} or for a single
+ * key with {@link Key#withCryptoBackend(CryptoBackend)}.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public interface CryptoBackend {
+
+    /**
+     * Prepare the primitives for a single Fernet key. This is invoked at most a few times per {@link Key}, so an
+     * implementation may perform expensive set-up, such as key scheduling, here rather than on every operation.
+     *
+     * @param signingKey
+     *            the 128-bit HMAC SHA-256 key, the implementation must copy this if it retains it
+     * @param encryptionKey
+     *            the 128-bit AES key, the implementation must copy this if it retains it
+     * @return a thread-safe engine bound to the supplied keys
+     */
+    CryptoEngine createEngine(byte[] signingKey, byte[] encryptionKey);
+
+    /**
+     * Prepare the primitives for a {@link Key}, honouring any algorithms it overrides, such as
+     * {@link Key#getSigningAlgorithm()} or {@link Key#getCipherTransformation()}. The default delegates to
+     * {@link #createEngine(byte[], byte[])} when the standard Fernet algorithms are requested and otherwise uses the
+     * Java Cryptography Architecture with {@link #getProvider()}.
+     *
+     * @param signingKeySpec
+     *            the HMAC key, whose algorithm is the MAC algorithm to use
+     * @param encryptionKeySpec
+     *            the cipher key
+     * @param cipherTransformation
+     *            the transformation to use for encryption and decryption, e.g. "AES/CBC/PKCS5Padding"
+     * @return a thread-safe engine bound to the supplied keys
+     */
+    default CryptoEngine createEngine(final SecretKeySpec signingKeySpec, final SecretKeySpec encryptionKeySpec,
+            final String cipherTransformation) {
+        if (signingAlgorithm.equals(signingKeySpec.getAlgorithm())
+                && encryptionAlgorithm.equals(encryptionKeySpec.getAlgorithm())
+                && Constants.cipherTransformation.equals(cipherTransformation)) {
+            final byte[] signingKey = signingKeySpec.getEncoded();
+            final byte[] encryptionKey = encryptionKeySpec.getEncoded();
+            try {
+                return createEngine(signingKey, encryptionKey);
+            } finally {
+                fill(signingKey, (byte) 0);
+                fill(encryptionKey, (byte) 0);
+            }
+        }
+        return new JcaCryptoEngine(getProvider(), signingKeySpec, encryptionKeySpec, cipherTransformation);
+    }
+
+    /**
+     * Some operations are always performed through the Java Cryptography Architecture, including the authenticated
+     * encryption token formats, parallel decryption of large payloads, and batch encryption.
+     *
+     * @return the JCA provider to use for those operations or null to use the most preferred installed provider
+     */
+    default Provider getProvider() {
+        return null;
+    }
+
+}
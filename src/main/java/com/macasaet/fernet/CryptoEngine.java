@@ -0,0 +1,78 @@
+package com.macasaet.fernet;
+
+import java.security.MessageDigest;
+
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * The cryptographic primitives for a single Fernet key, as created by
+ * {@link CryptoBackend#createEngine(byte[], byte[])}. Implementations must be safe for use by multiple threads.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public interface CryptoEngine {
+
+    /**
+     * Encrypt a range of bytes using AES-128-CBC with PKCS #5 padding.
+     *
+     * @param initializationVector
+     *            random bytes from a high-entropy source to initialise the AES cipher
+     * @param plainText
+     *            a buffer containing the data to encrypt
+     * @param offset
+     *            the position of the first byte to encrypt
+     * @param length
+     *            the number of bytes to encrypt
+     * @return the padded cipher text, the length will always be a multiple of 16 (128 bits)
+     */
+    byte[] encrypt(IvParameterSpec initializationVector, byte[] plainText, int offset, int length);
+
+    /**
+     * Decrypt a range of bytes using AES-128-CBC and remove the PKCS #5 padding.
+     *
+     * @param initializationVector
+     *            the random bytes used to encrypt the data
+     * @param cipherText
+     *            a buffer containing the data to decrypt
+     * @param offset
+     *            the position of the first byte to decrypt
+     * @param length
+     *            the number of bytes to decrypt, this must be a multiple of 16 (128 bits)
+     * @return the unpadded plain text
+     * @throws TokenValidationException
+     *             if the padding is invalid
+     */
+    byte[] decrypt(IvParameterSpec initializationVector, byte[] cipherText, int offset, int length)
+            throws TokenValidationException;
+
+    /**
+     * @param data
+     *            a buffer containing the data to sign
+     * @param offset
+     *            the position of the first byte to sign
+     * @param length
+     *            the number of bytes to sign
+     * @return the 256-bit HMAC SHA-256 signature
+     */
+    byte[] sign(byte[] data, int offset, int length);
+
+    /**
+     * Implementations that override this must compare the signatures in constant time.
+     *
+     * @param data
+     *            a buffer containing the signed data
+     * @param offset
+     *            the position of the first signed byte
+     * @param length
+     *            the number of signed bytes
+     * @param signature
+     *            the HMAC SHA-256 signature of unknown validity
+     * @return true if and only if <em>signature</em> is the signature of the data
+     */
+    default boolean verify(final byte[] data, final int offset, final int length, final byte[] signature) {
+        return MessageDigest.isEqual(signature, sign(data, offset, length));
+    }
+
+}
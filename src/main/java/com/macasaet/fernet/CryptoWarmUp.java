@@ -0,0 +1,296 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.cipherTransformation;
+import static com.macasaet.fernet.Constants.encryptionAlgorithm;
+import static com.macasaet.fernet.Constants.signingAlgorithm;
+
+import java.lang.management.ManagementFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.time.Duration;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Function;
+
+import javax.crypto.NoSuchPaddingException;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Prepares the JVM to generate and validate tokens before the application accepts traffic. Without this, the first
+ * requests after start-up pay for provider lookup, class loading and JIT compilation of the cryptographic hot paths,
+ * which can make them an order of magnitude slower than later requests. A warm-up:
+ *
+ * <ol>
+ * <li>measures a {@link CryptoBackend} for each installed provider that supports AES and HMAC SHA-256, and optionally
+ * installs the fastest as the {@link Key#setDefaultCryptoBackend(CryptoBackend) default},</li>
+ * <li>creates the {@link CryptoEngine} of every key in the key set, and</li>
+ * <li>generates and validates tokens with the key set until the hot paths are likely to have been compiled.</li>
+ * </ol>
+ *
+ * <p>The result also reports whether the JVM is configured to use hardware instructions for AES and SHA-256. A
+ * readiness check can use {@link #getLatest()} to hold the node out of the load balancer until a warm-up has completed.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class CryptoWarmUp {
+
+    private static final int defaultPayloadBytes = 256;
+    private static final int defaultIterations = 10_000;
+    private static volatile CryptoWarmUp latest;
+
+    private final Map<CryptoBackend, Duration> costPerToken;
+    private final CryptoBackend fastestBackend;
+    private final boolean isFastestBackendInstalled;
+    private final int iterations;
+    private final Duration elapsed;
+    private final Optional<Boolean> aesIntrinsics;
+    private final Optional<Boolean> shaIntrinsics;
+
+    /**
+     * @param costPerToken the mean time to generate and validate one token with each backend
+     * @param isFastestBackendInstalled whether or not the fastest backend was made the default
+     * @param iterations the number of tokens generated and validated with the key set
+     * @param elapsed the total duration of the warm-up
+     * @param aesIntrinsics whether or not the JVM uses hardware instructions for AES, if known
+     * @param shaIntrinsics whether or not the JVM uses hardware instructions for SHA-256, if known
+     */
+    protected CryptoWarmUp(final Map<CryptoBackend, Duration> costPerToken, final boolean isFastestBackendInstalled,
+            final int iterations, final Duration elapsed, final Optional<Boolean> aesIntrinsics,
+            final Optional<Boolean> shaIntrinsics) {
+        if (costPerToken == null || costPerToken.isEmpty()) {
+            throw new IllegalArgumentException("costPerToken cannot be empty");
+        }
+        this.costPerToken = Collections.unmodifiableMap(new LinkedHashMap<>(costPerToken));
+        this.fastestBackend = getFastest(costPerToken);
+        this.isFastestBackendInstalled = isFastestBackendInstalled;
+        this.iterations = iterations;
+        this.elapsed = elapsed;
+        this.aesIntrinsics = aesIntrinsics;
+        this.shaIntrinsics = shaIntrinsics;
+    }
+
+    /**
+     * Warm up using a 256 byte payload and 10,000 iterations without changing the default backend.
+     *
+     * @param keys
+     *            the key set that the application will use
+     * @return the outcome of the warm-up
+     */
+    public static CryptoWarmUp warmUp(final Collection<? extends Key> keys) {
+        return warmUp(new SecureRandom(), keys, defaultPayloadBytes, defaultIterations, false);
+    }
+
+    /**
+     * @param random
+     *            a source of entropy for generating tokens
+     * @param keys
+     *            the key set that the application will use
+     * @param payloadBytes
+     *            the size of a typical payload in your application
+     * @param iterations
+     *            the number of tokens to generate and validate with the key set. Each backend is measured with a tenth
+     *            of this number of tokens.
+     * @param installFastestBackend
+     *            whether or not to make the fastest backend the default for keys that have not been used yet. Keys
+     *            that were given their own backend are not affected.
+     * @return the outcome of the warm-up
+     */
+    public static CryptoWarmUp warmUp(final Random random, final Collection<? extends Key> keys,
+            final int payloadBytes, final int iterations, final boolean installFastestBackend) {
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("keys cannot be empty");
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be positive");
+        }
+        final long start = System.nanoTime();
+        final byte[] payload = new byte[payloadBytes];
+        random.nextBytes(payload);
+        final Validator<byte[]> validator = new Validator<byte[]>() {
+            public TemporalAmount getTimeToLive() {
+                return Duration.ofDays(1);
+            }
+
+            public Function<byte[], byte[]> getTransformer() {
+                return Function.identity();
+            }
+        };
+
+        final int calibrationIterations = Math.max(1, iterations / 10);
+        final Map<CryptoBackend, Duration> costPerToken = new LinkedHashMap<>();
+        for (final CryptoBackend backend : getCandidateBackends()) {
+            final List<Key> calibrationKeys =
+                    Collections.singletonList(Key.generateKey(random).withCryptoBackend(backend));
+            run(random, calibrationKeys, payload, validator, calibrationIterations);
+            final long calibrationStart = System.nanoTime();
+            run(random, calibrationKeys, payload, validator, calibrationIterations);
+            costPerToken.put(backend, Duration.ofNanos((System.nanoTime() - calibrationStart) / calibrationIterations));
+        }
+
+        if (installFastestBackend) {
+            Key.setDefaultCryptoBackend(getFastest(costPerToken));
+        }
+        for (final Key key : keys) {
+            key.getCryptoEngine();
+        }
+        run(random, new ArrayList<>(keys), payload, validator, iterations);
+
+        final CryptoWarmUp retval = new CryptoWarmUp(costPerToken, installFastestBackend, iterations,
+                Duration.ofNanos(System.nanoTime() - start), isVmOptionEnabled("UseAES"),
+                isVmOptionEnabled("UseSHA"));
+        latest = retval;
+        return retval;
+    }
+
+    /**
+     * @return the most recently completed warm-up, if any
+     */
+    public static Optional<CryptoWarmUp> getLatest() {
+        return Optional.ofNullable(latest);
+    }
+
+    protected static CryptoBackend getFastest(final Map<CryptoBackend, Duration> costPerToken) {
+        Entry<CryptoBackend, Duration> fastest = null;
+        for (final Entry<CryptoBackend, Duration> entry : costPerToken.entrySet()) {
+            if (fastest == null || entry.getValue().compareTo(fastest.getValue()) < 0) {
+                fastest = entry;
+            }
+        }
+        return fastest.getKey();
+    }
+
+    /**
+     * @return the default JCA backend and a {@link ThreadLocalCryptoBackend} for each installed provider that supports
+     *         both AES and HMAC SHA-256
+     */
+    protected static List<CryptoBackend> getCandidateBackends() {
+        final List<CryptoBackend> retval = new ArrayList<>();
+        retval.add(new JcaCryptoBackend());
+        for (final Provider provider : Security.getProviders()) {
+            if (provider.getService("Cipher", encryptionAlgorithm) != null
+                    && provider.getService("Mac", signingAlgorithm) != null) {
+                try {
+                    JcaCryptoBackend.getCipher(cipherTransformation, provider);
+                    retval.add(new ThreadLocalCryptoBackend(provider));
+                } catch (final NoSuchAlgorithmException | NoSuchPaddingException e) {
+                    // the provider does not support CBC mode with PKCS #5 padding
+                }
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Generate and validate tokens, rotating through the keys. Tokens are validated against the complete key set so
+     * that the multi-key validation path is also compiled.
+     */
+    protected static void run(final Random random, final List<? extends Key> keys, final byte[] payload,
+            final Validator<byte[]> validator, final int iterations) {
+        for (int i = iterations; --i >= 0;) {
+            final Token token = Token.generate(random, keys.get(i % keys.size()), payload);
+            if (validator.validateAndDecrypt(keys, token).length != payload.length) {
+                throw new IllegalStateException("Unexpected payload length");
+            }
+        }
+    }
+
+    /**
+     * Only product flags can be read. Diagnostic flags such as <code>UseAESIntrinsics</code> are reported as unknown
+     * unless the JVM was started with <code>-XX:+UnlockDiagnosticVMOptions</code>.
+     *
+     * @param name
+     *            a HotSpot boolean flag
+     * @return the value of the flag or empty if it is not known, for example because the JVM is not HotSpot
+     */
+    protected static Optional<Boolean> isVmOptionEnabled(final String name) {
+        try {
+            final HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            if (bean == null) {
+                return Optional.empty();
+            }
+            return Optional.of(Boolean.valueOf(bean.getVMOption(name).getValue()));
+        } catch (final RuntimeException | LinkageError e) {
+            // the flag does not exist on this JVM or the management interface is unavailable
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return the mean time to generate and validate one token with each measured backend
+     */
+    public Map<CryptoBackend, Duration> getCostPerToken() {
+        return costPerToken;
+    }
+
+    /**
+     * @return the backend that was the least expensive on this host
+     */
+    public CryptoBackend getFastestBackend() {
+        return fastestBackend;
+    }
+
+    /**
+     * @return true if and only if the fastest backend was made the default
+     */
+    public boolean isFastestBackendInstalled() {
+        return isFastestBackendInstalled;
+    }
+
+    /**
+     * @return the number of tokens generated and validated with the key set
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the total duration of the warm-up
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return whether or not the JVM is configured to use hardware instructions for AES (the <code>UseAES</code> flag),
+     *         if known
+     */
+    public Optional<Boolean> getAesIntrinsics() {
+        return aesIntrinsics;
+    }
+
+    /**
+     * @return whether or not the JVM is configured to use hardware instructions for SHA (the <code>UseSHA</code> flag),
+     *         if known
+     */
+    public Optional<Boolean> getShaIntrinsics() {
+        return shaIntrinsics;
+    }
+
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("CryptoWarmUp [");
+        for (final Entry<CryptoBackend, Duration> entry : getCostPerToken().entrySet()) {
+            builder.append(entry.getKey()).append('=').append(entry.getValue().toNanos()).append("ns, ");
+        }
+        return builder.append("fastest=").append(getFastestBackend())
+                .append(", installed=").append(isFastestBackendInstalled())
+                .append(", iterations=").append(getIterations())
+                .append(", elapsed=").append(getElapsed().toMillis()).append("ms")
+                .append(", aesIntrinsics=").append(getAesIntrinsics().map(String::valueOf).orElse("unknown"))
+                .append(", shaIntrinsics=").append(getShaIntrinsics().map(String::valueOf).orElse("unknown"))
+                .append(']').toString();
+    }
+
+}
@@ -0,0 +1,237 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.failureThrottleWays;
+
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.macasaet.fernet.FernetMetrics.FailureReason;
+
+/**
+ * Sheds floods of forged tokens by turning away clients that have recently presented too many invalid ones, before
+ * any decoding or cryptographic work is done for them. The client is identified by a caller-supplied key such as an IP
+ * address or API key. Each client may present <em>burst</em> invalid tokens in quick succession and one more every
+ * <em>refillInterval</em> thereafter; clients with valid tokens are never affected.
+ *
+ * <p>Each client is tracked with a single 64-bit word holding a tag derived from its key and the time at which its
+ * allowance will be fully restored (the generic cell rate algorithm, a token bucket that needs no periodic refill).
+ * The words are kept in a fixed-size set-associative table, so memory is bounded regardless of the number of clients.
+ * A client may occupy any slot within the set selected by its key; when the set is full, the client closest to a full
+ * allowance is displaced. All operations are lock-free. Keys are hashed with a random seed so that a client cannot
+ * choose keys that collide with another's.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class FailureThrottle {
+
+    private static final int tagShift = 40;
+    private static final long timeMask = (1L << tagShift) - 1;
+
+    private final Clock clock;
+    private final long startMillis;
+    private final long intervalMillis;
+    private final long toleranceMillis;
+    private final long seed = new SecureRandom().nextLong();
+    private final int setMask;
+    private final AtomicLongArray slots;
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param burst
+     *            the number of invalid tokens a client may present before being throttled
+     * @param refillInterval
+     *            the time it takes for a throttled client to be allowed one more attempt
+     * @param maximumClients
+     *            the number of clients to track, which determines the memory used
+     */
+    public FailureThrottle(final int burst, final Duration refillInterval, final int maximumClients) {
+        this(burst, refillInterval, maximumClients, Clock.systemUTC());
+    }
+
+    /**
+     * @param burst
+     *            the number of invalid tokens a client may present before being throttled
+     * @param refillInterval
+     *            the time it takes for a throttled client to be allowed one more attempt
+     * @param maximumClients
+     *            the number of clients to track, which determines the memory used
+     * @param clock
+     *            the source of the current time
+     */
+    public FailureThrottle(final int burst, final Duration refillInterval, final int maximumClients,
+            final Clock clock) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        if (refillInterval.toMillis() < 1) {
+            throw new IllegalArgumentException("refillInterval must be at least one millisecond");
+        }
+        if (maximumClients < 1 || maximumClients > 1 << 28) {
+            throw new IllegalArgumentException("maximumClients must be between 1 and " + (1 << 28));
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.clock = clock;
+        this.startMillis = clock.millis() - 1;
+        this.intervalMillis = refillInterval.toMillis();
+        this.toleranceMillis = (burst - 1) * intervalMillis;
+        final int sets = Math.max(1, Integer.highestOneBit((maximumClients + failureThrottleWays - 1)
+                / failureThrottleWays * 2 - 1));
+        this.setMask = sets - 1;
+        this.slots = new AtomicLongArray(sets * failureThrottleWays);
+    }
+
+    /**
+     * Decide whether to examine a client's token.
+     *
+     * @param clientKey
+     *            the identity of the client, for example its IP address
+     * @return true if the token should be examined, false if the client has exceeded its allowance of invalid tokens
+     */
+    public boolean tryAdmit(final String clientKey) {
+        final long hash = hash(clientKey);
+        final long tag = hash >>> tagShift;
+        final int base = ((int) hash & setMask) * failureThrottleWays;
+        for (int i = 0; i < failureThrottleWays; i++) {
+            final long value = slots.get(base + i);
+            if (value >>> tagShift == tag) {
+                if ((value & timeMask) - now() > toleranceMillis) {
+                    shed.increment();
+                    return false;
+                }
+                break;
+            }
+        }
+        admitted.increment();
+        return true;
+    }
+
+    /**
+     * Charge a client for presenting an invalid token.
+     *
+     * @param clientKey
+     *            the identity of the client, for example its IP address
+     */
+    public void recordFailure(final String clientKey) {
+        failures.increment();
+        final long hash = hash(clientKey);
+        final long tag = hash >>> tagShift;
+        final int base = ((int) hash & setMask) * failureThrottleWays;
+        while (true) {
+            final long now = now();
+            int victim = 0;
+            long victimValue = slots.get(base);
+            boolean found = false;
+            for (int i = 0; i < failureThrottleWays; i++) {
+                final long value = slots.get(base + i);
+                if (value >>> tagShift == tag) {
+                    victim = i;
+                    victimValue = value;
+                    found = true;
+                    break;
+                } else if ((value & timeMask) < (victimValue & timeMask)) {
+                    // displace the client with the most remaining allowance
+                    victim = i;
+                    victimValue = value;
+                }
+            }
+            final long allowanceRestored = found ? Math.max(victimValue & timeMask, now) : now;
+            final long replacement = (tag << tagShift) | ((allowanceRestored + intervalMillis) & timeMask);
+            if (slots.compareAndSet(base + victim, victimValue, replacement)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Validate a token string on behalf of a client. The token is not decoded if the client has exceeded its
+     * allowance. Every failure is charged to the client, including expiry, since the signature is checked against
+     * each key before the timestamp.
+     *
+     * @param clientKey
+     *            the identity of the client, for example its IP address
+     * @param validator
+     *            the validator for the token
+     * @param keys
+     *            all the non-expired keys that could have been used to generate the token
+     * @param token
+     *            the client-provided token string of unknown validity
+     * @return the deserialised contents of the token
+     * @throws ClientThrottledException
+     *             if the client has presented too many invalid tokens
+     * @throws TokenValidationException
+     *             if the token is invalid
+     * @throws IllegalTokenException
+     *             if the token string cannot be parsed
+     */
+    public <T> T validateAndDecrypt(final String clientKey, final Validator<T> validator,
+            final Collection<? extends Key> keys, final String token) throws TokenValidationException {
+        if (!tryAdmit(clientKey)) {
+            validator.getMetrics().recordFailure(FailureReason.THROTTLED);
+            // without a stack trace, rejection is cheap
+            throw new ClientThrottledException("Too many invalid tokens.", null, false, false);
+        }
+        try {
+            return validator.validateAndDecrypt(keys, Token.fromString(token, validator.getMetrics()));
+        } catch (final TokenValidationException | IllegalArgumentException e) {
+            recordFailure(clientKey);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of tokens examined
+     */
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    /**
+     * @return the number of tokens turned away without being examined
+     */
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    /**
+     * @return the number of invalid tokens charged to clients
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * @return the number of milliseconds since this throttle was created, always positive so that an empty slot
+     *         represents a client with a full allowance
+     */
+    protected long now() {
+        return clock.millis() - startMillis;
+    }
+
+    /**
+     * FNV-1a with a random seed, followed by the MurmurHash3 finaliser so that every bit of the result depends on
+     * every character.
+     */
+    protected long hash(final String clientKey) {
+        long retval = seed;
+        for (int i = 0; i < clientKey.length(); i++) {
+            retval = (retval ^ clientKey.charAt(i)) * 0x100000001B3L;
+        }
+        retval ^= retval >>> 33;
+        retval *= 0xFF51AFD7ED558CCDL;
+        retval ^= retval >>> 33;
+        retval *= 0xC4CEB9FE1A85EC53L;
+        retval ^= retval >>> 33;
+        return retval;
+    }
+
+}
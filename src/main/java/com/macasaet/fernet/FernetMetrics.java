@@ -0,0 +1,150 @@
+package com.macasaet.fernet;
+
+/**
+ * A listener for instrumenting token validation. Supply an implementation by overriding
+ * {@link Validator#getMetrics()}; {@link FernetMetricsRegistry} is a ready-made implementation that can be exposed
+ * through JMX.
+ *
+ * <p>Every method is invoked on the validating thread, so implementations must be thread-safe and should be cheap. The
+ * default, {@link #NONE}, reports that it is disabled so that no timestamps are taken. Since it is a constant, the JIT
+ * compiler can remove the instrumentation entirely.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public interface FernetMetrics {
+
+    /**
+     * A listener that records nothing.
+     */
+    FernetMetrics NONE = new FernetMetrics() {
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * The steps of token validation that are timed.
+     */
+    enum Stage {
+        /**
+         * Base 64 URL decoding and parsing of a token string, see {@link Token#fromString(String, FernetMetrics)}
+         */
+        DECODE,
+        /**
+         * Probing a collection of keys for the one that signed the token
+         */
+        KEY_SEARCH,
+        /**
+         * Verifying the HMAC signature with a single key
+         */
+        SIGNATURE,
+        /**
+         * Decrypting the payload, including authentication for the authenticated encryption formats
+         */
+        DECRYPT,
+        /**
+         * Applying {@link Validator#getTransformer()}
+         */
+        TRANSFORM,
+        /**
+         * Applying {@link Validator#getObjectValidator()}
+         */
+        OBJECT_VALIDATION
+    }
+
+    /**
+     * The reasons a token can be rejected.
+     */
+    enum FailureReason {
+        /**
+         * The token string could not be parsed
+         */
+        MALFORMED,
+        /**
+         * The token format is not accepted by the validator
+         */
+        UNSUPPORTED_FORMAT,
+        /**
+         * The token's time-to-live has elapsed
+         */
+        EXPIRED,
+        /**
+         * The token's timestamp is further in the future than the maximum clock skew
+         */
+        FUTURE_TIMESTAMP,
+        /**
+         * The signature or authentication tag does not match the key
+         */
+        INVALID_SIGNATURE,
+        /**
+         * None of the keys in a collection signed the token
+         */
+        KEY_NOT_FOUND,
+        /**
+         * The signature matched but the payload padding was invalid
+         */
+        INVALID_PADDING,
+        /**
+         * The transformer threw an exception
+         */
+        TRANSFORMATION_ERROR,
+        /**
+         * The object validator rejected the payload
+         */
+        INVALID_CONTENTS,
+        /**
+         * A one-time token was presented again, see {@link ReplayGuard}
+         */
+        REPLAYED,
+        /**
+         * The token was revoked before it expired, see {@link Validator#getRevocationList()}
+         */
+        REVOKED,
+        /**
+         * The client presented too many invalid tokens and the token was not examined, see {@link FailureThrottle}
+         */
+        THROTTLED
+    }
+
+    /**
+     * @return false if none of the other methods need to be invoked, in which case callers skip taking timestamps
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * @param stage the step that completed, successfully or not
+     * @param nanos the duration of the step
+     */
+    default void recordStage(final Stage stage, final long nanos) {
+    }
+
+    /**
+     * @param bytes the size of a successfully decrypted payload
+     */
+    default void recordPayloadSize(final int bytes) {
+    }
+
+    /**
+     * @param seconds the time between the generation and validation of a token, negative if the token's timestamp is
+     *            in the future
+     */
+    default void recordTokenAge(final long seconds) {
+    }
+
+    /**
+     * @param index the position in the key collection of the key that signed the token
+     */
+    default void recordMatchedKey(final int index) {
+    }
+
+    /**
+     * @param reason why a token was rejected
+     */
+    default void recordFailure(final FailureReason reason) {
+    }
+
+}
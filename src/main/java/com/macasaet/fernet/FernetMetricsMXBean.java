@@ -0,0 +1,66 @@
+package com.macasaet.fernet;
+
+import java.util.Map;
+
+/**
+ * The JMX management interface of {@link FernetMetricsRegistry}. Maps are keyed by the lower-case name of the stage or
+ * failure reason and are presented as tabular data by JMX clients.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public interface FernetMetricsMXBean {
+
+    /**
+     * @return the number of times each stage was executed
+     */
+    Map<String, Long> getStageCounts();
+
+    /**
+     * @return the mean duration of each stage in nanoseconds
+     */
+    Map<String, Long> getStageMeanNanos();
+
+    /**
+     * @return an upper bound for the 99th percentile duration of each stage in nanoseconds
+     */
+    Map<String, Long> getStageP99Nanos();
+
+    /**
+     * @return the number of tokens rejected for each reason
+     */
+    Map<String, Long> getFailureCounts();
+
+    /**
+     * @return an upper bound for the median decrypted payload size in bytes
+     */
+    long getPayloadBytesP50();
+
+    /**
+     * @return an upper bound for the 99th percentile decrypted payload size in bytes
+     */
+    long getPayloadBytesP99();
+
+    /**
+     * @return an upper bound for the median token age in seconds
+     */
+    long getTokenAgeSecondsP50();
+
+    /**
+     * @return an upper bound for the 99th percentile token age in seconds
+     */
+    long getTokenAgeSecondsP99();
+
+    /**
+     * @return the number of tokens matched at each position in a key collection, the last element counts all positions
+     *         at or beyond it
+     */
+    long[] getMatchedKeyIndexCounts();
+
+    /**
+     * Reset every counter and histogram to zero.
+     */
+    void reset();
+
+}
@@ -0,0 +1,155 @@
+package com.macasaet.fernet;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link FernetMetrics} implementation that aggregates measurements in memory using striped counters and lock-free
+ * histograms, so that recording does not contend between validating threads. Share a single instance between all the
+ * validators in an application and expose it with {@link #registerMBean(String)}.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class FernetMetricsRegistry implements FernetMetrics, FernetMetricsMXBean {
+
+    private static final int trackedKeyIndices = 16;
+
+    private final AtomicReference<Snapshot> state = new AtomicReference<>(new Snapshot());
+
+    /**
+     * The mutable measurements. {@link FernetMetricsRegistry#reset()} swaps in a new instance so that recording threads
+     * never observe a partially reset state.
+     */
+    private static class Snapshot {
+        final Log2Histogram[] stages = new Log2Histogram[Stage.values().length];
+        final LongAdder[] failures = new LongAdder[FailureReason.values().length];
+        final Log2Histogram payloadBytes = new Log2Histogram();
+        final Log2Histogram tokenAgeSeconds = new Log2Histogram();
+        final LongAdder[] matchedKeyIndices = new LongAdder[trackedKeyIndices];
+
+        Snapshot() {
+            for (int i = stages.length; --i >= 0; stages[i] = new Log2Histogram());
+            for (int i = failures.length; --i >= 0; failures[i] = new LongAdder());
+            for (int i = matchedKeyIndices.length; --i >= 0; matchedKeyIndices[i] = new LongAdder());
+        }
+    }
+
+    public void recordStage(final Stage stage, final long nanos) {
+        state.get().stages[stage.ordinal()].record(nanos);
+    }
+
+    public void recordPayloadSize(final int bytes) {
+        state.get().payloadBytes.record(bytes);
+    }
+
+    public void recordTokenAge(final long seconds) {
+        state.get().tokenAgeSeconds.record(seconds);
+    }
+
+    public void recordMatchedKey(final int index) {
+        state.get().matchedKeyIndices[Math.min(index, trackedKeyIndices - 1)].increment();
+    }
+
+    public void recordFailure(final FailureReason reason) {
+        state.get().failures[reason.ordinal()].increment();
+    }
+
+    /**
+     * @param name
+     *            distinguishes this registry from others in the same JVM, e.g. the application name
+     * @return the name under which this registry was registered with the platform MBean server
+     * @throws JMException
+     *             if the registry cannot be registered, for example because the name is already in use
+     */
+    public ObjectName registerMBean(final String name) throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = new ObjectName("com.macasaet.fernet:type=FernetMetrics,name="
+                + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * @param stage a validation step
+     * @return the distribution of the durations of <em>stage</em> in nanoseconds
+     */
+    Log2Histogram getStageHistogram(final Stage stage) {
+        return state.get().stages[stage.ordinal()];
+    }
+
+    /**
+     * @param reason a cause of token rejection
+     * @return the number of tokens rejected for <em>reason</em>
+     */
+    public long getFailureCount(final FailureReason reason) {
+        return state.get().failures[reason.ordinal()].sum();
+    }
+
+    public Map<String, Long> getStageCounts() {
+        return summarise(Log2Histogram::getCount);
+    }
+
+    public Map<String, Long> getStageMeanNanos() {
+        return summarise(Log2Histogram::getMean);
+    }
+
+    public Map<String, Long> getStageP99Nanos() {
+        return summarise(histogram -> histogram.getValueAtPercentile(99));
+    }
+
+    public Map<String, Long> getFailureCounts() {
+        final Map<String, Long> retval = new LinkedHashMap<>();
+        for (final FailureReason reason : FailureReason.values()) {
+            retval.put(reason.name().toLowerCase(Locale.ROOT), getFailureCount(reason));
+        }
+        return Collections.unmodifiableMap(retval);
+    }
+
+    public long getPayloadBytesP50() {
+        return state.get().payloadBytes.getValueAtPercentile(50);
+    }
+
+    public long getPayloadBytesP99() {
+        return state.get().payloadBytes.getValueAtPercentile(99);
+    }
+
+    public long getTokenAgeSecondsP50() {
+        return state.get().tokenAgeSeconds.getValueAtPercentile(50);
+    }
+
+    public long getTokenAgeSecondsP99() {
+        return state.get().tokenAgeSeconds.getValueAtPercentile(99);
+    }
+
+    public long[] getMatchedKeyIndexCounts() {
+        final LongAdder[] counts = state.get().matchedKeyIndices;
+        final long[] retval = new long[counts.length];
+        for (int i = retval.length; --i >= 0; retval[i] = counts[i].sum());
+        return retval;
+    }
+
+    public void reset() {
+        state.set(new Snapshot());
+    }
+
+    protected Map<String, Long> summarise(final ToLongFunction<Log2Histogram> statistic) {
+        final Map<String, Long> retval = new LinkedHashMap<>();
+        for (final Stage stage : Stage.values()) {
+            retval.put(stage.name().toLowerCase(Locale.ROOT), statistic.applyAsLong(getStageHistogram(stage)));
+        }
+        return Collections.unmodifiableMap(retval);
+    }
+
+}
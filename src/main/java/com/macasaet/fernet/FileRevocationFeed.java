@@ -0,0 +1,135 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.charset;
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Follows an append-only file of revocation entries and applies new ones to an {@link InMemoryRevocationList}. Each
+ * poll reads only the complete lines added since the previous poll, so a writer can append entries at any time. If
+ * the file becomes shorter, for example because it was truncated or replaced, it is read again from the beginning.
+ *
+ * <p>Schedule the feed to run periodically, for example:</p>
+ *
+ * <pre>
+ * scheduler.scheduleWithFixedDelay(new FileRevocationFeed(path, revocations), 0, 1, TimeUnit.SECONDS);
+ * </pre>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class FileRevocationFeed implements Runnable {
+
+    private final Path path;
+    private final InMemoryRevocationList revocationList;
+    private long offset;
+    private long rejectedEntries;
+    private volatile IOException lastFailure;
+
+    /**
+     * @param path
+     *            the file of revocation entries, which need not exist yet
+     * @param revocationList
+     *            the list to which to apply the entries
+     */
+    public FileRevocationFeed(final Path path, final InMemoryRevocationList revocationList) {
+        if (path == null) {
+            throw new IllegalArgumentException("path cannot be null");
+        }
+        if (revocationList == null) {
+            throw new IllegalArgumentException("revocationList cannot be null");
+        }
+        this.path = path;
+        this.revocationList = revocationList;
+    }
+
+    /**
+     * Poll the file, recording rather than throwing any failure so that a scheduled feed keeps running.
+     */
+    public void run() {
+        try {
+            poll();
+            lastFailure = null;
+        } catch (final IOException ioe) {
+            lastFailure = ioe;
+        }
+    }
+
+    /**
+     * Apply the entries appended since the previous poll and remove expired revocations.
+     *
+     * @return the number of lines read
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public synchronized int poll() throws IOException {
+        revocationList.expire();
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        int retval = 0;
+        try (final FileChannel channel = FileChannel.open(path, READ)) {
+            if (channel.size() < offset) {
+                offset = 0;
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(8192);
+            final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+            long position = offset;
+            while (channel.read(buffer, position) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    final byte b = buffer.get();
+                    position++;
+                    if (b == '\n') {
+                        apply(new String(line.toByteArray(), charset));
+                        line.reset();
+                        offset = position;
+                        retval++;
+                    } else {
+                        line.write(b);
+                    }
+                }
+                buffer.clear();
+            }
+        }
+        // an incomplete final line is read again on the next poll
+        return retval;
+    }
+
+    /**
+     * @return the number of bytes of the file that have been applied
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of malformed entries that were skipped
+     */
+    public synchronized long getRejectedEntries() {
+        return rejectedEntries;
+    }
+
+    /**
+     * @return the cause of the most recent failed poll or null if it succeeded
+     */
+    public IOException getLastFailure() {
+        return lastFailure;
+    }
+
+    protected void apply(final String entry) {
+        try {
+            revocationList.apply(entry);
+        } catch (final IllegalArgumentException iae) {
+            rejectedEntries++;
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.macasaet.fernet;
+
+/**
+ * Factory for the JDK Flight Recorder events emitted by this library. The event classes reference
+ * <code>jdk.jfr</code>, which cannot be compiled for Java 8, so this implementation never records anything; the
+ * <code>META-INF/versions/11</code> layer of the JAR replaces it with one that emits the events.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+final class FlightRecorderEvents {
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * @return true if and only if the JDK Flight Recorder API is present and enabled on this JVM
+     */
+    static boolean isAvailable() {
+        return false;
+    }
+
+    static TokenEvent beginGeneration() {
+        return TokenEvent.NONE;
+    }
+
+    static TokenEvent beginParse() {
+        return TokenEvent.NONE;
+    }
+
+    static TokenEvent beginKeySearch() {
+        return TokenEvent.NONE;
+    }
+
+    static TokenEvent beginDecryption() {
+        return TokenEvent.NONE;
+    }
+
+    static TokenEvent beginTransformation() {
+        return TokenEvent.NONE;
+    }
+
+}
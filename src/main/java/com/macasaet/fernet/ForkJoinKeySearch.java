@@ -0,0 +1,113 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.keyProbeOverheadBytes;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * A {@link KeySearchStrategy} that checks keys in parallel on a {@link ForkJoinPool} when the estimated cost of the
+ * search is high enough. The search is split recursively until each task checks a single key. As soon as one key
+ * matches, the tasks that have not started return without checking their keys.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+class ForkJoinKeySearch implements KeySearchStrategy {
+
+    private final ForkJoinPool pool;
+    private final int thresholdBytes;
+
+    /**
+     * @param pool
+     *            the threads on which to check the keys or null to use the current or common pool
+     * @param thresholdBytes
+     *            the minimum estimated cost, in signed bytes, at which to check the keys in parallel
+     */
+    ForkJoinKeySearch(final ForkJoinPool pool, final int thresholdBytes) {
+        this.pool = pool;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    public int indexOfSigningKey(final Token token, final int keyCount, final IntPredicate isSigningKey) {
+        final ForkJoinPool forkJoinPool = getPool();
+        if (keyCount < 2 || forkJoinPool.getParallelism() < 2 || getEstimatedCost(token, keyCount) < getThresholdBytes()) {
+            return SEQUENTIAL.indexOfSigningKey(token, keyCount, isSigningKey);
+        }
+        final AtomicInteger match = new AtomicInteger(-1);
+        forkJoinPool.invoke(new KeyProbe(isSigningKey, match, 0, keyCount));
+        return match.get();
+    }
+
+    /**
+     * @param token
+     *            the token whose signing key is sought
+     * @param keyCount
+     *            the number of candidate keys
+     * @return the estimated cost of checking every key, in signed bytes
+     */
+    protected long getEstimatedCost(final Token token, final int keyCount) {
+        final long bytesPerKey = token.getFormat().getStaticBytes() + token.getCipherText().length
+                + keyProbeOverheadBytes;
+        return keyCount * bytesPerKey;
+    }
+
+    /**
+     * @return the pool supplied at construction, the current pool or the common pool, in that order of preference
+     */
+    protected ForkJoinPool getPool() {
+        if (pool != null) {
+            return pool;
+        }
+        return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+    }
+
+    protected int getThresholdBytes() {
+        return thresholdBytes;
+    }
+
+    public String toString() {
+        return "ForkJoinKeySearch [pool=" + (pool == null ? "current" : pool) + ", thresholdBytes=" + thresholdBytes
+                + "]";
+    }
+
+    /**
+     * Checks a contiguous range of keys, splitting it until each task has a single key.
+     */
+    private static class KeyProbe extends RecursiveAction {
+
+        private static final long serialVersionUID = 5618853466183370941L;
+
+        private final IntPredicate isSigningKey;
+        private final AtomicInteger match;
+        private final int start;
+        private final int end;
+
+        KeyProbe(final IntPredicate isSigningKey, final AtomicInteger match, final int start, final int end) {
+            this.isSigningKey = isSigningKey;
+            this.match = match;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute() {
+            if (match.get() >= 0) {
+                // another task found the key
+                return;
+            }
+            if (end - start == 1) {
+                if (isSigningKey.test(start)) {
+                    match.compareAndSet(-1, start);
+                }
+                return;
+            }
+            final int middle = (start + end) >>> 1;
+            invokeAll(new KeyProbe(isSigningKey, match, start, middle), new KeyProbe(isSigningKey, match, middle, end));
+        }
+    }
+
+}
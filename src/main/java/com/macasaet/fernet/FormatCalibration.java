@@ -0,0 +1,166 @@
+package com.macasaet.fernet;
+
+import java.time.Duration;
+import java.time.temporal.TemporalAmount;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * A self-benchmark that measures the cost of generating and validating tokens in each available {@link TokenFormat} on
+ * the current host. Which format is cheapest depends on whether the JVM can use hardware instructions for AES and
+ * SHA-256, so run this once at start-up (e.g. from a readiness check) and log {@link #toString()} or use
+ * {@link #getCheapestFormat()} to decide which format to issue.
+ *
+ * <p>The measurement is deliberately brief and is not a substitute for a proper benchmark. A short warm-up precedes
+ * each measurement so that the JIT compiler can compile the hot paths.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class FormatCalibration {
+
+    private final Map<TokenFormat, Duration> costPerToken;
+
+    /**
+     * @param costPerToken the mean time to generate and validate one token in each format
+     */
+    protected FormatCalibration(final Map<TokenFormat, Duration> costPerToken) {
+        if (costPerToken == null || costPerToken.isEmpty()) {
+            throw new IllegalArgumentException("costPerToken cannot be empty");
+        }
+        this.costPerToken = Collections.unmodifiableMap(new EnumMap<>(costPerToken));
+    }
+
+    /**
+     * Measure every format that is available on this runtime.
+     *
+     * @param random
+     *            a source of entropy for generating keys and tokens
+     * @param payloadBytes
+     *            the size of a typical payload in your application
+     * @param iterations
+     *            the number of tokens to generate and validate in each format, after an equal number of warm-up
+     *            iterations
+     * @return the cost of each format
+     */
+    public static FormatCalibration calibrate(final Random random, final int payloadBytes, final int iterations) {
+        final Set<TokenFormat> formats = EnumSet.noneOf(TokenFormat.class);
+        for (final TokenFormat format : TokenFormat.values()) {
+            if (format.isAvailable()) {
+                formats.add(format);
+            }
+        }
+        return calibrate(random, payloadBytes, iterations, formats);
+    }
+
+    /**
+     * @param random
+     *            a source of entropy for generating keys and tokens
+     * @param payloadBytes
+     *            the size of a typical payload in your application
+     * @param iterations
+     *            the number of tokens to generate and validate in each format, after an equal number of warm-up
+     *            iterations
+     * @param formats
+     *            the formats to measure, each must be available on this runtime
+     * @return the cost of each format
+     */
+    public static FormatCalibration calibrate(final Random random, final int payloadBytes, final int iterations,
+            final Collection<TokenFormat> formats) {
+        return calibrate(random, payloadBytes, iterations, formats, System::nanoTime);
+    }
+
+    /**
+     * @param random
+     *            a source of entropy for generating keys and tokens
+     * @param payloadBytes
+     *            the size of a typical payload in your application
+     * @param iterations
+     *            the number of tokens to generate and validate in each format, after an equal number of warm-up
+     *            iterations
+     * @param formats
+     *            the formats to measure, each must be available on this runtime
+     * @param nanoTime
+     *            the source of elapsed time in nanoseconds, e.g. {@link System#nanoTime()}
+     * @return the cost of each format
+     */
+    static FormatCalibration calibrate(final Random random, final int payloadBytes, final int iterations,
+            final Collection<TokenFormat> formats, final LongSupplier nanoTime) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be positive");
+        }
+        final Key key = Key.generateKey(random);
+        final byte[] payload = new byte[payloadBytes];
+        random.nextBytes(payload);
+        final Validator<byte[]> validator = new Validator<byte[]>() {
+            public Set<TokenFormat> getAcceptedFormats() {
+                return EnumSet.allOf(TokenFormat.class);
+            }
+
+            public TemporalAmount getTimeToLive() {
+                return Duration.ofDays(1);
+            }
+
+            public Function<byte[], byte[]> getTransformer() {
+                return Function.identity();
+            }
+        };
+        final Map<TokenFormat, Duration> costPerToken = new EnumMap<>(TokenFormat.class);
+        for (final TokenFormat format : formats) {
+            // warm up
+            run(random, key, payload, format, validator, iterations);
+            final long start = nanoTime.getAsLong();
+            run(random, key, payload, format, validator, iterations);
+            costPerToken.put(format, Duration.ofNanos((nanoTime.getAsLong() - start) / iterations));
+        }
+        return new FormatCalibration(costPerToken);
+    }
+
+    protected static void run(final Random random, final Key key, final byte[] payload, final TokenFormat format,
+            final Validator<byte[]> validator, final int iterations) {
+        for (int i = iterations; --i >= 0;) {
+            final Token token = Token.generate(random, key, payload, format);
+            if (validator.validateAndDecrypt(key, token).length != payload.length) {
+                throw new IllegalStateException("Unexpected payload length");
+            }
+        }
+    }
+
+    /**
+     * @return the format that was the least expensive to generate and validate on this host
+     */
+    public TokenFormat getCheapestFormat() {
+        Entry<TokenFormat, Duration> cheapest = null;
+        for (final Entry<TokenFormat, Duration> entry : getCostPerToken().entrySet()) {
+            if (cheapest == null || entry.getValue().compareTo(cheapest.getValue()) < 0) {
+                cheapest = entry;
+            }
+        }
+        return cheapest.getKey();
+    }
+
+    /**
+     * @return the mean time to generate and validate one token in each measured format
+     */
+    public Map<TokenFormat, Duration> getCostPerToken() {
+        return costPerToken;
+    }
+
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("FormatCalibration [");
+        for (final Entry<TokenFormat, Duration> entry : getCostPerToken().entrySet()) {
+            builder.append(entry.getKey()).append('=').append(entry.getValue().toNanos()).append("ns, ");
+        }
+        return builder.append("cheapest=").append(getCheapestFormat()).append(']').toString();
+    }
+
+}
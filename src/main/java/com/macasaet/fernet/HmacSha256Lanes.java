@@ -0,0 +1,297 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.hmacLanes;
+import static com.macasaet.fernet.Constants.hmacSha256Bytes;
+import static com.macasaet.fernet.Constants.signingAlgorithm;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Multi-buffer HMAC SHA-256: the signatures of up to {@link Constants#hmacLanes} independent messages are computed
+ * together, one message per lane, so that checking one token against several keys, or several tokens against one key,
+ * costs little more than checking one. The lanes are compressed with SIMD instructions by {@link Sha256Vectors} when
+ * the Vector API is available (see {@link #isVectorised()}) and one after the other otherwise, which is no faster than
+ * the JCA and is only used to check the framing.
+ *
+ * <p>Each key is supplied as its pre-keyed state (see {@link #createKeyState(byte[])}), the SHA-256 state after
+ * absorbing the inner and outer padded key, so the key schedule is not repeated for every signature.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+final class HmacSha256Lanes {
+
+    /**
+     * The SHA-256 round constants.
+     */
+    static final int[] roundConstants = {
+        0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+        0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+        0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+        0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+        0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+        0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+        0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+        0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+    private static final int[] initialHash = {
+        0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+    private static final int blockBytes = 64;
+    private static final int hashWords = 8;
+    private static final int blockWords = 16;
+    private static final boolean vectorised = Sha256Vectors.isAvailable() && isConsistentWithJca();
+
+    private HmacSha256Lanes() {
+    }
+
+    /**
+     * The SIMD implementation is only used if the JVM has the Vector API and its signatures match those of the JCA
+     * {@link Mac} for a range of message lengths.
+     *
+     * @return true if signing several messages together is faster than signing them one at a time
+     */
+    static boolean isVectorised() {
+        return vectorised;
+    }
+
+    /**
+     * @param signingKey
+     *            a 128-bit HMAC SHA-256 key
+     * @return the eight-word state after absorbing the inner padded key followed by the eight-word state after
+     *         absorbing the outer padded key
+     */
+    static int[] createKeyState(final byte[] signingKey) {
+        final int[] retval = new int[2 * hashWords];
+        final int[] state = new int[hashWords * hmacLanes];
+        final int[] block = new int[blockWords * hmacLanes];
+        for (int pad = 0; pad < 2; pad++) {
+            final int padByte = pad == 0 ? 0x36 : 0x5c;
+            for (int w = 0; w < hashWords; w++) {
+                state[w * hmacLanes] = initialHash[w];
+            }
+            for (int w = 0; w < blockWords; w++) {
+                int word = 0;
+                for (int i = 4 * w; i < 4 * w + 4; i++) {
+                    word = word << 8 | ((i < signingKey.length ? signingKey[i] & 0xff : 0) ^ padByte);
+                }
+                block[w * hmacLanes] = word;
+            }
+            compressLane(state, block, 0);
+            for (int w = 0; w < hashWords; w++) {
+                retval[pad * hashWords + w] = state[w * hmacLanes];
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Compute the HMAC SHA-256 of several messages. Each message is signed with its own key, so this can be used both
+     * to check one message against several keys and to check several messages against one key.
+     *
+     * @param keyStates
+     *            for each message, the state of its key as created by {@link #createKeyState(byte[])}
+     * @param messages
+     *            for each message, a buffer that begins with the message
+     * @param lengths
+     *            for each message, the number of bytes to sign
+     * @param count
+     *            the number of messages, no more than {@link Constants#hmacLanes}
+     * @return the 256-bit signature of each message
+     */
+    static byte[][] sign(final int[][] keyStates, final byte[][] messages, final int[] lengths, final int count) {
+        if (count < 1 || count > hmacLanes) {
+            throw new IllegalArgumentException("count must be between 1 and " + hmacLanes);
+        }
+        return sign(keyStates, messages, lengths, count, vectorised);
+    }
+
+    private static byte[][] sign(final int[][] keyStates, final byte[][] messages, final int[] lengths,
+            final int count, final boolean useVectors) {
+        final int[] state = new int[hashWords * hmacLanes];
+        final int[] block = new int[blockWords * hmacLanes];
+        final int[] blockCounts = new int[count];
+        int maximumBlocks = 0;
+        for (int lane = 0; lane < count; lane++) {
+            for (int w = 0; w < hashWords; w++) {
+                state[w * hmacLanes + lane] = keyStates[lane][w];
+            }
+            // the message is followed by 0x80 and the 64-bit length, padded to a whole block
+            blockCounts[lane] = (lengths[lane] + 8) / blockBytes + 1;
+            maximumBlocks = Math.max(maximumBlocks, blockCounts[lane]);
+        }
+        for (int blockIndex = 0; blockIndex < maximumBlocks; blockIndex++) {
+            int activeLanes = 0;
+            for (int lane = 0; lane < count; lane++) {
+                if (blockIndex < blockCounts[lane]) {
+                    loadBlock(messages[lane], lengths[lane], blockIndex, blockCounts[lane], block, lane);
+                    activeLanes |= 1 << lane;
+                }
+            }
+            compress(state, block, activeLanes, useVectors);
+        }
+        // the outer hash absorbs the inner hash, which fits in a single padded block
+        for (int lane = 0; lane < count; lane++) {
+            for (int w = 0; w < hashWords; w++) {
+                block[w * hmacLanes + lane] = state[w * hmacLanes + lane];
+                state[w * hmacLanes + lane] = keyStates[lane][hashWords + w];
+            }
+            block[hashWords * hmacLanes + lane] = 0x80000000;
+            for (int w = hashWords + 1; w < blockWords - 1; w++) {
+                block[w * hmacLanes + lane] = 0;
+            }
+            block[(blockWords - 1) * hmacLanes + lane] = (blockBytes + hmacSha256Bytes) * 8;
+        }
+        compress(state, block, (1 << count) - 1, useVectors);
+        final byte[][] retval = new byte[count][hmacSha256Bytes];
+        for (int lane = 0; lane < count; lane++) {
+            for (int w = 0; w < hashWords; w++) {
+                final int word = state[w * hmacLanes + lane];
+                retval[lane][4 * w] = (byte) (word >>> 24);
+                retval[lane][4 * w + 1] = (byte) (word >>> 16);
+                retval[lane][4 * w + 2] = (byte) (word >>> 8);
+                retval[lane][4 * w + 3] = (byte) word;
+            }
+        }
+        return retval;
+    }
+
+    private static void compress(final int[] state, final int[] block, final int activeLanes,
+            final boolean useVectors) {
+        if (useVectors) {
+            Sha256Vectors.compress(state, block, activeLanes);
+            return;
+        }
+        for (int lane = 0; lane < hmacLanes; lane++) {
+            if ((activeLanes & 1 << lane) != 0) {
+                compressLane(state, block, lane);
+            }
+        }
+    }
+
+    /**
+     * Copy one block of a padded message into a lane. The message is preceded by the 64-byte inner padded key, which
+     * is already reflected in the state, so the length in the padding includes it.
+     */
+    private static void loadBlock(final byte[] message, final int length, final int blockIndex,
+            final int blockCount, final int[] block, final int lane) {
+        final int start = blockIndex * blockBytes;
+        final int lengthStart = blockCount * blockBytes - 8;
+        final long bitLength = (blockBytes + (long) length) * 8;
+        for (int w = 0; w < blockWords; w++) {
+            final int position = start + 4 * w;
+            int word;
+            if (position + 4 <= length) {
+                word = message[position] << 24 | (message[position + 1] & 0xff) << 16
+                        | (message[position + 2] & 0xff) << 8 | message[position + 3] & 0xff;
+            } else {
+                word = 0;
+                for (int i = position; i < position + 4; i++) {
+                    final int paddedByte;
+                    if (i < length) {
+                        paddedByte = message[i] & 0xff;
+                    } else if (i == length) {
+                        paddedByte = 0x80;
+                    } else if (i >= lengthStart) {
+                        paddedByte = (int) (bitLength >>> 8 * (7 - (i - lengthStart))) & 0xff;
+                    } else {
+                        paddedByte = 0;
+                    }
+                    word = word << 8 | paddedByte;
+                }
+            }
+            block[w * hmacLanes + lane] = word;
+        }
+    }
+
+    private static void compressLane(final int[] state, final int[] block, final int lane) {
+        final int[] schedule = new int[roundConstants.length];
+        for (int t = 0; t < blockWords; t++) {
+            schedule[t] = block[t * hmacLanes + lane];
+        }
+        for (int t = blockWords; t < schedule.length; t++) {
+            final int w15 = schedule[t - 15];
+            final int w2 = schedule[t - 2];
+            final int s0 = Integer.rotateRight(w15, 7) ^ Integer.rotateRight(w15, 18) ^ w15 >>> 3;
+            final int s1 = Integer.rotateRight(w2, 17) ^ Integer.rotateRight(w2, 19) ^ w2 >>> 10;
+            schedule[t] = schedule[t - 16] + s0 + schedule[t - 7] + s1;
+        }
+        int a = state[lane];
+        int b = state[hmacLanes + lane];
+        int c = state[2 * hmacLanes + lane];
+        int d = state[3 * hmacLanes + lane];
+        int e = state[4 * hmacLanes + lane];
+        int f = state[5 * hmacLanes + lane];
+        int g = state[6 * hmacLanes + lane];
+        int h = state[7 * hmacLanes + lane];
+        for (int t = 0; t < schedule.length; t++) {
+            final int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+            final int choice = (e & f) ^ (~e & g);
+            final int temp1 = h + s1 + choice + roundConstants[t] + schedule[t];
+            final int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+            final int majority = (a & b) ^ (a & c) ^ (b & c);
+            h = g;
+            g = f;
+            f = e;
+            e = d + temp1;
+            d = c;
+            c = b;
+            b = a;
+            a = temp1 + s0 + majority;
+        }
+        state[lane] += a;
+        state[hmacLanes + lane] += b;
+        state[2 * hmacLanes + lane] += c;
+        state[3 * hmacLanes + lane] += d;
+        state[4 * hmacLanes + lane] += e;
+        state[5 * hmacLanes + lane] += f;
+        state[6 * hmacLanes + lane] += g;
+        state[7 * hmacLanes + lane] += h;
+    }
+
+    /**
+     * Sign messages of every length from 0 to 200 bytes, covering every padding case, with the SIMD implementation
+     * and compare the results with the JCA.
+     */
+    private static boolean isConsistentWithJca() {
+        try {
+            final byte[] message = new byte[200];
+            for (int i = 0; i < message.length; i++) {
+                message[i] = (byte) (i * 31 + 7);
+            }
+            final int[][] keyStates = new int[hmacLanes][];
+            final byte[][] messages = new byte[hmacLanes][];
+            final int[] lengths = new int[hmacLanes];
+            final Mac[] macs = new Mac[hmacLanes];
+            for (int lane = 0; lane < hmacLanes; lane++) {
+                final byte[] signingKey = new byte[16];
+                signingKey[0] = (byte) lane;
+                keyStates[lane] = createKeyState(signingKey);
+                messages[lane] = message;
+                macs[lane] = Mac.getInstance(signingAlgorithm);
+                macs[lane].init(new SecretKeySpec(signingKey, signingAlgorithm));
+            }
+            for (int length = 0; length <= message.length; length += hmacLanes) {
+                for (int lane = 0; lane < hmacLanes; lane++) {
+                    lengths[lane] = Math.min(length + lane, message.length);
+                }
+                final byte[][] signatures = sign(keyStates, messages, lengths, hmacLanes, true);
+                for (int lane = 0; lane < hmacLanes; lane++) {
+                    macs[lane].update(message, 0, lengths[lane]);
+                    if (!MessageDigest.isEqual(macs[lane].doFinal(), signatures[lane])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } catch (final GeneralSecurityException | RuntimeException | LinkageError e) {
+            return false;
+        }
+    }
+
+}
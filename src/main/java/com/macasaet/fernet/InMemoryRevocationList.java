@@ -0,0 +1,280 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.revocationWheelSlots;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link RevocationList} held in memory. Revoked tokens are identified by a 64-bit fingerprint of their signature and
+ * stored in an open-addressing hash set of primitive values, so lookups are lock-free and allocate nothing. A token
+ * only needs to stay revoked until it would have expired anyway, so each revocation is scheduled for removal at that
+ * time on a timing wheel. Expired revocations are removed by {@link #expire()}, which is invoked whenever a token is
+ * revoked and by {@link FileRevocationFeed} on every poll.
+ *
+ * <p>Revocations can be shared between processes as text entries, one per line, produced by
+ * {@link #toEntry(Token)} and consumed by {@link #apply(String)}. Each entry holds a token's fingerprint in hexadecimal
+ * and the epoch second at which the token expires. The entries do not reveal the tokens.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class InMemoryRevocationList implements RevocationList {
+
+    private static final long empty = 0L;
+    private static final long removed = Long.MIN_VALUE;
+
+    private final Clock clock;
+    private final long timeToLiveSeconds;
+    private final long tickSeconds;
+    private final long[][] wheel = new long[revocationWheelSlots][];
+    private final int[] wheelSizes = new int[revocationWheelSlots];
+    private volatile AtomicLongArray table = new AtomicLongArray(16);
+    private int size;
+    private int removedSlots;
+    private long lastTick;
+
+    /**
+     * Revoke tokens for as long as <em>validator</em> would accept them.
+     *
+     * @param validator
+     *            the validator that consults this list
+     */
+    public InMemoryRevocationList(final Validator<?> validator) {
+        this(ReplayGuard.toDuration(validator.getTimeToLive()), validator.getClock());
+    }
+
+    /**
+     * @param timeToLive
+     *            how long tokens are valid
+     * @param clock
+     *            the source of the current time, which should match the validator's
+     */
+    public InMemoryRevocationList(final Duration timeToLive, final Clock clock) {
+        if (timeToLive.isNegative()) {
+            throw new IllegalArgumentException("timeToLive cannot be negative");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.clock = clock;
+        this.timeToLiveSeconds = timeToLive.getSeconds() + (timeToLive.getNano() > 0 ? 1 : 0);
+        // one turn of the wheel covers a token's lifetime so most entries are examined only once
+        this.tickSeconds = Math.max(1, (timeToLiveSeconds + revocationWheelSlots - 1) / revocationWheelSlots);
+        this.lastTick = Math.floorDiv(clock.instant().getEpochSecond(), tickSeconds);
+    }
+
+    public boolean isRevoked(final Token token) {
+        return contains(token.getFingerprint());
+    }
+
+    /**
+     * Revoke a token until it expires.
+     *
+     * @param token
+     *            a token whose signature is valid
+     */
+    public void revoke(final Token token) {
+        revoke(token.getFingerprint(), getExpiry(token));
+    }
+
+    /**
+     * Revoke a token by its fingerprint.
+     *
+     * @param fingerprint
+     *            the token's fingerprint
+     * @param expiry
+     *            the time after which the token is no longer valid, revocations that have already expired are ignored
+     */
+    public synchronized void revoke(final long fingerprint, final Instant expiry) {
+        if (fingerprint == empty || fingerprint == removed) {
+            throw new IllegalArgumentException("Invalid fingerprint: " + fingerprint);
+        }
+        expire();
+        final long expirySecond = expiry.getEpochSecond() + (expiry.getNano() > 0 ? 1 : 0);
+        if (expirySecond <= clock.instant().getEpochSecond() || contains(fingerprint)) {
+            return;
+        }
+        add(fingerprint);
+        schedule(fingerprint, expirySecond);
+    }
+
+    /**
+     * Apply an entry produced by {@link #toEntry(Token)}. Blank lines and lines starting with "#" are ignored.
+     *
+     * @param entry
+     *            a revocation entry
+     * @throws IllegalArgumentException
+     *             if the entry is malformed
+     */
+    public void apply(final String entry) {
+        final String trimmed = entry.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return;
+        }
+        final int separator = trimmed.indexOf(' ');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed revocation entry: " + entry);
+        }
+        try {
+            final long fingerprint = Long.parseUnsignedLong(trimmed.substring(0, separator), 16);
+            final long expiry = Long.parseLong(trimmed.substring(separator + 1).trim());
+            revoke(fingerprint, Instant.ofEpochSecond(expiry));
+        } catch (final NumberFormatException nfe) {
+            throw new IllegalArgumentException("Malformed revocation entry: " + entry, nfe);
+        }
+    }
+
+    /**
+     * @param token
+     *            a token to revoke
+     * @return an entry that revokes the token when passed to {@link #apply(String)}
+     */
+    public String toEntry(final Token token) {
+        return String.format("%016x %d", token.getFingerprint(), getExpiry(token).getEpochSecond());
+    }
+
+    /**
+     * Remove the revocations of tokens that have expired.
+     */
+    public synchronized void expire() {
+        final long now = clock.instant().getEpochSecond();
+        final long currentTick = Math.floorDiv(now, tickSeconds);
+        // each slot only needs to be visited once, however long it has been since the last call
+        for (long tick = Math.max(lastTick + 1, currentTick - revocationWheelSlots + 1); tick <= currentTick; tick++) {
+            final int slot = (int) (tick & (revocationWheelSlots - 1));
+            final long[] entries = wheel[slot];
+            int retained = 0;
+            for (int i = 0; i < wheelSizes[slot]; i += 2) {
+                if (entries[i + 1] <= now) {
+                    remove(entries[i]);
+                } else {
+                    // scheduled for a later turn of the wheel
+                    entries[retained++] = entries[i];
+                    entries[retained++] = entries[i + 1];
+                }
+            }
+            wheelSizes[slot] = retained;
+            if (retained == 0) {
+                wheel[slot] = null;
+            }
+        }
+        lastTick = Math.max(lastTick, currentTick);
+        if (size * 8 < table.length() && table.length() > 16) {
+            rehash();
+        }
+    }
+
+    /**
+     * @return the number of unexpired revocations
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    protected Instant getExpiry(final Token token) {
+        return token.getTimestamp().plusSeconds(timeToLiveSeconds);
+    }
+
+    protected boolean contains(final long fingerprint) {
+        final AtomicLongArray current = table;
+        final int mask = current.length() - 1;
+        for (int index = home(fingerprint, mask), probes = 0; probes <= mask; index = (index + 1) & mask, probes++) {
+            final long existing = current.get(index);
+            if (existing == fingerprint) {
+                return true;
+            } else if (existing == empty) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add a fingerprint that is not present. The caller must hold the monitor.
+     */
+    protected void add(final long fingerprint) {
+        if ((size + removedSlots + 1) * 2 > table.length()) {
+            rehash();
+        }
+        final AtomicLongArray current = table;
+        final int mask = current.length() - 1;
+        int index = home(fingerprint, mask);
+        while (current.get(index) != empty && current.get(index) != removed) {
+            index = (index + 1) & mask;
+        }
+        if (current.get(index) == removed) {
+            removedSlots--;
+        }
+        current.set(index, fingerprint);
+        size++;
+    }
+
+    /**
+     * Remove a fingerprint, leaving a marker so that lookups continue past the slot and entries never move while
+     * lock-free readers may be probing. The caller must hold the monitor.
+     */
+    protected void remove(final long fingerprint) {
+        final AtomicLongArray current = table;
+        final int mask = current.length() - 1;
+        for (int index = home(fingerprint, mask), probes = 0; probes <= mask; index = (index + 1) & mask, probes++) {
+            final long existing = current.get(index);
+            if (existing == fingerprint) {
+                current.set(index, removed);
+                size--;
+                removedSlots++;
+                return;
+            } else if (existing == empty) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copy the live fingerprints to a new table sized for them, then publish it. The caller must hold the monitor.
+     */
+    protected void rehash() {
+        final AtomicLongArray current = table;
+        final int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, size * 4) - 1) << 1);
+        final AtomicLongArray replacement = new AtomicLongArray(capacity);
+        final int mask = capacity - 1;
+        for (int i = 0; i < current.length(); i++) {
+            final long fingerprint = current.get(i);
+            if (fingerprint != empty && fingerprint != removed) {
+                int index = home(fingerprint, mask);
+                while (replacement.get(index) != empty) {
+                    index = (index + 1) & mask;
+                }
+                replacement.set(index, fingerprint);
+            }
+        }
+        removedSlots = 0;
+        table = replacement;
+    }
+
+    /**
+     * Add a revocation to the timing wheel slot of the tick at or after its expiry. The caller must hold the monitor.
+     */
+    protected void schedule(final long fingerprint, final long expirySecond) {
+        final long tick = Math.floorDiv(expirySecond + tickSeconds - 1, tickSeconds);
+        final int slot = (int) (tick & (revocationWheelSlots - 1));
+        long[] entries = wheel[slot];
+        if (entries == null) {
+            entries = wheel[slot] = new long[8];
+        } else if (wheelSizes[slot] == entries.length) {
+            final long[] grown = new long[entries.length * 2];
+            System.arraycopy(entries, 0, grown, 0, entries.length);
+            entries = wheel[slot] = grown;
+        }
+        entries[wheelSizes[slot]++] = fingerprint;
+        entries[wheelSizes[slot]++] = expirySecond;
+    }
+
+    protected static int home(final long fingerprint, final int mask) {
+        return (int) ((fingerprint * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+}
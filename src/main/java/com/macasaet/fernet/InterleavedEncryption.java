@@ -0,0 +1,132 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.cipherTextBlockSize;
+import static com.macasaet.fernet.Constants.interleavedCipherTransformation;
+import static javax.crypto.Cipher.ENCRYPT_MODE;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypts several independent payloads with AES-CBC by advancing all of their chains in lockstep. CBC encryption of a
+ * single payload is inherently serial because each block depends on the previous cipher text block. However, the
+ * blocks at the same position in independent payloads do not depend on each other. This gathers one block from each
+ * chain into a contiguous buffer and encrypts the whole buffer with a single raw AES (ECB) call, which lets the
+ * hardware pipeline the independent blocks. The output is identical to encrypting each payload separately with
+ * "AES/CBC/PKCS5Padding".
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+class InterleavedEncryption {
+
+    private final SecretKeySpec encryptionKeySpec;
+    private final Provider provider;
+
+    /**
+     * @param encryptionKeySpec the AES key shared by all the chains
+     * @param provider the JCA provider to use or null to use the most preferred installed provider
+     */
+    InterleavedEncryption(final SecretKeySpec encryptionKeySpec, final Provider provider) {
+        this.encryptionKeySpec = encryptionKeySpec;
+        this.provider = provider;
+    }
+
+    /**
+     * @param payloads the raw bytes of the data to encrypt
+     * @param initializationVectors one initialisation vector per payload, in the same order
+     * @return the AES-encrypted payloads in the same order as the inputs
+     */
+    List<byte[]> encrypt(final List<byte[]> payloads, final List<IvParameterSpec> initializationVectors) {
+        final int chains = payloads.size();
+        final byte[][] cipherTexts = new byte[chains][];
+        final byte[][] previousBlocks = new byte[chains][];
+        int maxBlocks = 0;
+        for (int i = chains; --i >= 0;) {
+            cipherTexts[i] = pad(payloads.get(i));
+            previousBlocks[i] = initializationVectors.get(i).getIV();
+            maxBlocks = Math.max(maxBlocks, cipherTexts[i].length / cipherTextBlockSize);
+        }
+
+        final Cipher cipher = createCipher();
+        final byte[] lanes = new byte[chains * cipherTextBlockSize];
+        final int[] active = new int[chains];
+        for (int block = 0; block < maxBlocks; block++) {
+            final int offset = block * cipherTextBlockSize;
+            // gather: XOR the next plain text block of each chain with its previous cipher text block
+            int activeChains = 0;
+            for (int i = 0; i < chains; i++) {
+                final byte[] cipherText = cipherTexts[i];
+                if (offset >= cipherText.length) {
+                    continue;
+                }
+                final byte[] previous = previousBlocks[i];
+                final int previousOffset = block == 0 ? 0 : offset - cipherTextBlockSize;
+                final int laneOffset = activeChains * cipherTextBlockSize;
+                for (int j = cipherTextBlockSize; --j >= 0;) {
+                    lanes[laneOffset + j] = (byte) (cipherText[offset + j] ^ previous[previousOffset + j]);
+                }
+                active[activeChains++] = i;
+            }
+            encryptBlocks(cipher, lanes, activeChains * cipherTextBlockSize);
+            // scatter: the encrypted lanes become the cipher text blocks
+            for (int lane = 0; lane < activeChains; lane++) {
+                final int i = active[lane];
+                System.arraycopy(lanes, lane * cipherTextBlockSize, cipherTexts[i], offset, cipherTextBlockSize);
+                previousBlocks[i] = cipherTexts[i];
+            }
+        }
+
+        final List<byte[]> retval = new ArrayList<>(chains);
+        for (final byte[] cipherText : cipherTexts) {
+            retval.add(cipherText);
+        }
+        return retval;
+    }
+
+    /**
+     * @param payload the plain text
+     * @return a copy of the plain text with PKCS #5 padding appended
+     */
+    protected static byte[] pad(final byte[] payload) {
+        final int padding = cipherTextBlockSize - payload.length % cipherTextBlockSize;
+        final byte[] retval = new byte[payload.length + padding];
+        System.arraycopy(payload, 0, retval, 0, payload.length);
+        for (int i = payload.length; i < retval.length; retval[i++] = (byte) padding);
+        return retval;
+    }
+
+    protected Cipher createCipher() {
+        try {
+            final Cipher cipher = JcaCryptoBackend.getCipher(interleavedCipherTransformation, provider);
+            cipher.init(ENCRYPT_MODE, encryptionKeySpec);
+            return cipher;
+        } catch (final NoSuchAlgorithmException | NoSuchPaddingException e) {
+            // these should not happen as we use an algorithm (AES) and mode (ECB) that are guaranteed to exist
+            throw new RuntimeException("Unable to access cipher: " + e.getMessage(), e);
+        } catch (final InvalidKeyException e) {
+            // this should not happen as the key is validated ahead of time
+            throw new RuntimeException("Unable to initialise cipher: " + e.getMessage(), e);
+        }
+    }
+
+    protected static void encryptBlocks(final Cipher cipher, final byte[] blocks, final int length) {
+        try {
+            cipher.update(blocks, 0, length, blocks, 0);
+        } catch (final ShortBufferException sbe) {
+            // this should not happen as the encryption is in place and there is no padding
+            throw new RuntimeException("Unable to encrypt data: " + sbe.getMessage(), sbe);
+        }
+    }
+
+}
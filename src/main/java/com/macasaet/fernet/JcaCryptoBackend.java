@@ -0,0 +1,98 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.encryptionAlgorithm;
+import static com.macasaet.fernet.Constants.signingAlgorithm;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A {@link CryptoBackend} that uses the Java Cryptography Architecture. By default, the most preferred installed
+ * provider is used for each algorithm. Specifying a provider explicitly pins every operation to that provider and also
+ * avoids searching the installed providers on each operation.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class JcaCryptoBackend implements CryptoBackend {
+
+    private final Provider provider;
+
+    /**
+     * Use the most preferred installed provider for each algorithm.
+     */
+    public JcaCryptoBackend() {
+        this((Provider) null);
+    }
+
+    /**
+     * @param provider
+     *            the provider to use for all operations or null to use the most preferred installed provider
+     */
+    public JcaCryptoBackend(final Provider provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * @param providerName
+     *            the name of an installed provider, e.g. "SunJCE"
+     * @throws IllegalArgumentException
+     *             if no such provider is installed
+     */
+    public JcaCryptoBackend(final String providerName) {
+        this(Security.getProvider(providerName));
+        if (getProvider() == null) {
+            throw new IllegalArgumentException("No such provider: " + providerName);
+        }
+    }
+
+    public CryptoEngine createEngine(final byte[] signingKey, final byte[] encryptionKey) {
+        return new JcaCryptoEngine(getProvider(), new SecretKeySpec(signingKey, signingAlgorithm),
+                new SecretKeySpec(encryptionKey, encryptionAlgorithm));
+    }
+
+    public Provider getProvider() {
+        return provider;
+    }
+
+    /**
+     * @param transformation
+     *            the cipher transformation
+     * @param provider
+     *            the provider to use or null to use the most preferred installed provider
+     * @return an uninitialised cipher
+     * @throws NoSuchAlgorithmException
+     *             if the transformation is not supported
+     * @throws NoSuchPaddingException
+     *             if the padding scheme is not supported
+     */
+    static Cipher getCipher(final String transformation, final Provider provider)
+            throws NoSuchAlgorithmException, NoSuchPaddingException {
+        return provider == null ? Cipher.getInstance(transformation) : Cipher.getInstance(transformation, provider);
+    }
+
+    /**
+     * @param algorithm
+     *            the MAC algorithm
+     * @param provider
+     *            the provider to use or null to use the most preferred installed provider
+     * @return an uninitialised MAC
+     * @throws NoSuchAlgorithmException
+     *             if the algorithm is not supported
+     */
+    static Mac getMac(final String algorithm, final Provider provider) throws NoSuchAlgorithmException {
+        return provider == null ? Mac.getInstance(algorithm) : Mac.getInstance(algorithm, provider);
+    }
+
+    public String toString() {
+        return "JcaCryptoBackend [provider=" + (getProvider() == null ? "default" : getProvider().getName()) + "]";
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.macasaet.fernet;
+
+import static javax.crypto.Cipher.DECRYPT_MODE;
+import static javax.crypto.Cipher.ENCRYPT_MODE;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The {@link CryptoEngine} created by {@link JcaCryptoBackend}.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+class JcaCryptoEngine implements CryptoEngine {
+
+    private final Provider provider;
+    private final SecretKeySpec signingKeySpec;
+    private final SecretKeySpec encryptionKeySpec;
+    private final String cipherTransformation;
+    private volatile Mac signingPrototype;
+    private volatile boolean isSigningMacCloneable = true;
+
+    /**
+     * @param provider the provider to use for all operations or null to use the most preferred installed provider
+     * @param signingKeySpec the HMAC SHA-256 key
+     * @param encryptionKeySpec the AES key
+     */
+    JcaCryptoEngine(final Provider provider, final SecretKeySpec signingKeySpec,
+            final SecretKeySpec encryptionKeySpec) {
+        this(provider, signingKeySpec, encryptionKeySpec, Constants.cipherTransformation);
+    }
+
+    /**
+     * @param provider the provider to use for all operations or null to use the most preferred installed provider
+     * @param signingKeySpec the HMAC key, whose algorithm is the MAC algorithm to use
+     * @param encryptionKeySpec the cipher key
+     * @param cipherTransformation the transformation to use for encryption and decryption
+     */
+    JcaCryptoEngine(final Provider provider, final SecretKeySpec signingKeySpec,
+            final SecretKeySpec encryptionKeySpec, final String cipherTransformation) {
+        this.provider = provider;
+        this.signingKeySpec = signingKeySpec;
+        this.encryptionKeySpec = encryptionKeySpec;
+        this.cipherTransformation = cipherTransformation;
+    }
+
+    public byte[] encrypt(final IvParameterSpec initializationVector, final byte[] plainText, final int offset,
+            final int length) {
+        try {
+            final Cipher cipher = createCipher();
+            cipher.init(ENCRYPT_MODE, encryptionKeySpec, initializationVector);
+            return cipher.doFinal(plainText, offset, length);
+        } catch (final NoSuchAlgorithmException | NoSuchPaddingException e) {
+            // these should not happen as we use an algorithm (AES) and padding (PKCS5) that are guaranteed to exist
+            throw new RuntimeException("Unable to access cipher: " + e.getMessage(), e);
+        } catch (final InvalidKeyException | InvalidAlgorithmParameterException e) {
+            // this should not happen as the key is validated ahead of time and
+            // we use an algorithm guaranteed to exist
+            throw new RuntimeException("Unable to initialise cipher: " + e.getMessage(), e);
+        } catch (final IllegalBlockSizeException | BadPaddingException e) {
+            // these should not happen as we control the block size and padding
+            throw new RuntimeException("Unable to encrypt data: " + e.getMessage(), e);
+        }
+    }
+
+    public byte[] decrypt(final IvParameterSpec initializationVector, final byte[] cipherText, final int offset,
+            final int length) throws TokenValidationException {
+        try {
+            final Cipher cipher = createCipher();
+            cipher.init(DECRYPT_MODE, encryptionKeySpec, initializationVector);
+            return cipher.doFinal(cipherText, offset, length);
+        } catch (final NoSuchAlgorithmException | NoSuchPaddingException e) {
+            // this should not happen as we use an algorithm (AES) and padding
+            // (PKCS5) that are guaranteed to exist.
+            throw new RuntimeException(e.getMessage(), e);
+        } catch (final InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException e) {
+            // these should not happen due to upfront validation
+            throw new RuntimeException(e.getMessage(), e);
+        } catch (final BadPaddingException bpe) {
+            throw new TokenValidationException("Invalid padding in token: " + bpe.getMessage(), bpe);
+        }
+    }
+
+    /**
+     * @return an uninitialised cipher, AES-CBC with PKCS #5 padding unless the key overrides it. It must not be shared
+     *         between threads.
+     * @throws NoSuchAlgorithmException
+     *             if the provider does not support the cipher algorithm
+     * @throws NoSuchPaddingException
+     *             if the provider does not support the padding scheme
+     */
+    Cipher createCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        return JcaCryptoBackend.getCipher(cipherTransformation, getProvider());
+    }
+
+    public byte[] sign(final byte[] data, final int offset, final int length) {
+        final Mac mac = createSigningMac();
+        mac.update(data, offset, length);
+        return mac.doFinal();
+    }
+
+    /**
+     * Obtain an HMAC instance that has been initialised with the signing key. The first invocation initialises a
+     * prototype; subsequent invocations clone it, which avoids the provider lookup and key set-up on every signature.
+     * If the security provider does not support cloning, a new instance is initialised every time.
+     *
+     * @return a new HMAC instance ready to accept data. It must not be shared between threads.
+     */
+    Mac createSigningMac() {
+        final Mac prototype = signingPrototype;
+        if (prototype != null) {
+            try {
+                return (Mac) prototype.clone();
+            } catch (final CloneNotSupportedException cnse) {
+                // the prototype was verified to be cloneable
+                throw new RuntimeException(cnse.getMessage(), cnse);
+            }
+        }
+        final Mac retval = initialiseSigningMac();
+        if (isSigningMacCloneable) {
+            try {
+                signingPrototype = (Mac) retval.clone();
+            } catch (final CloneNotSupportedException cnse) {
+                isSigningMacCloneable = false;
+            }
+        }
+        return retval;
+    }
+
+    Mac initialiseSigningMac() {
+        try {
+            final Mac mac = JcaCryptoBackend.getMac(signingKeySpec.getAlgorithm(), getProvider());
+            mac.init(signingKeySpec);
+            return mac;
+        } catch (final InvalidKeyException ike) {
+            // this should not happen because we control the signing key
+            // algorithm and pre-validate the length
+            throw new RuntimeException("Unable to initialise HMAC with shared secret: " + ike.getMessage(), ike);
+        } catch (final NoSuchAlgorithmException nsae) {
+            // this should not happen as implementors are required to
+            // provide the HmacSHA256 algorithm.
+            throw new RuntimeException(nsae.getMessage(), nsae);
+        }
+    }
+
+    Provider getProvider() {
+        return provider;
+    }
+
+}
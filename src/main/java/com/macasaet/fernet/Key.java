@@ -1,35 +1,56 @@
 package com.macasaet.fernet;
 
+import static com.macasaet.fernet.Constants.charset;
+import static com.macasaet.fernet.Constants.cipherTextBlockSize;
 import static com.macasaet.fernet.Constants.cipherTransformation;
 import static com.macasaet.fernet.Constants.decoder;
 import static com.macasaet.fernet.Constants.encoder;
 import static com.macasaet.fernet.Constants.encryptionAlgorithm;
 import static com.macasaet.fernet.Constants.encryptionKeyBytes;
 import static com.macasaet.fernet.Constants.fernetKeyBytes;
+import static com.macasaet.fernet.Constants.initializationVectorBytes;
+import static com.macasaet.fernet.Constants.keyDerivationAlgorithm;
+import static com.macasaet.fernet.Constants.minimumDecryptionSegmentBytes;
+import static com.macasaet.fernet.Constants.parallelDecryptionThresholdBytes;
 import static com.macasaet.fernet.Constants.signingAlgorithm;
 import static com.macasaet.fernet.Constants.signingKeyBytes;
 import static com.macasaet.fernet.Constants.tokenPrefixBytes;
+import static com.macasaet.fernet.Constants.unpaddedCipherTransformation;
 import static java.util.Arrays.copyOf;
 import static java.util.Arrays.copyOfRange;
+import static java.util.Arrays.fill;
 import static javax.crypto.Cipher.DECRYPT_MODE;
 import static javax.crypto.Cipher.ENCRYPT_MODE;
 
 import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Base64.Encoder;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -42,8 +63,28 @@ import javax.crypto.spec.SecretKeySpec;
  */
 public class Key {
 
+    private static volatile CryptoBackend defaultCryptoBackend = new JcaCryptoBackend();
+    private static final ClassValue<Set<String>> overriddenMethods = new ClassValue<Set<String>>() {
+        protected Set<String> computeValue(final Class<?> type) {
+            final Set<String> retval = new HashSet<>();
+            for (Class<?> current = type; current != Key.class; current = current.getSuperclass()) {
+                for (final Method method : current.getDeclaredMethods()) {
+                    if (!Modifier.isStatic(method.getModifiers())) {
+                        retval.add(method.getName());
+                    }
+                }
+            }
+            return Collections.unmodifiableSet(retval);
+        }
+    };
+
     private final byte[] signingKey;
     private final byte[] encryptionKey;
+    private final CryptoBackend cryptoBackend;
+    private volatile CryptoEngine cryptoEngine;
+    private volatile int[] hmacSha256State;
+    private final AtomicReferenceArray<SecretKeySpec> derivedKeySpecs =
+            new AtomicReferenceArray<>(TokenFormat.values().length);
 
     /**
      * Create a Key from individual components.
@@ -54,6 +95,20 @@ public class Key {
      *            a 128-bit (16 byte) key for encrypting and decrypting token contents.
      */
     protected Key(final byte[] signingKey, final byte[] encryptionKey) {
+        this(signingKey, encryptionKey, null);
+    }
+
+    /**
+     * Create a Key from individual components.
+     *
+     * @param signingKey
+     *            a 128-bit (16 byte) key for signing tokens.
+     * @param encryptionKey
+     *            a 128-bit (16 byte) key for encrypting and decrypting token contents.
+     * @param cryptoBackend
+     *            the implementation of the cryptographic primitives or null to use the default backend
+     */
+    protected Key(final byte[] signingKey, final byte[] encryptionKey, final CryptoBackend cryptoBackend) {
         if (signingKey == null || signingKey.length != signingKeyBytes) {
             throw new IllegalArgumentException("Signing key must be 128 bits");
         }
@@ -62,6 +117,7 @@ public class Key {
         }
         this.signingKey = copyOf(signingKey, signingKeyBytes);
         this.encryptionKey = copyOf(encryptionKey, encryptionKeyBytes);
+        this.cryptoBackend = cryptoBackend;
     }
 
     /**
@@ -97,6 +153,59 @@ public class Key {
         return new Key(signingKey, encryptionKey);
     }
 
+    /**
+     * @param backend
+     *            the implementation of the cryptographic primitives to use with this key
+     * @return a copy of this key that uses <em>backend</em> instead of the default backend, created by
+     *         {@link #createKey(byte[], byte[], CryptoBackend)}
+     * @see #setDefaultCryptoBackend(CryptoBackend)
+     */
+    public Key withCryptoBackend(final CryptoBackend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("backend cannot be null");
+        }
+        return createKey(getSigningKey(), getEncryptionKey(), backend);
+    }
+
+    /**
+     * Create a key like this one from individual components. This implementation returns a plain {@link Key}, so
+     * subclasses that override any of the cryptographic methods should override this to return an instance of their
+     * own class, otherwise copies such as {@link #withCryptoBackend(CryptoBackend)} will not have those overrides.
+     *
+     * @param signingKey
+     *            a 128-bit (16 byte) key for signing tokens.
+     * @param encryptionKey
+     *            a 128-bit (16 byte) key for encrypting and decrypting token contents.
+     * @param cryptoBackend
+     *            the implementation of the cryptographic primitives or null to use the default backend
+     * @return a new key
+     */
+    protected Key createKey(final byte[] signingKey, final byte[] encryptionKey, final CryptoBackend cryptoBackend) {
+        return new Key(signingKey, encryptionKey, cryptoBackend);
+    }
+
+    /**
+     * Change the implementation of the cryptographic primitives for every key that was not given its own backend. Keys
+     * that have already been used continue to use the backend that was the default at the time of first use.
+     *
+     * @param backend
+     *            the new default backend
+     */
+    public static void setDefaultCryptoBackend(final CryptoBackend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("backend cannot be null");
+        }
+        defaultCryptoBackend = backend;
+    }
+
+    /**
+     * @return the backend used by keys that were not given their own, initially a {@link JcaCryptoBackend} that uses
+     *         the most preferred installed providers
+     */
+    public static CryptoBackend getDefaultCryptoBackend() {
+        return defaultCryptoBackend;
+    }
+
     /**
      * Generate an HMAC SHA-256 signature from the components of a Fernet token.
      *
@@ -112,33 +221,108 @@ public class Key {
      */
     public byte[] sign(final byte version, final Instant timestamp, final IvParameterSpec initializationVector,
             final byte[] cipherText) {
-        try (final ByteArrayOutputStream byteStream = new ByteArrayOutputStream(
-                getTokenPrefixBytes() + cipherText.length)) {
-            try (final DataOutputStream dataStream = new DataOutputStream(byteStream)) {
-                dataStream.writeByte(version);
-                dataStream.writeLong(timestamp.getEpochSecond());
-                dataStream.write(initializationVector.getIV());
-                dataStream.write(cipherText);
-
-                try {
-                    final Mac mac = Mac.getInstance(getSigningAlgorithm());
-                    mac.init(getSigningKeySpec());
-                    return mac.doFinal(byteStream.toByteArray());
-                } catch (final InvalidKeyException ike) {
-                    // this should not happen because we control the signing key
-                    // algorithm and pre-validate the length
-                    throw new RuntimeException("Unable to initialise HMAC with shared secret: " + ike.getMessage(),
-                            ike);
-                } catch (final NoSuchAlgorithmException nsae) {
-                    // this should not happen as implementors are required to
-                    // provide the HmacSHA256 algorithm.
-                    throw new RuntimeException(nsae.getMessage(), nsae);
-                }
-            }
-        } catch (final IOException e) {
-            // this should not happen as I/O is to memory only
-            throw new RuntimeException(e.getMessage(), e);
+        final byte[] iv = initializationVector.getIV();
+        final ByteBuffer signedBytes = ByteBuffer
+                .allocate(getTokenPrefixBytes() - initializationVectorBytes + iv.length + cipherText.length)
+                .put(version)
+                .putLong(timestamp.getEpochSecond())
+                .put(iv)
+                .put(cipherText);
+        return sign(signedBytes.array(), 0, signedBytes.position());
+    }
+
+    /**
+     * Generate an HMAC SHA-256 signature from a range of bytes that has already been laid out in the form Version |
+     * Timestamp | IV | Ciphertext.
+     *
+     * @param signedBytes
+     *            a buffer containing the data to sign
+     * @param offset
+     *            the position of the first byte to sign
+     * @param length
+     *            the number of bytes to sign
+     * @return the HMAC signature
+     */
+    protected byte[] sign(final byte[] signedBytes, final int offset, final int length) {
+        return getCryptoEngine().sign(signedBytes, offset, length);
+    }
+
+    /**
+     * Verify an HMAC SHA-256 signature over a range of bytes that has already been laid out in the form Version |
+     * Timestamp | IV | Ciphertext. The signatures are compared in constant time.
+     *
+     * @param signedBytes
+     *            a buffer containing the signed data
+     * @param offset
+     *            the position of the first signed byte
+     * @param length
+     *            the number of signed bytes
+     * @param signature
+     *            the signature of unknown validity
+     * @return true if and only if <em>signature</em> was generated using this key
+     */
+    protected boolean verify(final byte[] signedBytes, final int offset, final int length, final byte[] signature) {
+        return getCryptoEngine().verify(signedBytes, offset, length, signature);
+    }
+
+    /**
+     * @return the implementation of the cryptographic primitives used by this key
+     */
+    protected CryptoBackend getCryptoBackend() {
+        return cryptoBackend == null ? getDefaultCryptoBackend() : cryptoBackend;
+    }
+
+    /**
+     * The engine is created on first use and retained for the lifetime of this key. It is built from
+     * {@link #getSigningKeySpec()}, {@link #getEncryptionKeySpec()} and {@link #getCipherTransformation()}, so
+     * subclasses that override those methods affect every operation.
+     *
+     * @return the cryptographic primitives bound to this key
+     */
+    protected CryptoEngine getCryptoEngine() {
+        CryptoEngine retval = cryptoEngine;
+        if (retval == null) {
+            retval = getCryptoBackend().createEngine(getSigningKeySpec(), getEncryptionKeySpec(),
+                    getCipherTransformation());
+            cryptoEngine = retval;
+        }
+        return retval;
+    }
+
+    /**
+     * @param methodName
+     *            the name of an instance method of this class
+     * @return true if a subclass declares a method with that name, i.e. it may have replaced the behaviour of this
+     *         class
+     */
+    boolean overrides(final String methodName) {
+        return overriddenMethods.get(getClass()).contains(methodName);
+    }
+
+    /**
+     * Signatures may only be computed by {@link HmacSha256Lanes} rather than by the {@link CryptoEngine} if that gives
+     * the same result, so this is false if a subclass has replaced the signing key or algorithm, or the way signatures
+     * are computed, or if the key does not use a JCA backend.
+     *
+     * @return true if and only if this key's signatures may be computed together with those of other keys
+     */
+    boolean isMultiBufferSigningSupported() {
+        return !overrides("sign") && !overrides("verify") && !overrides("getSigningKey")
+                && !overrides("getSigningKeySpec") && !overrides("getSigningAlgorithm")
+                && !overrides("getCryptoBackend") && !overrides("getCryptoEngine")
+                && getCryptoBackend() instanceof JcaCryptoBackend;
+    }
+
+    /**
+     * @return the pre-keyed HMAC SHA-256 state of this key for use with {@link HmacSha256Lanes}
+     */
+    int[] getHmacSha256State() {
+        int[] retval = hmacSha256State;
+        if (retval == null) {
+            retval = HmacSha256Lanes.createKeyState(getSigningKey());
+            hmacSha256State = retval;
         }
+        return retval;
     }
 
     /**
@@ -164,45 +348,215 @@ public class Key {
      * @see #decrypt(byte[], IvParameterSpec)
      */
     public byte[] encrypt(final byte[] payload, final IvParameterSpec initializationVector) {
+        return getCryptoEngine().encrypt(initializationVector, payload, 0, payload.length);
+    }
+
+    /**
+     * Encrypt several payloads at once. The CBC chains of all the payloads are advanced in lockstep so that independent
+     * blocks can be encrypted together. This is considerably faster than encrypting each payload individually when
+     * issuing tokens in bulk. The result is identical to invoking {@link #encrypt(byte[], IvParameterSpec)} on each
+     * payload.
+     *
+     * @param payloads the raw bytes of the data to store in tokens
+     * @param initializationVectors one initialisation vector per payload, in the same order as <em>payloads</em>
+     * @return the AES-encrypted payloads in the same order as <em>payloads</em>
+     * @see #encrypt(byte[], IvParameterSpec)
+     */
+    public List<byte[]> encrypt(final List<byte[]> payloads, final List<IvParameterSpec> initializationVectors) {
+        if (payloads.size() != initializationVectors.size()) {
+            throw new IllegalArgumentException("Each payload requires exactly one initialisation vector");
+        }
+        return new InterleavedEncryption(getEncryptionKeySpec(), getCryptoBackend().getProvider()).encrypt(payloads,
+                initializationVectors);
+    }
+
+    /**
+     * Decrypt the payload of a Fernet token.
+     *
+     * @param cipherText the padded encrypted payload of a token. The length <em>must</em> be a multiple of 16 (128 bits).
+     * @param initializationVector the random bytes used in the AES encryption of the token
+     * @return the decrypted payload
+     * @see Key#encrypt(byte[], IvParameterSpec)
+     * @see #getParallelDecryptionThreshold()
+     */
+    public byte[] decrypt(final byte[] cipherText, final IvParameterSpec initializationVector) {
+        if (cipherText.length >= getParallelDecryptionThreshold()) {
+            return decryptInParallel(cipherText, initializationVector);
+        }
+        return decryptSequentially(cipherText, initializationVector);
+    }
+
+    protected byte[] decryptSequentially(final byte[] cipherText, final IvParameterSpec initializationVector) {
+        return getCryptoEngine().decrypt(initializationVector, cipherText, 0, cipherText.length);
+    }
+
+    /**
+     * Decrypt a large payload by splitting the cipher text into block-aligned segments and decrypting them concurrently.
+     * The segments are processed in the current {@link ForkJoinPool} if invoked from within one, otherwise in the common
+     * pool. To control the number of threads used, invoke this inside a custom {@link ForkJoinPool}.
+     *
+     * @param cipherText the padded encrypted payload of a token. The length <em>must</em> be a multiple of 16 (128 bits).
+     * @param initializationVector the random bytes used in the AES encryption of the token
+     * @return the decrypted payload
+     */
+    protected byte[] decryptInParallel(final byte[] cipherText, final IvParameterSpec initializationVector) {
+        if (cipherText.length == 0 || cipherText.length % cipherTextBlockSize != 0) {
+            throw new TokenValidationException("Ciphertext must be a non-empty multiple of 128 bits");
+        }
+        final ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        final int totalBlocks = cipherText.length / cipherTextBlockSize;
+        final int minimumSegmentBlocks = Math.max(1, getMinimumDecryptionSegmentBytes() / cipherTextBlockSize);
+        final int segments = Math.min(pool.getParallelism(), totalBlocks / minimumSegmentBlocks);
+        if (segments < 2) {
+            return decryptSequentially(cipherText, initializationVector);
+        }
+        final int blocksPerSegment = (totalBlocks + segments - 1) / segments;
+        final int segmentBytes = blocksPerSegment * cipherTextBlockSize;
+
+        final byte[] plainText = new byte[cipherText.length];
+        final SecretKeySpec encryptionKeySpec = getEncryptionKeySpec();
+        final Provider provider = getCryptoBackend().getProvider();
+        final Collection<CipherTextSegment> tasks = new ArrayList<>(segments);
+        int offset = 0;
+        for (; offset + segmentBytes < cipherText.length; offset += segmentBytes) {
+            final IvParameterSpec segmentVector = offset == 0 ? initializationVector
+                    : new IvParameterSpec(cipherText, offset - cipherTextBlockSize, cipherTextBlockSize);
+            tasks.add(new CipherTextSegment(getUnpaddedCipherTransformation(), provider, encryptionKeySpec,
+                    segmentVector, cipherText, offset, segmentBytes, plainText));
+        }
+        // only the final segment contains the padding
+        final CipherTextSegment finalSegment = new CipherTextSegment(getCipherTransformation(), provider,
+                encryptionKeySpec, offset == 0 ? initializationVector
+                        : new IvParameterSpec(cipherText, offset - cipherTextBlockSize, cipherTextBlockSize),
+                cipherText, offset, cipherText.length - offset, plainText);
+        tasks.add(finalSegment);
+        ForkJoinTask.invokeAll(tasks);
+        return copyOf(plainText, offset + finalSegment.join());
+    }
+
+    /**
+     * Override this method to change the cipher text length at which decryption is split across multiple threads. The
+     * default is 64 KiB. Return {@link Integer#MAX_VALUE} to always decrypt sequentially.
+     *
+     * @return the minimum number of cipher text bytes that will be decrypted in parallel
+     */
+    protected int getParallelDecryptionThreshold() {
+        return parallelDecryptionThresholdBytes;
+    }
+
+    /**
+     * @return the smallest number of cipher text bytes to be decrypted by a single thread
+     */
+    protected int getMinimumDecryptionSegmentBytes() {
+        return minimumDecryptionSegmentBytes;
+    }
+
+    /**
+     * Encrypt and authenticate a payload using one of the authenticated encryption token formats.
+     *
+     * @param format
+     *            a format for which {@link TokenFormat#isAuthenticatedEncryption()} is true
+     * @param nonce
+     *            random bytes from a high-entropy source, these must never be reused with the same key
+     * @param associatedData
+     *            data that is authenticated but not encrypted
+     * @param payload
+     *            the raw bytes of the data to store in a token
+     * @return the cipher text followed by the authentication tag
+     * @see #decrypt(TokenFormat, byte[], byte[], byte[], byte[])
+     */
+    public byte[] encrypt(final TokenFormat format, final byte[] nonce, final byte[] associatedData,
+            final byte[] payload) {
         try {
-            final Cipher cipher = Cipher.getInstance(cipherTransformation);
-            cipher.init(ENCRYPT_MODE, getEncryptionKeySpec(), initializationVector);
+            final Cipher cipher = JcaCryptoBackend.getCipher(format.getTransformation(),
+                    getCryptoBackend().getProvider());
+            cipher.init(ENCRYPT_MODE, getDerivedKeySpec(format), format.createParameterSpec(nonce));
+            cipher.updateAAD(associatedData);
             return cipher.doFinal(payload);
         } catch (final NoSuchAlgorithmException | NoSuchPaddingException e) {
-            // these should not happen as we use an algorithm (AES) and padding (PKCS5) that are guaranteed to exist
-            throw new RuntimeException("Unable to access cipher: " + e.getMessage(), e);
+            throw new UnsupportedOperationException("Unable to access cipher: " + e.getMessage(), e);
         } catch (final InvalidKeyException | InvalidAlgorithmParameterException e) {
-            // this should not happen as the key is validated ahead of time and
-            // we use an algorithm guaranteed to exist
+            // this should not happen as the key is derived and the nonce length is validated ahead of time
             throw new RuntimeException("Unable to initialise cipher: " + e.getMessage(), e);
         } catch (final IllegalBlockSizeException | BadPaddingException e) {
-            // these should not happen as we control the block size and padding
+            // these should not happen as AEAD ciphers do not use padding
             throw new RuntimeException("Unable to encrypt data: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Decrypt the payload of a Fernet token.
+     * Authenticate and decrypt the payload of a token that uses one of the authenticated encryption formats.
      *
-     * @param cipherText the padded encrypted payload of a token. The length <em>must</em> be a multiple of 16 (128 bits).
-     * @param initializationVector the random bytes used in the AES encryption of the token
+     * @param format
+     *            a format for which {@link TokenFormat#isAuthenticatedEncryption()} is true
+     * @param nonce
+     *            the random bytes used in the encryption of the token
+     * @param associatedData
+     *            the data that was authenticated but not encrypted
+     * @param cipherText
+     *            the encrypted payload
+     * @param tag
+     *            the authentication tag
      * @return the decrypted payload
-     * @see Key#encrypt(byte[], IvParameterSpec)
+     * @throws TokenValidationException
+     *             if the token was not generated using this key or has been tampered with
+     * @see #encrypt(TokenFormat, byte[], byte[], byte[])
      */
-    public byte[] decrypt(final byte[] cipherText, final IvParameterSpec initializationVector) {
+    public byte[] decrypt(final TokenFormat format, final byte[] nonce, final byte[] associatedData,
+            final byte[] cipherText, final byte[] tag) throws TokenValidationException {
         try {
-            final Cipher cipher = Cipher.getInstance(getCipherTransformation());
-            cipher.init(DECRYPT_MODE, getEncryptionKeySpec(), initializationVector);
-            return cipher.doFinal(cipherText);
+            final Cipher cipher = JcaCryptoBackend.getCipher(format.getTransformation(),
+                    getCryptoBackend().getProvider());
+            cipher.init(DECRYPT_MODE, getDerivedKeySpec(format), format.createParameterSpec(nonce));
+            cipher.updateAAD(associatedData);
+            final byte[] plainText = new byte[cipher.getOutputSize(cipherText.length + tag.length)];
+            int length = cipher.update(cipherText, 0, cipherText.length, plainText, 0);
+            length += cipher.doFinal(tag, 0, tag.length, plainText, length);
+            return length == plainText.length ? plainText : copyOf(plainText, length);
         } catch (final NoSuchAlgorithmException | NoSuchPaddingException e) {
-            // this should not happen as we use an algorithm (AES) and padding
-            // (PKCS5) that are guaranteed to exist.
-            throw new RuntimeException(e.getMessage(), e);
-        } catch (final InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException e) {
+            throw new UnsupportedOperationException("Unable to access cipher: " + e.getMessage(), e);
+        } catch (final InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException
+                | ShortBufferException e) {
             // these should not happen due to upfront validation
             throw new RuntimeException(e.getMessage(), e);
         } catch (final BadPaddingException bpe) {
-            throw new TokenValidationException("Invalid padding in token: " + bpe.getMessage(), bpe);
+            // AEADBadTagException is a BadPaddingException
+            throw new TokenValidationException("Authentication tag does not match.", bpe);
+        }
+    }
+
+    /**
+     * Derive the key for an authenticated encryption token format. The derived key is the HMAC SHA-256 of the format
+     * name using the complete Fernet key (signing key and encryption key) as the secret, truncated to the length
+     * required by the format. This ensures that the Fernet encryption key is never used with more than one cipher
+     * mode. Each derived key is computed at most once per Key instance.
+     *
+     * @param format
+     *            a format for which {@link TokenFormat#isAuthenticatedEncryption()} is true
+     * @return the key for the format's AEAD cipher
+     */
+    protected SecretKeySpec getDerivedKeySpec(final TokenFormat format) {
+        final SecretKeySpec cached = derivedKeySpecs.get(format.ordinal());
+        if (cached != null) {
+            return cached;
+        }
+        final byte[] concatenatedKeys = new byte[fernetKeyBytes];
+        System.arraycopy(getSigningKey(), 0, concatenatedKeys, 0, signingKeyBytes);
+        System.arraycopy(getEncryptionKey(), 0, concatenatedKeys, signingKeyBytes, encryptionKeyBytes);
+        try {
+            final Mac mac = Mac.getInstance(keyDerivationAlgorithm);
+            mac.init(new SecretKeySpec(concatenatedKeys, keyDerivationAlgorithm));
+            final byte[] derivedKey = mac.doFinal(("fernet-java8 " + format.name()).getBytes(charset));
+            final SecretKeySpec retval = new SecretKeySpec(derivedKey, 0, format.getKeyBytes(),
+                    format.getKeyAlgorithm());
+            fill(derivedKey, (byte) 0);
+            derivedKeySpecs.compareAndSet(format.ordinal(), null, retval);
+            return derivedKeySpecs.get(format.ordinal());
+        } catch (final InvalidKeyException | NoSuchAlgorithmException e) {
+            // this should not happen as implementors are required to provide the HmacSHA256 algorithm
+            throw new RuntimeException("Unable to derive key: " + e.getMessage(), e);
+        } finally {
+            fill(concatenatedKeys, (byte) 0);
         }
     }
 
@@ -260,4 +614,8 @@ public class Key {
         return cipherTransformation;
     }
 
+    protected String getUnpaddedCipherTransformation() {
+        return unpaddedCipherTransformation;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,216 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.charset;
+import static com.macasaet.fernet.Constants.defaultDerivedKeyCacheSize;
+import static com.macasaet.fernet.Constants.fernetKeyBytes;
+import static com.macasaet.fernet.Constants.hmacSha256Bytes;
+import static com.macasaet.fernet.Constants.keyDerivationAlgorithm;
+import static com.macasaet.fernet.Constants.tenantKeyInfoPrefix;
+import static java.util.Arrays.fill;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Derives a distinct {@link Key} for each tenant of a multi-tenant application from a single master secret, so that
+ * only the master secret needs to be stored and distributed. Keys are derived with HKDF-SHA256 (RFC 5869) using the
+ * tenant identifier as the context, so the same master secret and tenant always yield the same key and one tenant's
+ * key reveals nothing about another's.
+ *
+ * <p>Derived keys are retained, along with their cryptographic engines, so that derivation is paid only on first use
+ * by each tenant. The number retained is bounded; when the bound is exceeded, keys that have not been used since the
+ * previous eviction are discarded first.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ * @see TenantValidator
+ */
+public class KeyDerivation {
+
+    private final SecretKeySpec pseudoRandomKey;
+    private final int maximumCacheSize;
+    private final ConcurrentMap<String, CachedKey> cache = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * Derive keys from a master secret without a salt, retaining up to 10,000 derived keys.
+     *
+     * @param masterSecret
+     *            at least 32 bytes of secret key material
+     */
+    public KeyDerivation(final byte[] masterSecret) {
+        this(masterSecret, null, defaultDerivedKeyCacheSize);
+    }
+
+    /**
+     * @param masterSecret
+     *            at least 32 bytes of secret key material
+     * @param salt
+     *            a non-secret random value or null to use no salt
+     * @param maximumCacheSize
+     *            the maximum number of derived keys to retain
+     */
+    public KeyDerivation(final byte[] masterSecret, final byte[] salt, final int maximumCacheSize) {
+        if (masterSecret == null || masterSecret.length < hmacSha256Bytes) {
+            throw new IllegalArgumentException("masterSecret must be at least 256 bits");
+        }
+        if (maximumCacheSize < 1) {
+            throw new IllegalArgumentException("maximumCacheSize must be positive");
+        }
+        final byte[] pseudoRandomKeyBytes = extract(salt, masterSecret);
+        this.pseudoRandomKey = new SecretKeySpec(pseudoRandomKeyBytes, keyDerivationAlgorithm);
+        fill(pseudoRandomKeyBytes, (byte) 0);
+        this.maximumCacheSize = maximumCacheSize;
+    }
+
+    /**
+     * @param tenantId
+     *            the identifier of a tenant
+     * @return the tenant's key
+     */
+    public Key deriveKey(final String tenantId) {
+        if (tenantId == null) {
+            throw new IllegalArgumentException("tenantId cannot be null");
+        }
+        final CachedKey cached = cache.get(tenantId);
+        if (cached != null) {
+            cached.referenced = true;
+            return cached.key;
+        }
+        final CachedKey derived = cache.computeIfAbsent(tenantId, id -> new CachedKey(derive(id)));
+        if (cache.size() > maximumCacheSize) {
+            evict();
+        }
+        return derived.key;
+    }
+
+    /**
+     * @return the number of derived keys retained
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Derive a key without consulting the cache.
+     *
+     * @param tenantId
+     *            the identifier of a tenant
+     * @return a new instance of the tenant's key, with its cryptographic engine already created
+     */
+    protected Key derive(final String tenantId) {
+        final byte[] keyBytes = expand(pseudoRandomKey, (tenantKeyInfoPrefix + tenantId).getBytes(charset),
+                fernetKeyBytes);
+        try {
+            final Key retval = new Key(keyBytes);
+            retval.getCryptoEngine();
+            return retval;
+        } finally {
+            fill(keyBytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Discard keys until the cache is within its bound. A key used since the previous sweep is given a second chance.
+     * Only one thread evicts at a time; others proceed without waiting.
+     */
+    protected void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Iterator<Entry<String, CachedKey>> iterator = cache.entrySet().iterator();
+            while (cache.size() > maximumCacheSize) {
+                if (!iterator.hasNext()) {
+                    iterator = cache.entrySet().iterator();
+                }
+                final CachedKey candidate = iterator.next().getValue();
+                if (candidate.referenced) {
+                    candidate.referenced = false;
+                } else {
+                    iterator.remove();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * The HKDF extract step.
+     *
+     * @param salt
+     *            a non-secret random value or null to use no salt
+     * @param inputKeyMaterial
+     *            the secret from which to derive keys
+     * @return the pseudorandom key
+     */
+    static byte[] extract(final byte[] salt, final byte[] inputKeyMaterial) {
+        final byte[] effectiveSalt = salt == null || salt.length == 0 ? new byte[hmacSha256Bytes] : salt;
+        final Mac mac = newMac(new SecretKeySpec(effectiveSalt, keyDerivationAlgorithm));
+        return mac.doFinal(inputKeyMaterial);
+    }
+
+    /**
+     * The HKDF expand step.
+     *
+     * @param pseudoRandomKey
+     *            the output of {@link #extract(byte[], byte[])}
+     * @param info
+     *            the context of the key to derive
+     * @param length
+     *            the number of bytes to derive, at most 255 times the HMAC output length
+     * @return the output key material
+     */
+    static byte[] expand(final SecretKeySpec pseudoRandomKey, final byte[] info, final int length) {
+        if (length < 1 || length > 255 * hmacSha256Bytes) {
+            throw new IllegalArgumentException("length must be between 1 and " + 255 * hmacSha256Bytes);
+        }
+        final Mac mac = newMac(pseudoRandomKey);
+        final byte[] retval = new byte[length];
+        byte[] block = new byte[0];
+        for (int offset = 0, counter = 1; offset < length; offset += block.length, counter++) {
+            mac.update(block);
+            mac.update(info);
+            mac.update((byte) counter);
+            fill(block, (byte) 0);
+            block = mac.doFinal();
+            System.arraycopy(block, 0, retval, offset, Math.min(block.length, length - offset));
+        }
+        fill(block, (byte) 0);
+        return retval;
+    }
+
+    protected static Mac newMac(final SecretKeySpec key) {
+        try {
+            final Mac retval = Mac.getInstance(keyDerivationAlgorithm);
+            retval.init(key);
+            return retval;
+        } catch (final InvalidKeyException | NoSuchAlgorithmException e) {
+            // this should not happen as implementors are required to provide the HmacSHA256 algorithm
+            throw new RuntimeException("Unable to derive key: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A derived key and whether it has been used since the previous eviction sweep.
+     */
+    private static class CachedKey {
+        final Key key;
+        volatile boolean referenced = true;
+
+        CachedKey(final Key key) {
+            this.key = key;
+        }
+    }
+
+}
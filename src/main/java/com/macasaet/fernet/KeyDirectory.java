@@ -0,0 +1,338 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.encryptionKeyBytes;
+import static com.macasaet.fernet.Constants.fernetKeyBytes;
+import static com.macasaet.fernet.Constants.keyDirectoryMaxLoadFactor;
+import static com.macasaet.fernet.Constants.keyDirectorySlotBytes;
+import static com.macasaet.fernet.Constants.signingKeyBytes;
+import static java.util.Arrays.fill;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A store for very large numbers of keys, such as one per tenant, that keeps the key material outside the Java heap.
+ * A million {@link Key} objects, each with its component arrays, add millions of long-lived objects for the garbage
+ * collector to trace. This directory instead holds the raw key bytes in a single direct buffer, indexed by an
+ * open-addressing hash table of primitive identifiers, and creates a {@link Key} only when one is requested. Such keys
+ * are meant to be used briefly and discarded.
+ *
+ * <p>Key material is overwritten with zeros when it is removed or replaced, when the table grows, and when the directory
+ * is closed. Lookups do not block each other and are only delayed by concurrent modifications.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class KeyDirectory implements AutoCloseable {
+
+    /**
+     * The largest power of two number of slots that fit in a single buffer
+     */
+    private static final int maximumCapacity = Integer.highestOneBit(Integer.MAX_VALUE / keyDirectorySlotBytes);
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table;
+    private int size;
+
+    /**
+     * @param expectedKeys the number of keys the directory should hold without growing
+     */
+    public KeyDirectory(final int expectedKeys) {
+        if (expectedKeys < 0) {
+            throw new IllegalArgumentException("expectedKeys cannot be negative");
+        }
+        table = new Table(capacityFor(expectedKeys));
+    }
+
+    /**
+     * Add or replace a key.
+     *
+     * @param id the identifier of the key, for example a tenant's numeric identifier
+     * @param key the key to store
+     */
+    public void put(final long id, final Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key cannot be null");
+        }
+        final long stamp = lock.writeLock();
+        try {
+            Table current = getOpenTable();
+            int slot = current.find(id);
+            if (slot < 0) {
+                if (size + 1 > current.capacity * keyDirectoryMaxLoadFactor) {
+                    current = grow(current);
+                }
+                slot = current.freeSlot(id);
+                size++;
+            }
+            current.write(slot, id, key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param id the identifier of a key
+     * @return a new instance of the key, or null if there is no key with that identifier
+     */
+    public Key get(final long id) {
+        final byte[] keyBytes = new byte[fernetKeyBytes];
+        try {
+            long stamp = lock.tryOptimisticRead();
+            boolean found = read(id, keyBytes);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    found = read(id, keyBytes);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return found ? new Key(keyBytes) : null;
+        } finally {
+            fill(keyBytes, (byte) 0);
+        }
+    }
+
+    /**
+     * @param id the identifier of a key
+     * @return true if and only if the directory has a key with that identifier
+     */
+    public boolean contains(final long id) {
+        long stamp = lock.tryOptimisticRead();
+        boolean retval = getOpenTable().find(id) >= 0;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                retval = getOpenTable().find(id) >= 0;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Remove a key and overwrite its material with zeros.
+     *
+     * @param id the identifier of a key
+     * @return true if and only if there was a key with that identifier
+     */
+    public boolean remove(final long id) {
+        final long stamp = lock.writeLock();
+        try {
+            final Table current = getOpenTable();
+            final int slot = current.find(id);
+            if (slot < 0) {
+                return false;
+            }
+            current.delete(slot);
+            size--;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the number of keys in the directory
+     */
+    public int size() {
+        final long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Overwrite all the key material with zeros. The directory cannot be used afterwards. The memory itself is released
+     * once the directory is garbage collected.
+     */
+    public void close() {
+        final long stamp = lock.writeLock();
+        try {
+            final Table current = table;
+            if (current != null) {
+                current.zeroise();
+                table = null;
+                size = 0;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Copy a key's material. This may be called without holding the lock, in which case the result must be discarded
+     * unless the optimistic read is validated afterwards.
+     *
+     * @return true if and only if the key was found
+     */
+    protected boolean read(final long id, final byte[] keyBytes) {
+        final Table current = getOpenTable();
+        try {
+            final int slot = current.find(id);
+            if (slot < 0) {
+                return false;
+            }
+            current.read(slot, keyBytes);
+            return true;
+        } catch (final IndexOutOfBoundsException ioobe) {
+            // a concurrent modification produced an inconsistent view, the optimistic read will not validate
+            return false;
+        }
+    }
+
+    protected Table getOpenTable() {
+        final Table retval = table;
+        if (retval == null) {
+            throw new IllegalStateException("KeyDirectory is closed");
+        }
+        return retval;
+    }
+
+    protected Table grow(final Table current) {
+        if (current.capacity >= maximumCapacity) {
+            throw new IllegalStateException("KeyDirectory is full");
+        }
+        final Table replacement = new Table(current.capacity * 2);
+        final byte[] keyBytes = new byte[fernetKeyBytes];
+        try {
+            for (int slot = 0; slot < current.capacity; slot++) {
+                if (current.occupied[slot]) {
+                    final long id = current.id(slot);
+                    current.read(slot, keyBytes);
+                    replacement.write(replacement.freeSlot(id), id, keyBytes);
+                }
+            }
+        } finally {
+            fill(keyBytes, (byte) 0);
+        }
+        table = replacement;
+        current.zeroise();
+        return replacement;
+    }
+
+    protected static int capacityFor(final int expectedKeys) {
+        final long minimum = (long) Math.ceil(Math.max(expectedKeys, 1) / keyDirectoryMaxLoadFactor);
+        if (minimum > maximumCapacity) {
+            throw new IllegalArgumentException("Too many keys: " + expectedKeys);
+        }
+        return Math.max(16, Integer.highestOneBit((int) minimum - 1) << 1);
+    }
+
+    /**
+     * An open-addressing hash table with linear probing. The identifiers and keys are stored in a direct buffer and
+     * only the occupancy flags are on the heap.
+     */
+    protected static class Table {
+        final int capacity;
+        final int mask;
+        final ByteBuffer slots;
+        final boolean[] occupied;
+
+        Table(final int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.slots = ByteBuffer.allocateDirect(capacity * keyDirectorySlotBytes);
+            this.occupied = new boolean[capacity];
+        }
+
+        /**
+         * @return the slot holding <em>id</em> or -1 if there is none
+         */
+        int find(final long id) {
+            for (int slot = home(id), probes = capacity; occupied[slot] && --probes >= 0; slot = (slot + 1) & mask) {
+                if (id(slot) == id) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the first unoccupied slot in <em>id</em>'s probe sequence, which is marked as occupied
+         */
+        int freeSlot(final long id) {
+            int slot = home(id);
+            while (occupied[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            occupied[slot] = true;
+            return slot;
+        }
+
+        /**
+         * Empty a slot, then shift back later entries in its cluster so that lookups need no tombstones.
+         */
+        void delete(final int slot) {
+            int gap = slot;
+            for (int next = (gap + 1) & mask; occupied[next]; next = (next + 1) & mask) {
+                final int home = home(id(next));
+                // move the entry if the gap lies between its home slot and its current slot
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    copy(next, gap);
+                    gap = next;
+                }
+            }
+            clear(gap);
+            occupied[gap] = false;
+        }
+
+        int home(final long id) {
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+
+        long id(final int slot) {
+            return slots.getLong(slot * keyDirectorySlotBytes);
+        }
+
+        void read(final int slot, final byte[] keyBytes) {
+            final ByteBuffer view = slots.duplicate();
+            view.position(slot * keyDirectorySlotBytes + 8);
+            view.get(keyBytes);
+        }
+
+        void write(final int slot, final long id, final Key key) {
+            final ByteBuffer view = slots.duplicate();
+            view.position(slot * keyDirectorySlotBytes);
+            view.putLong(id);
+            view.put(key.getSigningKey(), 0, signingKeyBytes);
+            view.put(key.getEncryptionKey(), 0, encryptionKeyBytes);
+        }
+
+        void write(final int slot, final long id, final byte[] keyBytes) {
+            final ByteBuffer view = slots.duplicate();
+            view.position(slot * keyDirectorySlotBytes);
+            view.putLong(id);
+            view.put(keyBytes);
+        }
+
+        void copy(final int from, final int to) {
+            final ByteBuffer source = slots.duplicate();
+            source.position(from * keyDirectorySlotBytes);
+            source.limit(source.position() + keyDirectorySlotBytes);
+            final ByteBuffer target = slots.duplicate();
+            target.position(to * keyDirectorySlotBytes);
+            target.put(source);
+        }
+
+        void clear(final int slot) {
+            for (int offset = slot * keyDirectorySlotBytes, end = offset + keyDirectorySlotBytes; offset < end;
+                    offset += 8) {
+                slots.putLong(offset, 0L);
+            }
+        }
+
+        void zeroise() {
+            for (int offset = 0; offset < slots.capacity(); offset += 8) {
+                slots.putLong(offset, 0L);
+            }
+            fill(occupied, false);
+        }
+    }
+
+}
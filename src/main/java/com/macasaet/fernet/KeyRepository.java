@@ -0,0 +1,29 @@
+package com.macasaet.fernet;
+
+import java.util.Collection;
+
+/**
+ * A source of the keys in use by an application that rotates keys. New tokens are generated with the primary key and
+ * tokens are validated against all the decryption keys, which include the primary key.
+ *
+ * <p>Implementations that fetch keys from a remote store can be wrapped in a {@link CachingKeyRepository} so that each
+ * request does not incur a round trip.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public interface KeyRepository {
+
+    /**
+     * @return the current key for generating new tokens
+     * @throws IllegalStateException if there is no primary key
+     */
+    Key getPrimaryKey();
+
+    /**
+     * @return all the keys that can be used to validate tokens and decrypt payloads
+     */
+    Collection<? extends Key> getDecryptionKeys();
+
+}
@@ -0,0 +1,74 @@
+package com.macasaet.fernet;
+
+import java.time.Instant;
+
+/**
+ * A key in a key ring file along with the period during which it may be used to validate tokens.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ * @see KeyRingFile
+ */
+public class KeyRingEntry {
+
+    private final Key key;
+    private final Instant notBefore;
+    private final Instant notAfter;
+
+    /**
+     * Create an entry that is always valid.
+     *
+     * @param key the key
+     */
+    public KeyRingEntry(final Key key) {
+        this(key, null, null);
+    }
+
+    /**
+     * @param key
+     *            the key
+     * @param notBefore
+     *            the earliest time the key is valid or null if it is valid from the beginning of time
+     * @param notAfter
+     *            the latest time the key is valid or null if it is valid until the end of time
+     */
+    public KeyRingEntry(final Key key, final Instant notBefore, final Instant notAfter) {
+        if (key == null) {
+            throw new IllegalArgumentException("key cannot be null");
+        }
+        if (notBefore != null && notAfter != null && notAfter.isBefore(notBefore)) {
+            throw new IllegalArgumentException("notAfter cannot be before notBefore");
+        }
+        this.key = key;
+        this.notBefore = notBefore;
+        this.notAfter = notAfter;
+    }
+
+    /**
+     * @param instant a point in time
+     * @return true if and only if the key may be used at <em>instant</em>
+     */
+    public boolean isValidAt(final Instant instant) {
+        return (notBefore == null || !instant.isBefore(notBefore)) && (notAfter == null || !instant.isAfter(notAfter));
+    }
+
+    public Key getKey() {
+        return key;
+    }
+
+    /**
+     * @return the earliest time the key is valid or null if it is valid from the beginning of time
+     */
+    public Instant getNotBefore() {
+        return notBefore;
+    }
+
+    /**
+     * @return the latest time the key is valid or null if it is valid until the end of time
+     */
+    public Instant getNotAfter() {
+        return notAfter;
+    }
+
+}
@@ -0,0 +1,389 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.defaultKeyRingCapacity;
+import static com.macasaet.fernet.Constants.fernetKeyBytes;
+import static com.macasaet.fernet.Constants.keyRingFormatVersion;
+import static com.macasaet.fernet.Constants.keyRingHeaderBytes;
+import static com.macasaet.fernet.Constants.keyRingMagic;
+import static com.macasaet.fernet.Constants.keyRingReadAttempts;
+import static com.macasaet.fernet.Constants.keyRingRecordBytes;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Arrays.copyOfRange;
+import static java.util.Collections.unmodifiableList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes key ring files: a compact binary format for sharing keys between processes on the same host,
+ * including processes not written in Java. Readers memory-map the file, see {@link MappedKeyRepository}.
+ *
+ * <p>All values are big-endian. The file starts with a 48 byte header:</p>
+ * <table summary="header layout">
+ * <tr><th>Offset</th><th>Size</th><th>Field</th></tr>
+ * <tr><td>0</td><td>4</td><td>magic, "FKR1" in ASCII</td></tr>
+ * <tr><td>4</td><td>2</td><td>format version, 1</td></tr>
+ * <tr><td>6</td><td>2</td><td>record size, 48</td></tr>
+ * <tr><td>8</td><td>8</td><td>sequence, odd while the file is being modified in place</td></tr>
+ * <tr><td>16</td><td>4</td><td>CRC-32 of every byte from offset 20 to the end of the last record</td></tr>
+ * <tr><td>20</td><td>4</td><td>index of the primary key</td></tr>
+ * <tr><td>24</td><td>8</td><td>version, incremented on every write</td></tr>
+ * <tr><td>32</td><td>4</td><td>number of records</td></tr>
+ * <tr><td>36</td><td>12</td><td>reserved, zero</td></tr>
+ * </table>
+ * <p>Each record is the 32 byte key, as written by {@link Key#writeTo(java.io.OutputStream)}, followed by the start
+ * and the end of its validity window in seconds since the epoch. The minimum and maximum signed values denote an
+ * unbounded window. The file may have space for more records than it contains.</p>
+ *
+ * <p>Writers may either replace the file or modify it in place. Replacement writes a new file and atomically renames
+ * it over the old one, so readers must notice that the path refers to a new file. Modification in place follows the
+ * seqlock protocol: the writer increments the sequence to an odd value, writes the contents, then increments the
+ * sequence to an even value. Readers copy the contents and retry if the sequence was odd or changed during the copy.
+ * Either way, writers that use this class exclude each other with a lock on a sibling file with the suffix
+ * <code>.lock</code>. When an update leaves fewer records than before, the records that are no longer in use are
+ * zeroed so that retired keys do not remain in the file.</p>
+ *
+ * <p>The sequence is read and written with plain memory accesses, without fences, because
+ * <code>MappedByteBuffer</code> offers nothing stronger on Java 8. Neither the compiler nor the processor is obliged
+ * to keep the accesses to the sequence and the contents in program order. So the sequence only lets readers skip
+ * copies that are likely to be torn. What guarantees consistency is the checksum: readers verify the CRC-32 of every
+ * copy, retry if it does not match, and only use a copy whose checksum matches. A torn copy goes undetected only if
+ * its CRC-32 collides, with a probability of about one in four billion for each torn copy.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public final class KeyRingFile {
+
+    static final int sequenceOffset = 8;
+    static final int checksumOffset = 16;
+    static final int primaryIndexOffset = 20;
+    static final int versionOffset = 24;
+    static final int countOffset = 32;
+
+    private KeyRingFile() {
+    }
+
+    /**
+     * Replace a key ring file atomically, leaving space for 16 records or the number of entries, whichever is more.
+     *
+     * @param path
+     *            the key ring file, which need not exist
+     * @param primaryIndex
+     *            the index in <em>entries</em> of the key for generating new tokens
+     * @param entries
+     *            the keys to share
+     * @return the new version of the key ring
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static long write(final Path path, final int primaryIndex, final List<KeyRingEntry> entries)
+            throws IOException {
+        return write(path, primaryIndex, entries, Math.max(defaultKeyRingCapacity, entries.size()));
+    }
+
+    /**
+     * Replace a key ring file atomically. Readers that have mapped the previous file continue to read it until they
+     * notice the replacement.
+     *
+     * @param path
+     *            the key ring file, which need not exist
+     * @param primaryIndex
+     *            the index in <em>entries</em> of the key for generating new tokens
+     * @param entries
+     *            the keys to share
+     * @param capacity
+     *            the number of records for which to allocate space, so that later updates can be made in place
+     * @return the new version of the key ring
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    @SuppressWarnings("try")
+    public static long write(final Path path, final int primaryIndex, final List<KeyRingEntry> entries,
+            final int capacity) throws IOException {
+        validate(primaryIndex, entries);
+        if (capacity < entries.size()) {
+            throw new IllegalArgumentException("capacity cannot be less than the number of entries");
+        }
+        try (final FileChannel lockFile = openLockFile(path); final FileLock lock = lockFile.lock()) {
+            final long version = readVersion(path) + 1;
+            final ByteBuffer contents = ByteBuffer.allocate(keyRingHeaderBytes + capacity * keyRingRecordBytes);
+            contents.putLong(sequenceOffset, 0);
+            encode(contents, version, primaryIndex, entries);
+            final Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(),
+                    path.getFileName().toString(), ".tmp");
+            try {
+                try (final FileChannel channel = FileChannel.open(temporary, WRITE, TRUNCATE_EXISTING)) {
+                    while (contents.hasRemaining()) {
+                        channel.write(contents);
+                    }
+                    channel.force(true);
+                }
+                Files.move(temporary, path, ATOMIC_MOVE, REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            return version;
+        }
+    }
+
+    /**
+     * Modify a key ring file in place, so that readers that have mapped it see the change without re-opening it. If
+     * the file does not exist or does not have space for all the entries, it is replaced instead.
+     *
+     * @param path
+     *            the key ring file, which need not exist
+     * @param primaryIndex
+     *            the index in <em>entries</em> of the key for generating new tokens
+     * @param entries
+     *            the keys to share
+     * @return the new version of the key ring
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    @SuppressWarnings("try")
+    public static long update(final Path path, final int primaryIndex, final List<KeyRingEntry> entries)
+            throws IOException {
+        validate(primaryIndex, entries);
+        long version = 0;
+        try (final FileChannel lockFile = openLockFile(path); final FileLock lock = lockFile.lock()) {
+            if (Files.exists(path)
+                    && Files.size(path) >= keyRingHeaderBytes + (long) entries.size() * keyRingRecordBytes) {
+                try (final FileChannel channel = FileChannel.open(path, READ, WRITE)) {
+                    final MappedByteBuffer mapped = channel.map(MapMode.READ_WRITE, 0, channel.size());
+                    final Contents previous = read(mapped);
+                    version = previous.version + 1;
+                    final long sequence = mapped.getLong(sequenceOffset);
+                    mapped.putLong(sequenceOffset, sequence + 1);
+                    encode(mapped, version, primaryIndex, entries);
+                    // do not leave retired keys past the last record
+                    for (int offset = keyRingHeaderBytes + entries.size() * keyRingRecordBytes,
+                            end = keyRingHeaderBytes + previous.entries.size() * keyRingRecordBytes;
+                            offset < end; offset++) {
+                        mapped.put(offset, (byte) 0);
+                    }
+                    mapped.putLong(sequenceOffset, sequence + 2);
+                    mapped.force();
+                } catch (final IllegalStateException ise) {
+                    // replace a corrupt file
+                    version = 0;
+                }
+            }
+        }
+        return version == 0 ? write(path, primaryIndex, entries) : version;
+    }
+
+    /**
+     * @param path
+     *            a key ring file
+     * @return the keys in the file, the first of which is the primary key
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws IllegalStateException
+     *             if the file is not a valid key ring
+     */
+    public static List<KeyRingEntry> read(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, READ)) {
+            final Contents contents = read(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+            final List<KeyRingEntry> retval = new ArrayList<>(contents.entries);
+            retval.add(0, retval.remove(contents.primaryIndex));
+            return retval;
+        }
+    }
+
+    /**
+     * Read a consistent snapshot of a key ring that may be modified concurrently.
+     *
+     * @param mapped
+     *            the contents of a key ring file
+     * @return the keys in the file
+     * @throws IllegalStateException
+     *             if the file is not a valid key ring or is being modified continuously
+     */
+    static Contents read(final ByteBuffer mapped) {
+        final int capacity = (mapped.capacity() - keyRingHeaderBytes) / keyRingRecordBytes;
+        if (capacity < 0) {
+            throw new IllegalStateException("Key ring is truncated");
+        }
+        boolean checksumMismatch = false;
+        for (int attempt = keyRingReadAttempts; --attempt >= 0; Thread.yield()) {
+            final long before = mapped.getLong(sequenceOffset);
+            if ((before & 1) != 0) {
+                // being modified
+                continue;
+            }
+            final int count = mapped.getInt(countOffset);
+            if (count < 0 || count > capacity) {
+                if (mapped.getLong(sequenceOffset) == before) {
+                    throw new IllegalStateException("Key ring has an invalid number of records: " + count);
+                }
+                continue;
+            }
+            final byte[] copy = new byte[keyRingHeaderBytes + count * keyRingRecordBytes];
+            final ByteBuffer source = mapped.duplicate();
+            source.clear();
+            source.get(copy);
+            if (mapped.getLong(sequenceOffset) == before) {
+                // the sequence accesses are not fenced, so only the checksum shows that the copy is consistent; it
+                // also detects writers that do not follow the seqlock protocol, so try again in case one is part way
+                // through a change
+                checksumMismatch = !isChecksumValid(ByteBuffer.wrap(copy));
+                if (!checksumMismatch) {
+                    return decode(ByteBuffer.wrap(copy), before, count);
+                }
+            }
+        }
+        throw new IllegalStateException(checksumMismatch ? "Key ring checksum mismatch"
+                : "Key ring is being modified continuously");
+    }
+
+    /**
+     * Write a key ring file from the command line, replacing any existing file. Usage:
+     * <code>KeyRingFile &lt;file&gt; &lt;primary key&gt;[,&lt;not before&gt;,&lt;not after&gt;]
+     * [&lt;key&gt;[,...]]...</code> where keys are in Base 64 URL format and times are in ISO-8601 format. An empty
+     * time denotes an unbounded window. The file is replaced atomically and the new version is printed.
+     *
+     * @param arguments the file followed by one or more keys, the first of which is the primary key
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(final String... arguments) throws IOException {
+        if (arguments.length < 2) {
+            System.err.println("Usage: KeyRingFile <file> <primary key>[,<not before>,<not after>] [<key>[,...]]...");
+            return;
+        }
+        final List<KeyRingEntry> entries = new ArrayList<>(arguments.length - 1);
+        for (int i = 1; i < arguments.length; i++) {
+            final String[] fields = arguments[i].split(",", -1);
+            final Instant notBefore = fields.length > 1 && !fields[1].isEmpty() ? Instant.parse(fields[1]) : null;
+            final Instant notAfter = fields.length > 2 && !fields[2].isEmpty() ? Instant.parse(fields[2]) : null;
+            entries.add(new KeyRingEntry(new Key(fields[0]), notBefore, notAfter));
+        }
+        System.out.println(write(Paths.get(arguments[0]), 0, entries));
+    }
+
+    /**
+     * Write everything but the sequence.
+     */
+    static void encode(final ByteBuffer target, final long version, final int primaryIndex,
+            final List<KeyRingEntry> entries) {
+        final ByteBuffer body = ByteBuffer.allocate(keyRingHeaderBytes - primaryIndexOffset
+                + entries.size() * keyRingRecordBytes);
+        body.putInt(primaryIndex);
+        body.putLong(version);
+        body.putInt(entries.size());
+        body.position(keyRingHeaderBytes - primaryIndexOffset);
+        try (final ByteArrayOutputStream keyBytes = new ByteArrayOutputStream(fernetKeyBytes)) {
+            for (final KeyRingEntry entry : entries) {
+                keyBytes.reset();
+                entry.getKey().writeTo(keyBytes);
+                body.put(keyBytes.toByteArray());
+                body.putLong(entry.getNotBefore() == null ? Long.MIN_VALUE : entry.getNotBefore().getEpochSecond());
+                body.putLong(entry.getNotAfter() == null ? Long.MAX_VALUE : entry.getNotAfter().getEpochSecond());
+            }
+        } catch (final IOException ioe) {
+            // this should not happen as I/O is to memory
+            throw new RuntimeException(ioe.getMessage(), ioe);
+        }
+        final CRC32 checksum = new CRC32();
+        checksum.update(body.array());
+        target.putInt(0, keyRingMagic);
+        target.putShort(4, keyRingFormatVersion);
+        target.putShort(6, (short) keyRingRecordBytes);
+        target.putInt(checksumOffset, (int) checksum.getValue());
+        final ByteBuffer destination = target.duplicate();
+        destination.position(primaryIndexOffset);
+        destination.put(body.array());
+    }
+
+    protected static Contents decode(final ByteBuffer copy, final long sequence, final int count) {
+        if (copy.getInt(0) != keyRingMagic) {
+            throw new IllegalStateException("Not a key ring file");
+        }
+        if (copy.getShort(4) != keyRingFormatVersion || copy.getShort(6) != keyRingRecordBytes) {
+            throw new IllegalStateException("Unsupported key ring format: " + copy.getShort(4));
+        }
+        if (!isChecksumValid(copy)) {
+            throw new IllegalStateException("Key ring checksum mismatch");
+        }
+        final int primaryIndex = copy.getInt(primaryIndexOffset);
+        if (primaryIndex < 0 || primaryIndex >= count) {
+            throw new IllegalStateException("Key ring has an invalid primary key index: " + primaryIndex);
+        }
+        final List<KeyRingEntry> entries = new ArrayList<>(count);
+        for (int offset = keyRingHeaderBytes; offset < copy.capacity(); offset += keyRingRecordBytes) {
+            final Key key = new Key(copyOfRange(copy.array(), offset, offset + fernetKeyBytes));
+            final long notBefore = copy.getLong(offset + fernetKeyBytes);
+            final long notAfter = copy.getLong(offset + fernetKeyBytes + 8);
+            entries.add(new KeyRingEntry(key, notBefore == Long.MIN_VALUE ? null : Instant.ofEpochSecond(notBefore),
+                    notAfter == Long.MAX_VALUE ? null : Instant.ofEpochSecond(notAfter)));
+        }
+        return new Contents(sequence, copy.getLong(versionOffset), primaryIndex, unmodifiableList(entries));
+    }
+
+    protected static boolean isChecksumValid(final ByteBuffer copy) {
+        final CRC32 checksum = new CRC32();
+        checksum.update(copy.array(), primaryIndexOffset, copy.capacity() - primaryIndexOffset);
+        return copy.getInt(checksumOffset) == (int) checksum.getValue();
+    }
+
+    protected static void validate(final int primaryIndex, final List<KeyRingEntry> entries) {
+        if (entries == null || entries.isEmpty()) {
+            throw new IllegalArgumentException("entries cannot be empty");
+        }
+        if (primaryIndex < 0 || primaryIndex >= entries.size()) {
+            throw new IllegalArgumentException("primaryIndex must refer to one of the entries");
+        }
+    }
+
+    protected static long readVersion(final Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (final FileChannel channel = FileChannel.open(path, READ)) {
+            return read(channel.map(MapMode.READ_ONLY, 0, channel.size())).version;
+        } catch (final IllegalStateException ise) {
+            // replace a corrupt file
+            return 0;
+        }
+    }
+
+    protected static FileChannel openLockFile(final Path path) throws IOException {
+        return FileChannel.open(path.resolveSibling(path.getFileName() + ".lock"), CREATE, WRITE);
+    }
+
+    /**
+     * A consistent snapshot of a key ring file.
+     */
+    static class Contents {
+        final long sequence;
+        final long version;
+        final int primaryIndex;
+        final List<KeyRingEntry> entries;
+
+        Contents(final long sequence, final long version, final int primaryIndex, final List<KeyRingEntry> entries) {
+            this.sequence = sequence;
+            this.version = version;
+            this.primaryIndex = primaryIndex;
+            this.entries = entries;
+        }
+    }
+
+}
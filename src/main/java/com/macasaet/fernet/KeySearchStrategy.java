@@ -0,0 +1,88 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.parallelKeySearchThresholdBytes;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntPredicate;
+
+/**
+ * Determines how {@link Validator#validateAndDecrypt(java.util.Collection, Token)} searches a collection of keys for
+ * the one that signed a token. Checking a signature is entirely CPU-bound, so with many keys or large tokens it can be
+ * worthwhile to check several keys at once. With few keys or small tokens, the cost of handing work to other threads
+ * exceeds the cost of checking the signatures.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ * @see Validator#getKeySearchStrategy()
+ */
+@FunctionalInterface
+public interface KeySearchStrategy {
+
+    /**
+     * Check each key in turn on the calling thread.
+     */
+    KeySearchStrategy SEQUENTIAL = (token, keyCount, isSigningKey) -> {
+        for (int i = 0; i < keyCount; i++) {
+            if (isSigningKey.test(i)) {
+                return i;
+            }
+        }
+        return -1;
+    };
+
+    /**
+     * Check the keys on the calling thread unless the estimated cost of checking every key exceeds 64 KiB of signed
+     * data, in which case check them in parallel. The parallel search uses the current {@link ForkJoinPool} if invoked
+     * from within one, otherwise the common pool.
+     */
+    KeySearchStrategy ADAPTIVE = new ForkJoinKeySearch(null, parallelKeySearchThresholdBytes);
+
+    /**
+     * @param pool
+     *            the threads on which to check the keys
+     * @return a strategy that always checks the keys in parallel, unless there is only one
+     */
+    static KeySearchStrategy parallel(final ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool cannot be null");
+        }
+        return new ForkJoinKeySearch(pool, 0);
+    }
+
+    /**
+     * The cost of a search is estimated as the number of keys multiplied by the number of bytes to sign for each, plus a
+     * fixed overhead per key.
+     *
+     * @param pool
+     *            the threads on which to check the keys, if the search is parallelised
+     * @param thresholdBytes
+     *            the minimum estimated cost, in signed bytes, at which to check the keys in parallel
+     * @return a strategy that chooses between a sequential and a parallel search for each token
+     */
+    static KeySearchStrategy adaptive(final ForkJoinPool pool, final int thresholdBytes) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool cannot be null");
+        }
+        if (thresholdBytes < 0) {
+            throw new IllegalArgumentException("thresholdBytes cannot be negative");
+        }
+        return new ForkJoinKeySearch(pool, thresholdBytes);
+    }
+
+    /**
+     * Find a key that signed a token. Once a key has been found, implementations should not start checking any more
+     * keys.
+     *
+     * @param token
+     *            the token whose signing key is sought
+     * @param keyCount
+     *            the number of candidate keys
+     * @param isSigningKey
+     *            checks the signature of <em>token</em> against the candidate key at an index, this may be invoked
+     *            concurrently
+     * @return the index of a key for which <em>isSigningKey</em> is true or -1 if there is none
+     */
+    int indexOfSigningKey(Token token, int keyCount, IntPredicate isSigningKey);
+
+}
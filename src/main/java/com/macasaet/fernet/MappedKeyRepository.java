@@ -0,0 +1,328 @@
+package com.macasaet.fernet;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.util.Collections.unmodifiableList;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.macasaet.fernet.KeyRingFile.Contents;
+
+/**
+ * A {@link KeyRepository} backed by a memory-mapped {@link KeyRingFile key ring file}. Many processes on a host can
+ * share the same keys without each retrieving them from a remote store.
+ *
+ * <p>Each request checks the sequence number in the mapped file, which costs a single memory read, and parses the keys
+ * again only if it has changed. So changes made in place are seen immediately. Changes made by replacing the file are
+ * seen once the path is checked for a new file, which happens at most once per poll interval, or as soon as the file
+ * system reports the change if {@link #watch()} has been called. If the file cannot be read, the last keys read
+ * continue to be served and the failure is available from {@link #getLastFailure()}.</p>
+ *
+ * <p>Only keys whose validity windows include the current time are returned.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class MappedKeyRepository implements KeyRepository, AutoCloseable {
+
+    private final Path path;
+    private final long pollIntervalNanos;
+    private final Clock clock;
+
+    private volatile Mapping mapping;
+    private volatile Snapshot snapshot;
+    private volatile long nextPoll;
+    private volatile RuntimeException lastFailure;
+    private volatile WatchService watchService;
+
+    /**
+     * Map a key ring file, checking for a replacement file at most once per second.
+     *
+     * @param path
+     *            the key ring file
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws IllegalStateException
+     *             if the file is not a valid key ring
+     */
+    public MappedKeyRepository(final Path path) throws IOException {
+        this(path, Duration.ofSeconds(1), Clock.systemUTC());
+    }
+
+    /**
+     * @param path
+     *            the key ring file
+     * @param pollInterval
+     *            the minimum time between checks for a replacement file
+     * @param clock
+     *            the source of the current time, against which validity windows are checked
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws IllegalStateException
+     *             if the file is not a valid key ring
+     */
+    public MappedKeyRepository(final Path path, final Duration pollInterval, final Clock clock) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("path cannot be null");
+        }
+        if (pollInterval == null || pollInterval.isNegative()) {
+            throw new IllegalArgumentException("pollInterval must be non-negative");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.path = path;
+        this.pollIntervalNanos = pollInterval.toNanos();
+        this.clock = clock;
+        this.mapping = map(path);
+        this.snapshot = new Snapshot(KeyRingFile.read(mapping.buffer));
+        this.nextPoll = System.nanoTime() + pollIntervalNanos;
+    }
+
+    /**
+     * @return the current key for generating new tokens
+     * @throws IllegalStateException
+     *             if the primary key is outside its validity window
+     */
+    public Key getPrimaryKey() {
+        final Instant now = Instant.now(clock);
+        final KeyRingEntry primary = getSnapshot().primary;
+        if (!primary.isValidAt(now)) {
+            throw new IllegalStateException("The primary key is not valid at " + now);
+        }
+        return primary.getKey();
+    }
+
+    public List<Key> getDecryptionKeys() {
+        return getSnapshot().getDecryptionKeys(Instant.now(clock));
+    }
+
+    /**
+     * @return the version of the keys being served
+     */
+    public long getVersion() {
+        return getSnapshot().version;
+    }
+
+    /**
+     * @return the reason the most recent attempt to read the file failed, or null if it succeeded
+     */
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Check for a replacement file as soon as the file system reports a change to the directory, rather than only
+     * once per poll interval. The file system is monitored on a daemon thread until this repository is closed.
+     *
+     * @throws IOException
+     *             if the directory cannot be watched
+     */
+    public synchronized void watch() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        final Path directory = path.toAbsolutePath().getParent();
+        final WatchService service = directory.getFileSystem().newWatchService();
+        directory.register(service, ENTRY_CREATE, ENTRY_MODIFY);
+        watchService = service;
+        final Thread watcher = TokenExecutors.daemonThreads("fernet-key-ring-watcher-").newThread(() -> {
+            try {
+                for (WatchKey key = service.take(); key.isValid(); key = service.take()) {
+                    for (final WatchEvent<?> event : key.pollEvents()) {
+                        if (path.getFileName().equals(event.context())) {
+                            reload();
+                        }
+                    }
+                    key.reset();
+                }
+            } catch (final InterruptedException | ClosedWatchServiceException e) {
+                // closed
+            }
+        });
+        watcher.start();
+    }
+
+    public synchronized void close() {
+        final WatchService service = watchService;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (final IOException ioe) {
+                lastFailure = new RuntimeException(ioe.getMessage(), ioe);
+            }
+        }
+        // a mapped buffer cannot be released explicitly on Java 8, it is released once it is garbage collected
+    }
+
+    protected Snapshot getSnapshot() {
+        if (System.nanoTime() - nextPoll >= 0) {
+            nextPoll = System.nanoTime() + pollIntervalNanos;
+            reload();
+        }
+        final Snapshot current = snapshot;
+        if (mapping.buffer.getLong(KeyRingFile.sequenceOffset) == current.sequence) {
+            return current;
+        }
+        synchronized (this) {
+            try {
+                final Contents contents = KeyRingFile.read(mapping.buffer);
+                if (contents.sequence != snapshot.sequence) {
+                    snapshot = new Snapshot(contents);
+                }
+                lastFailure = null;
+            } catch (final RuntimeException re) {
+                lastFailure = re;
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Map the file again if it has been replaced.
+     */
+    protected synchronized void reload() {
+        try {
+            final Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            // without file keys, map the file again and compare the contents
+            if (fileKey != null && fileKey.equals(mapping.fileKey)) {
+                return;
+            }
+            final Mapping replacement = map(path);
+            final Contents contents = KeyRingFile.read(replacement.buffer);
+            mapping = replacement;
+            if (contents.version != snapshot.version || contents.sequence != snapshot.sequence) {
+                snapshot = new Snapshot(contents);
+            }
+            lastFailure = null;
+        } catch (final IOException ioe) {
+            lastFailure = new RuntimeException("Unable to read key ring: " + ioe.getMessage(), ioe);
+        } catch (final RuntimeException re) {
+            lastFailure = re;
+        }
+    }
+
+    protected static Mapping map(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, READ)) {
+            final Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            // the mapping remains valid after the channel is closed
+            return new Mapping(channel.map(MapMode.READ_ONLY, 0, channel.size()), fileKey);
+        }
+    }
+
+    /**
+     * A mapped file and the file system's identifier for it.
+     */
+    protected static class Mapping {
+        final MappedByteBuffer buffer;
+        final Object fileKey;
+
+        Mapping(final MappedByteBuffer buffer, final Object fileKey) {
+            this.buffer = buffer;
+            this.fileKey = fileKey;
+        }
+    }
+
+    /**
+     * The parsed keys from a consistent read of the file.
+     */
+    protected static class Snapshot {
+        final long sequence;
+        final long version;
+        final KeyRingEntry primary;
+        final List<KeyRingEntry> entries;
+        private volatile DecryptionKeys decryptionKeys;
+
+        Snapshot(final Contents contents) {
+            this.sequence = contents.sequence;
+            this.version = contents.version;
+            this.primary = contents.entries.get(contents.primaryIndex);
+            this.entries = contents.entries;
+        }
+
+        List<Key> getDecryptionKeys(final Instant now) {
+            final DecryptionKeys cached = decryptionKeys;
+            if (cached != null && cached.isCurrent(now)) {
+                return cached.keys;
+            }
+            final DecryptionKeys computed = new DecryptionKeys(entries, now);
+            decryptionKeys = computed;
+            return computed.keys;
+        }
+    }
+
+    /**
+     * The keys that are valid over a period during which no validity window starts or ends.
+     */
+    protected static class DecryptionKeys {
+        final List<Key> keys;
+        final Instant from;
+        final Instant until;
+
+        DecryptionKeys(final List<KeyRingEntry> entries, final Instant now) {
+            final List<Key> valid = new ArrayList<>(entries.size());
+            Instant latestChange = Instant.MIN;
+            Instant nextChange = Instant.MAX;
+            for (final KeyRingEntry entry : entries) {
+                if (entry.isValidAt(now)) {
+                    valid.add(entry.getKey());
+                }
+                final Instant notBefore = entry.getNotBefore();
+                if (notBefore != null) {
+                    if (notBefore.isAfter(now)) {
+                        nextChange = min(nextChange, notBefore);
+                    } else {
+                        latestChange = max(latestChange, notBefore);
+                    }
+                }
+                final Instant notAfter = entry.getNotAfter();
+                if (notAfter != null) {
+                    // the key is valid through notAfter
+                    final Instant expiry = notAfter.plusNanos(1);
+                    if (expiry.isAfter(now)) {
+                        nextChange = min(nextChange, expiry);
+                    } else {
+                        latestChange = max(latestChange, expiry);
+                    }
+                }
+            }
+            this.keys = unmodifiableList(valid);
+            this.from = latestChange;
+            this.until = nextChange;
+        }
+
+        boolean isCurrent(final Instant now) {
+            return !now.isBefore(from) && now.isBefore(until);
+        }
+
+        protected static Instant min(final Instant x, final Instant y) {
+            return x.isBefore(y) ? x : y;
+        }
+
+        protected static Instant max(final Instant x, final Instant y) {
+            return x.isAfter(y) ? x : y;
+        }
+    }
+
+    public String toString() {
+        return "MappedKeyRepository [path=" + path + ", version=" + snapshot.version + "]";
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.hmacLanes;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+
+/**
+ * Checks whether each of a list of keys signed a token by computing the token's signature with
+ * {@link Constants#hmacLanes} keys at a time using {@link HmacSha256Lanes}. The signatures of a group of keys are
+ * computed the first time any key in the group is tested, so a sequential search that finds the signing key among the
+ * first eight keys computes one multi-buffer signature instead of up to eight individual ones.
+ *
+ * <p>This is safe for use by a parallel {@link KeySearchStrategy}. If two threads test keys from the same group at the
+ * same time, the group may be signed twice, but both threads see the same result.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+final class MultiBufferKeyProbe implements IntPredicate {
+
+    private final Token token;
+    private final List<? extends Key> keys;
+    private final AtomicReferenceArray<boolean[]> groups;
+
+    /**
+     * @param token
+     *            a token for which {@link #isApplicable(Token, List)} is true
+     * @param keys
+     *            the candidate signing keys
+     */
+    MultiBufferKeyProbe(final Token token, final List<? extends Key> keys) {
+        this.token = token;
+        this.keys = keys;
+        this.groups = new AtomicReferenceArray<>((keys.size() + hmacLanes - 1) / hmacLanes);
+    }
+
+    /**
+     * @param token
+     *            the client-provided token of unknown validity
+     * @param keys
+     *            the candidate signing keys
+     * @return true if the signatures computed by this class are the same as those computed by
+     *         {@link Token#isValidSignature(Key)} and there is more than one key to check
+     */
+    static boolean isApplicable(final Token token, final List<? extends Key> keys) {
+        if (!HmacSha256Lanes.isVectorised() || keys.size() < 2 || token.getClass() != Token.class
+                || token.getFormat().isAuthenticatedEncryption()) {
+            return false;
+        }
+        for (final Key key : keys) {
+            if (!key.isMultiBufferSigningSupported()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean test(final int index) {
+        final int group = index / hmacLanes;
+        boolean[] results = groups.get(group);
+        if (results == null) {
+            results = signGroup(group);
+            groups.set(group, results);
+        }
+        return results[index % hmacLanes];
+    }
+
+    private boolean[] signGroup(final int group) {
+        final int first = group * hmacLanes;
+        final int count = Math.min(hmacLanes, keys.size() - first);
+        final int[][] keyStates = new int[count][];
+        for (int lane = 0; lane < count; lane++) {
+            keyStates[lane] = keys.get(first + lane).getHmacSha256State();
+        }
+        final byte[][] messages = new byte[count][];
+        Arrays.fill(messages, token.getSignedBytes());
+        final int[] lengths = new int[count];
+        Arrays.fill(lengths, token.getSignedBytesLength());
+        final byte[][] signatures = HmacSha256Lanes.sign(keyStates, messages, lengths, count);
+        final boolean[] retval = new boolean[count];
+        for (int lane = 0; lane < count; lane++) {
+            retval[lane] = MessageDigest.isEqual(token.getHmac(), signatures[lane]);
+        }
+        return retval;
+    }
+
+}
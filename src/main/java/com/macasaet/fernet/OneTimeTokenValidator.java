@@ -0,0 +1,65 @@
+package com.macasaet.fernet;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+import com.macasaet.fernet.FernetMetrics.FailureReason;
+
+/**
+ * A {@link Validator} for tokens that may only be used once, such as password reset or payment confirmation tokens.
+ * After a token passes every other check, including deserialisation and {@link #getObjectValidator()}, it is recorded
+ * by {@link #getReplayGuard()} and rejected if it has been presented before. A token that fails any check is not
+ * recorded, so it can be presented again. This applies to every synchronous and asynchronous validation method.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @param <T> the type of the payload
+ * @author Carlos Macasaet
+ */
+public interface OneTimeTokenValidator<T> extends Validator<T> {
+
+    /**
+     * The guard should be shared by every validator of the same tokens and should remember tokens for at least
+     * {@link #getTimeToLive()}, for example by creating it with {@link ReplayGuard#ReplayGuard(Validator)}.
+     *
+     * @return the record of tokens already used
+     */
+    ReplayGuard getReplayGuard();
+
+    /**
+     * Check the validity of the token, decrypt and deserialise the payload, and record the token's use.
+     *
+     * @throws TokenValidationException
+     *             if the token is invalid or has already been used
+     */
+    default T validateAndDecrypt(final Key key, final Token token) throws TokenValidationException {
+        return recordUse(token, Validator.super.validateAndDecrypt(key, token));
+    }
+
+    default CompletableFuture<T> validateAndDecryptAsync(final Key key, final Token token, final Duration timeout) {
+        return TokenExecutors.supplyAsync(() -> decryptPayload(key, token), getExecutor(),
+                plainText -> recordUse(token, transformPayload(plainText)), getTransformerExecutor(), timeout);
+    }
+
+    default CompletableFuture<T> validateAndDecryptAsync(final Collection<? extends Key> keys, final Token token,
+            final Duration timeout) {
+        return TokenExecutors.supplyAsync(() -> decryptPayload(findSigningKey(keys, token), token), getExecutor(),
+                plainText -> recordUse(token, transformPayload(plainText)), getTransformerExecutor(), timeout);
+    }
+
+    /**
+     * @param token a token that has passed every other check
+     * @param object the deserialised contents of <em>token</em>
+     * @return <em>object</em>
+     * @throws TokenValidationException if the token has already been used
+     */
+    default T recordUse(final Token token, final T object) throws TokenValidationException {
+        if (!getReplayGuard().tryAccept(token)) {
+            getMetrics().recordFailure(FailureReason.REPLAYED);
+            throw new TokenValidationException("Token has already been used.");
+        }
+        return object;
+    }
+
+}
@@ -0,0 +1,368 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.defaultReplayGuardBucketCapacity;
+import static com.macasaet.fernet.Constants.defaultReplayGuardBuckets;
+import static com.macasaet.fernet.Constants.replayGuardFormatVersion;
+import static com.macasaet.fernet.Constants.replayGuardMagic;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.TemporalAmount;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Remembers which tokens have been used so that one-time tokens, such as those for password resets or payment
+ * confirmations, are only accepted once. Since a token's lifetime is bounded by {@link Validator#getTimeToLive()}, a
+ * token only needs to be remembered until it expires. Tokens are grouped into buckets by their timestamps and each
+ * bucket is discarded as a whole once every token in it has expired, so there is no per-token clean-up.
+ *
+ * <p>Each token is identified by the first 64 bits of its signature. Only valid tokens should be presented, so that
+ * the signature is authentic; see {@link OneTimeTokenValidator}. The guard is lock-free except when a bucket grows.
+ * Its contents can be saved with {@link #snapshot(Path)} and loaded again with {@link #restore(Path)} so that a
+ * restart does not allow tokens to be reused.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class ReplayGuard {
+
+    private final Clock clock;
+    private final long timeToLiveSeconds;
+    private final long maxClockSkewSeconds;
+    private final long bucketSeconds;
+    private final int initialBucketCapacity;
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    /**
+     * Remember tokens for as long as <em>validator</em> accepts them.
+     *
+     * @param validator
+     *            the validator of the one-time tokens
+     */
+    public ReplayGuard(final Validator<?> validator) {
+        this(toDuration(validator.getTimeToLive()), toDuration(validator.getMaxClockSkew()),
+                defaultReplayGuardBuckets, defaultReplayGuardBucketCapacity, validator.getClock());
+    }
+
+    /**
+     * @param timeToLive
+     *            how long tokens are valid
+     * @param maxClockSkew
+     *            how far in the future token timestamps may be
+     * @param bucketCount
+     *            the number of buckets across which to spread a token's lifetime, more buckets discard expired tokens
+     *            sooner
+     * @param initialBucketCapacity
+     *            the number of tokens each bucket can hold before it grows
+     * @param clock
+     *            the source of the current time, which should match the validator's
+     */
+    public ReplayGuard(final Duration timeToLive, final Duration maxClockSkew, final int bucketCount,
+            final int initialBucketCapacity, final Clock clock) {
+        if (timeToLive.isNegative() || maxClockSkew.isNegative()) {
+            throw new IllegalArgumentException("timeToLive and maxClockSkew cannot be negative");
+        }
+        if (bucketCount < 1) {
+            throw new IllegalArgumentException("bucketCount must be positive");
+        }
+        if (initialBucketCapacity < 1) {
+            throw new IllegalArgumentException("initialBucketCapacity must be positive");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.clock = clock;
+        this.timeToLiveSeconds = timeToLive.getSeconds() + (timeToLive.getNano() > 0 ? 1 : 0);
+        this.maxClockSkewSeconds = maxClockSkew.getSeconds() + (maxClockSkew.getNano() > 0 ? 1 : 0);
+        final long span = timeToLiveSeconds + maxClockSkewSeconds;
+        this.bucketSeconds = Math.max(1, (span + bucketCount - 1) / bucketCount);
+        this.initialBucketCapacity = Integer.highestOneBit(Math.max(initialBucketCapacity, 2) * 2 - 1);
+        // a bucket is reused only once all of its tokens have expired
+        this.buckets = new AtomicReferenceArray<>((int) ((span + bucketSeconds - 1) / bucketSeconds) + 2);
+    }
+
+    /**
+     * Record the use of a token.
+     *
+     * @param token
+     *            a token that has been validated
+     * @return true if this is the first time the token has been presented, false if it has been presented before or if
+     *         it is outside its validity period
+     */
+    public boolean tryAccept(final Token token) {
+        final Bucket bucket = getBucket(token.getTimestamp().getEpochSecond(), true);
+        return bucket != null && bucket.add(token.getFingerprint());
+    }
+
+    /**
+     * @param token
+     *            a token
+     * @return true if the token has been presented to {@link #tryAccept(Token)} and has not yet expired
+     */
+    public boolean hasSeen(final Token token) {
+        final Bucket bucket = getBucket(token.getTimestamp().getEpochSecond(), false);
+        return bucket != null && bucket.contains(token.getFingerprint());
+    }
+
+    /**
+     * @return the approximate number of unexpired tokens remembered
+     */
+    public long size() {
+        final long oldest = getOldestEpoch();
+        long retval = 0;
+        for (int i = buckets.length(); --i >= 0;) {
+            final Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.epoch >= oldest) {
+                retval += bucket.count.get();
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Save the unexpired tokens to a file, replacing it atomically. Tokens accepted while the snapshot is being taken
+     * may be left out.
+     *
+     * @param path
+     *            the file to write
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void snapshot(final Path path) throws IOException {
+        final long oldest = getOldestEpoch();
+        final Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(),
+                ".tmp");
+        try {
+            try (final DataOutputStream stream = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                stream.writeInt(replayGuardMagic);
+                stream.writeInt(replayGuardFormatVersion);
+                stream.writeLong(bucketSeconds);
+                for (int i = 0; i < buckets.length(); i++) {
+                    final Bucket bucket = buckets.get(i);
+                    if (bucket != null && bucket.epoch >= oldest) {
+                        stream.writeBoolean(true);
+                        stream.writeLong(bucket.epoch);
+                        // prevent the bucket from growing, which would hide fingerprints behind markers
+                        synchronized (bucket) {
+                            final AtomicLongArray slots = bucket.slots;
+                            for (int j = 0; j < slots.length(); j++) {
+                                final long fingerprint = slots.get(j);
+                                if (fingerprint != Bucket.empty) {
+                                    stream.writeLong(fingerprint);
+                                }
+                            }
+                        }
+                        stream.writeLong(Bucket.empty);
+                    }
+                }
+                stream.writeBoolean(false);
+            }
+            Files.move(temporary, path, ATOMIC_MOVE, REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Add the unexpired tokens from a snapshot to those already remembered.
+     *
+     * @param path
+     *            a file written by {@link #snapshot(Path)}
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws IllegalStateException
+     *             if the file is not a snapshot or was taken with a different bucket size
+     */
+    public void restore(final Path path) throws IOException {
+        try (final DataInputStream stream = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+            if (stream.readInt() != replayGuardMagic) {
+                throw new IllegalStateException("Not a replay guard snapshot");
+            }
+            final int version = stream.readInt();
+            if (version != replayGuardFormatVersion) {
+                throw new IllegalStateException("Unsupported replay guard snapshot format: " + version);
+            }
+            if (stream.readLong() != bucketSeconds) {
+                throw new IllegalStateException("Replay guard snapshot has a different bucket size");
+            }
+            while (stream.readBoolean()) {
+                final Bucket bucket = getBucketForEpoch(stream.readLong(), true);
+                for (long fingerprint = stream.readLong(); fingerprint != Bucket.empty;
+                        fingerprint = stream.readLong()) {
+                    if (bucket != null) {
+                        bucket.add(fingerprint);
+                    }
+                }
+            }
+        }
+    }
+
+    protected Bucket getBucket(final long timestamp, final boolean create) {
+        return getBucketForEpoch(Math.floorDiv(timestamp, bucketSeconds), create);
+    }
+
+    /**
+     * @return the bucket for <em>epoch</em>, or null if the epoch is outside the validity period or if the bucket does
+     *         not exist and <em>create</em> is false
+     */
+    protected Bucket getBucketForEpoch(final long epoch, final boolean create) {
+        if (epoch < getOldestEpoch() || epoch > getNewestEpoch()) {
+            return null;
+        }
+        final int index = (int) Math.floorMod(epoch, (long) buckets.length());
+        while (true) {
+            final Bucket current = buckets.get(index);
+            if (current != null && current.epoch >= epoch) {
+                return current.epoch == epoch ? current : null;
+            }
+            if (!create) {
+                return null;
+            }
+            // the previous occupant has expired, discard it wholesale
+            final Bucket replacement = new Bucket(epoch, initialBucketCapacity);
+            if (buckets.compareAndSet(index, current, replacement)) {
+                return replacement;
+            }
+        }
+    }
+
+    protected long getOldestEpoch() {
+        // allow one extra bucket so that tokens on the verge of expiry are still remembered
+        return Math.floorDiv(Instant.now(clock).getEpochSecond() - timeToLiveSeconds, bucketSeconds) - 1;
+    }
+
+    protected long getNewestEpoch() {
+        return Math.floorDiv(Instant.now(clock).getEpochSecond() + maxClockSkewSeconds, bucketSeconds);
+    }
+
+    protected static Duration toDuration(final TemporalAmount amount) {
+        return Duration.between(Instant.EPOCH, Instant.EPOCH.plus(amount));
+    }
+
+    /**
+     * The fingerprints of tokens whose timestamps fall in one interval, stored in an open-addressing hash set with
+     * linear probing. Fingerprints are added with compare-and-set. To grow, every slot of the old table is replaced
+     * with a marker so that concurrent additions retry against the new table.
+     */
+    protected static class Bucket {
+        // neither value is a valid fingerprint
+        static final long empty = 0L;
+        static final long moved = Long.MIN_VALUE;
+
+        final long epoch;
+        final AtomicInteger count = new AtomicInteger();
+        volatile AtomicLongArray slots;
+
+        Bucket(final long epoch, final int capacity) {
+            this.epoch = epoch;
+            this.slots = new AtomicLongArray(capacity);
+        }
+
+        /**
+         * @return true if and only if the fingerprint was not already present
+         */
+        boolean add(final long fingerprint) {
+            while (true) {
+                final AtomicLongArray table = slots;
+                final int mask = table.length() - 1;
+                for (int index = home(fingerprint, mask), probes = 0; probes <= mask;) {
+                    final long existing = table.get(index);
+                    if (existing == fingerprint) {
+                        return false;
+                    } else if (existing == moved) {
+                        awaitResize(table);
+                        break;
+                    } else if (existing == empty) {
+                        if (!table.compareAndSet(index, empty, fingerprint)) {
+                            // another thread claimed the slot, examine it again
+                            continue;
+                        }
+                        if (count.incrementAndGet() * 2 > table.length()) {
+                            resize(table);
+                        }
+                        return true;
+                    } else {
+                        index = (index + 1) & mask;
+                        probes++;
+                    }
+                }
+                if (slots == table) {
+                    resize(table);
+                }
+            }
+        }
+
+        boolean contains(final long fingerprint) {
+            while (true) {
+                final AtomicLongArray table = slots;
+                final int mask = table.length() - 1;
+                boolean retry = false;
+                for (int index = home(fingerprint, mask), probes = 0; probes <= mask; index = (index + 1) & mask,
+                        probes++) {
+                    final long existing = table.get(index);
+                    if (existing == fingerprint) {
+                        return true;
+                    } else if (existing == empty) {
+                        return false;
+                    } else if (existing == moved) {
+                        awaitResize(table);
+                        retry = true;
+                        break;
+                    }
+                }
+                if (!retry) {
+                    return false;
+                }
+            }
+        }
+
+        synchronized void resize(final AtomicLongArray table) {
+            if (slots != table) {
+                return;
+            }
+            final AtomicLongArray replacement = new AtomicLongArray(table.length() * 2);
+            final int mask = replacement.length() - 1;
+            int copied = 0;
+            for (int i = 0; i < table.length(); i++) {
+                final long fingerprint = table.getAndSet(i, moved);
+                if (fingerprint != empty) {
+                    int index = home(fingerprint, mask);
+                    while (replacement.get(index) != empty) {
+                        index = (index + 1) & mask;
+                    }
+                    replacement.set(index, fingerprint);
+                    copied++;
+                }
+            }
+            count.set(copied);
+            slots = replacement;
+        }
+
+        void awaitResize(final AtomicLongArray table) {
+            // the marker is only visible while the table is being resized, which holds the monitor
+            synchronized (this) {
+                assert slots != table;
+            }
+        }
+
+        static int home(final long fingerprint, final int mask) {
+            return (int) ((fingerprint * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.macasaet.fernet;
+
+/**
+ * The tokens that have been revoked before the end of their time-to-live, for example because the user logged out or
+ * the session was compromised. Supply an implementation by overriding {@link Validator#getRevocationList()}.
+ * {@link InMemoryRevocationList} is a ready-made implementation.
+ *
+ * <p>The list is consulted on every validation after the token's signature has been verified, so implementations
+ * must be thread-safe and should answer from memory rather than consulting an external store.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@FunctionalInterface
+public interface RevocationList {
+
+    /**
+     * A list that revokes nothing.
+     */
+    RevocationList NONE = token -> false;
+
+    /**
+     * @param token
+     *            a token whose signature is valid
+     * @return true if and only if the token has been revoked
+     */
+    boolean isRevoked(Token token);
+
+}
@@ -0,0 +1,42 @@
+package com.macasaet.fernet;
+
+/**
+ * The SHA-256 compression function applied to {@link Constants#hmacLanes} independent states at once using SIMD
+ * instructions. The Vector API is not available before Java 17, so this implementation never is; the
+ * <code>META-INF/versions/17</code> layer of the JAR replaces it with one that uses the
+ * <code>jdk.incubator.vector</code> module when the JVM is started with
+ * <code>--add-modules jdk.incubator.vector</code>.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ * @see HmacSha256Lanes
+ */
+final class Sha256Vectors {
+
+    private Sha256Vectors() {
+    }
+
+    /**
+     * @return true if and only if {@link #compress(int[], int[], int)} may be invoked
+     */
+    static boolean isAvailable() {
+        return false;
+    }
+
+    /**
+     * Apply the SHA-256 compression function to one 64-byte block in each of the active lanes.
+     *
+     * @param state
+     *            the eight hash words of every lane, word-major, i.e. word <em>w</em> of lane <em>l</em> is at
+     *            <code>w * hmacLanes + l</code>
+     * @param block
+     *            the sixteen message words of every lane, word-major
+     * @param activeLanes
+     *            a bit mask of the lanes to update, the state of the other lanes is left unchanged
+     */
+    static void compress(final int[] state, final int[] block, final int activeLanes) {
+        throw new UnsupportedOperationException("The Vector API requires Java 17 or higher");
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.macasaet.fernet;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link Validator} for multi-tenant applications in which each tenant's tokens are generated with that tenant's own
+ * key, derived by a {@link KeyDerivation}. The caller supplies the tenant identifier, for example from the request's
+ * host name or path, and the validator resolves the key.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @param <T> the type of the payload
+ * @author Carlos Macasaet
+ */
+public interface TenantValidator<T> extends Validator<T> {
+
+    /**
+     * @return the source of each tenant's key
+     */
+    KeyDerivation getKeyDerivation();
+
+    /**
+     * Check the validity of a tenant's token then decrypt and deserialise the payload.
+     *
+     * @param tenantId the tenant to which the token was issued
+     * @param token the client-provided token of unknown validity
+     * @return the deserialised contents of the token
+     * @throws TokenValidationException if the token is invalid or was issued to a different tenant
+     */
+    default T validateAndDecrypt(final String tenantId, final Token token) throws TokenValidationException {
+        return validateAndDecrypt(getKeyDerivation().deriveKey(tenantId), token);
+    }
+
+    /**
+     * Check the validity of a tenant's token without blocking the calling thread. The key is resolved and the token is
+     * decrypted on {@link #getExecutor()}, then the payload is deserialised on {@link #getTransformerExecutor()}.
+     *
+     * @param tenantId the tenant to which the token was issued
+     * @param token the client-provided token of unknown validity
+     * @param timeout
+     *            the maximum time to wait for the result, after which the future completes with a
+     *            {@link java.util.concurrent.TimeoutException} and any work that has not started is skipped
+     * @return the deserialised contents of the token, or a {@link TokenValidationException} if the token is invalid
+     */
+    default CompletableFuture<T> validateAndDecryptAsync(final String tenantId, final Token token,
+            final Duration timeout) {
+        return TokenExecutors.supplyAsync(() -> decryptPayload(getKeyDerivation().deriveKey(tenantId), token),
+                getExecutor(), this::transformPayload, getTransformerExecutor(), timeout);
+    }
+
+}
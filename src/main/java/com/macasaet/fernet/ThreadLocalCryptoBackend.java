@@ -0,0 +1,76 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.encryptionAlgorithm;
+import static com.macasaet.fernet.Constants.signingAlgorithm;
+
+import java.security.Provider;
+import java.security.Security;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A {@link CryptoBackend} that keeps one keyed HMAC instance and one AES cipher per thread for each {@link Key}. For
+ * small tokens, most of the cost of a JCA operation is the per-call overhead of looking up the provider, creating the
+ * engine and scheduling the key rather than the cryptography itself. Reusing the per-thread contexts avoids all three.
+ *
+ * <p>This works with any JCA provider, including those that delegate to a native library such as OpenSSL or AWS-LC.
+ * Use {@link #withPreferredProvider(String...)} to use such a provider when it is installed and fall back to the
+ * default providers otherwise.</p>
+ *
+ * <p>The contexts are held in a single {@link ThreadLocal} cache, so each thread retains a few small objects for each of
+ * the {@link Constants#threadLocalEnginesPerThread} keys it used most recently. This is best suited to fixed-size
+ * thread pools and to applications in which most requests use a small working set of keys.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class ThreadLocalCryptoBackend extends JcaCryptoBackend {
+
+    /**
+     * Use the most preferred installed provider for each algorithm.
+     */
+    public ThreadLocalCryptoBackend() {
+        this((Provider) null);
+    }
+
+    /**
+     * @param provider
+     *            the provider to use for all operations or null to use the most preferred installed provider
+     */
+    public ThreadLocalCryptoBackend(final Provider provider) {
+        super(provider);
+    }
+
+    /**
+     * @param providerNames
+     *            the names of the providers to use, in order of preference, e.g. "AmazonCorrettoCryptoProvider"
+     * @return a backend that uses the first of the named providers that is installed or the most preferred installed
+     *         provider if none of them are installed
+     */
+    public static ThreadLocalCryptoBackend withPreferredProvider(final String... providerNames) {
+        for (final String providerName : providerNames) {
+            final Provider provider = Security.getProvider(providerName);
+            if (provider != null) {
+                return new ThreadLocalCryptoBackend(provider);
+            }
+        }
+        return new ThreadLocalCryptoBackend();
+    }
+
+    public CryptoEngine createEngine(final byte[] signingKey, final byte[] encryptionKey) {
+        return new ThreadLocalCryptoEngine(getProvider(), new SecretKeySpec(signingKey, signingAlgorithm),
+                new SecretKeySpec(encryptionKey, encryptionAlgorithm));
+    }
+
+    public CryptoEngine createEngine(final SecretKeySpec signingKeySpec, final SecretKeySpec encryptionKeySpec,
+            final String cipherTransformation) {
+        return new ThreadLocalCryptoEngine(getProvider(), signingKeySpec, encryptionKeySpec, cipherTransformation);
+    }
+
+    public String toString() {
+        return "ThreadLocalCryptoBackend [provider=" + (getProvider() == null ? "default" : getProvider().getName())
+                + "]";
+    }
+
+}
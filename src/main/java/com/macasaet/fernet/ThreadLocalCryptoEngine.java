@@ -0,0 +1,112 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.threadLocalEnginesPerThread;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The {@link CryptoEngine} created by {@link ThreadLocalCryptoBackend}. The cipher is re-initialised with a new
+ * initialisation vector on every operation, but since the key does not change, providers can skip the key schedule.
+ * The HMAC instance resets itself after each signature.
+ *
+ * <p>All engines share a single {@link ThreadLocal} cache, so the number of thread-local variables does not grow with
+ * the number of keys. Each thread retains the instances of the {@link Constants#threadLocalEnginesPerThread} engines
+ * it used most recently; the instances of other engines are recreated on demand. This bounds the memory used when
+ * there are many keys, e.g. one per tenant.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+class ThreadLocalCryptoEngine extends JcaCryptoEngine {
+
+    private static final ThreadLocal<ContextCache> contextCaches = ThreadLocal.withInitial(ContextCache::new);
+
+    /**
+     * @param provider the provider to use for all operations or null to use the most preferred installed provider
+     * @param signingKeySpec the HMAC SHA-256 key
+     * @param encryptionKeySpec the AES key
+     */
+    ThreadLocalCryptoEngine(final Provider provider, final SecretKeySpec signingKeySpec,
+            final SecretKeySpec encryptionKeySpec) {
+        super(provider, signingKeySpec, encryptionKeySpec);
+    }
+
+    /**
+     * @param provider the provider to use for all operations or null to use the most preferred installed provider
+     * @param signingKeySpec the HMAC key, whose algorithm is the MAC algorithm to use
+     * @param encryptionKeySpec the cipher key
+     * @param cipherTransformation the transformation to use for encryption and decryption
+     */
+    ThreadLocalCryptoEngine(final Provider provider, final SecretKeySpec signingKeySpec,
+            final SecretKeySpec encryptionKeySpec, final String cipherTransformation) {
+        super(provider, signingKeySpec, encryptionKeySpec, cipherTransformation);
+    }
+
+    Cipher createCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        final Contexts contexts = getContexts();
+        if (contexts.cipher == null) {
+            contexts.cipher = super.createCipher();
+        }
+        return contexts.cipher;
+    }
+
+    Mac createSigningMac() {
+        final Contexts contexts = getContexts();
+        if (contexts.signingMac == null) {
+            contexts.signingMac = initialiseSigningMac();
+        }
+        return contexts.signingMac;
+    }
+
+    /**
+     * @return the number of engines for which the current thread retains instances, for testing
+     */
+    static int getCachedEngineCount() {
+        return contextCaches.get().size();
+    }
+
+    private Contexts getContexts() {
+        final ContextCache cache = contextCaches.get();
+        Contexts retval = cache.get(this);
+        if (retval == null) {
+            retval = new Contexts();
+            cache.put(this, retval);
+        }
+        return retval;
+    }
+
+    /**
+     * The instances that one thread uses with one engine.
+     */
+    private static final class Contexts {
+        Cipher cipher;
+        Mac signingMac;
+    }
+
+    /**
+     * The per-thread instances of the most recently used engines, in access order.
+     */
+    private static final class ContextCache extends LinkedHashMap<ThreadLocalCryptoEngine, Contexts> {
+
+        private static final long serialVersionUID = -3178262337613428426L;
+
+        ContextCache() {
+            super(16, 0.75f, true);
+        }
+
+        protected boolean removeEldestEntry(final Entry<ThreadLocalCryptoEngine, Contexts> eldest) {
+            return size() > threadLocalEnginesPerThread;
+        }
+
+    }
+
+}
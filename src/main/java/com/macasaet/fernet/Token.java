@@ -1,30 +1,39 @@
 package com.macasaet.fernet;
 
 import static com.macasaet.fernet.Constants.charset;
-import static com.macasaet.fernet.Constants.cipherTextBlockSize;
 import static com.macasaet.fernet.Constants.decoder;
 import static com.macasaet.fernet.Constants.encoder;
+import static com.macasaet.fernet.Constants.hmacLanes;
 import static com.macasaet.fernet.Constants.initializationVectorBytes;
-import static com.macasaet.fernet.Constants.minimumTokenBytes;
-import static com.macasaet.fernet.Constants.signatureBytes;
 import static com.macasaet.fernet.Constants.supportedVersion;
-import static com.macasaet.fernet.Constants.tokenStaticBytes;
+import static com.macasaet.fernet.Constants.tokenHeaderBytes;
+import static java.util.Arrays.copyOf;
+import static java.util.Arrays.copyOfRange;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64.Encoder;
 import java.util.Collection;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.crypto.spec.IvParameterSpec;
 
+import com.macasaet.fernet.FernetMetrics.FailureReason;
+import com.macasaet.fernet.FernetMetrics.Stage;
+
 /**
  * A Fernet token.
  *
@@ -35,29 +44,44 @@ import javax.crypto.spec.IvParameterSpec;
 public class Token {
 
     private final byte version;
+    private final TokenFormat format;
     private final Instant timestamp;
     private final IvParameterSpec initializationVector;
     private final byte[] cipherText;
     private final byte[] hmac;
+    private volatile byte[] signedBytes;
+    private volatile AuthenticatedPayload authenticatedPayload;
 
+    /**
+     * @param version
+     *            the token version, this determines the {@link TokenFormat}
+     * @param timestamp
+     *            the time the token was generated
+     * @param initializationVector
+     *            the initialisation vector or nonce used to encrypt the payload
+     * @param cipherText
+     *            the encrypted payload
+     * @param hmac
+     *            the HMAC signature, or the authentication tag for authenticated encryption formats
+     */
     protected Token(final byte version, final Instant timestamp, final IvParameterSpec initializationVector,
             final byte[] cipherText, final byte[] hmac) {
-        if (version != supportedVersion) {
-            throw new IllegalTokenException("Unsupported version: " + version);
-        }
+        final TokenFormat format = TokenFormat.forVersion(version);
         if (timestamp == null) {
             throw new IllegalTokenException("timestamp cannot be null");
         }
-        if (initializationVector == null || initializationVector.getIV().length != initializationVectorBytes) {
-            throw new IllegalTokenException("Initialization Vector must be 128 bits");
+        if (initializationVector == null || initializationVector.getIV().length != format.getNonceBytes()) {
+            throw new IllegalTokenException("Initialization Vector must be " + format.getNonceBytes() * 8 + " bits");
         }
-        if (cipherText == null || cipherText.length % cipherTextBlockSize != 0) {
-            throw new IllegalTokenException("Ciphertext must be a multiple of 128 bits");
+        if (cipherText == null || cipherText.length % format.getCipherTextBlockBytes() != 0) {
+            throw new IllegalTokenException(
+                    "Ciphertext must be a multiple of " + format.getCipherTextBlockBytes() * 8 + " bits");
         }
-        if (hmac == null || hmac.length != signatureBytes) {
-            throw new IllegalTokenException("hmac must be 256 bits");
+        if (hmac == null || hmac.length != format.getTagBytes()) {
+            throw new IllegalTokenException("hmac must be " + format.getTagBytes() * 8 + " bits");
         }
         this.version = version;
+        this.format = format;
         this.timestamp = timestamp;
         this.initializationVector = initializationVector;
         this.cipherText = cipherText;
@@ -65,30 +89,59 @@ public class Token {
     }
 
     protected static Token fromBytes(final byte[] bytes) throws IllegalTokenException {
-        if (bytes.length < minimumTokenBytes) {
+        final Token retval = fromBytes(bytes, 0, bytes.length);
+        // the serialised token begins with the signed bytes
+        retval.signedBytes = bytes;
+        return retval;
+    }
+
+    /**
+     * Deserialise a token from a region of a larger buffer. The token does not retain a reference to the buffer.
+     *
+     * @param bytes a buffer containing the binary representation of a token
+     * @param offset the position of the first byte of the token
+     * @param length the number of bytes in the token
+     * @return a new Token
+     * @throws IllegalTokenException if the region cannot be a valid token irrespective of key or timestamp
+     */
+    protected static Token fromBytes(final byte[] bytes, final int offset, final int length)
+            throws IllegalTokenException {
+        if (length < 1) {
             throw new IllegalTokenException("Not enough bits to generate a Token");
         }
-        try (final ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes)) {
-            final DataInputStream dataStream = new DataInputStream(inputStream);
-            final byte version = dataStream.readByte();
-            final long timestampSeconds = dataStream.readLong();
+        final TokenFormat format = TokenFormat.forVersion(bytes[offset]);
+        if (length < format.getMinimumTokenBytes()) {
+            throw new IllegalTokenException("Not enough bits to generate a Token");
+        }
+        // read the fields directly rather than through a ByteBuffer, which only avoids the heap if this is inlined
+        final byte version = bytes[offset];
+        long timestampSeconds = 0;
+        for (int i = offset + 1; i < offset + tokenHeaderBytes; i++) {
+            timestampSeconds = timestampSeconds << 8 | bytes[i] & 0xff;
+        }
 
-            final byte[] initializationVector = read(dataStream, initializationVectorBytes);
-            final byte[] cipherText = read(dataStream, bytes.length - tokenStaticBytes);
-            final byte[] hmac = read(dataStream, signatureBytes);
+        final int cipherTextStart = offset + tokenHeaderBytes + format.getNonceBytes();
+        final int tagStart = offset + length - format.getTagBytes();
+        final byte[] initializationVector = copyOfRange(bytes, offset + tokenHeaderBytes, cipherTextStart);
+        final byte[] cipherText = copyOfRange(bytes, cipherTextStart, tagStart);
+        final byte[] hmac = copyOfRange(bytes, tagStart, offset + length);
 
-            if (dataStream.read() != -1) {
-                throw new IllegalTokenException("more bits found");
-            }
-            return new Token(version, Instant.ofEpochSecond(timestampSeconds),
-                    new IvParameterSpec(initializationVector), cipherText, hmac);
-        } catch (final IOException ioe) {
-            // this should not happen as I/O is from memory and stream
-            // length is verified ahead of time
-            throw new RuntimeException(ioe.getMessage(), ioe);
-        }
+        return new Token(version, Instant.ofEpochSecond(timestampSeconds), new IvParameterSpec(initializationVector),
+                cipherText, hmac);
     }
 
+    /**
+     * @param stream
+     *            the source of the token bytes
+     * @param numBytes
+     *            the number of bytes to read
+     * @return the bytes read
+     * @throws IOException
+     *             if the stream cannot be read
+     * @deprecated tokens are parsed directly from their binary representation, see
+     *             {@link #fromBytes(byte[], int, int)}
+     */
+    @Deprecated
     protected static byte[] read(final DataInputStream stream, final int numBytes) throws IOException {
         final byte[] retval = new byte[numBytes];
         final int bytesRead = stream.read(retval);
@@ -108,7 +161,52 @@ public class Token {
      *             if the input string cannot be a valid token irrespective of key or timestamp
      */
     public static Token fromString(final String string) throws IllegalTokenException {
-        return fromBytes(decoder.decode(string));
+        final TokenEvent event = FlightRecorderEvents.beginParse();
+        if (event == TokenEvent.NONE) {
+            // keep the unrecorded path small so that it inlines into callers
+            return fromBytes(decoder.decode(string));
+        }
+        return fromString(string, event);
+    }
+
+    private static Token fromString(final String string, final TokenEvent event) throws IllegalTokenException {
+        try {
+            final Token retval = fromBytes(decoder.decode(string));
+            event.setFormat(retval.getFormat());
+            event.setTokenBytes(string.length());
+            event.succeed();
+            return retval;
+        } catch (final IllegalArgumentException iae) {
+            event.fail(FailureReason.MALFORMED);
+            throw iae;
+        }
+    }
+
+    /**
+     * Deserialise a Base64 URL Fernet token string and record the time taken, or the failure, with <em>metrics</em>.
+     * This does NOT validate that the token was generated using a valid {@link Key}.
+     *
+     * @param string
+     *            the Base 64 URL encoding of a token in the form Version | Timestamp | IV | Ciphertext | HMAC
+     * @param metrics
+     *            the listener to notify, typically {@link Validator#getMetrics()}
+     * @return a new Token
+     * @throws IllegalTokenException
+     *             if the input string cannot be a valid token irrespective of key or timestamp
+     */
+    public static Token fromString(final String string, final FernetMetrics metrics) throws IllegalTokenException {
+        final long start = metrics.isEnabled() ? System.nanoTime() : 0L;
+        try {
+            final Token retval = fromString(string);
+            if (metrics.isEnabled()) {
+                metrics.recordStage(Stage.DECODE, System.nanoTime() - start);
+            }
+            return retval;
+        } catch (final IllegalArgumentException iae) {
+            // IllegalTokenException and Base 64 decoding errors
+            metrics.recordFailure(FailureReason.MALFORMED);
+            throw iae;
+        }
     }
 
     /**
@@ -132,11 +230,119 @@ public class Token {
      * @return a unique Fernet token
      */
     public static Token generate(final Random random, final Key key, final byte[] payload) {
+        final TokenEvent event = FlightRecorderEvents.beginGeneration();
         final IvParameterSpec initializationVector = generateInitializationVector(random);
         final byte[] cipherText = key.encrypt(payload, initializationVector);
         final Instant timestamp = Instant.now();
         final byte[] hmac = key.sign(supportedVersion, timestamp, initializationVector, cipherText);
-        return new Token(supportedVersion, timestamp, initializationVector, cipherText, hmac);
+        final Token retval = new Token(supportedVersion, timestamp, initializationVector, cipherText, hmac);
+        event.setFormat(TokenFormat.FERNET);
+        event.setPayloadBytes(payload.length);
+        event.succeed();
+        return retval;
+    }
+
+    /**
+     * Convenience method to generate a new token in the specified format with a string payload.
+     *
+     * @param random a source of entropy for your application
+     * @param key the secret key for encrypting <em>plainText</em> and authenticating the token
+     * @param plainText the payload to embed in the token
+     * @param format the binary layout and cipher suite of the token
+     * @return a unique token
+     * @see TokenFormat
+     */
+    public static Token generate(final Random random, final Key key, final String plainText,
+            final TokenFormat format) {
+        return generate(random, key, plainText.getBytes(charset), format);
+    }
+
+    /**
+     * Generate a new token in the specified format. Only {@link TokenFormat#FERNET} tokens are interoperable with other
+     * Fernet implementations. Tokens in other formats will only be accepted by a {@link Validator} that includes the
+     * format in {@link Validator#getAcceptedFormats()}.
+     *
+     * @param random a source of entropy for your application
+     * @param key the secret key for encrypting <em>payload</em> and authenticating the token
+     * @param payload the unencrypted data to embed in the token
+     * @param format the binary layout and cipher suite of the token
+     * @return a unique token
+     * @see TokenFormat
+     */
+    public static Token generate(final Random random, final Key key, final byte[] payload,
+            final TokenFormat format) {
+        if (!format.isAuthenticatedEncryption()) {
+            return generate(random, key, payload);
+        }
+        final TokenEvent event = FlightRecorderEvents.beginGeneration();
+        final byte[] nonce = new byte[format.getNonceBytes()];
+        random.nextBytes(nonce);
+        final Instant timestamp = Instant.now();
+        final byte[] sealed = key.encrypt(format, nonce, createHeader(format.getVersion(), timestamp), payload);
+        final int cipherTextLength = sealed.length - format.getTagBytes();
+        final Token retval = new Token(format.getVersion(), timestamp, new IvParameterSpec(nonce),
+                copyOf(sealed, cipherTextLength), copyOfRange(sealed, cipherTextLength, sealed.length));
+        event.setFormat(format);
+        event.setPayloadBytes(payload.length);
+        event.succeed();
+        return retval;
+    }
+
+    /**
+     * Generate a new Fernet token on {@link TokenExecutors#getDefaultExecutor()}.
+     *
+     * @param random a source of entropy for your application, this must be thread-safe
+     * @param key the secret key for encrypting <em>payload</em> and signing the token
+     * @param payload the unencrypted data to embed in the token
+     * @param timeout the maximum time to wait for the token
+     * @return a unique Fernet token
+     */
+    public static CompletableFuture<Token> generateAsync(final Random random, final Key key, final byte[] payload,
+            final Duration timeout) {
+        return generateAsync(random, key, payload, TokenExecutors.getDefaultExecutor(), timeout);
+    }
+
+    /**
+     * Generate a new Fernet token without blocking the calling thread.
+     *
+     * @param random a source of entropy for your application, this must be thread-safe
+     * @param key the secret key for encrypting <em>payload</em> and signing the token
+     * @param payload the unencrypted data to embed in the token
+     * @param executor where to encrypt and sign the token
+     * @param timeout
+     *            the maximum time to wait for the token, after which the future completes with a
+     *            {@link java.util.concurrent.TimeoutException}
+     * @return a unique Fernet token
+     */
+    public static CompletableFuture<Token> generateAsync(final Random random, final Key key, final byte[] payload,
+            final Executor executor, final Duration timeout) {
+        return TokenExecutors.supplyAsync(() -> generate(random, key, payload), executor, timeout);
+    }
+
+    /**
+     * Generate several Fernet tokens at once. This is more efficient than invoking
+     * {@link #generate(Random, Key, byte[])} repeatedly because the payloads are encrypted together. All of the tokens
+     * share the same timestamp.
+     *
+     * @param random a source of entropy for your application
+     * @param key the secret key for encrypting the payloads and signing the tokens
+     * @param payloads the unencrypted data to embed in the tokens
+     * @return unique Fernet tokens in the same order as <em>payloads</em>
+     * @see Key#encrypt(List, List)
+     */
+    public static List<Token> generateBatch(final Random random, final Key key, final List<byte[]> payloads) {
+        final List<IvParameterSpec> initializationVectors = new ArrayList<>(payloads.size());
+        for (int i = payloads.size(); --i >= 0; initializationVectors.add(generateInitializationVector(random)));
+        final List<byte[]> cipherTexts = key.encrypt(payloads, initializationVectors);
+        final Instant timestamp = Instant.now();
+        final List<Token> retval = new ArrayList<>(payloads.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            final IvParameterSpec initializationVector = initializationVectors.get(i);
+            final byte[] cipherText = cipherTexts.get(i);
+            final byte[] hmac = key.sign(supportedVersion, timestamp, initializationVector, cipherText);
+            retval.add(new Token(supportedVersion, timestamp, initializationVector, cipherText, hmac));
+        }
+        return retval;
     }
 
     /**
@@ -164,18 +370,107 @@ public class Token {
         return validator.validateAndDecrypt(keys, this);
     }
 
+    /**
+     * Check the validity of this token without blocking the calling thread.
+     *
+     * @param key the secret key against which to validate the token
+     * @param validator an object that encapsulates the validation parameters (e.g. TTL) and executors
+     * @param timeout the maximum time to wait for the result
+     * @return the decrypted, deserialised payload of this token
+     * @see Validator#validateAndDecryptAsync(Key, Token, Duration)
+     */
+    public <T> CompletableFuture<T> validateAndDecryptAsync(final Key key, final Validator<T> validator,
+            final Duration timeout) {
+        return validator.validateAndDecryptAsync(key, this, timeout);
+    }
+
+    /**
+     * Check the validity of this token against a collection of keys without blocking the calling thread.
+     *
+     * @param keys the active keys which may have been used to generate token
+     * @param validator an object that encapsulates the validation parameters (e.g. TTL) and executors
+     * @param timeout the maximum time to wait for the result
+     * @return the decrypted, deserialised payload of this token
+     * @see Validator#validateAndDecryptAsync(Collection, Token, Duration)
+     */
+    public <T> CompletableFuture<T> validateAndDecryptAsync(final Collection<? extends Key> keys,
+            final Validator<T> validator, final Duration timeout) {
+        return validator.validateAndDecryptAsync(keys, this, timeout);
+    }
+
     protected byte[] validateAndDecrypt(final Key key, final Instant earliestValidInstant,
             final Instant latestValidInstant) throws TokenValidationException {
-        if (getVersion() != (byte) 0x80) {
-            throw new TokenValidationException("Invalid version");
-        } else if (!getTimestamp().isAfter(earliestValidInstant)) {
+        return validateAndDecrypt(key, earliestValidInstant, latestValidInstant, FernetMetrics.NONE);
+    }
+
+    protected byte[] validateAndDecrypt(final Key key, final Instant earliestValidInstant,
+            final Instant latestValidInstant, final FernetMetrics metrics) throws TokenValidationException {
+        return validateAndDecrypt(key, earliestValidInstant, latestValidInstant, metrics, RevocationList.NONE);
+    }
+
+    protected byte[] validateAndDecrypt(final Key key, final Instant earliestValidInstant,
+            final Instant latestValidInstant, final FernetMetrics metrics, final RevocationList revocationList)
+            throws TokenValidationException {
+        if (!getTimestamp().isAfter(earliestValidInstant)) {
+            metrics.recordFailure(FailureReason.EXPIRED);
             throw new TokenExpiredException("Token is expired");
         } else if (!getTimestamp().isBefore(latestValidInstant)) {
+            metrics.recordFailure(FailureReason.FUTURE_TIMESTAMP);
             throw new TokenValidationException("Token timestamp is in the future (clock skew).");
-        } else if (!isValidSignature(key)) {
-            throw new TokenValidationException("Signature does not match.");
         }
-        return key.decrypt(getCipherText(), getInitializationVector());
+        final TokenEvent event = FlightRecorderEvents.beginDecryption();
+        event.setFormat(getFormat());
+        if (!getFormat().isAuthenticatedEncryption()) {
+            final long signatureStart = metrics.isEnabled() ? System.nanoTime() : 0L;
+            final boolean isValidSignature = isValidSignature(key);
+            if (metrics.isEnabled()) {
+                metrics.recordStage(Stage.SIGNATURE, System.nanoTime() - signatureStart);
+            }
+            if (!isValidSignature) {
+                metrics.recordFailure(FailureReason.INVALID_SIGNATURE);
+                event.fail(FailureReason.INVALID_SIGNATURE);
+                throw new TokenValidationException("Signature does not match.");
+            }
+            // the fingerprint is genuine once the signature is verified, and revoked tokens need not be decrypted
+            checkRevocation(revocationList, metrics, event);
+        }
+        final long start = metrics.isEnabled() ? System.nanoTime() : 0L;
+        final byte[] retval;
+        try {
+            retval = getFormat().isAuthenticatedEncryption() ? takeAuthenticatedPayload(key)
+                    : key.decrypt(getCipherText(), getInitializationVector());
+        } catch (final TokenValidationException tve) {
+            // authenticated encryption formats verify the tag while decrypting
+            final FailureReason reason = getFormat().isAuthenticatedEncryption() ? FailureReason.INVALID_SIGNATURE
+                    : FailureReason.INVALID_PADDING;
+            metrics.recordFailure(reason);
+            event.fail(reason);
+            throw tve;
+        } finally {
+            if (metrics.isEnabled()) {
+                metrics.recordStage(Stage.DECRYPT, System.nanoTime() - start);
+            }
+        }
+        if (getFormat().isAuthenticatedEncryption()) {
+            // the tag, and so the fingerprint, is only verified by decrypting, so a forged token is reported as such
+            // rather than as revoked
+            checkRevocation(revocationList, metrics, event);
+        }
+        if (metrics.isEnabled()) {
+            metrics.recordPayloadSize(retval.length);
+        }
+        event.setPayloadBytes(retval.length);
+        event.succeed();
+        return retval;
+    }
+
+    protected void checkRevocation(final RevocationList revocationList, final FernetMetrics metrics,
+            final TokenEvent event) throws TokenValidationException {
+        if (revocationList.isRevoked(this)) {
+            metrics.recordFailure(FailureReason.REVOKED);
+            event.fail(FailureReason.REVOKED);
+            throw new TokenValidationException("Token has been revoked.");
+        }
     }
 
     /**
@@ -183,7 +478,7 @@ public class Token {
      */
     public String serialise() {
         try (final ByteArrayOutputStream byteStream = new ByteArrayOutputStream(
-                tokenStaticBytes + getCipherText().length)) {
+                getFormat().getStaticBytes() + getCipherText().length)) {
             writeTo(byteStream);
             return getEncoder().encodeToString(byteStream.toByteArray());
         } catch (final IOException e) {
@@ -217,6 +512,13 @@ public class Token {
         return version;
     }
 
+    /**
+     * @return the binary layout and cipher suite of this token
+     */
+    public TokenFormat getFormat() {
+        return format;
+    }
+
     /**
      * @return the time that this token was generated
      */
@@ -250,16 +552,151 @@ public class Token {
     }
 
     /**
-     * Recompute the HMAC signature of the token with the stored shared secret key.
+     * Recompute the HMAC signature of the token with the stored shared secret key. If the key's class overrides
+     * {@link Key#sign(byte, Instant, IvParameterSpec, byte[])}, the signature is computed with that method.
      *
      * @param key
      *            the shared secret key against which to validate the token
      * @return true if and only if the signature on the token was generated using the supplied key
      */
     public boolean isValidSignature(final Key key) {
-        final byte[] computedHmac = key.sign(getVersion(), getTimestamp(), getInitializationVector(),
-                getCipherText());
-        return Arrays.equals(getHmac(), computedHmac);
+        if (getFormat().isAuthenticatedEncryption()) {
+            // the authentication tag can only be verified by decrypting the payload
+            try {
+                // retained so that the payload is not decrypted again when the token is validated with this key
+                authenticatedPayload = new AuthenticatedPayload(key, decryptAuthenticated(key));
+                return true;
+            } catch (final TokenValidationException tve) {
+                return false;
+            }
+        }
+        if (key.overrides("sign")) {
+            final byte[] computedHmac = key.sign(getVersion(), getTimestamp(), getInitializationVector(),
+                    getCipherText());
+            return MessageDigest.isEqual(getHmac(), computedHmac);
+        }
+        return key.verify(getSignedBytes(), 0, getSignedBytesLength(), getHmac());
+    }
+
+    /**
+     * Recompute the HMAC signatures of several tokens with the same key. The result is identical to invoking
+     * {@link #isValidSignature(Key)} on each token. When the Vector API is available (see
+     * {@link HmacSha256Lanes#isVectorised()}), the signatures of up to {@link Constants#hmacLanes} tokens are computed
+     * together, which is considerably faster than computing them one at a time.
+     *
+     * @param key
+     *            the shared secret key against which to validate the tokens
+     * @param tokens
+     *            the client-provided tokens of unknown validity
+     * @return for each token, in the same order as <em>tokens</em>, true if and only if the token was signed using
+     *         <em>key</em>
+     */
+    public static boolean[] verifySignatures(final Key key, final List<? extends Token> tokens) {
+        final boolean[] retval = new boolean[tokens.size()];
+        if (!HmacSha256Lanes.isVectorised() || !key.isMultiBufferSigningSupported()) {
+            for (int i = 0; i < retval.length; i++) {
+                retval[i] = tokens.get(i).isValidSignature(key);
+            }
+            return retval;
+        }
+        final int[][] keyStates = new int[hmacLanes][];
+        Arrays.fill(keyStates, key.getHmacSha256State());
+        final byte[][] messages = new byte[hmacLanes][];
+        final int[] lengths = new int[hmacLanes];
+        final int[] indices = new int[hmacLanes];
+        int count = 0;
+        for (int i = 0; i < retval.length; i++) {
+            final Token token = tokens.get(i);
+            if (token.getFormat().isAuthenticatedEncryption() || token.getClass() != Token.class) {
+                retval[i] = token.isValidSignature(key);
+                continue;
+            }
+            messages[count] = token.getSignedBytes();
+            lengths[count] = token.getSignedBytesLength();
+            indices[count++] = i;
+            if (count == hmacLanes) {
+                verifyLanes(keyStates, messages, lengths, indices, count, tokens, retval);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            verifyLanes(keyStates, messages, lengths, indices, count, tokens, retval);
+        }
+        return retval;
+    }
+
+    private static void verifyLanes(final int[][] keyStates, final byte[][] messages, final int[] lengths,
+            final int[] indices, final int count, final List<? extends Token> tokens, final boolean[] results) {
+        final byte[][] signatures = HmacSha256Lanes.sign(keyStates, messages, lengths, count);
+        for (int lane = 0; lane < count; lane++) {
+            results[indices[lane]] = MessageDigest.isEqual(tokens.get(indices[lane]).getHmac(), signatures[lane]);
+        }
+    }
+
+    /**
+     * The signed portion of a token is in the form Version | Timestamp | IV | Ciphertext. It is computed at most once
+     * per token so that probing multiple keys does not repeatedly serialise the token.
+     *
+     * @return a buffer that begins with the signed portion of this token. It may contain additional data, only the
+     *         first {@link #getSignedBytesLength()} bytes are signed.
+     */
+    protected byte[] getSignedBytes() {
+        byte[] retval = signedBytes;
+        if (retval == null) {
+            retval = new byte[getSignedBytesLength()];
+            ByteBuffer.wrap(retval)
+                .put(getVersion())
+                .putLong(getTimestamp().getEpochSecond())
+                .put(getInitializationVector().getIV())
+                .put(getCipherText());
+            signedBytes = retval;
+        }
+        return retval;
+    }
+
+    /**
+     * @return the number of bytes in this token that are covered by the HMAC signature
+     */
+    protected int getSignedBytesLength() {
+        return tokenHeaderBytes + initializationVectorBytes + getCipherText().length;
+    }
+
+    /**
+     * Authenticate and decrypt a token that uses one of the authenticated encryption formats.
+     *
+     * @param key the shared secret key against which to validate the token
+     * @return the decrypted payload
+     * @throws TokenValidationException if the token was not generated using <em>key</em>
+     */
+    protected byte[] decryptAuthenticated(final Key key) throws TokenValidationException {
+        return key.decrypt(getFormat(), getInitializationVector().getIV(),
+                createHeader(getVersion(), getTimestamp()), getCipherText(), getHmac());
+    }
+
+    /**
+     * If {@link #isValidSignature(Key)} has already authenticated and decrypted the payload with <em>key</em>, e.g.
+     * while searching for the signing key, that payload is returned and no longer retained by this token.
+     *
+     * @param key the key that generated this token
+     * @return the decrypted payload
+     * @throws TokenValidationException if the token was not generated using <em>key</em> or has been tampered with
+     */
+    private byte[] takeAuthenticatedPayload(final Key key) throws TokenValidationException {
+        final AuthenticatedPayload cached = authenticatedPayload;
+        if (cached != null && cached.key == key) {
+            authenticatedPayload = null;
+            return cached.payload;
+        }
+        return decryptAuthenticated(key);
+    }
+
+    /**
+     * @param version the token version
+     * @param timestamp the time the token was generated
+     * @return the Version | Timestamp portion of a token, which authenticated encryption formats use as associated data
+     */
+    protected static byte[] createHeader(final byte version, final Instant timestamp) {
+        return ByteBuffer.allocate(tokenHeaderBytes).put(version).putLong(timestamp.getEpochSecond()).array();
     }
 
     protected Encoder getEncoder() {
@@ -271,10 +708,40 @@ public class Token {
     }
 
     /**
-     * @return the HMAC 256 signature of this token
+     * @return the HMAC 256 signature of this token, or the authentication tag for authenticated encryption formats
      */
     protected byte[] getHmac() {
         return hmac;
     }
 
-}
\ No newline at end of file
+    /**
+     * A compact identifier for a valid token, used to remember tokens without retaining them. It is only meaningful
+     * once the signature has been verified.
+     *
+     * @return the first 64 bits of the signature, never 0 or {@link Long#MIN_VALUE} so that those values can be used
+     *         as markers
+     */
+    protected long getFingerprint() {
+        long retval = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            retval = (retval << 8) | (hmac[i] & 0xFF);
+        }
+        return retval == 0L || retval == Long.MIN_VALUE ? 1L : retval;
+    }
+
+    /**
+     * A payload that has been authenticated and decrypted with a particular key.
+     */
+    private static final class AuthenticatedPayload {
+
+        private final Key key;
+        private final byte[] payload;
+
+        AuthenticatedPayload(final Key key, final byte[] payload) {
+            this.key = key;
+            this.payload = payload;
+        }
+
+    }
+
+}
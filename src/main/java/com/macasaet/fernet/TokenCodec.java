@@ -0,0 +1,229 @@
+package com.macasaet.fernet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bulk Base 64 URL encoding and decoding of Fernet tokens. This is intended for batch workloads (e.g. bulk validation,
+ * scanning token logs, or re-keying) in which many tokens are read from or written to a single newline-delimited
+ * ASCII buffer. All the tokens in a batch are decoded into a single contiguous arena rather than one array per token,
+ * and the alphabet is validated as the input is decoded. The output is compatible with {@link Token#fromString(String)}
+ * and {@link Token#serialise()}.
+ *
+ * <p>On Java 17 or higher, if the JVM is started with <code>--add-modules jdk.incubator.vector</code>, whole blocks of
+ * sixteen characters are encoded and decoded with SIMD instructions (see {@link Base64Vectors}). Otherwise, and for
+ * the remainder of each token, four characters are processed at a time.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class TokenCodec {
+
+    private static final byte[] alphabet =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(Constants.charset);
+    private static final int[] values = new int[256];
+    private static final byte padding = '=';
+    private static final byte lineFeed = '\n';
+    private static final byte carriageReturn = '\r';
+
+    static {
+        Arrays.fill(values, -1);
+        for (int i = alphabet.length; --i >= 0; values[alphabet[i]] = i);
+    }
+
+    /**
+     * Deserialise all the tokens in a buffer of newline-delimited Base 64 URL token strings. Blank lines are ignored.
+     * This does NOT validate that the tokens were generated using a valid {@link Key}.
+     *
+     * @param ascii
+     *            a buffer containing ASCII-encoded tokens separated by line feeds, optionally preceded by carriage returns
+     * @param offset
+     *            the position of the first character to read
+     * @param length
+     *            the number of characters to read
+     * @return the tokens in the order in which they appear in the buffer
+     * @throws IllegalTokenException
+     *             if any of the lines cannot be a valid token irrespective of key or timestamp
+     */
+    public static List<Token> decodeAll(final byte[] ascii, final int offset, final int length)
+            throws IllegalTokenException {
+        final int end = offset + length;
+        final byte[] arena = new byte[length / 4 * 3 + 3];
+        final List<int[]> ranges = new ArrayList<>();
+        int arenaPosition = 0;
+        for (int lineStart = offset; lineStart < end;) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && ascii[lineEnd] != lineFeed) {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && ascii[contentEnd - 1] == carriageReturn) {
+                contentEnd--;
+            }
+            if (contentEnd > lineStart) {
+                final int decoded = decode(ascii, lineStart, contentEnd - lineStart, arena, arenaPosition);
+                ranges.add(new int[] {arenaPosition, decoded});
+                arenaPosition += decoded;
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (ranges.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<Token> retval = new ArrayList<>(ranges.size());
+        for (final int[] range : ranges) {
+            retval.add(Token.fromBytes(arena, range[0], range[1]));
+        }
+        return retval;
+    }
+
+    /**
+     * Serialise several tokens into a single buffer of newline-delimited Base 64 URL token strings.
+     *
+     * @param tokens
+     *            the tokens to serialise
+     * @return ASCII-encoded tokens, each followed by a line feed
+     */
+    public static byte[] encodeAll(final List<? extends Token> tokens) {
+        int asciiLength = 0;
+        int maxTokenBytes = 0;
+        for (final Token token : tokens) {
+            final int tokenBytes = token.getFormat().getStaticBytes() + token.getCipherText().length;
+            asciiLength += getEncodedLength(tokenBytes) + 1;
+            maxTokenBytes = Math.max(maxTokenBytes, tokenBytes);
+        }
+        final byte[] retval = new byte[asciiLength];
+        final byte[] scratch = new byte[maxTokenBytes];
+        int position = 0;
+        for (final Token token : tokens) {
+            final ByteBuffer buffer = ByteBuffer.wrap(scratch)
+                .put(token.getVersion())
+                .putLong(token.getTimestamp().getEpochSecond())
+                .put(token.getInitializationVector().getIV())
+                .put(token.getCipherText())
+                .put(token.getHmac());
+            position += encode(scratch, 0, buffer.position(), retval, position);
+            retval[position++] = lineFeed;
+        }
+        return retval;
+    }
+
+    /**
+     * Decode a region of Base 64 URL characters. Trailing padding characters are optional.
+     *
+     * @param source
+     *            the ASCII-encoded input
+     * @param sourceOffset
+     *            the position of the first character to decode
+     * @param sourceLength
+     *            the number of characters to decode, including padding
+     * @param destination
+     *            the buffer to write the decoded bytes into
+     * @param destinationOffset
+     *            the position in <em>destination</em> to write the first byte
+     * @return the number of bytes written
+     * @throws IllegalTokenException
+     *             if the input contains characters outside the Base 64 URL alphabet or is not a valid length
+     */
+    protected static int decode(final byte[] source, final int sourceOffset, final int sourceLength,
+            final byte[] destination, final int destinationOffset) throws IllegalTokenException {
+        int dataLength = sourceLength;
+        while (dataLength > 0 && sourceLength - dataLength < 2 && source[sourceOffset + dataLength - 1] == padding) {
+            dataLength--;
+        }
+        final int remainder = dataLength & 3;
+        if (remainder == 1 || (dataLength != sourceLength && (sourceLength & 3) != 0)) {
+            throw new IllegalTokenException("Invalid Base 64 URL length: " + sourceLength);
+        }
+        final int fullEnd = sourceOffset + dataLength - remainder;
+        final int vectorised = Base64Vectors.decode(source, sourceOffset, fullEnd, destination, destinationOffset);
+        int s = sourceOffset + vectorised;
+        int d = destinationOffset + vectorised / 4 * 3;
+        while (s < fullEnd) {
+            final int a = values[source[s] & 0xff];
+            final int b = values[source[s + 1] & 0xff];
+            final int c = values[source[s + 2] & 0xff];
+            final int e = values[source[s + 3] & 0xff];
+            // any invalid character will set the sign bit
+            if ((a | b | c | e) < 0) {
+                throw new IllegalTokenException("Illegal Base 64 URL character near offset " + s);
+            }
+            final int bits = a << 18 | b << 12 | c << 6 | e;
+            destination[d] = (byte) (bits >> 16);
+            destination[d + 1] = (byte) (bits >> 8);
+            destination[d + 2] = (byte) bits;
+            s += 4;
+            d += 3;
+        }
+        if (remainder != 0) {
+            final int a = values[source[s] & 0xff];
+            final int b = values[source[s + 1] & 0xff];
+            final int c = remainder == 3 ? values[source[s + 2] & 0xff] : 0;
+            if ((a | b | c) < 0) {
+                throw new IllegalTokenException("Illegal Base 64 URL character near offset " + s);
+            }
+            final int bits = a << 18 | b << 12 | c << 6;
+            destination[d++] = (byte) (bits >> 16);
+            if (remainder == 3) {
+                destination[d++] = (byte) (bits >> 8);
+            }
+        }
+        return d - destinationOffset;
+    }
+
+    /**
+     * Encode a region of binary data as padded Base 64 URL characters.
+     *
+     * @param source
+     *            the binary input
+     * @param sourceOffset
+     *            the position of the first byte to encode
+     * @param sourceLength
+     *            the number of bytes to encode
+     * @param destination
+     *            the buffer to write the ASCII characters into
+     * @param destinationOffset
+     *            the position in <em>destination</em> to write the first character
+     * @return the number of characters written
+     */
+    protected static int encode(final byte[] source, final int sourceOffset, final int sourceLength,
+            final byte[] destination, final int destinationOffset) {
+        final int vectorised = Base64Vectors.encode(source, sourceOffset, sourceOffset + sourceLength, destination,
+                destinationOffset);
+        int s = sourceOffset + vectorised;
+        int d = destinationOffset + vectorised / 3 * 4;
+        final int fullEnd = sourceOffset + sourceLength / 3 * 3;
+        while (s < fullEnd) {
+            final int bits = (source[s] & 0xff) << 16 | (source[s + 1] & 0xff) << 8 | (source[s + 2] & 0xff);
+            destination[d] = alphabet[bits >>> 18];
+            destination[d + 1] = alphabet[(bits >>> 12) & 0x3f];
+            destination[d + 2] = alphabet[(bits >>> 6) & 0x3f];
+            destination[d + 3] = alphabet[bits & 0x3f];
+            s += 3;
+            d += 4;
+        }
+        final int remainder = sourceOffset + sourceLength - s;
+        if (remainder != 0) {
+            final int bits = (source[s] & 0xff) << 16 | (remainder == 2 ? (source[s + 1] & 0xff) << 8 : 0);
+            destination[d] = alphabet[bits >>> 18];
+            destination[d + 1] = alphabet[(bits >>> 12) & 0x3f];
+            destination[d + 2] = remainder == 2 ? alphabet[(bits >>> 6) & 0x3f] : padding;
+            destination[d + 3] = padding;
+            d += 4;
+        }
+        return d - destinationOffset;
+    }
+
+    /**
+     * @param binaryLength the number of bytes to encode
+     * @return the number of padded Base 64 characters required
+     */
+    protected static int getEncodedLength(final int binaryLength) {
+        return (binaryLength + 2) / 3 * 4;
+    }
+
+}
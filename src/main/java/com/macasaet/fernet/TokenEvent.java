@@ -0,0 +1,67 @@
+package com.macasaet.fernet;
+
+import com.macasaet.fernet.FernetMetrics.FailureReason;
+
+/**
+ * A token operation that is in progress and may be reported to the JDK Flight Recorder. Instances are obtained from
+ * {@link FlightRecorderEvents}, which returns {@link #NONE} unless a recording has enabled the corresponding event.
+ * Each method only applies to the event types that carry the attribute, so callers need not know which type they
+ * hold.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+interface TokenEvent {
+
+    /**
+     * An operation that is not being recorded.
+     */
+    TokenEvent NONE = new TokenEvent() {
+    };
+
+    /**
+     * @param format the format of the token being generated, parsed or decrypted
+     */
+    default void setFormat(final TokenFormat format) {
+    }
+
+    /**
+     * @param bytes the size of the serialised token
+     */
+    default void setTokenBytes(final int bytes) {
+    }
+
+    /**
+     * @param bytes the size of the unencrypted payload
+     */
+    default void setPayloadBytes(final int bytes) {
+    }
+
+    /**
+     * @param keyCount the number of candidate keys
+     */
+    default void setKeyCount(final int keyCount) {
+    }
+
+    /**
+     * Note that one more key's signature was checked. This may be invoked concurrently.
+     */
+    default void keyTried() {
+    }
+
+    /**
+     * Report the operation as successful, if it exceeds the recording's threshold.
+     */
+    default void succeed() {
+    }
+
+    /**
+     * Report the operation as failed, if it exceeds the recording's threshold.
+     *
+     * @param reason the cause of the failure
+     */
+    default void fail(final FailureReason reason) {
+    }
+
+}
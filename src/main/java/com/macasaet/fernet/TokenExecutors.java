@@ -0,0 +1,219 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.asyncQueueCapacityPerThread;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Executors for the asynchronous token operations, such as {@link Token#generateAsync(java.util.Random, Key, byte[],
+ * Duration)} and {@link Validator#validateAndDecryptAsync(Key, Token, Duration)}. Generating and validating tokens is
+ * CPU-bound, so it should be done on a bounded number of threads, separately from any blocking work, such as a
+ * {@link Validator#getTransformer()} that queries a data store.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class TokenExecutors {
+
+    private static final AtomicInteger threadSequence = new AtomicInteger();
+
+    private TokenExecutors() {
+    }
+
+    /**
+     * The default executor has one thread per processor and rejects tasks once 256 per thread are waiting. Its threads
+     * are daemon threads, so it need not be shut down.
+     *
+     * @return the executor shared by every {@link Validator} that does not override {@link Validator#getExecutor()}
+     */
+    public static Executor getDefaultExecutor() {
+        return DefaultExecutorHolder.executor;
+    }
+
+    /**
+     * @param threads
+     *            the number of threads, which should not exceed the number of processors
+     * @param queueCapacity
+     *            the number of tasks that may wait for a thread, further tasks are rejected and their futures complete
+     *            with a {@link RejectedExecutionException}
+     * @return a new executor with daemon threads, which the caller is responsible for shutting down
+     */
+    public static ExecutorService newBoundedExecutor(final int threads, final int queueCapacity) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), daemonThreads("fernet-crypto-"));
+    }
+
+    /**
+     * @return true if and only if this runtime supports virtual threads (Java 21 or higher)
+     */
+    public static boolean isVirtualThreadAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (final NoSuchMethodException nsme) {
+            return false;
+        }
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for each task. This is suited to a
+     * {@link Validator#getTransformerExecutor()} that blocks. Avoid blocking inside <code>synchronized</code> blocks in
+     * the transformer, as that pins the virtual thread to its carrier thread.
+     *
+     * @return a new executor, which the caller is responsible for shutting down
+     * @throws UnsupportedOperationException
+     *             if this runtime does not support virtual threads
+     * @see #isVirtualThreadAvailable()
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (final NoSuchMethodException nsme) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or higher", nsme);
+        } catch (final ReflectiveOperationException roe) {
+            // this should not happen
+            throw new RuntimeException(roe.getMessage(), roe);
+        }
+    }
+
+    /**
+     * Run a CPU-bound step and then a possibly blocking step, each on its own executor, subject to a deadline.
+     *
+     * @param first
+     *            the first step
+     * @param firstExecutor
+     *            where to run the first step
+     * @param second
+     *            the second step, which receives the result of the first
+     * @param secondExecutor
+     *            where to run the second step
+     * @param timeout
+     *            the maximum time to wait for both steps
+     * @return the result of the second step
+     */
+    static <I, O> CompletableFuture<O> supplyAsync(final Supplier<I> first, final Executor firstExecutor,
+            final Function<I, O> second, final Executor secondExecutor, final Duration timeout) {
+        final CompletableFuture<O> retval = withDeadline(new CompletableFuture<>(), timeout);
+        execute(firstExecutor, retval, () -> {
+            final I intermediate = first.get();
+            if (firstExecutor == secondExecutor) {
+                retval.complete(second.apply(intermediate));
+            } else {
+                execute(secondExecutor, retval, () -> retval.complete(second.apply(intermediate)));
+            }
+        });
+        return retval;
+    }
+
+    /**
+     * @param supplier
+     *            the work to do
+     * @param executor
+     *            where to do it
+     * @param timeout
+     *            the maximum time to wait for the result
+     * @return the result of <em>supplier</em>
+     */
+    static <O> CompletableFuture<O> supplyAsync(final Supplier<O> supplier, final Executor executor,
+            final Duration timeout) {
+        final CompletableFuture<O> retval = withDeadline(new CompletableFuture<>(), timeout);
+        execute(executor, retval, () -> retval.complete(supplier.get()));
+        return retval;
+    }
+
+    /**
+     * Run a task unless <em>future</em> has already completed, for example because its deadline passed while the task
+     * was queued. Any exception, including rejection by the executor, completes <em>future</em>.
+     */
+    protected static void execute(final Executor executor, final CompletableFuture<?> future, final Runnable task) {
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (final RuntimeException | Error e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (final RejectedExecutionException ree) {
+            future.completeExceptionally(ree);
+        }
+    }
+
+    /**
+     * @param future
+     *            the result of an asynchronous operation
+     * @param timeout
+     *            the maximum time to wait for the result
+     * @return <em>future</em>, which will be completed with a {@link TimeoutException} if it is not otherwise completed
+     *         in time
+     */
+    protected static <O> CompletableFuture<O> withDeadline(final CompletableFuture<O> future, final Duration timeout) {
+        if (timeout == null || timeout.isNegative()) {
+            throw new IllegalArgumentException("timeout must be non-negative");
+        }
+        final ScheduledFuture<?> expiry = SchedulerHolder.scheduler.schedule(
+                () -> future.completeExceptionally(new TimeoutException("Token operation timed out after " + timeout)),
+                timeout.toNanos(), TimeUnit.NANOSECONDS);
+        future.whenComplete((result, throwable) -> expiry.cancel(false));
+        return future;
+    }
+
+    protected static ThreadFactory daemonThreads(final String prefix) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, prefix + threadSequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Defers creating the default executor until it is first needed.
+     */
+    private static class DefaultExecutorHolder {
+        static final Executor executor;
+
+        static {
+            final int threads = Runtime.getRuntime().availableProcessors();
+            executor = newBoundedExecutor(threads, threads * asyncQueueCapacityPerThread);
+        }
+    }
+
+    /**
+     * Defers creating the thread that enforces deadlines until it is first needed.
+     */
+    private static class SchedulerHolder {
+        static final ScheduledThreadPoolExecutor scheduler;
+
+        static {
+            scheduler = new ScheduledThreadPoolExecutor(1, daemonThreads("fernet-deadline-"));
+            scheduler.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.aesGcmKeyBytes;
+import static com.macasaet.fernet.Constants.aesGcmNonceBytes;
+import static com.macasaet.fernet.Constants.aesGcmTagBytes;
+import static com.macasaet.fernet.Constants.aesGcmTransformation;
+import static com.macasaet.fernet.Constants.aesGcmVersion;
+import static com.macasaet.fernet.Constants.chaCha20KeyAlgorithm;
+import static com.macasaet.fernet.Constants.chaCha20KeyBytes;
+import static com.macasaet.fernet.Constants.chaCha20Poly1305NonceBytes;
+import static com.macasaet.fernet.Constants.chaCha20Poly1305TagBytes;
+import static com.macasaet.fernet.Constants.chaCha20Poly1305Transformation;
+import static com.macasaet.fernet.Constants.chaCha20Poly1305Version;
+import static com.macasaet.fernet.Constants.cipherTextBlockSize;
+import static com.macasaet.fernet.Constants.encryptionAlgorithm;
+import static com.macasaet.fernet.Constants.initializationVectorBytes;
+import static com.macasaet.fernet.Constants.signatureBytes;
+import static com.macasaet.fernet.Constants.supportedVersion;
+import static com.macasaet.fernet.Constants.tokenHeaderBytes;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * The binary layouts a token may have. Every token is in the form Version | Timestamp | IV | Ciphertext | Tag. The
+ * {@link #FERNET} format is the one defined by the <a href="https://github.com/fernet/spec">Fernet Spec</a> and is the
+ * only format accepted by default. The other formats use a single-pass authenticated encryption (AEAD) cipher instead of
+ * AES-CBC with HMAC SHA-256. They are not interoperable with other Fernet implementations and are intended for
+ * deployments that control both the issuer and the validator. Both sides must opt in: see
+ * {@link Token#generate(java.util.Random, Key, byte[], TokenFormat)} and {@link Validator#getAcceptedFormats()}.
+ *
+ * <p>The keys for the authenticated encryption formats are derived from the Fernet {@link Key} so that the same key
+ * material is never used with more than one cipher mode. The version and timestamp are authenticated as associated
+ * data, so a token cannot be reinterpreted as another format or have its timestamp altered.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public enum TokenFormat {
+
+    /**
+     * AES-128-CBC with PKCS #5 padding and an HMAC SHA-256 signature, as defined by the Fernet specification.
+     */
+    FERNET(supportedVersion, initializationVectorBytes, signatureBytes, cipherTextBlockSize, null, null, 0) {
+        AlgorithmParameterSpec createParameterSpec(final byte[] nonce) {
+            throw new UnsupportedOperationException("The Fernet format does not use authenticated encryption");
+        }
+    },
+    /**
+     * AES-128-GCM with a 96-bit nonce and a 128-bit authentication tag.
+     */
+    AES_GCM(aesGcmVersion, aesGcmNonceBytes, aesGcmTagBytes, 1, aesGcmTransformation, encryptionAlgorithm,
+            aesGcmKeyBytes) {
+        AlgorithmParameterSpec createParameterSpec(final byte[] nonce) {
+            return new GCMParameterSpec(aesGcmTagBytes * 8, nonce);
+        }
+    },
+    /**
+     * ChaCha20 with a Poly1305 authenticator, a 96-bit nonce and a 128-bit authentication tag. This is faster than the
+     * AES-based formats on hosts on which the JVM cannot use AES hardware instructions. It requires Java 11 or higher;
+     * see {@link #isAvailable()}.
+     */
+    CHACHA20_POLY1305(chaCha20Poly1305Version, chaCha20Poly1305NonceBytes, chaCha20Poly1305TagBytes, 1,
+            chaCha20Poly1305Transformation, chaCha20KeyAlgorithm, chaCha20KeyBytes) {
+        AlgorithmParameterSpec createParameterSpec(final byte[] nonce) {
+            return new IvParameterSpec(nonce);
+        }
+    };
+
+    private final byte version;
+    private final int nonceBytes;
+    private final int tagBytes;
+    private final int cipherTextBlockBytes;
+    private final String transformation;
+    private final String keyAlgorithm;
+    private final int keyBytes;
+
+    private TokenFormat(final byte version, final int nonceBytes, final int tagBytes, final int cipherTextBlockBytes,
+            final String transformation, final String keyAlgorithm, final int keyBytes) {
+        this.version = version;
+        this.nonceBytes = nonceBytes;
+        this.tagBytes = tagBytes;
+        this.cipherTextBlockBytes = cipherTextBlockBytes;
+        this.transformation = transformation;
+        this.keyAlgorithm = keyAlgorithm;
+        this.keyBytes = keyBytes;
+    }
+
+    /**
+     * @param version
+     *            the first byte of a serialised token
+     * @return the format identified by <em>version</em>
+     * @throws IllegalTokenException
+     *             if <em>version</em> does not identify a known format
+     */
+    public static TokenFormat forVersion(final byte version) throws IllegalTokenException {
+        for (final TokenFormat format : values()) {
+            if (format.getVersion() == version) {
+                return format;
+            }
+        }
+        throw new IllegalTokenException("Unsupported version: " + version);
+    }
+
+    /**
+     * Not every format is supported by every Java runtime. For example, {@link #CHACHA20_POLY1305} requires Java 11 or
+     * higher. Generating or validating a token in an unavailable format throws {@link UnsupportedOperationException}.
+     *
+     * @return true if and only if the installed security providers support this format
+     */
+    public boolean isAvailable() {
+        if (!isAuthenticatedEncryption()) {
+            return true;
+        }
+        try {
+            Cipher.getInstance(getTransformation());
+            return true;
+        } catch (final NoSuchAlgorithmException | NoSuchPaddingException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param nonce
+     *            the random bytes used to initialise the cipher
+     * @return the cipher parameters for an authenticated encryption format
+     */
+    abstract AlgorithmParameterSpec createParameterSpec(byte[] nonce);
+
+    /**
+     * @return the version byte that begins every token in this format
+     */
+    public byte getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if and only if this format uses an AEAD cipher rather than a separate HMAC signature
+     */
+    public boolean isAuthenticatedEncryption() {
+        return transformation != null;
+    }
+
+    /**
+     * @return the number of bytes in the initialisation vector or nonce
+     */
+    int getNonceBytes() {
+        return nonceBytes;
+    }
+
+    /**
+     * @return the number of bytes in the HMAC signature or authentication tag
+     */
+    int getTagBytes() {
+        return tagBytes;
+    }
+
+    /**
+     * @return the cipher text length must be a multiple of this value
+     */
+    int getCipherTextBlockBytes() {
+        return cipherTextBlockBytes;
+    }
+
+    /**
+     * @return the number of bytes in a token of this format, excluding the cipher text
+     */
+    int getStaticBytes() {
+        return tokenHeaderBytes + getNonceBytes() + getTagBytes();
+    }
+
+    /**
+     * @return the minimum number of bytes in a token of this format (i.e. with an empty plaintext)
+     */
+    int getMinimumTokenBytes() {
+        return getStaticBytes() + (isAuthenticatedEncryption() ? 0 : getCipherTextBlockBytes());
+    }
+
+    /**
+     * @return the AEAD cipher transformation
+     */
+    String getTransformation() {
+        return transformation;
+    }
+
+    /**
+     * @return the algorithm of the derived AEAD key
+     */
+    String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    /**
+     * @return the number of bytes in the derived AEAD key
+     */
+    int getKeyBytes() {
+        return keyBytes;
+    }
+
+}
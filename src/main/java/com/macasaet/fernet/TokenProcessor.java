@@ -0,0 +1,414 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.defaultProcessorBatchSize;
+import static com.macasaet.fernet.Constants.defaultProcessorWindow;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * A pipeline stage that validates a stream of serialised tokens. It receives token strings from an upstream publisher
+ * and emits a {@link ValidationResult} for each to a single downstream consumer, following the
+ * <a href="https://www.reactive-streams.org/">Reactive Streams</a> protocol. An invalid token produces a failed result
+ * rather than terminating the stream.
+ *
+ * <p>The processor never requests more tokens from upstream than its subscriber has requested results, and never has
+ * more than <em>window</em> tokens in flight. So if validation cannot keep up, the upstream publisher is slowed down
+ * rather than tokens being buffered without bound. Tokens are validated on {@link Validator#getExecutor()} in
+ * micro-batches: each task validates up to <em>batchSize</em> consecutive tokens, so that a thread keeps using the same
+ * crypto engines, and at most <em>parallelism</em> tasks run at a time. If the executor rejects a task, it is run on
+ * the thread that delivered the token, which also slows down the publisher. Results are emitted in the order the tokens
+ * were received unless the processor is created as unordered, in which case each result is emitted as soon as it is
+ * available.</p>
+ *
+ * <p>This library supports Java 8, which does not include <code>java.util.concurrent.Flow</code>, so the signals are
+ * exchanged through methods and callbacks rather than the Flow interfaces. The optional
+ * <code>fernet-java8-flow</code> module adapts a processor to <code>java.util.concurrent.Flow.Processor</code>.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @param <T> the type of the payload
+ * @author Carlos Macasaet
+ */
+public class TokenProcessor<T> {
+
+    private final Validator<T> validator;
+    private final Collection<? extends Key> keys;
+    private final int window;
+    private final int batchSize;
+    private final int parallelism;
+    private final boolean ordered;
+
+    private final AtomicReference<Upstream> upstream = new AtomicReference<>();
+    private final AtomicReference<Downstream<T>> downstream = new AtomicReference<>();
+    private final Queue<PendingToken> incoming = new ConcurrentLinkedQueue<>();
+    // ordered: every received token in arrival order, unordered: only completed tokens in completion order
+    private final Queue<CompletableFuture<ValidationResult<T>>> results = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger workers = new AtomicInteger();
+    private final AtomicInteger drainers = new AtomicInteger();
+    private volatile boolean upstreamDone;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+    private volatile boolean immediateError;
+    // only accessed while draining
+    private long requested;
+    private boolean terminated;
+
+    /**
+     * Create an ordered processor that has up to 256 tokens in flight, validated in batches of up to 16, with one task
+     * per processor.
+     *
+     * @param validator
+     *            the validation rules and the executor on which to validate tokens
+     * @param keys
+     *            the keys that may have signed the tokens, this may be modified concurrently if it is thread-safe
+     */
+    public TokenProcessor(final Validator<T> validator, final Collection<? extends Key> keys) {
+        this(validator, keys, defaultProcessorWindow, defaultProcessorBatchSize,
+                Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    /**
+     * @param validator
+     *            the validation rules and the executor on which to validate tokens
+     * @param keys
+     *            the keys that may have signed the tokens, this may be modified concurrently if it is thread-safe
+     * @param window
+     *            the maximum number of tokens requested from upstream for which results have not been emitted
+     * @param batchSize
+     *            the maximum number of tokens to validate in a single task
+     * @param parallelism
+     *            the maximum number of concurrent tasks
+     * @param ordered
+     *            true to emit results in the order in which the tokens were received, false to emit them as soon as
+     *            they are available
+     */
+    public TokenProcessor(final Validator<T> validator, final Collection<? extends Key> keys, final int window,
+            final int batchSize, final int parallelism, final boolean ordered) {
+        if (validator == null) {
+            throw new IllegalArgumentException("validator cannot be null");
+        }
+        if (keys == null) {
+            throw new IllegalArgumentException("keys cannot be null");
+        }
+        if (window < 1 || batchSize < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("window, batchSize and parallelism must be positive");
+        }
+        this.validator = validator;
+        this.keys = keys;
+        this.window = window;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Register the single recipient of the results. No results are emitted until it invokes {@link #request(long)}.
+     *
+     * @param onNext
+     *            receives each result
+     * @param onError
+     *            receives the error that terminates the stream, either one reported by upstream or an illegal request
+     * @param onComplete
+     *            invoked once every result has been emitted after upstream completes
+     * @throws IllegalStateException
+     *             if a recipient has already been registered
+     */
+    public void subscribe(final Consumer<? super ValidationResult<T>> onNext, final Consumer<? super Throwable> onError,
+            final Runnable onComplete) {
+        if (onNext == null || onError == null || onComplete == null) {
+            throw new IllegalArgumentException("onNext, onError and onComplete cannot be null");
+        }
+        if (!downstream.compareAndSet(null, new Downstream<>(onNext, onError, onComplete))) {
+            throw new IllegalStateException("TokenProcessor only supports a single subscriber");
+        }
+        drain();
+    }
+
+    /**
+     * Signal that the downstream recipient is ready for more results.
+     *
+     * @param n
+     *            the number of additional results, a non-positive value terminates the stream with an
+     *            {@link IllegalArgumentException}
+     */
+    public void request(final long n) {
+        if (n <= 0) {
+            error = new IllegalArgumentException("Requested a non-positive number of results: " + n);
+            immediateError = true;
+            cancelUpstream();
+        } else {
+            demand.accumulateAndGet(n, (current, addend) -> {
+                final long sum = current + addend;
+                return sum < 0 ? Long.MAX_VALUE : sum;
+            });
+        }
+        drain();
+    }
+
+    /**
+     * Stop emitting results and cancel the upstream subscription.
+     */
+    public void cancel() {
+        cancelled = true;
+        cancelUpstream();
+        incoming.clear();
+        drain();
+    }
+
+    /**
+     * Attach the upstream publisher. A second publisher is cancelled immediately.
+     *
+     * @param request
+     *            requests the given number of additional tokens from upstream
+     * @param cancel
+     *            asks upstream to stop sending tokens
+     */
+    public void onSubscribe(final LongConsumer request, final Runnable cancel) {
+        if (!upstream.compareAndSet(null, new Upstream(request, cancel))) {
+            cancel.run();
+            return;
+        }
+        if (cancelled || immediateError) {
+            cancel.run();
+            return;
+        }
+        drain();
+    }
+
+    /**
+     * @param item a serialised token requested from upstream
+     */
+    public void onNext(final String item) {
+        if (cancelled) {
+            return;
+        }
+        received.incrementAndGet();
+        inFlight.incrementAndGet();
+        final PendingToken pending = new PendingToken(item);
+        if (ordered) {
+            results.offer(pending.result);
+        }
+        incoming.offer(pending);
+        startWorker();
+    }
+
+    /**
+     * Terminate the stream with <em>throwable</em> once the results of the tokens already received are emitted.
+     *
+     * @param throwable the failure reported by upstream
+     */
+    public void onError(final Throwable throwable) {
+        error = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    /**
+     * Complete the stream once the results of the tokens already received are emitted.
+     */
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    /**
+     * Start a task to validate the incoming tokens, unless enough are already running.
+     */
+    protected void startWorker() {
+        while (!incoming.isEmpty()) {
+            final int running = workers.get();
+            if (running >= parallelism) {
+                return;
+            }
+            if (workers.compareAndSet(running, running + 1)) {
+                final Executor executor = validator.getExecutor();
+                try {
+                    executor.execute(this::work);
+                } catch (final RejectedExecutionException ree) {
+                    // validate on the publisher's thread, which also slows it down
+                    work();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Validate incoming tokens in batches until there are none left.
+     */
+    protected void work() {
+        try {
+            while (!cancelled) {
+                int validated = 0;
+                for (PendingToken pending; validated < batchSize && (pending = incoming.poll()) != null; validated++) {
+                    pending.result.complete(validate(pending.token));
+                    if (!ordered) {
+                        results.offer(pending.result);
+                    }
+                }
+                if (validated == 0) {
+                    break;
+                }
+                drain();
+            }
+        } finally {
+            workers.decrementAndGet();
+        }
+        // a token may have arrived after the last poll but before this worker stopped
+        startWorker();
+    }
+
+    /**
+     * @param serialised a token received from upstream
+     * @return the outcome of validating <em>serialised</em>
+     */
+    protected ValidationResult<T> validate(final String serialised) {
+        try {
+            final Token token = Token.fromString(serialised);
+            return ValidationResult.success(serialised, validator.validateAndDecrypt(keys, token));
+        } catch (final RuntimeException re) {
+            return ValidationResult.failure(serialised, re);
+        }
+    }
+
+    /**
+     * Emit the results that the subscriber has requested and that are ready, request more tokens from upstream, and
+     * terminate the stream once every result has been emitted. Only one thread drains at a time; a thread that finds
+     * another draining leaves it to repeat the work.
+     */
+    protected void drain() {
+        if (drainers.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            final Downstream<T> subscriber = downstream.get();
+            if (subscriber != null && !terminated) {
+                if (cancelled) {
+                    terminated = true;
+                    results.clear();
+                } else if (immediateError) {
+                    terminated = true;
+                    results.clear();
+                    subscriber.onError.accept(error);
+                } else {
+                    emit(subscriber.onNext);
+                    if (upstreamDone && inFlight.get() == 0) {
+                        terminated = true;
+                        if (error != null) {
+                            subscriber.onError.accept(error);
+                        } else {
+                            subscriber.onComplete.run();
+                        }
+                    } else if (!upstreamDone) {
+                        requestUpstream();
+                    }
+                }
+            }
+            missed = drainers.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    protected void emit(final Consumer<? super ValidationResult<T>> onNext) {
+        final long requestedResults = demand.get();
+        long emitted = 0;
+        while (emitted != requestedResults && !cancelled) {
+            final CompletableFuture<ValidationResult<T>> head = results.peek();
+            if (head == null || !head.isDone()) {
+                break;
+            }
+            results.poll();
+            inFlight.decrementAndGet();
+            onNext.accept(head.join());
+            emitted++;
+        }
+        if (emitted != 0 && requestedResults != Long.MAX_VALUE) {
+            demand.addAndGet(-emitted);
+        }
+    }
+
+    /**
+     * Request as many tokens as the subscriber still wants, up to the window.
+     */
+    protected void requestUpstream() {
+        final Upstream subscription = upstream.get();
+        if (subscription == null) {
+            return;
+        }
+        final long outstanding = requested - received.get();
+        final long wanted = Math.min(window, demand.get()) - inFlight.get() - outstanding;
+        if (wanted > 0) {
+            requested += wanted;
+            subscription.request.accept(wanted);
+        }
+    }
+
+    protected void cancelUpstream() {
+        final Upstream subscription = upstream.get();
+        if (subscription != null) {
+            subscription.cancel.run();
+        }
+    }
+
+    /**
+     * @return the number of tokens received from upstream whose results have not been emitted
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * The means of requesting tokens from the publisher.
+     */
+    private static class Upstream {
+        final LongConsumer request;
+        final Runnable cancel;
+
+        Upstream(final LongConsumer request, final Runnable cancel) {
+            this.request = request;
+            this.cancel = cancel;
+        }
+    }
+
+    /**
+     * The recipient of the results.
+     */
+    private static class Downstream<T> {
+        final Consumer<? super ValidationResult<T>> onNext;
+        final Consumer<? super Throwable> onError;
+        final Runnable onComplete;
+
+        Downstream(final Consumer<? super ValidationResult<T>> onNext, final Consumer<? super Throwable> onError,
+                final Runnable onComplete) {
+            this.onNext = onNext;
+            this.onError = onError;
+            this.onComplete = onComplete;
+        }
+    }
+
+    /**
+     * A token that has been received but not yet validated.
+     */
+    private class PendingToken {
+        final String token;
+        final CompletableFuture<ValidationResult<T>> result = new CompletableFuture<>();
+
+        PendingToken(final String token) {
+            this.token = token;
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.macasaet.fernet;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The outcome of validating one token in a stream. Invalid tokens do not terminate the stream, so each result carries
+ * either the deserialised payload or the reason the token was rejected.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @param <T> the type of the payload
+ * @author Carlos Macasaet
+ * @see TokenProcessor
+ */
+public class ValidationResult<T> {
+
+    private final String token;
+    private final T value;
+    private final RuntimeException error;
+
+    protected ValidationResult(final String token, final T value, final RuntimeException error) {
+        this.token = token;
+        this.value = value;
+        this.error = error;
+    }
+
+    /**
+     * @param token the serialised token
+     * @param value the deserialised payload
+     * @return a result for a valid token
+     */
+    public static <T> ValidationResult<T> success(final String token, final T value) {
+        return new ValidationResult<>(token, value, null);
+    }
+
+    /**
+     * @param token the serialised token
+     * @param error the reason the token was rejected, typically a {@link TokenValidationException}
+     * @return a result for an invalid token
+     */
+    public static <T> ValidationResult<T> failure(final String token, final RuntimeException error) {
+        if (error == null) {
+            throw new IllegalArgumentException("error cannot be null");
+        }
+        return new ValidationResult<>(token, null, error);
+    }
+
+    /**
+     * @return true if and only if the token was valid
+     */
+    public boolean isValid() {
+        return error == null;
+    }
+
+    /**
+     * @return the serialised token that was validated
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return the deserialised payload
+     * @throws NoSuchElementException if the token was not valid
+     */
+    public T getValue() {
+        if (!isValid()) {
+            throw new NoSuchElementException("Token is not valid: " + error.getMessage());
+        }
+        return value;
+    }
+
+    /**
+     * @return the reason the token was rejected or null if it was valid
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    public String toString() {
+        return isValid() ? "ValidationResult [valid]" : "ValidationResult [error=" + error.getMessage() + "]";
+    }
+
+}
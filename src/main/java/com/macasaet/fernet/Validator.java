@@ -1,15 +1,26 @@
 package com.macasaet.fernet;
 
+import static com.macasaet.fernet.Constants.defaultAcceptedFormats;
+
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
+import java.util.function.IntPredicate;
 import java.util.function.Predicate;
 
+import com.macasaet.fernet.FernetMetrics.FailureReason;
+import com.macasaet.fernet.FernetMetrics.Stage;
+
 /**
  * This class validates a token according to the Fernet specification. It may be extended to provide domain-specific
  * validation of the decrypted content of the token. If you use a dependency injection / inversion of control framework,
@@ -59,6 +70,17 @@ public interface Validator<T> {
         return Duration.ofSeconds(60);
     }
 
+    /**
+     * Override this method to accept token formats other than the one defined by the Fernet specification. Tokens in
+     * any other format are rejected before any cryptographic work is done. The default implementation only accepts
+     * {@link TokenFormat#FERNET}.
+     *
+     * @return the token formats that this validator accepts
+     */
+    default Set<TokenFormat> getAcceptedFormats() {
+        return defaultAcceptedFormats;
+    }
+
     /**
      * Implement this to define application-specific security rules. By default, no additional validation is performed.
      *
@@ -68,6 +90,66 @@ public interface Validator<T> {
         return (T) -> true;
     }
 
+    /**
+     * Override this method to reject individual tokens before they expire, for example after a user logs out. The list
+     * is consulted after the signature has been verified and before the payload is decrypted. The default revokes
+     * nothing.
+     *
+     * @return the tokens that are no longer valid
+     * @see InMemoryRevocationList
+     */
+    default RevocationList getRevocationList() {
+        return RevocationList.NONE;
+    }
+
+    /**
+     * Override this method to control how a collection of keys is searched for the one that signed a token. The default,
+     * {@link KeySearchStrategy#ADAPTIVE}, checks the keys in parallel when there are enough of them or the token is
+     * large enough to make it worthwhile. It uses the current {@link ForkJoinPool} if invoked from within one, otherwise
+     * the common pool. To keep token validation from competing with other work in the common pool, return
+     * {@link KeySearchStrategy#adaptive(ForkJoinPool, int)}, {@link KeySearchStrategy#parallel(ForkJoinPool)} or
+     * {@link KeySearchStrategy#SEQUENTIAL}.
+     *
+     * @return the strategy for {@link #validateAndDecrypt(Collection, Token)}
+     */
+    default KeySearchStrategy getKeySearchStrategy() {
+        return KeySearchStrategy.ADAPTIVE;
+    }
+
+    /**
+     * Override this method to instrument validation, for example with a shared {@link FernetMetricsRegistry}. The
+     * default implementation records nothing.
+     *
+     * @return the listener to notify of stage timings and failures
+     */
+    default FernetMetrics getMetrics() {
+        return FernetMetrics.NONE;
+    }
+
+    /**
+     * Override this method to control where the cryptographic work of
+     * {@link #validateAndDecryptAsync(Key, Token, Duration)} is done. This work is CPU-bound, so the executor should
+     * have no more threads than there are processors. The default is shared by every validator; see
+     * {@link TokenExecutors#getDefaultExecutor()}.
+     *
+     * @return the executor on which tokens are decrypted
+     */
+    default Executor getExecutor() {
+        return TokenExecutors.getDefaultExecutor();
+    }
+
+    /**
+     * Override this method if {@link #getTransformer()} or {@link #getObjectValidator()} block, for example if they
+     * retrieve the domain object from a data store, so that they do not tie up the threads reserved for cryptography. On
+     * Java 21 or higher, {@link TokenExecutors#newVirtualThreadExecutor()} is a good choice. The default is
+     * {@link #getExecutor()}.
+     *
+     * @return the executor on which decrypted payloads are deserialised and validated
+     */
+    default Executor getTransformerExecutor() {
+        return getExecutor();
+    }
+
     /**
      * Implement this to define how decrypted content is deserialised into domain objects.
      *
@@ -84,20 +166,71 @@ public interface Validator<T> {
      * @throws TokenValidationException if the token is invalid.
      */
     default T validateAndDecrypt(final Key key, final Token token) throws TokenValidationException {
+        return transformPayload(decryptPayload(key, token));
+    }
+
+    /**
+     * Check the validity of the token then decrypt the payload without deserialising it. This is the CPU-bound portion
+     * of {@link #validateAndDecrypt(Key, Token)}.
+     *
+     * @param key the stored shared secret key
+     * @param token the client-provided token of unknown validity
+     * @return the decrypted payload
+     * @throws TokenValidationException if the token is invalid.
+     */
+    default byte[] decryptPayload(final Key key, final Token token) throws TokenValidationException {
+        checkFormat(token);
+        final FernetMetrics metrics = getMetrics();
         final Instant now = Instant.now(getClock());
-        final byte[] plainText = token.validateAndDecrypt(key, now.minus(getTimeToLive()), now.plus(getMaxClockSkew()));
-        final T object = getTransformer().apply(plainText);
-        if (!getObjectValidator().test(object)) {
+        if (metrics.isEnabled()) {
+            metrics.recordTokenAge(now.getEpochSecond() - token.getTimestamp().getEpochSecond());
+        }
+        return token.validateAndDecrypt(key, now.minus(getTimeToLive()), now.plus(getMaxClockSkew()), metrics,
+                getRevocationList());
+    }
+
+    /**
+     * Deserialise a decrypted payload using {@link #getTransformer()} and check it using {@link #getObjectValidator()}.
+     * The transformer may block, for example if it retrieves the domain object from a data store.
+     *
+     * @param plainText the payload of a valid token
+     * @return the deserialised contents of the token
+     * @throws TokenValidationException if the contents are rejected by the object validator
+     */
+    default T transformPayload(final byte[] plainText) throws TokenValidationException {
+        final FernetMetrics metrics = getMetrics();
+        final TokenEvent event = FlightRecorderEvents.beginTransformation();
+        event.setPayloadBytes(plainText.length);
+        long start = metrics.isEnabled() ? System.nanoTime() : 0L;
+        final T object;
+        try {
+            object = getTransformer().apply(plainText);
+        } catch (final RuntimeException re) {
+            metrics.recordFailure(FailureReason.TRANSFORMATION_ERROR);
+            event.fail(FailureReason.TRANSFORMATION_ERROR);
+            throw re;
+        }
+        if (metrics.isEnabled()) {
+            final long end = System.nanoTime();
+            metrics.recordStage(Stage.TRANSFORM, end - start);
+            start = end;
+        }
+        final boolean isValidObject = getObjectValidator().test(object);
+        if (metrics.isEnabled()) {
+            metrics.recordStage(Stage.OBJECT_VALIDATION, System.nanoTime() - start);
+        }
+        if (!isValidObject) {
+            metrics.recordFailure(FailureReason.INVALID_CONTENTS);
+            event.fail(FailureReason.INVALID_CONTENTS);
             throw new TokenValidationException("Invalid token contents.");
         }
+        event.succeed();
         return object;
     }
 
     /**
-     * Check the validity of a token against a pool of keys. This is useful if your application uses key rotation. Since
-     * token-verification is entirely CPU-bound, an attempt is made to evaluate the keys in parallel based on the
-     * available number of processors. If you wish to control the number of parallel threads used, invoke this inside a
-     * custom {@link ForkJoinPool}.
+     * Check the validity of a token against a pool of keys. This is useful if your application uses key rotation. The
+     * keys are searched according to {@link #getKeySearchStrategy()}.
      *
      * @param keys
      *            all the non-expired keys that could have been used to generate a token
@@ -109,12 +242,96 @@ public interface Validator<T> {
      */
     default T validateAndDecrypt(final Collection<? extends Key> keys, final Token token)
         throws TokenValidationException {
-        final Key key =
-                keys.parallelStream()
-                .filter(candidate -> token.isValidSignature(candidate))
-                .findFirst()
-                .orElseThrow(() -> new TokenValidationException("Encryption key not found."));
-        return validateAndDecrypt(key, token);
+        return validateAndDecrypt(findSigningKey(keys, token), token);
+    }
+
+    /**
+     * Search a pool of keys for the one that signed a token according to {@link #getKeySearchStrategy()}.
+     *
+     * @param keys
+     *            all the non-expired keys that could have been used to generate a token
+     * @param token
+     *            the client-provided token of unknown validity
+     * @return the key that signed the token
+     * @throws TokenValidationException
+     *             if the token was not generated using any of the supplied keys.
+     */
+    default Key findSigningKey(final Collection<? extends Key> keys, final Token token)
+        throws TokenValidationException {
+        checkFormat(token);
+        final FernetMetrics metrics = getMetrics();
+        final long start = metrics.isEnabled() ? System.nanoTime() : 0L;
+        final List<? extends Key> candidates = keys instanceof List ? (List<? extends Key>) keys
+                : new ArrayList<>(keys);
+        final TokenEvent event = FlightRecorderEvents.beginKeySearch();
+        event.setKeyCount(candidates.size());
+        final IntPredicate isSigningKey = MultiBufferKeyProbe.isApplicable(token, candidates)
+                ? new MultiBufferKeyProbe(token, candidates)
+                : i -> token.isValidSignature(candidates.get(i));
+        final int index = getKeySearchStrategy().indexOfSigningKey(token, candidates.size(), i -> {
+            event.keyTried();
+            return isSigningKey.test(i);
+        });
+        if (metrics.isEnabled()) {
+            metrics.recordStage(Stage.KEY_SEARCH, System.nanoTime() - start);
+        }
+        if (index < 0) {
+            metrics.recordFailure(FailureReason.KEY_NOT_FOUND);
+            event.fail(FailureReason.KEY_NOT_FOUND);
+            throw new TokenValidationException("Encryption key not found.");
+        }
+        if (metrics.isEnabled()) {
+            metrics.recordMatchedKey(index);
+        }
+        event.succeed();
+        return candidates.get(index);
+    }
+
+    /**
+     * Check the validity of the token then decrypt and deserialise the payload without blocking the calling thread. The
+     * token is decrypted on {@link #getExecutor()}, then the payload is deserialised on
+     * {@link #getTransformerExecutor()}.
+     *
+     * @param key the stored shared secret key
+     * @param token the client-provided token of unknown validity
+     * @param timeout
+     *            the maximum time to wait for the result, after which the future completes with a
+     *            {@link java.util.concurrent.TimeoutException} and any work that has not started is skipped
+     * @return the deserialised contents of the token, or a {@link TokenValidationException} if the token is invalid
+     */
+    default CompletableFuture<T> validateAndDecryptAsync(final Key key, final Token token, final Duration timeout) {
+        return TokenExecutors.supplyAsync(() -> decryptPayload(key, token), getExecutor(), this::transformPayload,
+                getTransformerExecutor(), timeout);
+    }
+
+    /**
+     * Check the validity of a token against a pool of keys without blocking the calling thread. The keys are searched
+     * and the token is decrypted on {@link #getExecutor()}, then the payload is deserialised on
+     * {@link #getTransformerExecutor()}.
+     *
+     * @param keys all the non-expired keys that could have been used to generate a token
+     * @param token the client-provided token of unknown validity
+     * @param timeout
+     *            the maximum time to wait for the result, after which the future completes with a
+     *            {@link java.util.concurrent.TimeoutException} and any work that has not started is skipped
+     * @return the deserialised contents of the token, or a {@link TokenValidationException} if the token was not
+     *         generated using any of the supplied keys
+     */
+    default CompletableFuture<T> validateAndDecryptAsync(final Collection<? extends Key> keys, final Token token,
+            final Duration timeout) {
+        return TokenExecutors.supplyAsync(() -> decryptPayload(findSigningKey(keys, token), token), getExecutor(),
+                this::transformPayload, getTransformerExecutor(), timeout);
+    }
+
+    /**
+     * @param token the client-provided token of unknown validity
+     * @throws TokenValidationException if the token's format is not accepted by this validator
+     */
+    default void checkFormat(final Token token) throws TokenValidationException {
+        if (!getAcceptedFormats().contains(token.getFormat())) {
+            getMetrics().recordFailure(FailureReason.UNSUPPORTED_FORMAT);
+            throw new TokenValidationException("Invalid version");
+        }
     }
 
-}
\ No newline at end of file
+}
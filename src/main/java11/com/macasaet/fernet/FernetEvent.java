@@ -0,0 +1,41 @@
+package com.macasaet.fernet;
+
+import java.util.Locale;
+
+import com.macasaet.fernet.FernetMetrics.FailureReason;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Base class for the JDK Flight Recorder events emitted by this library. By default, only operations that take at least
+ * one millisecond are recorded and stack traces are omitted. Lower the <code>threshold</code> or enable
+ * <code>stackTrace</code> in the recording settings for more detail. Only use this through
+ * {@link FlightRecorderEvents}.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@Category("Fernet")
+@StackTrace(false)
+@Threshold("1 ms")
+abstract class FernetEvent extends Event implements TokenEvent {
+
+    @Label("Outcome")
+    String outcome;
+
+    public void succeed() {
+        outcome = "success";
+        commit();
+    }
+
+    public void fail(final FailureReason reason) {
+        outcome = reason.name().toLowerCase(Locale.ROOT);
+        commit();
+    }
+
+}
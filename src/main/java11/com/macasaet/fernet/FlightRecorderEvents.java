@@ -0,0 +1,67 @@
+package com.macasaet.fernet;
+
+/**
+ * Factory for the JDK Flight Recorder events emitted by this library. The <code>jdk.jfr</code> module may be left out
+ * of a custom runtime image, so the event classes are only loaded if the API is available and this library continues
+ * to work without it.
+ *
+ * <p>When a recording is not running or has not enabled an event type, the factory methods return
+ * {@link TokenEvent#NONE} without allocating. Each event type can be enabled and thresholded using the standard JFR
+ * settings, e.g. <code>jcmd &lt;pid&gt; JFR.start settings=fernet.jfc</code>, by event name:</p>
+ * <ul>
+ *   <li><code>com.macasaet.fernet.TokenGeneration</code></li>
+ *   <li><code>com.macasaet.fernet.TokenParse</code></li>
+ *   <li><code>com.macasaet.fernet.KeySearch</code></li>
+ *   <li><code>com.macasaet.fernet.TokenDecryption</code></li>
+ *   <li><code>com.macasaet.fernet.PayloadTransformation</code></li>
+ * </ul>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+final class FlightRecorderEvents {
+
+    private static final boolean available = isFlightRecorderAvailable();
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * @return true if and only if the JDK Flight Recorder API is present and enabled on this JVM
+     */
+    static boolean isAvailable() {
+        return available;
+    }
+
+    static TokenEvent beginGeneration() {
+        return isAvailable() ? TokenGenerationEvent.beginIfEnabled() : TokenEvent.NONE;
+    }
+
+    static TokenEvent beginParse() {
+        return isAvailable() ? TokenParseEvent.beginIfEnabled() : TokenEvent.NONE;
+    }
+
+    static TokenEvent beginKeySearch() {
+        return isAvailable() ? KeySearchEvent.beginIfEnabled() : TokenEvent.NONE;
+    }
+
+    static TokenEvent beginDecryption() {
+        return isAvailable() ? TokenDecryptionEvent.beginIfEnabled() : TokenEvent.NONE;
+    }
+
+    static TokenEvent beginTransformation() {
+        return isAvailable() ? PayloadTransformationEvent.beginIfEnabled() : TokenEvent.NONE;
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            final Class<?> flightRecorder = Class.forName("jdk.jfr.FlightRecorder");
+            return (Boolean) flightRecorder.getMethod("isAvailable").invoke(null);
+        } catch (final ReflectiveOperationException | LinkageError | SecurityException e) {
+            // a runtime image without the jdk.jfr module
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.macasaet.fernet;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.macasaet.fernet.FernetMetrics.FailureReason;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for {@link Validator#validateAndDecrypt(java.util.Collection, Token)}. The signature
+ * probes may run concurrently, so they are counted in a field that JFR does not persist and copied when the search
+ * completes.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@Name("com.macasaet.fernet.KeySearch")
+@Label("Key Search")
+@Description("Checking the signature of a token against a collection of keys")
+class KeySearchEvent extends FernetEvent {
+
+    private static final KeySearchEvent prototype = new KeySearchEvent();
+
+    @Label("Key Count")
+    int keyCount;
+
+    @Label("Keys Tried")
+    int keysTried;
+
+    private final transient AtomicInteger probes = new AtomicInteger();
+
+    static TokenEvent beginIfEnabled() {
+        if (!prototype.isEnabled()) {
+            return TokenEvent.NONE;
+        }
+        final KeySearchEvent retval = new KeySearchEvent();
+        retval.begin();
+        return retval;
+    }
+
+    public void setKeyCount(final int keyCount) {
+        this.keyCount = keyCount;
+    }
+
+    public void keyTried() {
+        probes.incrementAndGet();
+    }
+
+    public void succeed() {
+        keysTried = probes.get();
+        super.succeed();
+    }
+
+    public void fail(final FailureReason reason) {
+        keysTried = probes.get();
+        super.fail(reason);
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.macasaet.fernet;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for applying {@link Validator#getTransformer()} and
+ * {@link Validator#getObjectValidator()}.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@Name("com.macasaet.fernet.PayloadTransformation")
+@Label("Payload Transformation")
+@Description("Converting a decrypted payload and validating the result")
+class PayloadTransformationEvent extends FernetEvent {
+
+    private static final PayloadTransformationEvent prototype = new PayloadTransformationEvent();
+
+    @Label("Payload Size")
+    @DataAmount
+    int payloadBytes;
+
+    static TokenEvent beginIfEnabled() {
+        if (!prototype.isEnabled()) {
+            return TokenEvent.NONE;
+        }
+        final PayloadTransformationEvent retval = new PayloadTransformationEvent();
+        retval.begin();
+        return retval;
+    }
+
+    public void setPayloadBytes(final int bytes) {
+        payloadBytes = bytes;
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.macasaet.fernet;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for verifying and decrypting a token with a single key, after its timestamp has been
+ * checked.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@Name("com.macasaet.fernet.TokenDecryption")
+@Label("Token Decryption")
+@Description("Verifying the signature and decrypting the payload of a token")
+class TokenDecryptionEvent extends FernetEvent {
+
+    private static final TokenDecryptionEvent prototype = new TokenDecryptionEvent();
+
+    @Label("Format")
+    String format;
+
+    @Label("Payload Size")
+    @DataAmount
+    int payloadBytes;
+
+    static TokenEvent beginIfEnabled() {
+        if (!prototype.isEnabled()) {
+            return TokenEvent.NONE;
+        }
+        final TokenDecryptionEvent retval = new TokenDecryptionEvent();
+        retval.begin();
+        return retval;
+    }
+
+    public void setFormat(final TokenFormat format) {
+        this.format = format.name();
+    }
+
+    public void setPayloadBytes(final int bytes) {
+        payloadBytes = bytes;
+    }
+
+}
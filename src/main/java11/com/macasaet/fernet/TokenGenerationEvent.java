@@ -0,0 +1,46 @@
+package com.macasaet.fernet;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for {@link Token#generate(java.util.Random, Key, byte[], TokenFormat)}.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@Name("com.macasaet.fernet.TokenGeneration")
+@Label("Token Generation")
+@Description("Encrypting a payload and signing a new token")
+class TokenGenerationEvent extends FernetEvent {
+
+    private static final TokenGenerationEvent prototype = new TokenGenerationEvent();
+
+    @Label("Format")
+    String format;
+
+    @Label("Payload Size")
+    @DataAmount
+    int payloadBytes;
+
+    static TokenEvent beginIfEnabled() {
+        if (!prototype.isEnabled()) {
+            return TokenEvent.NONE;
+        }
+        final TokenGenerationEvent retval = new TokenGenerationEvent();
+        retval.begin();
+        return retval;
+    }
+
+    public void setFormat(final TokenFormat format) {
+        this.format = format.name();
+    }
+
+    public void setPayloadBytes(final int bytes) {
+        payloadBytes = bytes;
+    }
+
+}
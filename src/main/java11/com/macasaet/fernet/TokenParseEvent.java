@@ -0,0 +1,46 @@
+package com.macasaet.fernet;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for {@link Token#fromString(String)}.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@Name("com.macasaet.fernet.TokenParse")
+@Label("Token Parse")
+@Description("Decoding a serialised token")
+class TokenParseEvent extends FernetEvent {
+
+    private static final TokenParseEvent prototype = new TokenParseEvent();
+
+    @Label("Format")
+    String format;
+
+    @Label("Token Size")
+    @DataAmount
+    int tokenBytes;
+
+    static TokenEvent beginIfEnabled() {
+        if (!prototype.isEnabled()) {
+            return TokenEvent.NONE;
+        }
+        final TokenParseEvent retval = new TokenParseEvent();
+        retval.begin();
+        return retval;
+    }
+
+    public void setFormat(final TokenFormat format) {
+        this.format = format.name();
+    }
+
+    public void setTokenBytes(final int bytes) {
+        tokenBytes = bytes;
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.macasaet.fernet;
+
+import static jdk.incubator.vector.VectorOperators.EQ;
+import static jdk.incubator.vector.VectorOperators.GE;
+import static jdk.incubator.vector.VectorOperators.LE;
+import static jdk.incubator.vector.VectorOperators.LSHL;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+import static jdk.incubator.vector.VectorOperators.LT;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Base 64 URL encoding and decoding of whole blocks using the incubating Vector API. Sixteen characters are decoded
+ * into twelve bytes, or twelve bytes encoded into sixteen characters, at a time. The <code>jdk.incubator.vector</code>
+ * module is only resolved if the JVM is started with <code>--add-modules jdk.incubator.vector</code>, so the vector
+ * code is kept in a nested class that is not loaded unless the module is present.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ * @see TokenCodec
+ */
+final class Base64Vectors {
+
+    private static final boolean available = isModulePresent() && Kernel.isSupported();
+
+    private Base64Vectors() {
+    }
+
+    /**
+     * @return true if and only if the methods of this class process any input
+     */
+    static boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Decode a prefix of a region of unpadded Base 64 URL characters. Decoding stops before the first block that
+     * contains a character outside the alphabet so that the caller can report it.
+     *
+     * @param source
+     *            the ASCII-encoded input
+     * @param sourceOffset
+     *            the position of the first character to decode
+     * @param sourceEnd
+     *            the position after the last character that may be decoded, a multiple of four characters after
+     *            <em>sourceOffset</em>
+     * @param destination
+     *            the buffer to write the decoded bytes into
+     * @param destinationOffset
+     *            the position in <em>destination</em> to write the first byte
+     * @return the number of characters decoded, a multiple of four
+     */
+    static int decode(final byte[] source, final int sourceOffset, final int sourceEnd, final byte[] destination,
+            final int destinationOffset) {
+        return available ? Kernel.decode(source, sourceOffset, sourceEnd, destination, destinationOffset) : 0;
+    }
+
+    /**
+     * Encode a prefix of a region of binary data.
+     *
+     * @param source
+     *            the binary input
+     * @param sourceOffset
+     *            the position of the first byte to encode
+     * @param sourceEnd
+     *            the position after the last byte that may be encoded
+     * @param destination
+     *            the buffer to write the ASCII characters into
+     * @param destinationOffset
+     *            the position in <em>destination</em> to write the first character
+     * @return the number of bytes encoded, a multiple of three
+     */
+    static int encode(final byte[] source, final int sourceOffset, final int sourceEnd, final byte[] destination,
+            final int destinationOffset) {
+        return available ? Kernel.encode(source, sourceOffset, sourceEnd, destination, destinationOffset) : 0;
+    }
+
+    private static boolean isModulePresent() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    private static final class Kernel {
+
+        private static final VectorSpecies<Byte> species = ByteVector.SPECIES_128;
+        // the three big-endian bytes of each little-endian 32-bit word, followed by the unused high bytes
+        private static final VectorShuffle<Byte> packShuffle =
+                VectorShuffle.fromValues(species, 2, 1, 0, 6, 5, 4, 10, 9, 8, 14, 13, 12, 3, 7, 11, 15);
+        // each group of three bytes as the low 24 bits of a little-endian 32-bit word
+        private static final VectorShuffle<Byte> unpackShuffle =
+                VectorShuffle.fromValues(species, 2, 1, 0, 0, 5, 4, 3, 3, 8, 7, 6, 6, 11, 10, 9, 9);
+
+        static boolean isSupported() {
+            return ByteVector.SPECIES_PREFERRED.vectorBitSize() >= species.vectorBitSize();
+        }
+
+        static int decode(final byte[] source, final int sourceOffset, final int sourceEnd,
+                final byte[] destination, final int destinationOffset) {
+            int s = sourceOffset;
+            int d = destinationOffset;
+            // each block stores sixteen bytes of which only twelve are decoded, so stop while at least two more groups
+            // of characters remain to overwrite the other four
+            while (s + 24 <= sourceEnd) {
+                final ByteVector input = ByteVector.fromArray(species, source, s);
+                final VectorMask<Byte> upper = input.compare(GE, (byte) 'A').and(input.compare(LE, (byte) 'Z'));
+                final VectorMask<Byte> lower = input.compare(GE, (byte) 'a').and(input.compare(LE, (byte) 'z'));
+                final VectorMask<Byte> digit = input.compare(GE, (byte) '0').and(input.compare(LE, (byte) '9'));
+                final VectorMask<Byte> dash = input.compare(EQ, (byte) '-');
+                final VectorMask<Byte> underscore = input.compare(EQ, (byte) '_');
+                if (!upper.or(lower).or(digit).or(dash).or(underscore).allTrue()) {
+                    break;
+                }
+                final IntVector words = input.sub((byte) 'A', upper)
+                        .sub((byte) ('a' - 26), lower)
+                        .add((byte) (52 - '0'), digit)
+                        .blend((byte) 62, dash)
+                        .blend((byte) 63, underscore)
+                        .reinterpretAsInts();
+                final IntVector bits = words.and(0x3f).lanewise(LSHL, 18)
+                        .or(words.lanewise(LSHR, 8).and(0x3f).lanewise(LSHL, 12))
+                        .or(words.lanewise(LSHR, 16).and(0x3f).lanewise(LSHL, 6))
+                        .or(words.lanewise(LSHR, 24));
+                bits.reinterpretAsBytes().rearrange(packShuffle).intoArray(destination, d);
+                s += 16;
+                d += 12;
+            }
+            return s - sourceOffset;
+        }
+
+        static int encode(final byte[] source, final int sourceOffset, final int sourceEnd,
+                final byte[] destination, final int destinationOffset) {
+            int s = sourceOffset;
+            int d = destinationOffset;
+            // each block loads sixteen bytes of which only twelve are encoded
+            while (s + 16 <= sourceEnd) {
+                final IntVector bits = ByteVector.fromArray(species, source, s)
+                        .rearrange(unpackShuffle)
+                        .reinterpretAsInts()
+                        .and(0xffffff);
+                final ByteVector sextets = bits.lanewise(LSHR, 18)
+                        .or(bits.lanewise(LSHR, 12).and(0x3f).lanewise(LSHL, 8))
+                        .or(bits.lanewise(LSHR, 6).and(0x3f).lanewise(LSHL, 16))
+                        .or(bits.and(0x3f).lanewise(LSHL, 24))
+                        .reinterpretAsBytes();
+                final VectorMask<Byte> upper = sextets.compare(LT, (byte) 26);
+                final VectorMask<Byte> lower = sextets.compare(GE, (byte) 26).and(sextets.compare(LT, (byte) 52));
+                final VectorMask<Byte> digit = sextets.compare(GE, (byte) 52).and(sextets.compare(LT, (byte) 62));
+                sextets.add((byte) 'A', upper)
+                    .add((byte) ('a' - 26), lower)
+                    .sub((byte) (52 - '0'), digit)
+                    .blend((byte) '-', sextets.compare(EQ, (byte) 62))
+                    .blend((byte) '_', sextets.compare(EQ, (byte) 63))
+                    .intoArray(destination, d);
+                s += 12;
+                d += 16;
+            }
+            return s - sourceOffset;
+        }
+
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.hmacLanes;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+import static jdk.incubator.vector.VectorOperators.NOT;
+import static jdk.incubator.vector.VectorOperators.ROR;
+import static jdk.incubator.vector.VectorOperators.XOR;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The SHA-256 compression function applied to {@link Constants#hmacLanes} independent states at once using the
+ * incubating Vector API. The <code>jdk.incubator.vector</code> module is only resolved if the JVM is started with
+ * <code>--add-modules jdk.incubator.vector</code>, so the vector code is kept in a nested class that is not loaded
+ * unless the module is present and the hardware has 256-bit vectors.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ * @see HmacSha256Lanes
+ */
+final class Sha256Vectors {
+
+    private static final boolean available = isModulePresent() && Kernel.isSupported();
+
+    private Sha256Vectors() {
+    }
+
+    /**
+     * @return true if and only if {@link #compress(int[], int[], int)} may be invoked
+     */
+    static boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Apply the SHA-256 compression function to one 64-byte block in each of the active lanes.
+     *
+     * @param state
+     *            the eight hash words of every lane, word-major, i.e. word <em>w</em> of lane <em>l</em> is at
+     *            <code>w * hmacLanes + l</code>
+     * @param block
+     *            the sixteen message words of every lane, word-major
+     * @param activeLanes
+     *            a bit mask of the lanes to update, the state of the other lanes is left unchanged
+     */
+    static void compress(final int[] state, final int[] block, final int activeLanes) {
+        Kernel.compress(state, block, activeLanes);
+    }
+
+    private static boolean isModulePresent() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    private static final class Kernel {
+
+        private static final VectorSpecies<Integer> species = IntVector.SPECIES_256;
+
+        static boolean isSupported() {
+            // narrower hardware vectors would make the 256-bit operations fall back to scalar code
+            return species.length() == hmacLanes
+                    && IntVector.SPECIES_PREFERRED.vectorBitSize() >= species.vectorBitSize();
+        }
+
+        static void compress(final int[] state, final int[] block, final int activeLanes) {
+            final int[] roundConstants = HmacSha256Lanes.roundConstants;
+            final int[] schedule = new int[roundConstants.length * hmacLanes];
+            System.arraycopy(block, 0, schedule, 0, 16 * hmacLanes);
+            for (int t = 16; t < roundConstants.length; t++) {
+                final IntVector w15 = IntVector.fromArray(species, schedule, (t - 15) * hmacLanes);
+                final IntVector w2 = IntVector.fromArray(species, schedule, (t - 2) * hmacLanes);
+                final IntVector s0 = w15.lanewise(ROR, 7)
+                        .lanewise(XOR, w15.lanewise(ROR, 18))
+                        .lanewise(XOR, w15.lanewise(LSHR, 3));
+                final IntVector s1 = w2.lanewise(ROR, 17)
+                        .lanewise(XOR, w2.lanewise(ROR, 19))
+                        .lanewise(XOR, w2.lanewise(LSHR, 10));
+                IntVector.fromArray(species, schedule, (t - 16) * hmacLanes)
+                    .add(s0)
+                    .add(IntVector.fromArray(species, schedule, (t - 7) * hmacLanes))
+                    .add(s1)
+                    .intoArray(schedule, t * hmacLanes);
+            }
+            final IntVector initialA = IntVector.fromArray(species, state, 0);
+            final IntVector initialB = IntVector.fromArray(species, state, hmacLanes);
+            final IntVector initialC = IntVector.fromArray(species, state, 2 * hmacLanes);
+            final IntVector initialD = IntVector.fromArray(species, state, 3 * hmacLanes);
+            final IntVector initialE = IntVector.fromArray(species, state, 4 * hmacLanes);
+            final IntVector initialF = IntVector.fromArray(species, state, 5 * hmacLanes);
+            final IntVector initialG = IntVector.fromArray(species, state, 6 * hmacLanes);
+            final IntVector initialH = IntVector.fromArray(species, state, 7 * hmacLanes);
+            IntVector a = initialA;
+            IntVector b = initialB;
+            IntVector c = initialC;
+            IntVector d = initialD;
+            IntVector e = initialE;
+            IntVector f = initialF;
+            IntVector g = initialG;
+            IntVector h = initialH;
+            for (int t = 0; t < roundConstants.length; t++) {
+                final IntVector s1 = e.lanewise(ROR, 6)
+                        .lanewise(XOR, e.lanewise(ROR, 11))
+                        .lanewise(XOR, e.lanewise(ROR, 25));
+                final IntVector choice = e.and(f).lanewise(XOR, e.lanewise(NOT).and(g));
+                final IntVector temp1 = h.add(s1)
+                        .add(choice)
+                        .add(roundConstants[t])
+                        .add(IntVector.fromArray(species, schedule, t * hmacLanes));
+                final IntVector s0 = a.lanewise(ROR, 2)
+                        .lanewise(XOR, a.lanewise(ROR, 13))
+                        .lanewise(XOR, a.lanewise(ROR, 22));
+                final IntVector majority = a.and(b).lanewise(XOR, a.and(c)).lanewise(XOR, b.and(c));
+                h = g;
+                g = f;
+                f = e;
+                e = d.add(temp1);
+                d = c;
+                c = b;
+                b = a;
+                a = temp1.add(s0).add(majority);
+            }
+            // inactive lanes keep their state
+            final VectorMask<Integer> active = VectorMask.fromLong(species, activeLanes);
+            initialA.add(a, active).intoArray(state, 0);
+            initialB.add(b, active).intoArray(state, hmacLanes);
+            initialC.add(c, active).intoArray(state, 2 * hmacLanes);
+            initialD.add(d, active).intoArray(state, 3 * hmacLanes);
+            initialE.add(e, active).intoArray(state, 4 * hmacLanes);
+            initialF.add(f, active).intoArray(state, 5 * hmacLanes);
+            initialG.add(g, active).intoArray(state, 6 * hmacLanes);
+            initialH.add(h, active).intoArray(state, 7 * hmacLanes);
+        }
+
+    }
+
+}
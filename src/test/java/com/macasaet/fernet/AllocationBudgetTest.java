@@ -0,0 +1,145 @@
+package com.macasaet.fernet;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Base64;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Regression tests for the number of bytes allocated by the hot paths. Allocation drives garbage collection pauses, so
+ * a change that adds an intermediate buffer or object to one of these paths should be a deliberate decision. If one of
+ * these tests fails, either remove the new allocation or raise the budget in the same change.
+ *
+ * <p>The measurements use the HotSpot per-thread allocation counter and are skipped on JVMs that do not provide it.
+ * Each path is exercised enough times beforehand for the JIT compiler to optimise it.</p>
+ *
+ * <p>How much the JDK allocates for Base 64, AES and HMAC differs between releases and JCA providers, so each path is
+ * compared with a baseline that makes the same JDK calls directly on the same JVM. The budgets limit what this library
+ * allocates on top of that baseline. They were measured on JDK 8, 11, 17 and 21 (HotSpot, SunJCE) and include about
+ * 50% headroom.</p>
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class AllocationBudgetTest {
+
+    private static final int warmUpIterations = 20_000;
+    private static final int iterations = 10_000;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private final Random random = new Random(0);
+    // reuse the cipher and HMAC instances so that the budgets measure this library rather than the JCA provider
+    private final Key key = Key.generateKey(random).withCryptoBackend(new ThreadLocalCryptoBackend());
+    private final Validator<String> validator = new StringValidator() {
+    };
+    private final byte[] payload = "{\"sub\":\"user-1234\",\"scope\":\"read\"}".getBytes(Constants.charset);
+
+    @Before
+    public void setUp() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public final void generate() {
+        // given
+        final CryptoEngine engine = key.getCryptoEngine();
+        final IntConsumer baseline = i -> {
+            final byte[] iv = new byte[Constants.initializationVectorBytes];
+            random.nextBytes(iv);
+            final byte[] cipherText = engine.encrypt(new IvParameterSpec(iv), payload, 0, payload.length);
+            final byte[] signedBytes = new byte[Constants.tokenPrefixBytes + cipherText.length];
+            engine.sign(signedBytes, 0, signedBytes.length);
+        };
+        final IntConsumer operation = i -> Token.generate(random, key, payload);
+
+        // when
+        final long expected = measure(baseline);
+        final long result = measure(operation);
+
+        // then
+        assertWithinBudget("Token.generate", expected, 350, result);
+    }
+
+    @Test
+    public final void fromString() {
+        // given
+        final String serialised = Token.generate(random, key, payload).serialise();
+        final IntConsumer baseline = i -> Base64.getUrlDecoder().decode(serialised);
+        final IntConsumer operation = i -> Token.fromString(serialised);
+
+        // when
+        final long expected = measure(baseline);
+        final long result = measure(operation);
+
+        // then
+        assertWithinBudget("Token.fromString", expected, 600, result);
+    }
+
+    @Test
+    public final void validateAndDecrypt() {
+        // given
+        final Token token = Token.generate(random, key, payload);
+        final String serialised = token.serialise();
+        final CryptoEngine engine = key.getCryptoEngine();
+        final IvParameterSpec iv = token.getInitializationVector();
+        final byte[] cipherText = token.getCipherText();
+        final byte[] signedBytes = new byte[Constants.tokenPrefixBytes + cipherText.length];
+        final IntConsumer baseline = i -> {
+            engine.sign(signedBytes, 0, signedBytes.length);
+            new String(engine.decrypt(iv, cipherText, 0, cipherText.length), Constants.charset);
+        };
+        final Token[] tokens = new Token[warmUpIterations + iterations];
+        for (int i = tokens.length; --i >= 0; tokens[i] = Token.fromString(serialised));
+        final IntConsumer operation = i -> validator.validateAndDecrypt(key, tokens[i]);
+
+        // when
+        final long expected = measure(baseline);
+        final long result = measure(operation);
+
+        // then
+        assertWithinBudget("Validator.validateAndDecrypt", expected, 260, result);
+    }
+
+    /**
+     * @param operation the code to measure, it is passed a unique sequence number for each invocation
+     * @return the mean number of bytes allocated per invocation
+     */
+    protected long measure(final IntConsumer operation) {
+        for (int i = 0; i < warmUpIterations; i++) {
+            operation.accept(i);
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = warmUpIterations; i < warmUpIterations + iterations; i++) {
+            operation.accept(i);
+        }
+        final long after = threadBean.getThreadAllocatedBytes(threadId);
+        return (after - before) / iterations;
+    }
+
+    /**
+     * @param operation the name of the measured code
+     * @param baseline the mean number of bytes allocated by the JDK calls the operation cannot avoid
+     * @param budget the maximum number of bytes the operation may allocate on top of <em>baseline</em>
+     * @param actual the mean number of bytes allocated by the operation
+     */
+    protected void assertWithinBudget(final String operation, final long baseline, final long budget,
+            final long actual) {
+        assertTrue(operation + " allocated " + actual + " bytes per invocation, the budget is " + budget
+                + " bytes over a baseline of " + baseline, actual - baseline <= budget);
+    }
+
+}
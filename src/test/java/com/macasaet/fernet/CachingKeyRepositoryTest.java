@@ -0,0 +1,286 @@
+package com.macasaet.fernet;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Unit tests for the {@link CachingKeyRepository} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class CachingKeyRepositoryTest {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    private final Random random = new Random();
+    private final Duration hour = Duration.ofHours(1);
+    private ScheduledThreadPoolExecutor scheduler;
+    private TestRepository delegate;
+
+    @Before
+    public void setUp() {
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        delegate = new TestRepository();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        scheduler.shutdownNow();
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public final void verifyKeysRetrievedOnce() {
+        // given
+        try (final CachingKeyRepository repository = new CachingKeyRepository(delegate, hour, 0.1, scheduler)) {
+
+            // when
+            for (int i = 100; --i >= 0; repository.getDecryptionKeys());
+            final Key result = repository.getPrimaryKey();
+
+            // then
+            assertSame(delegate.primary, result);
+            assertEquals(1, delegate.retrievals.get());
+            assertEquals(1, scheduler.getQueue().size());
+        }
+    }
+
+    @Test
+    public final void verifyRefreshPicksUpRotation() {
+        // given
+        try (final CachingKeyRepository repository = new CachingKeyRepository(delegate, hour, 0.1, scheduler)) {
+            final Key original = repository.getPrimaryKey();
+            delegate.rotate();
+
+            // when
+            final boolean result = repository.refresh();
+
+            // then
+            assertTrue(result);
+            assertSame(delegate.primary, repository.getPrimaryKey());
+            assertTrue(repository.getDecryptionKeys().contains(original));
+            assertEquals(3, repository.getDecryptionKeys().size());
+        }
+    }
+
+    @Test
+    public final void verifyRotationBetweenReadsRetried() {
+        // given
+        final Key original = delegate.primary;
+        delegate.afterPrimaryRead.set(delegate::retire);
+        try (final CachingKeyRepository repository = new CachingKeyRepository(delegate, hour, 0.1, scheduler)) {
+
+            // when
+            final Key result = repository.getPrimaryKey();
+
+            // then
+            assertSame(delegate.primary, result);
+            assertTrue(repository.getDecryptionKeys().contains(result));
+            assertFalse(repository.getDecryptionKeys().contains(original));
+            assertEquals(2, delegate.retrievals.get());
+        }
+    }
+
+    @Test
+    public final void verifyInconsistentKeysRejected() {
+        // given
+        delegate.keys = asList(Key.generateKey(random));
+        try (final CachingKeyRepository repository = new CachingKeyRepository(delegate, hour, 0.1, scheduler)) {
+
+            // when
+            final boolean result = repository.refresh();
+
+            // then
+            assertFalse(result);
+            assertTrue(repository.getLastFailure() instanceof IllegalStateException);
+            assertNull(repository.getLastRefreshed());
+        }
+    }
+
+    @Test
+    public final void verifyConcurrentRefreshesSerialised() throws InterruptedException {
+        // given
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try (final CachingKeyRepository repository = new CachingKeyRepository(delegate, hour, 0.1, scheduler)) {
+            repository.getPrimaryKey();
+            delegate.afterPrimaryRead.set(() -> {
+                reading.countDown();
+                awaitUninterruptibly(release);
+            });
+            final Thread slow = new Thread(repository::refresh);
+            slow.start();
+            assertTrue(reading.await(10, TimeUnit.SECONDS));
+            delegate.rotate();
+
+            // when
+            final Thread fast = new Thread(repository::refresh);
+            fast.start();
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (fast.getState() != Thread.State.BLOCKED && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+            release.countDown();
+            slow.join();
+            fast.join();
+
+            // then
+            assertSame(delegate.primary, repository.getPrimaryKey());
+        }
+    }
+
+    @Test
+    public final void verifyLastKeysServedWhenUnavailable() {
+        // given
+        try (final CachingKeyRepository repository = new CachingKeyRepository(delegate, hour, 0.1, scheduler)) {
+            final List<Key> original = repository.getDecryptionKeys();
+            delegate.available = false;
+
+            // when
+            final boolean result = repository.refresh();
+
+            // then
+            assertFalse(result);
+            assertSame(original, repository.getDecryptionKeys());
+            assertTrue(repository.getLastFailure() instanceof IllegalStateException);
+            delegate.available = true;
+            repository.refresh();
+            assertNull(repository.getLastFailure());
+        }
+    }
+
+    @Test
+    public final void verifyFirstFailurePropagated() {
+        // given
+        delegate.available = false;
+        try (final CachingKeyRepository repository = new CachingKeyRepository(delegate, hour, 0.1, scheduler)) {
+
+            // when
+            thrown.expect(IllegalStateException.class);
+            repository.getPrimaryKey();
+
+            // then (nothing)
+        }
+    }
+
+    @Test
+    public final void verifyBackgroundRefresh() {
+        // given
+        try (final CachingKeyRepository repository = new CachingKeyRepository(delegate, hour, 0.5, scheduler)) {
+            repository.getPrimaryKey();
+            delegate.rotate();
+
+            // when
+            // run the scheduled refresh now rather than waiting for it
+            final Runnable scheduled = scheduler.getQueue().peek();
+            scheduler.remove(scheduled);
+            scheduled.run();
+
+            // then
+            assertSame(delegate.primary, repository.getPrimaryKey());
+            assertEquals(1, scheduler.getQueue().size());
+        }
+    }
+
+    @Test
+    public final void verifyCloseStopsRefresh() throws InterruptedException {
+        // given
+        final CachingKeyRepository repository = new CachingKeyRepository(delegate, hour, 0, scheduler);
+        repository.getPrimaryKey();
+
+        // when
+        repository.close();
+
+        // then
+        // delayed tasks still run after shutdown unless they were cancelled
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1, delegate.retrievals.get());
+    }
+
+    @Test
+    public final void verifyInvalidJitter() {
+        // given
+
+        // when
+        thrown.expect(IllegalArgumentException.class);
+        new CachingKeyRepository(delegate, hour, 1, scheduler);
+
+        // then (nothing)
+    }
+
+    protected static void awaitUninterruptibly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * An in-memory repository that counts retrievals.
+     */
+    private class TestRepository implements KeyRepository {
+        final AtomicInteger retrievals = new AtomicInteger();
+        volatile Key primary = Key.generateKey(random);
+        volatile List<Key> keys = asList(Key.generateKey(random), primary);
+        volatile boolean available = true;
+        final AtomicReference<Runnable> afterPrimaryRead = new AtomicReference<>();
+
+        public Key getPrimaryKey() {
+            if (!available) {
+                throw new IllegalStateException("repository unavailable");
+            }
+            final Key retval = primary;
+            final Runnable hook = afterPrimaryRead.getAndSet(null);
+            if (hook != null) {
+                hook.run();
+            }
+            return retval;
+        }
+
+        public Collection<? extends Key> getDecryptionKeys() {
+            if (!available) {
+                throw new IllegalStateException("repository unavailable");
+            }
+            retrievals.incrementAndGet();
+            return keys;
+        }
+
+        void rotate() {
+            final Key next = Key.generateKey(random);
+            keys = asList(keys.get(0), keys.get(1), next);
+            primary = next;
+        }
+
+        void retire() {
+            final Key next = Key.generateKey(random);
+            keys = asList(keys.get(0), next);
+            primary = next;
+        }
+    }
+
+}
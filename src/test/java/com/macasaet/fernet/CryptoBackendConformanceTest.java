@@ -0,0 +1,189 @@
+package com.macasaet.fernet;
+
+import static java.util.Arrays.copyOfRange;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * A conformance test kit for {@link CryptoBackend} implementations. It runs the scenarios in the
+ * <a href="https://github.com/fernet/spec">Fernet Spec</a> through a specific backend. To check a new backend, extend
+ * this class and implement {@link #getBackend()}.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ * @see FernetTest
+ */
+public abstract class CryptoBackendConformanceTest {
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    private static final String specKey = "cw_0x689RpI-jtRR7oE8h_eQsKImvJapLeSbXpwF4e4=";
+    private static final String specToken =
+            "gAAAAAAdwJ6wAAECAwQFBgcICQoLDA0ODy021cpGVWKZ_eEwCGM4BLLF_5CV9dOPmrhuVUPgJobwOz7JcbmrR64jVmpU4IwqDA==";
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final Instant now = Instant.from(formatter.parse("1985-10-26T01:20:01-07:00"));
+    private Validator<String> validator;
+    private Key key;
+
+    /**
+     * @return the backend under test
+     */
+    protected abstract CryptoBackend getBackend();
+
+    @Before
+    public void setUp() {
+        validator = new StringValidator() {
+            public Clock getClock() {
+                return Clock.fixed(now, ZoneOffset.UTC);
+            }
+        };
+        key = new Key(specKey).withCryptoBackend(getBackend());
+    }
+
+    /**
+     * https://github.com/fernet/spec/blob/master/generate.json
+     */
+    @Test
+    public final void generate() {
+        // given
+        final Instant timestamp = Instant.from(formatter.parse("1985-10-26T01:20:00-07:00"));
+        final IvParameterSpec initializationVector = new IvParameterSpec(
+                new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15});
+
+        // when
+        final byte[] cipherText = key.encrypt("hello".getBytes(Constants.charset), initializationVector);
+        final byte[] hmac = key.sign((byte) 0x80, timestamp, initializationVector, cipherText);
+
+        // then
+        final Token result = new Token((byte) 0x80, timestamp, initializationVector, cipherText, hmac);
+        assertEquals(specToken, result.serialise());
+    }
+
+    /**
+     * https://github.com/fernet/spec/blob/master/verify.json
+     */
+    @Test
+    public final void verify() {
+        // given
+        final Token token = Token.fromString(specToken);
+
+        // when
+        final String result = token.validateAndDecrypt(key, validator);
+
+        // then
+        assertEquals("hello", result);
+    }
+
+    /**
+     * https://github.com/fernet/spec/blob/master/invalid.json
+     */
+    @Test
+    public final void incorrectMac() {
+        // given
+        final Token token = Token.fromString(
+                "gAAAAAAdwJ6xAAECAwQFBgcICQoLDA0OD3HkMATM5lFqGaerZ-fWPAl1-szkFVzXTuGb4hR8AKtwcaX1YdykQUFBQUFBQUFBQQ==");
+
+        // when
+        thrown.expect(TokenValidationException.class);
+        token.validateAndDecrypt(key, validator);
+
+        // then (nothing)
+    }
+
+    /**
+     * https://github.com/fernet/spec/blob/master/invalid.json
+     */
+    @Test
+    public final void payloadPaddingError() {
+        // given
+        final Token token = Token.fromString(
+                "gAAAAAAdwJ6xAAECAwQFBgcICQoLDA0ODz4LEpdELGQAad7aNEHbf-JkLPIpuiYRLQ3RtXatOYREu2FWke6CnJNYIbkuKNqOhw==");
+
+        // when
+        thrown.expect(TokenValidationException.class);
+        token.validateAndDecrypt(key, validator);
+
+        // then (nothing)
+    }
+
+    /**
+     * https://github.com/fernet/spec/blob/master/invalid.json
+     */
+    @Test
+    public final void incorrectInitializationVector() {
+        // given
+        final Token token = Token.fromString(
+                "gAAAAAAdwJ6xBQECAwQFBgcICQoLDA0OD3HkMATM5lFqGaerZ-fWPAkLhFLHpGtDBRLRTZeUfWgHSv49TF2AUEZ1TIvcZjK1zQ==");
+
+        // when
+        thrown.expect(TokenValidationException.class);
+        token.validateAndDecrypt(key, validator);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyBufferRanges() {
+        // given
+        final CryptoEngine engine = key.getCryptoEngine();
+        final IvParameterSpec initializationVector = new IvParameterSpec(new byte[16]);
+        final Random random = new Random(0);
+
+        for (int length = 0; length < 100; length += 13) {
+            final byte[] buffer = new byte[length + 7];
+            random.nextBytes(buffer);
+            final byte[] range = copyOfRange(buffer, 5, 5 + length);
+
+            // when
+            final byte[] cipherText = engine.encrypt(initializationVector, buffer, 5, length);
+            final byte[] paddedCipherText = new byte[cipherText.length + 3];
+            System.arraycopy(cipherText, 0, paddedCipherText, 3, cipherText.length);
+            final byte[] plainText = engine.decrypt(initializationVector, paddedCipherText, 3, cipherText.length);
+            final byte[] signature = engine.sign(buffer, 5, length);
+
+            // then
+            assertEquals(0, cipherText.length % 16);
+            assertArrayEquals(cipherText, engine.encrypt(initializationVector, range, 0, length));
+            assertArrayEquals(range, plainText);
+            assertArrayEquals(signature, engine.sign(range, 0, length));
+            assertTrue(engine.verify(buffer, 5, length, signature));
+            signature[length % signature.length] ^= 1;
+            assertFalse(engine.verify(buffer, 5, length, signature));
+        }
+    }
+
+    @Test
+    public final void verifyEngineIsThreadSafe() {
+        // given
+        final Token token = Token.fromString(specToken);
+
+        // when
+        final long valid = IntStream.range(0, 1024).parallel()
+                .mapToObj(i -> token.validateAndDecrypt(key, validator))
+                .filter("hello"::equals)
+                .count();
+
+        // then
+        assertEquals(1024, valid);
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.macasaet.fernet;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Unit tests for the {@link CryptoWarmUp} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class CryptoWarmUpTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private CryptoBackend originalDefault;
+
+    @Before
+    public void setUp() {
+        originalDefault = Key.getDefaultCryptoBackend();
+    }
+
+    @After
+    public void tearDown() {
+        Key.setDefaultCryptoBackend(originalDefault);
+    }
+
+    @Test
+    public final void testWarmUp() {
+        // given
+        final Random random = new Random();
+        final List<Key> keys = asList(Key.generateKey(random), Key.generateKey(random));
+
+        // when
+        final CryptoWarmUp result = CryptoWarmUp.warmUp(random, keys, 64, 20, false);
+
+        // then
+        assertTrue(result.getCostPerToken().size() >= 2);
+        assertTrue(result.getCostPerToken().containsKey(result.getFastestBackend()));
+        assertFalse(result.isFastestBackendInstalled());
+        assertSame(originalDefault, Key.getDefaultCryptoBackend());
+        assertEquals(20, result.getIterations());
+        assertSame(result, CryptoWarmUp.getLatest().get());
+        assertTrue(result.toString().contains("fastest=" + result.getFastestBackend()));
+    }
+
+    @Test
+    public final void verifyFastestBackendIsInstalled() {
+        // given
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+
+        // when
+        final CryptoWarmUp result = CryptoWarmUp.warmUp(random, asList(key), 16, 10, true);
+
+        // then
+        assertTrue(result.isFastestBackendInstalled());
+        assertSame(result.getFastestBackend(), Key.getDefaultCryptoBackend());
+        assertSame(result.getFastestBackend(), key.getCryptoBackend());
+    }
+
+    @Test
+    public final void verifyIntrinsicsAreReportedOnHotSpot() {
+        // given
+        final String vmName = System.getProperty("java.vm.name");
+
+        // when
+        final CryptoWarmUp result = CryptoWarmUp.warmUp(new Random(), asList(Key.generateKey(new Random())), 16, 1,
+                false);
+
+        // then
+        if (vmName.contains("HotSpot") || vmName.contains("OpenJDK")) {
+            assertTrue(result.getAesIntrinsics().isPresent());
+            assertTrue(result.getShaIntrinsics().isPresent());
+        }
+    }
+
+    @Test
+    public final void verifyKeysAreRequired() {
+        // given
+
+        // when
+        thrown.expect(IllegalArgumentException.class);
+        CryptoWarmUp.warmUp(new Random(), asList(), 16, 1, false);
+
+        // then (nothing)
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.macasaet.fernet;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.TemporalAmount;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.macasaet.fernet.FernetMetrics.FailureReason;
+
+/**
+ * Unit tests for the {@link FailureThrottle} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class FailureThrottleTest {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    private final Random random = new Random();
+    private final Key key = Key.generateKey(random);
+    private final MutableClock clock = new MutableClock(Instant.now());
+
+    @Test
+    public final void verifyClientThrottledAfterBurst() {
+        // given
+        final FailureThrottle throttle = new FailureThrottle(3, Duration.ofSeconds(10), 1024, clock);
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            assertTrue(throttle.tryAdmit("192.0.2.1"));
+            throttle.recordFailure("192.0.2.1");
+        }
+
+        // then
+        assertFalse(throttle.tryAdmit("192.0.2.1"));
+        assertTrue(throttle.tryAdmit("192.0.2.2"));
+        assertEquals(1, throttle.getShedCount());
+        assertEquals(4, throttle.getAdmittedCount());
+        assertEquals(3, throttle.getFailureCount());
+    }
+
+    @Test
+    public final void verifyAllowanceRefills() {
+        // given
+        final FailureThrottle throttle = new FailureThrottle(2, Duration.ofSeconds(10), 1024, clock);
+        throttle.recordFailure("client");
+        throttle.recordFailure("client");
+        assertFalse(throttle.tryAdmit("client"));
+
+        // when
+        clock.advance(Duration.ofSeconds(10));
+
+        // then
+        assertTrue(throttle.tryAdmit("client"));
+        throttle.recordFailure("client");
+        assertFalse(throttle.tryAdmit("client"));
+        clock.advance(Duration.ofSeconds(20));
+        assertTrue(throttle.tryAdmit("client"));
+        throttle.recordFailure("client");
+        assertTrue(throttle.tryAdmit("client"));
+    }
+
+    @Test
+    public final void verifyThrottledClientNotDisplaced() {
+        // given
+        final FailureThrottle throttle = new FailureThrottle(5, Duration.ofMinutes(1), 64, clock);
+        for (int i = 0; i < 5; i++) {
+            throttle.recordFailure("attacker");
+        }
+
+        // when
+        for (int i = 0; i < 10_000; i++) {
+            throttle.recordFailure("client-" + i);
+        }
+
+        // then
+        assertFalse(throttle.tryAdmit("attacker"));
+    }
+
+    @Test
+    public final void verifyForgedTokensShed() {
+        // given
+        final FailureThrottle throttle = new FailureThrottle(2, Duration.ofMinutes(1), 1024, clock);
+        final FernetMetricsRegistry registry = new FernetMetricsRegistry();
+        final Validator<String> validator = new TestValidator(registry);
+        final String forged = Token.generate(random, Key.generateKey(random), "forged").serialise();
+        for (int i = 0; i < 2; i++) {
+            try {
+                throttle.validateAndDecrypt("attacker", validator, singletonList(key), forged);
+                throw new AssertionError("Forged token accepted");
+            } catch (final TokenValidationException tve) {
+                assertFalse(tve instanceof ClientThrottledException);
+            }
+        }
+        final String valid = Token.generate(random, key, "hello").serialise();
+        assertEquals("hello", throttle.validateAndDecrypt("user", validator, singletonList(key), valid));
+
+        // when
+        try {
+            throttle.validateAndDecrypt("attacker", validator, singletonList(key), valid);
+
+            // then
+            throw new AssertionError("Throttled client admitted");
+        } catch (final ClientThrottledException cte) {
+            assertEquals(1, registry.getFailureCount(FailureReason.THROTTLED));
+            assertEquals(1, throttle.getShedCount());
+        }
+    }
+
+    @Test
+    public final void verifyMalformedTokensCharged() {
+        // given
+        final FailureThrottle throttle = new FailureThrottle(1, Duration.ofMinutes(1), 1024, clock);
+        final Validator<String> validator = new TestValidator(FernetMetrics.NONE);
+        try {
+            throttle.validateAndDecrypt("attacker", validator, singletonList(key), "not a token");
+        } catch (final IllegalArgumentException iae) {
+        }
+
+        // when
+        thrown.expect(ClientThrottledException.class);
+        throttle.validateAndDecrypt("attacker", validator, singletonList(key), "not a token");
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyReplayedExpiredTokenThrottled() {
+        // given
+        final FailureThrottle throttle = new FailureThrottle(3, Duration.ofMinutes(1), 1024, clock);
+        final Validator<String> validator = new TestValidator(FernetMetrics.NONE) {
+            public TemporalAmount getTimeToLive() {
+                return Duration.ofSeconds(-1);
+            }
+        };
+        final List<Key> keys = asList(Key.generateKey(random), Key.generateKey(random), key);
+        final String expired = Token.generate(random, key, "hello").serialise();
+        for (int i = 0; i < 3; i++) {
+            try {
+                throttle.validateAndDecrypt("attacker", validator, keys, expired);
+                throw new AssertionError("Expired token accepted");
+            } catch (final TokenExpiredException tee) {
+            }
+        }
+
+        // when
+        thrown.expect(ClientThrottledException.class);
+        throttle.validateAndDecrypt("attacker", validator, keys, expired);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyInvalidBurstRejected() {
+        // given
+
+        // when
+        thrown.expect(IllegalArgumentException.class);
+        new FailureThrottle(0, Duration.ofSeconds(1), 1024);
+
+        // then (nothing)
+    }
+
+    /**
+     * A string validator that reports to the given metrics.
+     */
+    private static class TestValidator implements StringValidator {
+        private final FernetMetrics metrics;
+
+        TestValidator(final FernetMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        public FernetMetrics getMetrics() {
+            return metrics;
+        }
+    }
+
+}
@@ -0,0 +1,254 @@
+package com.macasaet.fernet;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.macasaet.fernet.FernetMetrics.FailureReason;
+import com.macasaet.fernet.FernetMetrics.Stage;
+
+/**
+ * Unit tests for the {@link FernetMetricsRegistry} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class FernetMetricsRegistryTest {
+
+    private final Random random = new Random();
+    private FernetMetricsRegistry registry;
+    private Validator<String> validator;
+
+    @Before
+    public void setUp() {
+        registry = new FernetMetricsRegistry();
+        validator = new StringValidator() {
+            public Predicate<String> getObjectValidator() {
+                return string -> !string.startsWith("forbidden");
+            }
+
+            public FernetMetrics getMetrics() {
+                return registry;
+            }
+        };
+    }
+
+    @Test
+    public final void verifyStagesRecordedForValidToken() {
+        // given
+        final Key key = Key.generateKey(random);
+        final Token token = Token.generate(random, key, "hello");
+
+        // when
+        validator.validateAndDecrypt(key, token);
+
+        // then
+        final Map<String, Long> counts = registry.getStageCounts();
+        assertEquals(Long.valueOf(1), counts.get("signature"));
+        assertEquals(Long.valueOf(1), counts.get("decrypt"));
+        assertEquals(Long.valueOf(1), counts.get("transform"));
+        assertEquals(Long.valueOf(1), counts.get("object_validation"));
+        assertEquals(Long.valueOf(0), counts.get("key_search"));
+        assertEquals(1, registry.getStageHistogram(Stage.DECRYPT).getCount());
+        assertEquals(7, registry.getPayloadBytesP50());
+        for (final long failures : registry.getFailureCounts().values()) {
+            assertEquals(0, failures);
+        }
+    }
+
+    @Test
+    public final void verifyMatchedKeyIndexRecorded() {
+        // given
+        final Key first = Key.generateKey(random);
+        final Key second = Key.generateKey(random);
+        final Key third = Key.generateKey(random);
+        final Token token = Token.generate(random, third, "rotated");
+
+        // when
+        final String result = validator.validateAndDecrypt(asList(first, second, third), token);
+
+        // then
+        assertEquals("rotated", result);
+        assertEquals(1, registry.getStageHistogram(Stage.KEY_SEARCH).getCount());
+        final long[] expected = new long[registry.getMatchedKeyIndexCounts().length];
+        expected[2] = 1;
+        assertArrayEquals(expected, registry.getMatchedKeyIndexCounts());
+    }
+
+    @Test
+    public final void verifyKeyNotFoundRecorded() {
+        // given
+        final Token token = Token.generate(random, Key.generateKey(random), "orphan");
+
+        // when
+        try {
+            validator.validateAndDecrypt(asList(Key.generateKey(random), Key.generateKey(random)), token);
+            fail("Expected TokenValidationException");
+        } catch (final TokenValidationException tve) {
+            // then
+            assertEquals(1, registry.getFailureCount(FailureReason.KEY_NOT_FOUND));
+        }
+    }
+
+    @Test
+    public final void verifyExpiredRecorded() {
+        // given
+        final Key key = Key.generateKey(random);
+        final Token token = Token.generate(random, key, "stale");
+        final Validator<String> lateValidator = new StringValidator() {
+            public Clock getClock() {
+                return Clock.fixed(Instant.now().plus(Duration.ofHours(2)), ZoneOffset.UTC);
+            }
+
+            public FernetMetrics getMetrics() {
+                return registry;
+            }
+        };
+
+        // when
+        try {
+            lateValidator.validateAndDecrypt(key, token);
+            fail("Expected TokenValidationException");
+        } catch (final TokenValidationException tve) {
+            // then
+            assertEquals(1, registry.getFailureCount(FailureReason.EXPIRED));
+            assertEquals(Long.valueOf(1), registry.getFailureCounts().get("expired"));
+            assertTrue(registry.getTokenAgeSecondsP50() >= 7200);
+        }
+    }
+
+    @Test
+    public final void verifyInvalidContentsRecorded() {
+        // given
+        final Key key = Key.generateKey(random);
+        final Token token = Token.generate(random, key, "forbidden fruit");
+
+        // when
+        try {
+            new StringValidator() {
+                public FernetMetrics getMetrics() {
+                    return registry;
+                }
+
+                public Predicate<String> getObjectValidator() {
+                    return string -> !string.startsWith("forbidden");
+                }
+            }.validateAndDecrypt(key, token);
+            fail("Expected TokenValidationException");
+        } catch (final TokenValidationException tve) {
+            // then
+            assertEquals(1, registry.getFailureCount(FailureReason.INVALID_CONTENTS));
+        }
+    }
+
+    @Test
+    public final void verifyTransformationErrorRecorded() {
+        // given
+        final Key key = Key.generateKey(random);
+        final Token token = Token.generate(random, key, "not a number");
+        final Validator<Integer> integerValidator = new Validator<Integer>() {
+            public Function<byte[], Integer> getTransformer() {
+                return bytes -> Integer.valueOf(new String(bytes, Constants.charset));
+            }
+
+            public FernetMetrics getMetrics() {
+                return registry;
+            }
+        };
+
+        // when
+        try {
+            integerValidator.validateAndDecrypt(key, token);
+            fail("Expected NumberFormatException");
+        } catch (final NumberFormatException nfe) {
+            // then
+            assertEquals(1, registry.getFailureCount(FailureReason.TRANSFORMATION_ERROR));
+        }
+    }
+
+    @Test
+    public final void verifyMalformedRecorded() {
+        // given
+        final String malformed = "not-a-token";
+
+        // when
+        try {
+            Token.fromString(malformed, registry);
+            fail("Expected IllegalTokenException");
+        } catch (final IllegalArgumentException iae) {
+            // then
+            assertEquals(1, registry.getFailureCount(FailureReason.MALFORMED));
+        }
+    }
+
+    @Test
+    public final void verifyReset() {
+        // given
+        final Key key = Key.generateKey(random);
+        validator.validateAndDecrypt(key, Token.generate(random, key, "hello"));
+
+        // when
+        registry.reset();
+
+        // then
+        assertEquals(Long.valueOf(0), registry.getStageCounts().get("decrypt"));
+        assertEquals(0, registry.getPayloadBytesP99());
+    }
+
+    @Test
+    public final void verifyMBeanRegistration() throws Exception {
+        // given
+        final Key key = Key.generateKey(random);
+        validator.validateAndDecrypt(key, Token.generate(random, key, "hello"));
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        // when
+        final ObjectName name = registry.registerMBean("verifyMBeanRegistration");
+
+        // then
+        try {
+            final Object payloadP50 = server.getAttribute(name, "PayloadBytesP50");
+            assertEquals(registry.getPayloadBytesP50(), payloadP50);
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            assertEquals(0L, server.getAttribute(name, "PayloadBytesP50"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public final void verifyHistogramPercentiles() {
+        // given
+        final Log2Histogram histogram = new Log2Histogram();
+
+        // when
+        for (int i = 1; i <= 100; histogram.record(i++));
+        histogram.record(-1);
+
+        // then
+        assertEquals(101, histogram.getCount());
+        assertEquals(63, histogram.getValueAtPercentile(50));
+        assertEquals(127, histogram.getValueAtPercentile(99));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.macasaet.fernet;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Integration tests for the {@link FlightRecorderEvents} class. The events are in the <code>META-INF/versions/11</code>
+ * layer, so these run against the packaged JAR and are skipped on JVMs without the JDK Flight Recorder.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class FlightRecorderEventsIT {
+
+    private static final String[] eventNames = {"com.macasaet.fernet.TokenGeneration",
+            "com.macasaet.fernet.TokenParse", "com.macasaet.fernet.KeySearch", "com.macasaet.fernet.TokenDecryption",
+            "com.macasaet.fernet.PayloadTransformation"};
+
+    private final Random random = new Random();
+    private final Validator<String> validator = new StringValidator() {
+    };
+    private Recording recording;
+
+    @Before
+    public void setUp() {
+        assumeTrue(FlightRecorderEvents.isAvailable());
+        recording = new Recording();
+        for (final String eventName : eventNames) {
+            recording.enable(eventName).withThreshold(Duration.ZERO);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    @Test
+    public final void verifyNoEventsWithoutRecording() {
+        // given
+
+        // when
+        final TokenEvent result = FlightRecorderEvents.beginGeneration();
+
+        // then
+        assertSame(TokenEvent.NONE, result);
+    }
+
+    @Test
+    public final void verifySuccessfulOperationsRecorded() throws IOException {
+        // given
+        final Key key = Key.generateKey(random);
+        final List<Key> keys = asList(Key.generateKey(random), key);
+        recording.start();
+
+        // when
+        final String serialised = Token.generate(random, key, "hello").serialise();
+        final String result = Token.fromString(serialised).validateAndDecrypt(keys, validator);
+
+        // then
+        assertEquals("hello", result);
+        final List<RecordedEvent> events = stop();
+        final RecordedEvent generation = find(events, "TokenGeneration");
+        assertEquals("FERNET", generation.getString("format"));
+        assertEquals(5, generation.getInt("payloadBytes"));
+        assertEquals("success", generation.getString("outcome"));
+        final RecordedEvent parse = find(events, "TokenParse");
+        assertEquals(serialised.length(), parse.getInt("tokenBytes"));
+        final RecordedEvent keySearch = find(events, "KeySearch");
+        assertEquals(2, keySearch.getInt("keyCount"));
+        assertTrue(keySearch.getInt("keysTried") >= 1);
+        assertEquals("success", keySearch.getString("outcome"));
+        assertEquals("success", find(events, "TokenDecryption").getString("outcome"));
+        assertEquals(5, find(events, "PayloadTransformation").getInt("payloadBytes"));
+    }
+
+    @Test
+    public final void verifyFailuresRecorded() throws IOException {
+        // given
+        final Token token = Token.generate(random, Key.generateKey(random), "hello");
+        recording.start();
+
+        // when
+        try {
+            Token.fromString("not-a-token");
+            fail("Expected IllegalTokenException");
+        } catch (final IllegalArgumentException iae) {
+        }
+        try {
+            validator.validateAndDecrypt(asList(Key.generateKey(random), Key.generateKey(random)), token);
+            fail("Expected TokenValidationException");
+        } catch (final TokenValidationException tve) {
+        }
+        try {
+            validator.validateAndDecrypt(Key.generateKey(random), token);
+            fail("Expected TokenValidationException");
+        } catch (final TokenValidationException tve) {
+        }
+
+        // then
+        final List<RecordedEvent> events = stop();
+        assertEquals("malformed", find(events, "TokenParse").getString("outcome"));
+        final RecordedEvent keySearch = find(events, "KeySearch");
+        assertEquals(2, keySearch.getInt("keysTried"));
+        assertEquals("key_not_found", keySearch.getString("outcome"));
+        assertEquals("invalid_signature", find(events, "TokenDecryption").getString("outcome"));
+    }
+
+    protected List<RecordedEvent> stop() throws IOException {
+        recording.stop();
+        final Path file = Files.createTempFile("fernet", ".jfr");
+        try {
+            recording.dump(file);
+            final List<RecordedEvent> retval = new ArrayList<>();
+            for (final RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().startsWith("com.macasaet.fernet.")) {
+                    retval.add(event);
+                }
+            }
+            return retval;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    protected RecordedEvent find(final List<RecordedEvent> events, final String simpleName) {
+        for (final RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("com.macasaet.fernet." + simpleName)) {
+                return event;
+            }
+        }
+        throw new AssertionError("No " + simpleName + " event in " + events);
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.macasaet.fernet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link FormatCalibration} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class FormatCalibrationTest {
+
+    @Test
+    public final void testCalibrate() {
+        // given
+        final Random random = new Random();
+
+        // when
+        final FormatCalibration result = FormatCalibration.calibrate(random, 64, 8);
+
+        // then
+        assertTrue(result.getCostPerToken().containsKey(TokenFormat.FERNET));
+        assertTrue(result.getCostPerToken().containsKey(TokenFormat.AES_GCM));
+        assertEquals(TokenFormat.CHACHA20_POLY1305.isAvailable(),
+                result.getCostPerToken().containsKey(TokenFormat.CHACHA20_POLY1305));
+        assertTrue(result.getCostPerToken().containsKey(result.getCheapestFormat()));
+        assertTrue(result.toString().contains("cheapest=" + result.getCheapestFormat()));
+    }
+
+    @Test
+    public final void verifyCheapestFormatIsSelected() {
+        // given
+        final Random random = new Random();
+        // FERNET is measured first and takes 4 us per token, AES_GCM takes 1 us per token
+        final PrimitiveIterator.OfLong readings = LongStream.of(0L, 8_000L, 8_000L, 10_000L).iterator();
+
+        // when
+        final FormatCalibration result = FormatCalibration.calibrate(random, 16, 2,
+                EnumSet.of(TokenFormat.FERNET, TokenFormat.AES_GCM), readings::nextLong);
+
+        // then
+        assertEquals(Duration.ofNanos(4_000L), result.getCostPerToken().get(TokenFormat.FERNET));
+        assertEquals(Duration.ofNanos(1_000L), result.getCostPerToken().get(TokenFormat.AES_GCM));
+        assertEquals(TokenFormat.AES_GCM, result.getCheapestFormat());
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.hmacLanes;
+import static com.macasaet.fernet.Constants.signingAlgorithm;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Unit tests for the {@link HmacSha256Lanes} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class HmacSha256LanesTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public final void verifySignaturesMatchJca() throws GeneralSecurityException {
+        // given
+        final Random random = new Random(0L);
+        final byte[][] signingKeys = new byte[hmacLanes][16];
+        final int[][] keyStates = new int[hmacLanes][];
+        final byte[][] messages = new byte[hmacLanes][];
+        for (int lane = 0; lane < hmacLanes; lane++) {
+            random.nextBytes(signingKeys[lane]);
+            keyStates[lane] = HmacSha256Lanes.createKeyState(signingKeys[lane]);
+            messages[lane] = new byte[160];
+            random.nextBytes(messages[lane]);
+        }
+
+        for (int length = 0; length < 150; length++) {
+            final int[] lengths = new int[hmacLanes];
+            for (int lane = 0; lane < hmacLanes; lane++) {
+                lengths[lane] = length + lane;
+            }
+
+            // when
+            final byte[][] result = HmacSha256Lanes.sign(keyStates, messages, lengths, hmacLanes);
+
+            // then
+            for (int lane = 0; lane < hmacLanes; lane++) {
+                final Mac mac = Mac.getInstance(signingAlgorithm);
+                mac.init(new SecretKeySpec(signingKeys[lane], signingAlgorithm));
+                mac.update(messages[lane], 0, lengths[lane]);
+                assertArrayEquals("length " + lengths[lane], mac.doFinal(), result[lane]);
+            }
+        }
+    }
+
+    @Test
+    public final void verifyPartialGroupIsSigned() throws GeneralSecurityException {
+        // given
+        final byte[] signingKey = new byte[16];
+        final byte[] message = "Hello, world!".getBytes();
+        final int[][] keyStates = {HmacSha256Lanes.createKeyState(signingKey)};
+
+        // when
+        final byte[][] result = HmacSha256Lanes.sign(keyStates, new byte[][] {message}, new int[] {message.length},
+                1);
+
+        // then
+        final Mac mac = Mac.getInstance(signingAlgorithm);
+        mac.init(new SecretKeySpec(signingKey, signingAlgorithm));
+        assertArrayEquals(mac.doFinal(message), result[0]);
+    }
+
+    @Test
+    public final void verifyTooManyMessagesAreRejected() {
+        // given
+        final int[][] keyStates = new int[hmacLanes + 1][];
+        final byte[][] messages = new byte[hmacLanes + 1][];
+        final int[] lengths = new int[hmacLanes + 1];
+
+        // when
+        thrown.expect(IllegalArgumentException.class);
+        HmacSha256Lanes.sign(keyStates, messages, lengths, hmacLanes + 1);
+
+        // then (nothing)
+    }
+
+}
@@ -0,0 +1,271 @@
+package com.macasaet.fernet;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import com.macasaet.fernet.FernetMetrics.FailureReason;
+
+/**
+ * Unit tests for the {@link InMemoryRevocationList} and {@link FileRevocationFeed} classes.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class InMemoryRevocationListTest {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random();
+    private final Key key = Key.generateKey(random);
+    private final MutableClock clock = new MutableClock(Instant.now());
+
+    @Test
+    public final void verifyTokenRevoked() {
+        // given
+        final InMemoryRevocationList list = new InMemoryRevocationList(Duration.ofMinutes(5), clock);
+        final Token revoked = Token.generate(random, key, "revoked");
+        final Token other = Token.generate(random, key, "other");
+
+        // when
+        list.revoke(revoked);
+
+        // then
+        assertTrue(list.isRevoked(revoked));
+        assertTrue(list.isRevoked(Token.fromString(revoked.serialise())));
+        assertFalse(list.isRevoked(other));
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    public final void verifyRevocationsExpire() {
+        // given
+        final InMemoryRevocationList list = new InMemoryRevocationList(Duration.ofMinutes(5), clock);
+        final Token token = Token.generate(random, key, "revoked");
+        list.revoke(token);
+
+        // when
+        clock.advance(Duration.ofMinutes(4));
+        list.expire();
+        final boolean beforeExpiry = list.isRevoked(token);
+        clock.advance(Duration.ofMinutes(2));
+        list.expire();
+
+        // then
+        assertTrue(beforeExpiry);
+        assertFalse(list.isRevoked(token));
+        assertEquals(0, list.size());
+    }
+
+    @Test
+    public final void verifyManyRevocations() {
+        // given
+        final InMemoryRevocationList list = new InMemoryRevocationList(Duration.ofHours(1), clock);
+        final Instant start = Instant.ofEpochSecond(clock.instant().getEpochSecond());
+        clock.set(start);
+
+        // when
+        for (long fingerprint = 1; fingerprint <= 10_000; fingerprint++) {
+            // spread the expiry times over the wheel and beyond one turn of it
+            list.revoke(fingerprint, start.plusSeconds(fingerprint));
+        }
+        clock.set(start.plusSeconds(5_000));
+        list.expire();
+
+        // then
+        assertEquals(5_000, list.size());
+        for (long fingerprint = 1; fingerprint <= 10_000; fingerprint++) {
+            assertEquals(fingerprint > 5_000, list.contains(fingerprint));
+        }
+    }
+
+    @Test
+    public final void verifyExpiredRevocationIgnored() {
+        // given
+        final InMemoryRevocationList list = new InMemoryRevocationList(Duration.ofMinutes(5), clock);
+
+        // when
+        list.revoke(42L, clock.instant().minusSeconds(1));
+
+        // then
+        assertFalse(list.contains(42L));
+        assertEquals(0, list.size());
+    }
+
+    @Test
+    public final void verifyEntryRoundTrip() {
+        // given
+        final InMemoryRevocationList source = new InMemoryRevocationList(Duration.ofMinutes(5), clock);
+        final InMemoryRevocationList destination = new InMemoryRevocationList(Duration.ofMinutes(5), clock);
+        final Token token = Token.generate(random, key, "revoked");
+
+        // when
+        destination.apply(source.toEntry(token));
+
+        // then
+        assertTrue(destination.isRevoked(token));
+    }
+
+    @Test
+    public final void verifyMalformedEntryRejected() {
+        // given
+        final InMemoryRevocationList list = new InMemoryRevocationList(Duration.ofMinutes(5), clock);
+
+        // when
+        thrown.expect(IllegalArgumentException.class);
+        list.apply("not-a-fingerprint 12");
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyValidatorRejectsRevokedToken() {
+        // given
+        final InMemoryRevocationList list = new InMemoryRevocationList(Duration.ofMinutes(5), clock);
+        final FernetMetricsRegistry registry = new FernetMetricsRegistry();
+        final Validator<String> validator = new StringValidator() {
+            public RevocationList getRevocationList() {
+                return list;
+            }
+
+            public FernetMetrics getMetrics() {
+                return registry;
+            }
+        };
+        final Token token = Token.generate(random, key, "session");
+        assertEquals("session", validator.validateAndDecrypt(key, token));
+        list.revoke(token);
+        registry.reset();
+
+        // when
+        try {
+            validator.validateAndDecrypt(key, token);
+
+            // then
+            throw new AssertionError("Revoked token accepted");
+        } catch (final TokenValidationException tve) {
+            assertEquals(1, registry.getFailureCount(FailureReason.REVOKED));
+            assertEquals(Long.valueOf(0), registry.getStageCounts().get("decrypt"));
+        }
+    }
+
+    @Test
+    public final void verifyForgedAuthenticatedTokenIsNotReportedAsRevoked() {
+        // given
+        final InMemoryRevocationList list = new InMemoryRevocationList(Duration.ofMinutes(5), clock);
+        final FernetMetricsRegistry registry = new FernetMetricsRegistry();
+        final Validator<String> validator = new StringValidator() {
+            public RevocationList getRevocationList() {
+                return list;
+            }
+
+            public FernetMetrics getMetrics() {
+                return registry;
+            }
+
+            public Set<TokenFormat> getAcceptedFormats() {
+                return EnumSet.of(TokenFormat.AES_GCM);
+            }
+        };
+        final Token revoked = Token.generate(random, key, "session", TokenFormat.AES_GCM);
+        final Token forged = Token.generate(random, Key.generateKey(random), "session", TokenFormat.AES_GCM);
+        list.revoke(revoked);
+        list.revoke(forged);
+
+        // when
+        try {
+            validator.validateAndDecrypt(key, forged);
+
+            // then
+            throw new AssertionError("Forged token accepted");
+        } catch (final TokenValidationException tve) {
+            assertEquals(1, registry.getFailureCount(FailureReason.INVALID_SIGNATURE));
+            assertEquals(0, registry.getFailureCount(FailureReason.REVOKED));
+        }
+        try {
+            validator.validateAndDecrypt(key, revoked);
+            throw new AssertionError("Revoked token accepted");
+        } catch (final TokenValidationException tve) {
+            assertEquals(1, registry.getFailureCount(FailureReason.REVOKED));
+        }
+    }
+
+    @Test
+    public final void verifyFeedAppliesAppendedEntries() throws IOException {
+        // given
+        final InMemoryRevocationList source = new InMemoryRevocationList(Duration.ofMinutes(5), clock);
+        final InMemoryRevocationList list = new InMemoryRevocationList(Duration.ofMinutes(5), clock);
+        final Path path = folder.getRoot().toPath().resolve("revocations.txt");
+        final FileRevocationFeed feed = new FileRevocationFeed(path, list);
+        final List<Token> tokens = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tokens.add(Token.generate(random, key, "session " + i));
+        }
+        assertEquals(0, feed.poll());
+        append(path, source.toEntry(tokens.get(0)) + "\n# comment\nmalformed\n");
+        final String partial = source.toEntry(tokens.get(1));
+        append(path, partial.substring(0, 5));
+
+        // when
+        final int firstPoll = feed.poll();
+        append(path, partial.substring(5) + "\n" + source.toEntry(tokens.get(2)) + "\n");
+        final int secondPoll = feed.poll();
+
+        // then
+        assertEquals(3, firstPoll);
+        assertEquals(2, secondPoll);
+        for (final Token token : tokens) {
+            assertTrue(list.isRevoked(token));
+        }
+        assertEquals(1, feed.getRejectedEntries());
+        assertEquals(Files.size(path), feed.getOffset());
+    }
+
+    @Test
+    public final void verifyFeedRereadsTruncatedFile() throws IOException {
+        // given
+        final InMemoryRevocationList source = new InMemoryRevocationList(Duration.ofMinutes(5), clock);
+        final InMemoryRevocationList list = new InMemoryRevocationList(Duration.ofMinutes(5), clock);
+        final Path path = folder.getRoot().toPath().resolve("revocations.txt");
+        final FileRevocationFeed feed = new FileRevocationFeed(path, list);
+        append(path, "# a long comment that will be removed when the file is replaced\n");
+        feed.poll();
+        final Token token = Token.generate(random, key, "session");
+
+        // when
+        Files.write(path, (source.toEntry(token) + "\n").getBytes(US_ASCII));
+        feed.run();
+
+        // then
+        assertTrue(list.isRevoked(token));
+    }
+
+    protected void append(final Path path, final String text) throws IOException {
+        Files.write(path, text.getBytes(US_ASCII), CREATE, APPEND);
+    }
+
+}
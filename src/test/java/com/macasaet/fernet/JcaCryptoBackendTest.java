@@ -0,0 +1,48 @@
+package com.macasaet.fernet;
+
+import static java.util.Arrays.asList;
+
+import java.security.Security;
+import java.util.Collection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Runs the {@link CryptoBackendConformanceTest} against the {@link JcaCryptoBackend} with and without an explicit
+ * provider.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+@RunWith(Parameterized.class)
+public class JcaCryptoBackendTest extends CryptoBackendConformanceTest {
+
+    private final CryptoBackend backend;
+
+    public JcaCryptoBackendTest(final CryptoBackend backend) {
+        this.backend = backend;
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> backends() {
+        return asList(new Object[][] {
+            {new JcaCryptoBackend()},
+            {new JcaCryptoBackend("SunJCE")},
+            {new JcaCryptoBackend(Security.getProvider("SunJCE"))},
+        });
+    }
+
+    protected CryptoBackend getBackend() {
+        return backend;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void verifyUnknownProviderIsRejected() {
+        new JcaCryptoBackend("NoSuchProvider");
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.macasaet.fernet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Unit tests for the {@link KeyDerivation} class and {@link TenantValidator} interface.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class KeyDerivationTest {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    private final Random random = new Random();
+    private final byte[] masterSecret = new byte[32];
+
+    {
+        random.nextBytes(masterSecret);
+    }
+
+    @Test
+    public final void verifyRfc5869TestCase1() {
+        // given
+        final byte[] inputKeyMaterial = parseHexBinary("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b");
+        final byte[] salt = parseHexBinary("000102030405060708090a0b0c");
+        final byte[] info = parseHexBinary("f0f1f2f3f4f5f6f7f8f9");
+
+        // when
+        final byte[] pseudoRandomKey = KeyDerivation.extract(salt, inputKeyMaterial);
+        final byte[] result = KeyDerivation.expand(new SecretKeySpec(pseudoRandomKey, "HmacSHA256"), info, 42);
+
+        // then
+        assertArrayEquals(parseHexBinary("077709362c2e32df0ddc3f0dc47bba6390b6c73bb50f9c3122ec844ad7c2b3e5"),
+                pseudoRandomKey);
+        assertArrayEquals(parseHexBinary("3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf"
+                + "34007208d5b887185865"), result);
+    }
+
+    @Test
+    public final void verifyRfc5869TestCase3() {
+        // given
+        final byte[] inputKeyMaterial = parseHexBinary("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b");
+
+        // when
+        final byte[] pseudoRandomKey = KeyDerivation.extract(null, inputKeyMaterial);
+        final byte[] result = KeyDerivation.expand(new SecretKeySpec(pseudoRandomKey, "HmacSHA256"), new byte[0], 42);
+
+        // then
+        assertArrayEquals(parseHexBinary("8da4e775a563c18f715f802a063c5a31b8a11f5c5ee1879ec3454e5f3c738d2d"
+                + "9d201395faa4b61a96c8"), result);
+    }
+
+    @Test
+    public final void verifyDerivationIsDeterministic() {
+        // given
+        final KeyDerivation first = new KeyDerivation(masterSecret);
+        final KeyDerivation second = new KeyDerivation(masterSecret);
+
+        // when
+        final Key result = first.deriveKey("tenant-a");
+
+        // then
+        assertEquals(second.deriveKey("tenant-a").serialise(), result.serialise());
+        assertNotEquals(first.deriveKey("tenant-b").serialise(), result.serialise());
+    }
+
+    @Test
+    public final void verifyDerivedKeysCached() {
+        // given
+        final KeyDerivation derivation = new KeyDerivation(masterSecret);
+        final Key first = derivation.deriveKey("tenant");
+
+        // when
+        final Key result = derivation.deriveKey("tenant");
+
+        // then
+        assertSame(first, result);
+        assertEquals(1, derivation.getCacheSize());
+    }
+
+    @Test
+    public final void verifyCacheBounded() {
+        // given
+        final KeyDerivation derivation = new KeyDerivation(masterSecret, null, 8);
+        final Key frequent = derivation.deriveKey("frequent");
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            derivation.deriveKey("tenant-" + i);
+            derivation.deriveKey("frequent");
+        }
+
+        // then
+        assertTrue(derivation.getCacheSize() <= 8);
+        assertSame(frequent, derivation.deriveKey("frequent"));
+    }
+
+    @Test
+    public final void verifyTenantValidator() {
+        // given
+        final KeyDerivation derivation = new KeyDerivation(masterSecret);
+        final Token token = Token.generate(random, derivation.deriveKey("tenant-a"), "hello");
+        final TenantValidator<String> validator = new TestValidator(derivation);
+
+        // when
+        final String result = validator.validateAndDecrypt("tenant-a", token);
+
+        // then
+        assertEquals("hello", result);
+    }
+
+    @Test
+    public final void verifyTenantValidatorRejectsOtherTenant() {
+        // given
+        final KeyDerivation derivation = new KeyDerivation(masterSecret);
+        final Token token = Token.generate(random, derivation.deriveKey("tenant-a"), "hello");
+        final TenantValidator<String> validator = new TestValidator(derivation);
+
+        // when
+        thrown.expect(TokenValidationException.class);
+        validator.validateAndDecrypt("tenant-b", token);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyTenantValidatorAsync() throws InterruptedException, ExecutionException {
+        // given
+        final KeyDerivation derivation = new KeyDerivation(masterSecret);
+        final Token token = Token.generate(random, derivation.deriveKey("tenant-a"), "hello");
+        final TenantValidator<String> validator = new TestValidator(derivation);
+
+        // when
+        final String result = validator.validateAndDecryptAsync("tenant-a", token, Duration.ofSeconds(10)).get();
+
+        // then
+        assertEquals("hello", result);
+    }
+
+    @Test
+    public final void verifyShortMasterSecretRejected() {
+        // given
+
+        // when
+        thrown.expect(IllegalArgumentException.class);
+        new KeyDerivation(new byte[16]);
+
+        // then (nothing)
+    }
+
+    protected static byte[] parseHexBinary(final String hex) {
+        final byte[] retval = new byte[hex.length() / 2];
+        for (int i = retval.length; --i >= 0; retval[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16));
+        return retval;
+    }
+
+    /**
+     * A string validator for derived keys.
+     */
+    private static class TestValidator implements TenantValidator<String>, StringValidator {
+        private final KeyDerivation derivation;
+
+        TestValidator(final KeyDerivation derivation) {
+            this.derivation = derivation;
+        }
+
+        public KeyDerivation getKeyDerivation() {
+            return derivation;
+        }
+    }
+
+}
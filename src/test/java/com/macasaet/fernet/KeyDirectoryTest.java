@@ -0,0 +1,188 @@
+package com.macasaet.fernet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Unit tests for the {@link KeyDirectory} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class KeyDirectoryTest {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    private final Random random = new Random();
+
+    @Test
+    public final void verifyKeyRetrieved() {
+        // given
+        final Key key = Key.generateKey(random);
+        try (final KeyDirectory directory = new KeyDirectory(4)) {
+            directory.put(7L, key);
+
+            // when
+            final Key result = directory.get(7L);
+
+            // then
+            assertEquals(key.serialise(), result.serialise());
+            assertTrue(directory.contains(7L));
+            assertNull(directory.get(8L));
+            assertEquals(1, directory.size());
+        }
+    }
+
+    @Test
+    public final void verifyKeyReplaced() {
+        // given
+        try (final KeyDirectory directory = new KeyDirectory(4)) {
+            directory.put(7L, Key.generateKey(random));
+            final Key replacement = Key.generateKey(random);
+
+            // when
+            directory.put(7L, replacement);
+
+            // then
+            assertEquals(replacement.serialise(), directory.get(7L).serialise());
+            assertEquals(1, directory.size());
+        }
+    }
+
+    @Test
+    public final void verifyGrowthAndRemovalMatchMap() {
+        // given
+        final Map<Long, String> expected = new HashMap<>();
+        try (final KeyDirectory directory = new KeyDirectory(0)) {
+
+            // when
+            for (int i = 0; i < 20_000; i++) {
+                // a small range of identifiers exercises collisions, replacements and removals
+                final long id = random.nextInt(4_096) - 2_048;
+                if (random.nextInt(3) == 0) {
+                    assertEquals(expected.remove(id) != null, directory.remove(id));
+                } else {
+                    final Key key = Key.generateKey(random);
+                    directory.put(id, key);
+                    expected.put(id, key.serialise());
+                }
+            }
+
+            // then
+            assertEquals(expected.size(), directory.size());
+            for (final Entry<Long, String> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), directory.get(entry.getKey()).serialise());
+            }
+            for (long id = -2_048; id < 2_048; id++) {
+                assertEquals(expected.containsKey(id), directory.contains(id));
+            }
+        }
+    }
+
+    @Test
+    public final void verifyRemovalZeroises() {
+        // given
+        try (final KeyDirectory directory = new KeyDirectory(4)) {
+            directory.put(7L, Key.generateKey(random));
+
+            // when
+            final boolean result = directory.remove(7L);
+
+            // then
+            assertTrue(result);
+            assertFalse(directory.remove(7L));
+            assertEquals(0, directory.size());
+            final KeyDirectory.Table table = directory.getOpenTable();
+            for (int i = 0; i < table.slots.capacity(); i++) {
+                assertEquals(0, table.slots.get(i));
+            }
+        }
+    }
+
+    @Test
+    public final void verifyCloseZeroises() {
+        // given
+        final KeyDirectory directory = new KeyDirectory(4);
+        directory.put(7L, Key.generateKey(random));
+        final KeyDirectory.Table table = directory.getOpenTable();
+
+        // when
+        directory.close();
+
+        // then
+        for (int i = 0; i < table.slots.capacity(); i++) {
+            assertEquals(0, table.slots.get(i));
+        }
+        thrown.expect(IllegalStateException.class);
+        directory.get(7L);
+    }
+
+    @Test
+    public final void verifyNegativeSizeRejected() {
+        // given
+
+        // when
+        thrown.expect(IllegalArgumentException.class);
+        new KeyDirectory(-1);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyReadsConsistentDuringWrites() throws InterruptedException {
+        // given
+        final Key[] keys = new Key[256];
+        for (int i = keys.length; --i >= 0; keys[i] = Key.generateKey(random));
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<AssertionError> failure = new AtomicReference<>();
+        try (final KeyDirectory directory = new KeyDirectory(0)) {
+            final Thread reader = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        for (int id = 0; id < keys.length; id++) {
+                            final Key result = directory.get(id);
+                            assertTrue(result == null || result.serialise().equals(keys[id].serialise()));
+                        }
+                    }
+                } catch (final AssertionError ae) {
+                    failure.set(ae);
+                }
+            });
+            reader.start();
+
+            // when
+            for (int round = 0; round < 50; round++) {
+                for (int id = 0; id < keys.length; id++) {
+                    directory.put(id, keys[id]);
+                }
+                for (int id = 0; id < keys.length; id += 2) {
+                    directory.remove(id);
+                }
+            }
+            done.set(true);
+            reader.join();
+
+            // then
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            assertEquals(keys.length / 2, directory.size());
+        }
+    }
+
+}
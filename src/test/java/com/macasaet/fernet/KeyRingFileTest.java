@@ -0,0 +1,223 @@
+package com.macasaet.fernet;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the {@link KeyRingFile} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class KeyRingFileTest {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random();
+    private Path path;
+
+    @Before
+    public void setUp() {
+        path = folder.getRoot().toPath().resolve("keys.ring");
+    }
+
+    @Test
+    public final void verifyRoundTrip() throws IOException {
+        // given
+        final Instant notBefore = Instant.ofEpochSecond(1_500_000_000L);
+        final Instant notAfter = Instant.ofEpochSecond(1_600_000_000L);
+        final List<KeyRingEntry> entries = asList(new KeyRingEntry(Key.generateKey(random)),
+                new KeyRingEntry(Key.generateKey(random), notBefore, notAfter));
+
+        // when
+        final long version = KeyRingFile.write(path, 1, entries);
+
+        // then
+        assertEquals(1, version);
+        final List<KeyRingEntry> result = KeyRingFile.read(path);
+        assertEquals(2, result.size());
+        assertEquals(entries.get(1).getKey().serialise(), result.get(0).getKey().serialise());
+        assertEquals(notBefore, result.get(0).getNotBefore());
+        assertEquals(notAfter, result.get(0).getNotAfter());
+        assertEquals(entries.get(0).getKey().serialise(), result.get(1).getKey().serialise());
+        assertNull(result.get(1).getNotBefore());
+        assertNull(result.get(1).getNotAfter());
+    }
+
+    @Test
+    public final void verifyVersionIncrements() throws IOException {
+        // given
+        final List<KeyRingEntry> entries = asList(new KeyRingEntry(Key.generateKey(random)));
+        KeyRingFile.write(path, 0, entries);
+
+        // when
+        final long replaced = KeyRingFile.write(path, 0, entries);
+        final long updated = KeyRingFile.update(path, 0, entries);
+
+        // then
+        assertEquals(2, replaced);
+        assertEquals(3, updated);
+    }
+
+    @Test
+    public final void verifyUpdateInPlace() throws IOException {
+        // given
+        KeyRingFile.write(path, 0, asList(new KeyRingEntry(Key.generateKey(random))), 4);
+        final Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        final Key key = Key.generateKey(random);
+
+        // when
+        KeyRingFile.update(path, 0, asList(new KeyRingEntry(key), new KeyRingEntry(Key.generateKey(random))));
+
+        // then
+        assertEquals(fileKey, Files.readAttributes(path, BasicFileAttributes.class).fileKey());
+        assertEquals(key.serialise(), KeyRingFile.read(path).get(0).getKey().serialise());
+    }
+
+    @Test
+    public final void verifyUpdateZeroesRetiredRecords() throws IOException {
+        // given
+        KeyRingFile.write(path, 0, asList(new KeyRingEntry(Key.generateKey(random)),
+                new KeyRingEntry(Key.generateKey(random)), new KeyRingEntry(Key.generateKey(random))), 4);
+        final Key key = Key.generateKey(random);
+
+        // when
+        KeyRingFile.update(path, 0, asList(new KeyRingEntry(key)));
+
+        // then
+        final byte[] contents = Files.readAllBytes(path);
+        for (int i = Constants.keyRingHeaderBytes + Constants.keyRingRecordBytes; i < contents.length; i++) {
+            assertEquals("byte " + i, 0, contents[i]);
+        }
+        final List<KeyRingEntry> result = KeyRingFile.read(path);
+        assertEquals(1, result.size());
+        assertEquals(key.serialise(), result.get(0).getKey().serialise());
+    }
+
+    @Test
+    public final void verifyUpdateReplacesWhenFull() throws IOException {
+        // given
+        KeyRingFile.write(path, 0, asList(new KeyRingEntry(Key.generateKey(random))), 1);
+
+        // when
+        final long result = KeyRingFile.update(path, 0,
+                asList(new KeyRingEntry(Key.generateKey(random)), new KeyRingEntry(Key.generateKey(random))));
+
+        // then
+        assertEquals(2, result);
+        assertEquals(2, KeyRingFile.read(path).size());
+    }
+
+    @Test
+    public final void verifyChecksumMismatchDetected() throws IOException {
+        // given
+        KeyRingFile.write(path, 0, asList(new KeyRingEntry(Key.generateKey(random))));
+        try (final RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(60);
+            final int original = file.read();
+            file.seek(60);
+            file.write(original ^ 0xFF);
+        }
+
+        // when
+        thrown.expect(IllegalStateException.class);
+        KeyRingFile.read(path);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyReaderRetriesChecksumMismatch() throws IOException, InterruptedException {
+        // given
+        final Key key = Key.generateKey(random);
+        KeyRingFile.write(path, 0, asList(new KeyRingEntry(key)));
+        final ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(path));
+        final byte original = contents.get(60);
+        // a writer that does not follow the seqlock protocol is part way through a change
+        contents.put(60, (byte) (original ^ 0xFF));
+        final CountDownLatch reading = new CountDownLatch(1);
+        final Thread writer = new Thread(() -> {
+            try {
+                reading.await();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            contents.put(60, original);
+        });
+        writer.start();
+
+        // when
+        reading.countDown();
+        final KeyRingFile.Contents result = KeyRingFile.read(contents);
+
+        // then
+        writer.join();
+        assertEquals(key.serialise(), result.entries.get(0).getKey().serialise());
+    }
+
+    @Test
+    public final void verifyReaderGivesUpOnUnfinishedWrite() throws IOException {
+        // given
+        KeyRingFile.write(path, 0, asList(new KeyRingEntry(Key.generateKey(random))));
+        try (final RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(KeyRingFile.sequenceOffset);
+            file.writeLong(1);
+        }
+
+        // when
+        thrown.expect(IllegalStateException.class);
+        KeyRingFile.read(path);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyCommandLine() throws IOException {
+        // given
+        final Key primary = Key.generateKey(random);
+        final Key old = Key.generateKey(random);
+
+        // when
+        KeyRingFile.main(path.toString(), primary.serialise(), old.serialise() + ",,2017-01-01T00:00:00Z");
+
+        // then
+        final List<KeyRingEntry> result = KeyRingFile.read(path);
+        assertEquals(primary.serialise(), result.get(0).getKey().serialise());
+        assertEquals(Instant.parse("2017-01-01T00:00:00Z"), result.get(1).getNotAfter());
+    }
+
+    @Test
+    public final void verifyInvalidPrimaryIndex() throws IOException {
+        // given
+
+        // when
+        thrown.expect(IllegalArgumentException.class);
+        KeyRingFile.write(path, 1, asList(new KeyRingEntry(Key.generateKey(random))));
+
+        // then (nothing)
+    }
+
+}
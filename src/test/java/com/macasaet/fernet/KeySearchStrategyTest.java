@@ -0,0 +1,207 @@
+package com.macasaet.fernet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Unit tests for the {@link KeySearchStrategy} interface.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class KeySearchStrategyTest {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    private final Random random = new Random();
+    private ForkJoinPool pool;
+    private Token token;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+        token = Token.generate(random, Key.generateKey(random), "hello");
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public final void verifySequentialSearchStopsAtMatch() {
+        // given
+        final AtomicInteger probes = new AtomicInteger();
+
+        // when
+        final int result = KeySearchStrategy.SEQUENTIAL.indexOfSigningKey(token, 10, i -> {
+            probes.incrementAndGet();
+            return i == 3;
+        });
+
+        // then
+        assertEquals(3, result);
+        assertEquals(4, probes.get());
+    }
+
+    @Test
+    public final void verifySequentialSearchWithoutMatch() {
+        // given
+
+        // when
+        final int result = KeySearchStrategy.SEQUENTIAL.indexOfSigningKey(token, 10, i -> false);
+
+        // then
+        assertEquals(-1, result);
+    }
+
+    @Test
+    public final void verifyParallelSearchUsesSuppliedPool() {
+        // given
+        final Set<ForkJoinPool> pools = ConcurrentHashMap.newKeySet();
+        final KeySearchStrategy strategy = KeySearchStrategy.parallel(pool);
+
+        // when
+        final int result = strategy.indexOfSigningKey(token, 16, i -> {
+            pools.add(ForkJoinTask.getPool());
+            return i == 11;
+        });
+
+        // then
+        assertEquals(11, result);
+        assertEquals(1, pools.size());
+        assertSame(pool, pools.iterator().next());
+    }
+
+    @Test
+    public final void verifyParallelSearchWithoutMatch() {
+        // given
+        final AtomicInteger probes = new AtomicInteger();
+        final KeySearchStrategy strategy = KeySearchStrategy.parallel(pool);
+
+        // when
+        final int result = strategy.indexOfSigningKey(token, 64, i -> probes.incrementAndGet() < 0);
+
+        // then
+        assertEquals(-1, result);
+        assertEquals(64, probes.get());
+    }
+
+    @Test
+    public final void verifyParallelSearchCancelsRemainingProbes() {
+        // given
+        final AtomicInteger probes = new AtomicInteger();
+        final KeySearchStrategy strategy = KeySearchStrategy.parallel(pool);
+
+        // when
+        final int result = strategy.indexOfSigningKey(token, 1024, i -> {
+            probes.incrementAndGet();
+            if (i == 0) {
+                return true;
+            }
+            try {
+                Thread.sleep(1);
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        });
+
+        // then
+        assertEquals(0, result);
+        assertTrue("Expected most probes to be skipped but " + probes.get() + " ran", probes.get() < 256);
+    }
+
+    @Test
+    public final void verifyAdaptiveSearchIsSequentialForSmallTokens() {
+        // given
+        final AtomicInteger forkJoinProbes = new AtomicInteger();
+        final KeySearchStrategy strategy = KeySearchStrategy.adaptive(pool, 64 * 1024);
+
+        // when
+        final int result = strategy.indexOfSigningKey(token, 4, i -> {
+            if (ForkJoinTask.inForkJoinPool()) {
+                forkJoinProbes.incrementAndGet();
+            }
+            return i == 2;
+        });
+
+        // then
+        assertEquals(2, result);
+        assertEquals(0, forkJoinProbes.get());
+    }
+
+    @Test
+    public final void verifyAdaptiveSearchIsParallelForLargeTokens() {
+        // given
+        final Token largeToken = Token.generate(random, Key.generateKey(random), new byte[64 * 1024]);
+        final AtomicInteger forkJoinProbes = new AtomicInteger();
+        final KeySearchStrategy strategy = KeySearchStrategy.adaptive(pool, 64 * 1024);
+
+        // when
+        final int result = strategy.indexOfSigningKey(largeToken, 4, i -> {
+            if (ForkJoinTask.getPool() == pool) {
+                forkJoinProbes.incrementAndGet();
+            }
+            return i == 2;
+        });
+
+        // then
+        assertEquals(2, result);
+        assertTrue(forkJoinProbes.get() > 0);
+    }
+
+    @Test
+    public final void verifyValidatorUsesStrategy() {
+        // given
+        final List<Key> keys = new ArrayList<>();
+        for (int i = 8; --i >= 0; keys.add(Key.generateKey(random)));
+        final Token rotated = Token.generate(random, keys.get(5), "rotated");
+        final AtomicInteger searches = new AtomicInteger();
+        final Validator<String> validator = new StringValidator() {
+            public KeySearchStrategy getKeySearchStrategy() {
+                return (token, keyCount, isSigningKey) -> {
+                    searches.incrementAndGet();
+                    return KeySearchStrategy.SEQUENTIAL.indexOfSigningKey(token, keyCount, isSigningKey);
+                };
+            }
+        };
+
+        // when
+        final String result = validator.validateAndDecrypt(keys, rotated);
+
+        // then
+        assertEquals("rotated", result);
+        assertEquals(1, searches.get());
+    }
+
+    @Test
+    public final void verifyParallelRejectsNullPool() {
+        // given
+
+        // when
+        thrown.expect(IllegalArgumentException.class);
+        KeySearchStrategy.parallel(null);
+
+        // then (nothing)
+    }
+
+}
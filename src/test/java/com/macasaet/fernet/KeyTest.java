@@ -5,11 +5,20 @@ import static com.macasaet.fernet.Constants.encryptionKeyBytes;
 import static com.macasaet.fernet.Constants.signingKeyBytes;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -68,6 +77,139 @@ public class KeyTest {
         assertEquals(17, key.getEncryptionKeySpec().getEncoded()[0]);
     }
 
+    @Test
+    public final void verifySignatureMatchesJcaMac() throws Exception {
+        // given
+        final Key key = new Key("AQIDBAUGBwgJCgsMDQ4PEBESExQVFhcYGRobHB0eHyA=");
+        final Mac reference = Mac.getInstance("HmacSHA256");
+        reference.init(new SecretKeySpec(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16},
+                "HmacSHA256"));
+        final Random random = new Random(0);
+
+        for (int length = 0; length < 200; length += 7) {
+            final byte[] message = new byte[length + 3];
+            random.nextBytes(message);
+
+            // when
+            final byte[] result = key.sign(message, 3, length);
+
+            // then
+            reference.update(message, 3, length);
+            assertArrayEquals(reference.doFinal(), result);
+        }
+    }
+
+    @Test
+    public final void verifySigningMacInstancesAreIndependent() {
+        // given
+        final Key key = new Key("AQIDBAUGBwgJCgsMDQ4PEBESExQVFhcYGRobHB0eHyA=");
+        final JcaCryptoEngine engine = (JcaCryptoEngine) key.getCryptoEngine();
+        final Mac first = engine.createSigningMac();
+        final Mac second = engine.createSigningMac();
+
+        // when
+        first.update(new byte[] {1, 2, 3});
+        second.update(new byte[] {1, 2, 3});
+        engine.createSigningMac().update(new byte[] {4, 5, 6});
+
+        // then
+        assertArrayEquals(first.doFinal(), second.doFinal());
+    }
+
+    @Test
+    public final void verifyKeyUsesOwnBackend() {
+        // given
+        final AtomicInteger enginesCreated = new AtomicInteger();
+        final CryptoBackend backend = new JcaCryptoBackend() {
+            public CryptoEngine createEngine(final byte[] signingKey, final byte[] encryptionKey) {
+                enginesCreated.incrementAndGet();
+                return super.createEngine(signingKey, encryptionKey);
+            }
+        };
+        final Key key = new Key("AQIDBAUGBwgJCgsMDQ4PEBESExQVFhcYGRobHB0eHyA=").withCryptoBackend(backend);
+        final IvParameterSpec initializationVector = new IvParameterSpec(new byte[16]);
+
+        // when
+        final byte[] cipherText = key.encrypt(new byte[] {1, 2, 3}, initializationVector);
+        final byte[] result = key.decrypt(cipherText, initializationVector);
+        key.sign(cipherText, 0, cipherText.length);
+
+        // then
+        assertArrayEquals(new byte[] {1, 2, 3}, result);
+        assertEquals(1, enginesCreated.get());
+        assertSame(backend, key.getCryptoBackend());
+    }
+
+    @Test
+    public final void verifyCopyWithBackendKeepsSubclass() {
+        // given
+        final CryptoBackend backend = new ThreadLocalCryptoBackend();
+        final Key key = new SubclassedKey(new byte[signingKeyBytes], new byte[encryptionKeyBytes], null);
+
+        // when
+        final Key result = key.withCryptoBackend(backend);
+
+        // then
+        assertTrue(result instanceof SubclassedKey);
+        assertSame(backend, result.getCryptoBackend());
+        assertArrayEquals(key.getSigningKey(), result.getSigningKey());
+        assertArrayEquals(key.getEncryptionKey(), result.getEncryptionKey());
+    }
+
+    @Test
+    public final void verifyAlgorithmOverridesHonoured() throws Exception {
+        // given
+        final byte[] message = new byte[] {1, 2, 3, 4, 5};
+        final IvParameterSpec initializationVector = new IvParameterSpec(new byte[16]);
+        final Mac mac = Mac.getInstance("HmacSHA512");
+        mac.init(new SecretKeySpec(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16},
+                "HmacSHA512"));
+        final Cipher cipher = Cipher.getInstance("AES/CFB8/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(new byte[] {17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28,
+                29, 30, 31, 32}, "AES"), initializationVector);
+        final byte[] expectedCipherText = cipher.doFinal(message);
+        final byte[] expectedSignature = mac.doFinal(message);
+
+        for (final CryptoBackend backend : new CryptoBackend[] {new JcaCryptoBackend(),
+                new ThreadLocalCryptoBackend()}) {
+            final Key key = new Key("AQIDBAUGBwgJCgsMDQ4PEBESExQVFhcYGRobHB0eHyA=") {
+                protected CryptoBackend getCryptoBackend() {
+                    return backend;
+                }
+
+                protected String getSigningAlgorithm() {
+                    return "HmacSHA512";
+                }
+
+                protected String getCipherTransformation() {
+                    return "AES/CFB8/NoPadding";
+                }
+            };
+
+            // when
+            final byte[] cipherText = key.encrypt(message, initializationVector);
+            final byte[] signature = key.sign(message, 0, message.length);
+
+            // then
+            assertArrayEquals(expectedCipherText, cipherText);
+            assertArrayEquals(message, key.decrypt(cipherText, initializationVector));
+            assertArrayEquals(expectedSignature, signature);
+        }
+    }
+
+    @Test
+    public final void verifyDefaultBackendIsJca() {
+        // given
+        final Key key = new Key("AQIDBAUGBwgJCgsMDQ4PEBESExQVFhcYGRobHB0eHyA=");
+
+        // when
+        final CryptoBackend result = key.getCryptoBackend();
+
+        // then
+        assertSame(Key.getDefaultCryptoBackend(), result);
+        assertTrue(result instanceof JcaCryptoBackend);
+    }
+
     @Test
     public final void testFromString() {
         // given
@@ -159,4 +301,134 @@ public class KeyTest {
         assertEquals("AQIDBAUGBwgJCgsMDQ4PEBESExQVFhcYGRobHB0eHyA=", result);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testDecryptInParallel() throws InterruptedException, ExecutionException {
+        // given
+        final Key key = new Key("AQIDBAUGBwgJCgsMDQ4PEBESExQVFhcYGRobHB0eHyA=");
+        final IvParameterSpec initializationVector = new IvParameterSpec(
+                new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        final byte[] payload = new byte[256 * 1024 + 7];
+        new Random(0).nextBytes(payload);
+        final byte[] cipherText = key.encrypt(payload, initializationVector);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        // when
+        final byte[] result = pool.submit(() -> key.decryptInParallel(cipherText, initializationVector)).get();
+
+        // then
+        assertArrayEquals(payload, result);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testDecryptInParallelWithBlockAlignedPayload() throws InterruptedException, ExecutionException {
+        // given
+        final Key key = new Key("AQIDBAUGBwgJCgsMDQ4PEBESExQVFhcYGRobHB0eHyA=") {
+            protected int getParallelDecryptionThreshold() {
+                return 0;
+            }
+
+            protected int getMinimumDecryptionSegmentBytes() {
+                return 16;
+            }
+        };
+        final IvParameterSpec initializationVector = new IvParameterSpec(
+                new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        final byte[] payload = new byte[160];
+        new Random(0).nextBytes(payload);
+        final byte[] cipherText = key.encrypt(payload, initializationVector);
+        final ForkJoinPool pool = new ForkJoinPool(3);
+
+        // when
+        final byte[] result = pool.submit(() -> key.decrypt(cipherText, initializationVector)).get();
+
+        // then
+        assertArrayEquals(payload, result);
+        pool.shutdown();
+    }
+
+    @Test
+    public void verifyParallelDecryptionRejectsInvalidPadding() throws InterruptedException {
+        // given
+        final Key key = new Key("AQIDBAUGBwgJCgsMDQ4PEBESExQVFhcYGRobHB0eHyA=");
+        final IvParameterSpec initializationVector = new IvParameterSpec(
+                new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        final byte[] payload = new byte[128 * 1024];
+        final byte[] cipherText = key.encrypt(payload, initializationVector);
+        // drop the padding block
+        final byte[] truncated = new byte[cipherText.length - 16];
+        System.arraycopy(cipherText, 0, truncated, 0, truncated.length);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        // when
+        try {
+            pool.submit(() -> key.decryptInParallel(truncated, initializationVector)).get();
+            fail("Expected validation exception");
+            // then
+        } catch (final ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof TokenValidationException);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void verifyBatchEncryptionMatchesSequentialEncryption() {
+        // given
+        final Key key = new Key("AQIDBAUGBwgJCgsMDQ4PEBESExQVFhcYGRobHB0eHyA=");
+        final Random random = new Random(0);
+        final List<byte[]> payloads = new ArrayList<>();
+        final List<IvParameterSpec> initializationVectors = new ArrayList<>();
+        for (final int length : new int[] {0, 1, 15, 16, 17, 100, 4096, 33}) {
+            final byte[] payload = new byte[length];
+            random.nextBytes(payload);
+            payloads.add(payload);
+            final byte[] initializationVector = new byte[16];
+            random.nextBytes(initializationVector);
+            initializationVectors.add(new IvParameterSpec(initializationVector));
+        }
+
+        // when
+        final List<byte[]> result = key.encrypt(payloads, initializationVectors);
+
+        // then
+        assertEquals(payloads.size(), result.size());
+        for (int i = payloads.size(); --i >= 0;) {
+            assertArrayEquals(key.encrypt(payloads.get(i), initializationVectors.get(i)), result.get(i));
+        }
+    }
+
+    @Test
+    public void verifyBatchEncryptionRequiresOneVectorPerPayload() {
+        // given
+        final Key key = new Key("AQIDBAUGBwgJCgsMDQ4PEBESExQVFhcYGRobHB0eHyA=");
+        final List<byte[]> payloads = new ArrayList<>();
+        payloads.add(new byte[] {1});
+        payloads.add(new byte[] {2});
+        final List<IvParameterSpec> initializationVectors = new ArrayList<>();
+        initializationVectors.add(new IvParameterSpec(new byte[16]));
+
+        // when
+        try {
+            key.encrypt(payloads, initializationVectors);
+            fail("Expected validation exception");
+            // then
+        } catch (final IllegalArgumentException iae) {
+        }
+    }
+
+    private static class SubclassedKey extends Key {
+
+        SubclassedKey(final byte[] signingKey, final byte[] encryptionKey, final CryptoBackend cryptoBackend) {
+            super(signingKey, encryptionKey, cryptoBackend);
+        }
+
+        protected Key createKey(final byte[] signingKey, final byte[] encryptionKey,
+                final CryptoBackend cryptoBackend) {
+            return new SubclassedKey(signingKey, encryptionKey, cryptoBackend);
+        }
+
+    }
+
+}
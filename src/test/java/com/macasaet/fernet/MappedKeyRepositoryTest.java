@@ -0,0 +1,214 @@
+package com.macasaet.fernet;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the {@link MappedKeyRepository} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class MappedKeyRepositoryTest {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random();
+    private final Duration hour = Duration.ofHours(1);
+    private Path path;
+
+    @Before
+    public void setUp() {
+        path = folder.getRoot().toPath().resolve("keys.ring");
+    }
+
+    @Test
+    public final void verifyKeysServed() throws IOException {
+        // given
+        final Key primary = Key.generateKey(random);
+        final Key old = Key.generateKey(random);
+        KeyRingFile.write(path, 1, asList(new KeyRingEntry(old), new KeyRingEntry(primary)));
+
+        // when
+        try (final MappedKeyRepository repository = new MappedKeyRepository(path)) {
+
+            // then
+            assertEquals(primary.serialise(), repository.getPrimaryKey().serialise());
+            assertEquals(asList(old.serialise(), primary.serialise()), serialise(repository.getDecryptionKeys()));
+            assertEquals(1, repository.getVersion());
+        }
+    }
+
+    @Test
+    public final void verifyInPlaceUpdateSeenImmediately() throws IOException {
+        // given
+        KeyRingFile.write(path, 0, asList(new KeyRingEntry(Key.generateKey(random))));
+        try (final MappedKeyRepository repository = new MappedKeyRepository(path, hour, Clock.systemUTC())) {
+            final Key rotated = Key.generateKey(random);
+
+            // when
+            KeyRingFile.update(path, 0, asList(new KeyRingEntry(rotated)));
+
+            // then
+            assertEquals(rotated.serialise(), repository.getPrimaryKey().serialise());
+            assertEquals(2, repository.getVersion());
+        }
+    }
+
+    @Test
+    public final void verifyReplacementSeenOnPoll() throws IOException {
+        // given
+        KeyRingFile.write(path, 0, asList(new KeyRingEntry(Key.generateKey(random))));
+        try (final MappedKeyRepository repository = new MappedKeyRepository(path, Duration.ZERO,
+                Clock.systemUTC())) {
+            final Key rotated = Key.generateKey(random);
+
+            // when
+            KeyRingFile.write(path, 0, asList(new KeyRingEntry(rotated)));
+
+            // then
+            assertEquals(rotated.serialise(), repository.getPrimaryKey().serialise());
+        }
+    }
+
+    @Test
+    public final void verifyReplacementSeenByWatcher() throws IOException, InterruptedException {
+        // given
+        KeyRingFile.write(path, 0, asList(new KeyRingEntry(Key.generateKey(random))));
+        try (final MappedKeyRepository repository = new MappedKeyRepository(path, hour, Clock.systemUTC())) {
+            repository.watch();
+            final Key rotated = Key.generateKey(random);
+
+            // when
+            KeyRingFile.write(path, 0, asList(new KeyRingEntry(rotated)));
+
+            // then
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (repository.getVersion() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(rotated.serialise(), repository.getPrimaryKey().serialise());
+        }
+    }
+
+    @Test
+    public final void verifyValidityWindows() throws IOException {
+        // given
+        final Instant now = Instant.parse("2017-06-01T00:00:00Z");
+        final Key expired = Key.generateKey(random);
+        final Key current = Key.generateKey(random);
+        final Key future = Key.generateKey(random);
+        KeyRingFile.write(path, 1, asList(new KeyRingEntry(expired, null, now.minusSeconds(1)),
+                new KeyRingEntry(current, now.minusSeconds(60), now.plusSeconds(60)),
+                new KeyRingEntry(future, now.plusSeconds(1), null)));
+        final MutableClock clock = new MutableClock(now);
+
+        // when
+        try (final MappedKeyRepository repository = new MappedKeyRepository(path, hour, clock)) {
+            final List<String> result = serialise(repository.getDecryptionKeys());
+
+            // then
+            assertEquals(asList(current.serialise()), result);
+            clock.set(now.plusSeconds(2));
+            assertEquals(asList(current.serialise(), future.serialise()), serialise(repository.getDecryptionKeys()));
+            clock.set(now.plusSeconds(61));
+            assertEquals(asList(future.serialise()), serialise(repository.getDecryptionKeys()));
+            thrown.expect(IllegalStateException.class);
+            repository.getPrimaryKey();
+        }
+    }
+
+    @Test
+    public final void verifyLastKeysServedWhenReplacementCorrupt() throws IOException {
+        // given
+        final Key key = Key.generateKey(random);
+        KeyRingFile.write(path, 0, asList(new KeyRingEntry(key)));
+        try (final MappedKeyRepository repository = new MappedKeyRepository(path, Duration.ZERO,
+                Clock.systemUTC())) {
+
+            // when
+            final Path corrupt = folder.newFile().toPath();
+            Files.write(corrupt, new byte[256]);
+            Files.move(corrupt, path, StandardCopyOption.REPLACE_EXISTING);
+
+            // then
+            assertEquals(key.serialise(), repository.getPrimaryKey().serialise());
+            assertNotNull(repository.getLastFailure());
+        }
+    }
+
+    @Test
+    public final void verifyReadsConsistentDuringUpdates() throws IOException, InterruptedException {
+        // given
+        final List<KeyRingEntry> first = asList(new KeyRingEntry(Key.generateKey(random)),
+                new KeyRingEntry(Key.generateKey(random)), new KeyRingEntry(Key.generateKey(random)));
+        final List<KeyRingEntry> second = asList(new KeyRingEntry(Key.generateKey(random)),
+                new KeyRingEntry(Key.generateKey(random)), new KeyRingEntry(Key.generateKey(random)));
+        final List<String> firstKeys = serialise(first);
+        final List<String> secondKeys = serialise(second);
+        KeyRingFile.write(path, 0, first);
+        final AtomicBoolean done = new AtomicBoolean();
+        final Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 200; i++) {
+                    KeyRingFile.update(path, 0, i % 2 == 0 ? second : first);
+                }
+            } catch (final IOException ioe) {
+                throw new RuntimeException(ioe.getMessage(), ioe);
+            } finally {
+                done.set(true);
+            }
+        });
+
+        // when
+        try (final MappedKeyRepository repository = new MappedKeyRepository(path, hour, Clock.systemUTC())) {
+            writer.start();
+            int reads = 0;
+            do {
+                final List<String> result = serialise(repository.getDecryptionKeys());
+
+                // then
+                assertTrue(result.toString(), result.equals(firstKeys) || result.equals(secondKeys));
+                reads++;
+            } while (!done.get());
+            writer.join();
+            assertTrue(reads > 0);
+            assertEquals(201, repository.getVersion());
+        }
+    }
+
+    protected List<String> serialise(final List<?> keys) {
+        final List<String> retval = new ArrayList<>(keys.size());
+        for (final Object key : keys) {
+            retval.add(key instanceof KeyRingEntry ? ((KeyRingEntry) key).getKey().serialise()
+                    : ((Key) key).serialise());
+        }
+        return retval;
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.macasaet.fernet;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Integration tests for the Java-version-specific layers of the multi-release JAR. These must run against the packaged
+ * JAR because the compiled classes directory does not select the layers by Java version.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class MultiReleaseIT {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    private final Random random = new Random();
+
+    @Before
+    public void setUp() {
+        final String version = System.getProperty("java.specification.version");
+        assumeTrue(!version.startsWith("1.") && Integer.parseInt(version) >= 17);
+    }
+
+    @Test
+    public final void verifyVectorLayerIsLoaded() {
+        // given
+        final String resource = Sha256Vectors.class.getResource("Sha256Vectors.class").toString();
+
+        // when
+        final boolean isVectorised = HmacSha256Lanes.isVectorised();
+
+        // then
+        assertTrue(resource, resource.contains("META-INF/versions/17/"));
+        // the vector implementation is only used if it agrees with the JCA
+        assertEquals(Sha256Vectors.isAvailable(), isVectorised);
+    }
+
+    @Test
+    public final void verifyMultiBufferSignaturesMatchJca() {
+        // given
+        final Key key = Key.generateKey(random);
+        final Key otherKey = Key.generateKey(random);
+        final List<Token> tokens = IntStream.range(0, 19)
+                .mapToObj(i -> Token.generate(random, i % 3 == 0 ? otherKey : key, "payload " + i))
+                .collect(toList());
+
+        // when
+        final boolean[] result = Token.verifySignatures(key, tokens);
+
+        // then
+        final boolean[] expected = new boolean[tokens.size()];
+        for (int i = expected.length; --i >= 0; expected[i] = tokens.get(i).isValidSignature(key));
+        assertArrayEquals(expected, result);
+    }
+
+    @Test
+    public final void verifySigningKeyIsFoundAmongManyKeys() {
+        // given
+        final List<Key> keys = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            keys.add(Key.generateKey(random));
+        }
+        final Validator<String> validator = new StringValidator() {
+        };
+
+        for (int i = 0; i < keys.size(); i++) {
+            final Token token = Token.generate(random, keys.get(i), "key " + i);
+
+            // when
+            final Key result = validator.findSigningKey(keys, token);
+
+            // then
+            assertEquals(keys.get(i), result);
+        }
+    }
+
+    @Test
+    public final void verifyVectorCodecMatchesJdk() {
+        // given
+        final byte[] binary = new byte[200];
+        random.nextBytes(binary);
+
+        for (int length = 0; length <= binary.length; length++) {
+            final byte[] ascii = new byte[TokenCodec.getEncodedLength(length)];
+            final byte[] decoded = new byte[length];
+
+            // when
+            final int encodedLength = TokenCodec.encode(binary, 0, length, ascii, 0);
+            final int decodedLength = TokenCodec.decode(ascii, 0, encodedLength, decoded, 0);
+
+            // then
+            assertTrue(Base64Vectors.isAvailable());
+            assertArrayEquals(Base64.getUrlEncoder().encode(Arrays.copyOf(binary, length)), ascii);
+            assertEquals(length, decodedLength);
+            assertArrayEquals(Arrays.copyOf(binary, length), decoded);
+        }
+    }
+
+    @Test
+    public final void verifyVectorCodecRejectsIllegalCharacter() {
+        // given
+        final byte[] ascii = new byte[64];
+        Arrays.fill(ascii, (byte) 'A');
+        ascii[5] = '+';
+
+        // when
+        thrown.expect(IllegalTokenException.class);
+        thrown.expectMessage("offset 4");
+        TokenCodec.decode(ascii, 0, ascii.length, new byte[48], 0);
+
+        // then (nothing)
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.macasaet.fernet;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A UTC clock for tests that only moves when told to.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+class MutableClock extends Clock {
+
+    private volatile Instant instant;
+
+    /**
+     * @param instant the initial time
+     */
+    MutableClock(final Instant instant) {
+        this.instant = instant;
+    }
+
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    public Clock withZone(final ZoneId zone) {
+        return this;
+    }
+
+    public Instant instant() {
+        return instant;
+    }
+
+    /**
+     * @param instant the new time
+     */
+    void set(final Instant instant) {
+        this.instant = instant;
+    }
+
+    /**
+     * @param duration the amount by which to move the clock forward
+     */
+    void advance(final Duration duration) {
+        instant = instant.plus(duration);
+    }
+
+}
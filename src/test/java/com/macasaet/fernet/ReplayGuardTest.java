@@ -0,0 +1,350 @@
+package com.macasaet.fernet;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the {@link ReplayGuard} class and {@link OneTimeTokenValidator} interface.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class ReplayGuardTest {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random();
+    private final Key key = Key.generateKey(random);
+    private final MutableClock clock = new MutableClock(Instant.now());
+
+    @Test
+    public final void verifyTokenAcceptedOnce() {
+        // given
+        final ReplayGuard guard = newGuard(4);
+        final Token token = Token.generate(random, key, "once");
+
+        // when
+        final boolean result = guard.tryAccept(token);
+
+        // then
+        assertTrue(result);
+        assertTrue(guard.hasSeen(token));
+        assertFalse(guard.tryAccept(token));
+        assertFalse(guard.tryAccept(Token.fromString(token.serialise())));
+        assertEquals(1, guard.size());
+    }
+
+    @Test
+    public final void verifyBucketsGrow() {
+        // given
+        final ReplayGuard guard = newGuard(2);
+        final List<Token> tokens = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            tokens.add(Token.generate(random, key, "token " + i));
+        }
+
+        // when
+        for (final Token token : tokens) {
+            assertTrue(guard.tryAccept(token));
+        }
+
+        // then
+        for (final Token token : tokens) {
+            assertFalse(guard.tryAccept(token));
+        }
+        assertEquals(tokens.size(), guard.size());
+    }
+
+    @Test
+    public final void verifyExpiredTokensForgotten() {
+        // given
+        final ReplayGuard guard = newGuard(4);
+        final Token token = Token.generate(random, key, "once");
+        guard.tryAccept(token);
+
+        // when
+        clock.advance(Duration.ofMinutes(10));
+
+        // then
+        assertFalse(guard.hasSeen(token));
+        assertFalse(guard.tryAccept(token));
+        assertTrue(guard.tryAccept(newToken(clock.instant())));
+        assertEquals(1, guard.size());
+    }
+
+    @Test
+    public final void verifyTokensRememberedUntilExpiry() {
+        // given
+        final ReplayGuard guard = newGuard(4);
+        final Token token = newToken(clock.instant());
+        guard.tryAccept(token);
+
+        // when
+        for (int second = 0; second < 59; second++) {
+            clock.advance(Duration.ofSeconds(1));
+            // fill each bucket in turn so that expired ones are replaced
+            assertTrue(guard.tryAccept(newToken(clock.instant().plusSeconds(59))));
+        }
+
+        // then
+        assertTrue(guard.hasSeen(token));
+        assertFalse(guard.tryAccept(token));
+    }
+
+    @Test
+    public final void verifySnapshotRestored() throws IOException {
+        // given
+        final ReplayGuard guard = newGuard(4);
+        final Token token = Token.generate(random, key, "once");
+        guard.tryAccept(token);
+        final Path path = folder.getRoot().toPath().resolve("replay.snapshot");
+        guard.snapshot(path);
+
+        // when
+        final ReplayGuard restored = newGuard(4);
+        restored.restore(path);
+
+        // then
+        assertFalse(restored.tryAccept(token));
+        assertTrue(restored.tryAccept(Token.generate(random, key, "other")));
+    }
+
+    @Test
+    public final void verifyCorruptSnapshotRejected() throws IOException {
+        // given
+        final Path path = folder.newFile().toPath();
+        Files.write(path, new byte[64]);
+        final ReplayGuard guard = newGuard(4);
+
+        // when
+        thrown.expect(IllegalStateException.class);
+        guard.restore(path);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyConcurrentReplayAcceptedOnce() throws InterruptedException {
+        // given
+        final ReplayGuard guard = newGuard(2);
+        final List<Token> tokens = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            tokens.add(Token.generate(random, key, "token " + i));
+        }
+        final AtomicInteger accepted = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (final Token token : tokens) {
+                    if (guard.tryAccept(token)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        // when
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        // then
+        assertEquals(tokens.size(), accepted.get());
+    }
+
+    @Test
+    public final void verifyOneTimeTokenValidator() {
+        // given
+        final ReplayGuard guard = newGuard(4);
+        final OneTimeTokenValidator<String> validator = new TestValidator(guard);
+        final Token token = Token.generate(random, key, "reset password");
+        assertEquals("reset password", validator.validateAndDecrypt(key, token));
+
+        // when
+        thrown.expect(TokenValidationException.class);
+        validator.validateAndDecrypt(key, token);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyInvalidTokenNotRecorded() {
+        // given
+        final ReplayGuard guard = newGuard(4);
+        final OneTimeTokenValidator<String> validator = new TestValidator(guard);
+        final Token token = Token.generate(random, Key.generateKey(random), "forged");
+
+        // when
+        try {
+            validator.validateAndDecrypt(key, token);
+        } catch (final TokenValidationException tve) {
+        }
+
+        // then
+        assertFalse(guard.hasSeen(token));
+    }
+
+    @Test
+    public final void verifyTokenNotRecordedWhenTransformerFails() {
+        // given
+        final ReplayGuard guard = newGuard(4);
+        final AtomicInteger attempts = new AtomicInteger();
+        final OneTimeTokenValidator<String> validator = new TestValidator(guard) {
+            public Function<byte[], String> getTransformer() {
+                return bytes -> {
+                    if (attempts.incrementAndGet() == 1) {
+                        throw new IllegalStateException("data store unavailable");
+                    }
+                    return new String(bytes, getCharset());
+                };
+            }
+        };
+        final Token token = Token.generate(random, key, "reset password");
+        try {
+            validator.validateAndDecrypt(key, token);
+            throw new AssertionError("Transformer failure ignored");
+        } catch (final IllegalStateException ise) {
+        }
+
+        // when
+        final String result = validator.validateAndDecrypt(key, token);
+
+        // then
+        assertEquals("reset password", result);
+        assertTrue(guard.hasSeen(token));
+    }
+
+    @Test
+    public final void verifyRejectedContentsNotRecorded() {
+        // given
+        final ReplayGuard guard = newGuard(4);
+        final OneTimeTokenValidator<String> validator = new TestValidator(guard) {
+            public Predicate<String> getObjectValidator() {
+                return payload -> false;
+            }
+        };
+        final Token token = Token.generate(random, key, "reset password");
+
+        // when
+        try {
+            validator.validateAndDecrypt(key, token);
+            throw new AssertionError("Invalid contents accepted");
+        } catch (final TokenValidationException tve) {
+        }
+
+        // then
+        assertFalse(guard.hasSeen(token));
+    }
+
+    @Test
+    public final void verifyAsyncTokenNotRecordedWhenTransformerFails() throws InterruptedException {
+        // given
+        final ReplayGuard guard = newGuard(4);
+        final OneTimeTokenValidator<String> validator = new TestValidator(guard) {
+            public Function<byte[], String> getTransformer() {
+                return bytes -> {
+                    throw new IllegalStateException("data store unavailable");
+                };
+            }
+        };
+        final Token token = Token.generate(random, key, "reset password");
+
+        // when
+        try {
+            validator.validateAndDecryptAsync(singletonList(key), token, Duration.ofSeconds(10)).get();
+            throw new AssertionError("Transformer failure ignored");
+        } catch (final ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof IllegalStateException);
+        }
+
+        // then
+        assertFalse(guard.hasSeen(token));
+    }
+
+    @Test
+    public final void verifyAsyncReplayRejected() throws InterruptedException, ExecutionException {
+        // given
+        final ReplayGuard guard = newGuard(4);
+        final OneTimeTokenValidator<String> validator = new TestValidator(guard);
+        final Token token = Token.generate(random, key, "reset password");
+        assertEquals("reset password", validator.validateAndDecryptAsync(key, token, Duration.ofSeconds(10)).get());
+
+        // when
+        try {
+            validator.validateAndDecryptAsync(key, token, Duration.ofSeconds(10)).get();
+
+            // then
+            throw new AssertionError("Replayed token accepted");
+        } catch (final ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof TokenValidationException);
+        }
+    }
+
+    protected Token newToken(final Instant timestamp) {
+        final byte[] hmac = new byte[32];
+        random.nextBytes(hmac);
+        return new Token((byte) 0x80, timestamp, new IvParameterSpec(new byte[16]), new byte[16], hmac);
+    }
+
+    protected ReplayGuard newGuard(final int initialBucketCapacity) {
+        return new ReplayGuard(Duration.ofMinutes(1), Duration.ofSeconds(60), 4, initialBucketCapacity, clock);
+    }
+
+    /**
+     * A string validator for one-time tokens.
+     */
+    private class TestValidator implements OneTimeTokenValidator<String>, StringValidator {
+        private final ReplayGuard guard;
+
+        TestValidator(final ReplayGuard guard) {
+            this.guard = guard;
+        }
+
+        public ReplayGuard getReplayGuard() {
+            return guard;
+        }
+
+        public Clock getClock() {
+            return clock;
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.threadLocalEnginesPerThread;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.Security;
+import java.util.Random;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import org.junit.Test;
+
+/**
+ * Runs the {@link CryptoBackendConformanceTest} against the {@link ThreadLocalCryptoBackend} and compares its output
+ * with that of the {@link JcaCryptoBackend}.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class ThreadLocalCryptoBackendTest extends CryptoBackendConformanceTest {
+
+    protected CryptoBackend getBackend() {
+        return new ThreadLocalCryptoBackend();
+    }
+
+    @Test
+    public final void verifyOutputMatchesJcaBackend() {
+        // given
+        final Random random = new Random(0);
+        final CryptoBackend reference = new JcaCryptoBackend();
+
+        for (int i = 0; i < 64; i++) {
+            final byte[] signingKey = new byte[16];
+            final byte[] encryptionKey = new byte[16];
+            final byte[] iv = new byte[16];
+            final byte[] payload = new byte[random.nextInt(512)];
+            random.nextBytes(signingKey);
+            random.nextBytes(encryptionKey);
+            random.nextBytes(iv);
+            random.nextBytes(payload);
+            final IvParameterSpec initializationVector = new IvParameterSpec(iv);
+            final CryptoEngine expected = reference.createEngine(signingKey, encryptionKey);
+            final CryptoEngine engine = getBackend().createEngine(signingKey, encryptionKey);
+
+            // when
+            final byte[] cipherText = engine.encrypt(initializationVector, payload, 0, payload.length);
+            final byte[] signature = engine.sign(cipherText, 0, cipherText.length);
+            final byte[] plainText = engine.decrypt(initializationVector, cipherText, 0, cipherText.length);
+
+            // then
+            assertArrayEquals(expected.encrypt(initializationVector, payload, 0, payload.length), cipherText);
+            assertArrayEquals(expected.sign(cipherText, 0, cipherText.length), signature);
+            assertArrayEquals(expected.decrypt(initializationVector, cipherText, 0, cipherText.length), plainText);
+        }
+    }
+
+    @Test
+    public final void verifyEngineRecoversFromPaddingError() {
+        // given
+        final CryptoEngine engine = getBackend().createEngine(new byte[16], new byte[16]);
+        final IvParameterSpec initializationVector = new IvParameterSpec(new byte[16]);
+        final byte[] cipherText = engine.encrypt(initializationVector, new byte[] {1, 2, 3}, 0, 3);
+        final byte[] corrupt = cipherText.clone();
+        corrupt[corrupt.length - 1] ^= 1;
+        try {
+            engine.decrypt(initializationVector, corrupt, 0, corrupt.length);
+        } catch (final TokenValidationException tve) {
+        }
+
+        // when
+        final byte[] result = engine.decrypt(initializationVector, cipherText, 0, cipherText.length);
+
+        // then
+        assertArrayEquals(new byte[] {1, 2, 3}, result);
+    }
+
+    @Test
+    public final void verifyPerThreadInstancesAreBounded() {
+        // given
+        final CryptoBackend backend = getBackend();
+        final byte[] payload = new byte[] {1, 2, 3};
+        final IvParameterSpec initializationVector = new IvParameterSpec(new byte[16]);
+
+        for (int i = 0; i < 2 * threadLocalEnginesPerThread; i++) {
+            final byte[] signingKey = new byte[16];
+            signingKey[0] = (byte) i;
+            final CryptoEngine engine = backend.createEngine(signingKey, new byte[16]);
+
+            // when
+            final byte[] cipherText = engine.encrypt(initializationVector, payload, 0, payload.length);
+            engine.sign(cipherText, 0, cipherText.length);
+
+            // then
+            assertArrayEquals(payload, engine.decrypt(initializationVector, cipherText, 0, cipherText.length));
+            assertTrue(ThreadLocalCryptoEngine.getCachedEngineCount() <= threadLocalEnginesPerThread);
+        }
+    }
+
+    @Test
+    public final void verifyPreferredProviderIsUsedWhenInstalled() {
+        // given
+
+        // when
+        final ThreadLocalCryptoBackend result =
+                ThreadLocalCryptoBackend.withPreferredProvider("NoSuchProvider", "SunJCE");
+
+        // then
+        assertSame(Security.getProvider("SunJCE"), result.getProvider());
+        assertEquals("ThreadLocalCryptoBackend [provider=SunJCE]", result.toString());
+    }
+
+    @Test
+    public final void verifyFallbackWhenNoPreferredProviderIsInstalled() {
+        // given
+
+        // when
+        final ThreadLocalCryptoBackend result = ThreadLocalCryptoBackend.withPreferredProvider("NoSuchProvider");
+
+        // then
+        assertNull(result.getProvider());
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.macasaet.fernet;
+
+import static com.macasaet.fernet.Constants.charset;
+import static com.macasaet.fernet.Constants.decoder;
+import static com.macasaet.fernet.Constants.encoder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Unit tests for the {@link TokenCodec} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class TokenCodecTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public final void verifyCodecMatchesJdk() {
+        final Random random = new Random(0);
+        for (int length = 0; length < 100; length++) {
+            // given
+            final byte[] binary = new byte[length];
+            random.nextBytes(binary);
+            final byte[] expected = encoder.encode(binary);
+            final byte[] ascii = new byte[TokenCodec.getEncodedLength(length)];
+            final byte[] decoded = new byte[length];
+
+            // when
+            final int encodedLength = TokenCodec.encode(binary, 0, length, ascii, 0);
+            final int decodedLength = TokenCodec.decode(expected, 0, expected.length, decoded, 0);
+
+            // then
+            assertEquals(expected.length, encodedLength);
+            assertArrayEquals(expected, ascii);
+            assertEquals(length, decodedLength);
+            assertArrayEquals(binary, decoded);
+        }
+    }
+
+    @Test
+    public final void verifyDecodeAcceptsUnpaddedInput() {
+        // given
+        final byte[] ascii = "AQID_-8".getBytes(charset);
+        final byte[] result = new byte[5];
+
+        // when
+        final int length = TokenCodec.decode(ascii, 0, ascii.length, result, 0);
+
+        // then
+        assertEquals(5, length);
+        assertArrayEquals(decoder.decode("AQID_-8="), result);
+    }
+
+    @Test
+    public final void verifyDecodeRejectsIllegalCharacter() {
+        // given
+        final byte[] ascii = "AQ+D".getBytes(charset);
+
+        // when
+        thrown.expect(IllegalTokenException.class);
+        TokenCodec.decode(ascii, 0, ascii.length, new byte[3], 0);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyDecodeRejectsInvalidLength() {
+        // given
+        final byte[] ascii = "AQIDB".getBytes(charset);
+
+        // when
+        thrown.expect(IllegalTokenException.class);
+        TokenCodec.decode(ascii, 0, ascii.length, new byte[4], 0);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void testDecodeAll() {
+        // given
+        final String first =
+                "gAAAAAAdwJ6wAAECAwQFBgcICQoLDA0ODy021cpGVWKZ_eEwCGM4BLLF_5CV9dOPmrhuVUPgJobwOz7JcbmrR64jVmpU4IwqDA==";
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+        final String second = Token.generate(random, key, "a somewhat longer payload than usual").serialise();
+        final byte[] ascii = ("\n" + first + "\r\n" + second + "\n\n").getBytes(charset);
+
+        // when
+        final List<Token> result = TokenCodec.decodeAll(ascii, 0, ascii.length);
+
+        // then
+        assertEquals(2, result.size());
+        assertEquals(first, result.get(0).serialise());
+        assertEquals(second, result.get(1).serialise());
+        assertEquals("a somewhat longer payload than usual", result.get(1).validateAndDecrypt(key,
+                new StringValidator() {
+                }));
+    }
+
+    @Test
+    public final void verifyDecodeAllRejectsInvalidToken() {
+        // given
+        final byte[] ascii = "gAAAAAAdwJ6xAAECAwQFBgcICQoLDA0OD3HkMATM5lFqGaerZ-fWPA==\n".getBytes(charset);
+
+        // when
+        thrown.expect(IllegalTokenException.class);
+        TokenCodec.decodeAll(ascii, 0, ascii.length);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void testEncodeAll() {
+        // given
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+        final List<Token> tokens = new ArrayList<>();
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            final Token token = Token.generate(random, key, "payload " + i);
+            tokens.add(token);
+            expected.append(token.serialise()).append('\n');
+        }
+
+        // when
+        final byte[] result = TokenCodec.encodeAll(tokens);
+
+        // then
+        assertEquals(expected.toString(), new String(result, charset));
+    }
+
+}
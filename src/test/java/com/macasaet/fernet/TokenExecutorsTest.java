@@ -0,0 +1,257 @@
+package com.macasaet.fernet;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.isA;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Unit tests for the {@link TokenExecutors} class and the asynchronous token operations.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class TokenExecutorsTest {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    private final Random random = new Random();
+    private final Duration timeout = Duration.ofSeconds(10);
+    private ExecutorService cryptoExecutor;
+    private ExecutorService transformerExecutor;
+
+    @Before
+    public void setUp() {
+        cryptoExecutor = TokenExecutors.newBoundedExecutor(2, 16);
+        transformerExecutor = TokenExecutors.newBoundedExecutor(1, 16);
+    }
+
+    @After
+    public void tearDown() {
+        cryptoExecutor.shutdownNow();
+        transformerExecutor.shutdownNow();
+    }
+
+    @Test
+    public final void verifyAsyncRoundTrip() throws InterruptedException, ExecutionException {
+        // given
+        final Key key = Key.generateKey(random);
+        final byte[] payload = "hello".getBytes(Constants.charset);
+
+        // when
+        final CompletableFuture<String> result = Token.generateAsync(random, key, payload, cryptoExecutor, timeout)
+                .thenCompose(token -> token.validateAndDecryptAsync(key, new StringValidator() {
+                }, timeout));
+
+        // then
+        assertEquals("hello", result.get());
+    }
+
+    @Test
+    public final void verifyStagesRunOnTheirExecutors() throws InterruptedException, ExecutionException {
+        // given
+        final Key key = Key.generateKey(random);
+        final Token token = Token.generate(random, key, "hello");
+        final String expectedThread = transformerExecutor.submit(() -> Thread.currentThread().getName()).get();
+        final AtomicReference<String> transformerThread = new AtomicReference<>();
+        final Validator<String> validator = new AsyncValidator() {
+            public Executor getTransformerExecutor() {
+                return transformerExecutor;
+            }
+
+            public Function<byte[], String> getTransformer() {
+                return bytes -> {
+                    transformerThread.set(Thread.currentThread().getName());
+                    return new String(bytes, Constants.charset);
+                };
+            }
+        };
+
+        // when
+        final String result = validator.validateAndDecryptAsync(asList(Key.generateKey(random), key), token, timeout)
+                .get();
+
+        // then
+        assertEquals("hello", result);
+        assertEquals(expectedThread, transformerThread.get());
+    }
+
+    @Test
+    public final void verifyInvalidTokenCompletesExceptionally() throws InterruptedException, ExecutionException {
+        // given
+        final Token token = Token.generate(random, Key.generateKey(random), "hello");
+        final Validator<String> validator = new AsyncValidator();
+
+        // when
+        final CompletableFuture<String> result = validator.validateAndDecryptAsync(Key.generateKey(random), token,
+                timeout);
+
+        // then
+        thrown.expectCause(isA(TokenValidationException.class));
+        result.get();
+    }
+
+    @Test
+    public final void verifyDeadline() throws InterruptedException {
+        // given
+        final Key key = Key.generateKey(random);
+        final Token token = Token.generate(random, key, "hello");
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        final Validator<String> validator = new AsyncValidator() {
+            public Function<byte[], String> getTransformer() {
+                return bytes -> {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new String(bytes, Constants.charset);
+                };
+            }
+        };
+
+        // when
+        final CompletableFuture<String> result = validator.validateAndDecryptAsync(key, token, Duration.ofMillis(50));
+
+        // then
+        try {
+            result.get();
+        } catch (final ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof TimeoutException);
+            timedOut.set(true);
+        } finally {
+            release.countDown();
+        }
+        assertTrue(timedOut.get());
+    }
+
+    @Test
+    public final void verifyRejectionWhenSaturated() throws InterruptedException {
+        // given
+        final ExecutorService saturated = TokenExecutors.newBoundedExecutor(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        saturated.execute(() -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        saturated.execute(() -> {
+        });
+        final Key key = Key.generateKey(random);
+
+        // when
+        final CompletableFuture<Token> result = Token.generateAsync(random, key, new byte[16], saturated, timeout);
+
+        // then
+        try {
+            assertTrue(result.isCompletedExceptionally());
+            thrown.expectCause(isA(RejectedExecutionException.class));
+            result.join();
+        } finally {
+            release.countDown();
+            saturated.shutdown();
+        }
+    }
+
+    @Test
+    public final void verifyDefaultExecutor() throws InterruptedException, ExecutionException {
+        // given
+        final Key key = Key.generateKey(random);
+        final byte[] payload = new byte[32];
+        random.nextBytes(payload);
+
+        // when
+        final Token result = Token.generateAsync(random, key, payload, timeout).get();
+
+        // then
+        assertArrayEquals(payload, result.validateAndDecrypt(key, new Validator<byte[]>() {
+            public Function<byte[], byte[]> getTransformer() {
+                return Function.identity();
+            }
+        }));
+    }
+
+    @Test
+    public final void verifyVirtualThreadTransformer() throws Exception {
+        // given
+        assumeTrue(TokenExecutors.isVirtualThreadAvailable());
+        final ExecutorService virtualThreads = TokenExecutors.newVirtualThreadExecutor();
+        final Key key = Key.generateKey(random);
+        final Token token = Token.generate(random, key, "hello");
+        final AtomicBoolean isVirtual = new AtomicBoolean();
+        final Validator<String> validator = new AsyncValidator() {
+            public Executor getTransformerExecutor() {
+                return virtualThreads;
+            }
+
+            public Function<byte[], String> getTransformer() {
+                return bytes -> {
+                    try {
+                        isVirtual.set((Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+                    } catch (final ReflectiveOperationException roe) {
+                        throw new IllegalStateException(roe);
+                    }
+                    return new String(bytes, Constants.charset);
+                };
+            }
+        };
+
+        // when
+        final String result = validator.validateAndDecryptAsync(key, token, timeout).get();
+
+        // then
+        virtualThreads.shutdown();
+        assertEquals("hello", result);
+        assertTrue(isVirtual.get());
+    }
+
+    @Test
+    public final void verifyVirtualThreadsUnsupported() {
+        // given
+        assumeFalse(TokenExecutors.isVirtualThreadAvailable());
+
+        // when
+        thrown.expect(UnsupportedOperationException.class);
+        TokenExecutors.newVirtualThreadExecutor();
+
+        // then (nothing)
+    }
+
+    /**
+     * A string validator that runs on the test executors.
+     */
+    private class AsyncValidator implements StringValidator {
+        public Executor getExecutor() {
+            return cryptoExecutor;
+        }
+    }
+
+}
@@ -0,0 +1,339 @@
+package com.macasaet.fernet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Unit tests for the {@link TokenProcessor} class.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class TokenProcessorTest {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    private final Random random = new Random();
+    private final Key key = Key.generateKey(random);
+    private final List<Key> keys = Collections.singletonList(key);
+    private ExecutorService executor;
+    private Validator<String> validator;
+    private TestPublisher publisher;
+    private TestSubscriber subscriber;
+
+    @Before
+    public void setUp() {
+        executor = TokenExecutors.newBoundedExecutor(4, 64);
+        validator = new StringValidator() {
+            public Executor getExecutor() {
+                return executor;
+            }
+        };
+        publisher = new TestPublisher();
+        subscriber = new TestSubscriber();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public final void verifyResultsInOrder() throws InterruptedException {
+        // given
+        final TokenProcessor<String> processor = new TokenProcessor<>(validator, keys, 8, 2, 4, true);
+        publisher.subscribe(processor);
+        subscriber.subscribe(processor);
+
+        // when
+        subscriber.request(100);
+        for (int i = 0; i < 100; i++) {
+            publisher.awaitDemand();
+            publisher.emit(Token.generate(random, key, "payload-" + i).serialise());
+        }
+        publisher.complete();
+
+        // then
+        assertTrue(subscriber.awaitTermination());
+        assertNull(subscriber.error);
+        assertEquals(100, subscriber.results.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("payload-" + i, subscriber.results.get(i).getValue());
+        }
+    }
+
+    @Test
+    public final void verifyUpstreamLimitedByDemand() throws InterruptedException {
+        // given
+        final TokenProcessor<String> processor = new TokenProcessor<>(validator, keys, 8, 2, 4, true);
+        publisher.subscribe(processor);
+        subscriber.subscribe(processor);
+
+        // when
+        subscriber.request(3);
+
+        // then
+        assertEquals(3, publisher.requested.get());
+        for (int i = 0; i < 3; i++) {
+            publisher.emit(Token.generate(random, key, "payload-" + i).serialise());
+        }
+        subscriber.awaitResults(3);
+        assertEquals(3, publisher.requested.get());
+        assertEquals(0, processor.getInFlight());
+    }
+
+    @Test
+    public final void verifyUpstreamLimitedByWindow() throws InterruptedException {
+        // given
+        final TokenProcessor<String> processor = new TokenProcessor<>(validator, keys, 4, 1, 1, true);
+        publisher.subscribe(processor);
+        subscriber.subscribe(processor);
+
+        // when
+        subscriber.request(Long.MAX_VALUE);
+
+        // then
+        assertEquals(4, publisher.requested.get());
+        for (int i = 0; i < 4; i++) {
+            publisher.emit(Token.generate(random, key, "payload-" + i).serialise());
+        }
+        subscriber.awaitResults(4);
+        publisher.awaitDemand();
+        assertTrue(publisher.requested.get() - publisher.emitted.get() <= 4);
+    }
+
+    @Test
+    public final void verifyInvalidTokensDoNotTerminateStream() throws InterruptedException {
+        // given
+        final TokenProcessor<String> processor = new TokenProcessor<>(validator, keys);
+        publisher.subscribe(processor);
+        subscriber.subscribe(processor);
+        subscriber.request(3);
+
+        // when
+        publisher.emit(Token.generate(random, Key.generateKey(random), "wrong key").serialise());
+        publisher.emit("not a token");
+        publisher.emit(Token.generate(random, key, "valid").serialise());
+        publisher.complete();
+
+        // then
+        assertTrue(subscriber.awaitTermination());
+        assertNull(subscriber.error);
+        assertEquals(3, subscriber.results.size());
+        assertTrue(subscriber.results.get(0).getError() instanceof TokenValidationException);
+        assertTrue(subscriber.results.get(1).getError() instanceof IllegalArgumentException);
+        assertEquals("not a token", subscriber.results.get(1).getToken());
+        assertEquals("valid", subscriber.results.get(2).getValue());
+    }
+
+    @Test
+    public final void verifyUnorderedEmitsEveryResult() throws InterruptedException {
+        // given
+        final TokenProcessor<String> processor = new TokenProcessor<>(validator, keys, 16, 1, 4, false);
+        publisher.subscribe(processor);
+        subscriber.subscribe(processor);
+        subscriber.request(Long.MAX_VALUE);
+        final Set<String> expected = new HashSet<>();
+
+        // when
+        for (int i = 0; i < 50; i++) {
+            publisher.awaitDemand();
+            expected.add("payload-" + i);
+            publisher.emit(Token.generate(random, key, "payload-" + i).serialise());
+        }
+        publisher.complete();
+
+        // then
+        assertTrue(subscriber.awaitTermination());
+        final Set<String> values = new HashSet<>();
+        for (final ValidationResult<String> result : subscriber.results) {
+            values.add(result.getValue());
+        }
+        assertEquals(expected, values);
+    }
+
+    @Test
+    public final void verifyUpstreamErrorDeliveredAfterResults() throws InterruptedException {
+        // given
+        final TokenProcessor<String> processor = new TokenProcessor<>(validator, keys);
+        publisher.subscribe(processor);
+        subscriber.subscribe(processor);
+        subscriber.request(1);
+        final IllegalStateException error = new IllegalStateException("upstream failure");
+
+        // when
+        publisher.emit(Token.generate(random, key, "before failure").serialise());
+        publisher.subscriber.onError(error);
+
+        // then
+        assertTrue(subscriber.awaitTermination());
+        assertEquals(1, subscriber.results.size());
+        assertEquals(error, subscriber.error);
+    }
+
+    @Test
+    public final void verifyCancelStopsUpstream() {
+        // given
+        final TokenProcessor<String> processor = new TokenProcessor<>(validator, keys);
+        publisher.subscribe(processor);
+        subscriber.subscribe(processor);
+        subscriber.request(10);
+
+        // when
+        processor.cancel();
+
+        // then
+        assertTrue(publisher.cancelled);
+        assertFalse(subscriber.completed.getCount() == 0);
+    }
+
+    @Test
+    public final void verifyNonPositiveRequestIsAnError() throws InterruptedException {
+        // given
+        final TokenProcessor<String> processor = new TokenProcessor<>(validator, keys);
+        publisher.subscribe(processor);
+        subscriber.subscribe(processor);
+
+        // when
+        subscriber.request(0);
+
+        // then
+        assertTrue(subscriber.awaitTermination());
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertTrue(publisher.cancelled);
+    }
+
+    @Test
+    public final void verifySecondSubscriberRejected() {
+        // given
+        final TokenProcessor<String> processor = new TokenProcessor<>(validator, keys);
+        subscriber.subscribe(processor);
+        final TestSubscriber second = new TestSubscriber();
+
+        // when
+        thrown.expect(IllegalStateException.class);
+        second.subscribe(processor);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyInvalidWindow() {
+        // given
+
+        // when
+        thrown.expect(IllegalArgumentException.class);
+        new TokenProcessor<>(validator, keys, 0, 1, 1, true);
+
+        // then (nothing)
+    }
+
+    /**
+     * A publisher that emits tokens only when the test tells it to.
+     */
+    private static class TestPublisher {
+        final AtomicLong requested = new AtomicLong();
+        final AtomicLong emitted = new AtomicLong();
+        volatile boolean cancelled;
+        TokenProcessor<?> subscriber;
+
+        void subscribe(final TokenProcessor<?> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(this::request, this::cancel);
+        }
+
+        synchronized void request(final long n) {
+            requested.addAndGet(n);
+            notifyAll();
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        void emit(final String token) {
+            if (emitted.incrementAndGet() > requested.get()) {
+                throw new AssertionError("Emitted more than the " + requested.get() + " tokens requested");
+            }
+            subscriber.onNext(token);
+        }
+
+        void complete() {
+            subscriber.onComplete();
+        }
+
+        synchronized void awaitDemand() throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (requested.get() <= emitted.get() && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+        }
+    }
+
+    /**
+     * A subscriber that records everything it receives.
+     */
+    private static class TestSubscriber {
+        final List<ValidationResult<String>> results = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile TokenProcessor<String> subscription;
+        volatile Throwable error;
+
+        void subscribe(final TokenProcessor<String> processor) {
+            subscription = processor;
+            processor.subscribe(this::onNext, this::onError, this::onComplete);
+        }
+
+        void onNext(final ValidationResult<String> item) {
+            results.add(item);
+        }
+
+        void onError(final Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+
+        void onComplete() {
+            completed.countDown();
+        }
+
+        void request(final long n) {
+            subscription.request(n);
+        }
+
+        boolean awaitTermination() throws InterruptedException {
+            return completed.await(10, TimeUnit.SECONDS);
+        }
+
+        void awaitResults(final int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (results.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(count, results.size());
+        }
+    }
+
+}
@@ -1,14 +1,26 @@
 package com.macasaet.fernet;
 
 import static com.macasaet.fernet.Constants.initializationVectorBytes;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 import javax.crypto.spec.IvParameterSpec;
@@ -163,4 +175,273 @@ public class TokenTest {
         assertEquals("Don't wait too long to decrypt this!", result);
     }
 
-}
\ No newline at end of file
+    @Test
+    public final void testGenerateBatch() {
+        // given
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+        final List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            payloads.add(("payload " + i).getBytes());
+        }
+
+        // when
+        final List<Token> result = Token.generateBatch(random, key, payloads);
+
+        // then
+        assertEquals(32, result.size());
+        for (int i = 0; i < 32; i++) {
+            final Token token = Token.fromString(result.get(i).serialise());
+            assertEquals("payload " + i, token.validateAndDecrypt(key, validator));
+        }
+    }
+
+    @Test
+    public final void testVerifySignatures() {
+        // given
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+        final List<Token> tokens = new ArrayList<>();
+        tokens.add(Token.fromString(Token.generate(random, key, "first").serialise()));
+        tokens.add(Token.generate(random, Key.generateKey(random), "second"));
+        tokens.add(Token.generate(random, key, "third"));
+
+        // when
+        final boolean[] result = Token.verifySignatures(key, tokens);
+
+        // then
+        assertArrayEquals(new boolean[] {true, false, true}, result);
+    }
+
+    @Test
+    public final void verifyOverriddenSignIsUsedToVerify() {
+        // given
+        final Random random = new Random();
+        final Key plainKey = Key.generateKey(random);
+        final Key key = new Key(plainKey.getSigningKey(), plainKey.getEncryptionKey()) {
+            public byte[] sign(final byte version, final Instant timestamp,
+                    final IvParameterSpec initializationVector, final byte[] cipherText) {
+                final byte[] retval = super.sign(version, timestamp, initializationVector, cipherText);
+                retval[0] ^= 1;
+                return retval;
+            }
+        };
+        final Token token = Token.fromString(Token.generate(random, key, "Hello, world!").serialise());
+
+        // when
+        final boolean result = token.isValidSignature(key);
+
+        // then
+        assertTrue(result);
+        assertFalse(token.isValidSignature(plainKey));
+        assertArrayEquals(new boolean[] {true}, Token.verifySignatures(key, singletonList(token)));
+        assertEquals("Hello, world!", validator.validateAndDecrypt(asList(plainKey, key), token));
+    }
+
+    @Test
+    public final void testGenerateAesGcm() {
+        // given
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+        final Validator<String> gcmValidator = new StringValidator() {
+            public Set<TokenFormat> getAcceptedFormats() {
+                return EnumSet.of(TokenFormat.AES_GCM);
+            }
+        };
+
+        // when
+        final Token token = Token.fromString(Token.generate(random, key, "Hello, world!", TokenFormat.AES_GCM)
+                .serialise());
+
+        // then
+        assertEquals(TokenFormat.AES_GCM, token.getFormat());
+        assertEquals((byte) 0x81, token.getVersion());
+        assertEquals(12, token.getInitializationVector().getIV().length);
+        assertEquals("Hello, world!", token.validateAndDecrypt(key, gcmValidator));
+    }
+
+    @Test
+    public final void verifyAesGcmTokenRejectedByDefault() {
+        // given
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+        final Token token = Token.generate(random, key, "Hello, world!", TokenFormat.AES_GCM);
+
+        // when
+        thrown.expect(TokenValidationException.class);
+        token.validateAndDecrypt(key, validator);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyFernetTokenRejectedByAesGcmOnlyValidator() {
+        // given
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+        final Token token = Token.generate(random, key, "Hello, world!");
+        final Validator<String> gcmValidator = new StringValidator() {
+            public Set<TokenFormat> getAcceptedFormats() {
+                return EnumSet.of(TokenFormat.AES_GCM);
+            }
+        };
+
+        // when
+        thrown.expect(TokenValidationException.class);
+        token.validateAndDecrypt(key, gcmValidator);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyAesGcmTimestampIsAuthenticated() {
+        // given
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+        final Token token = Token.generate(random, key, "Hello, world!", TokenFormat.AES_GCM);
+        final Token tampered = new Token(token.getVersion(), token.getTimestamp().plusSeconds(1),
+                token.getInitializationVector(), token.getCipherText(), token.getHmac());
+        final Validator<String> gcmValidator = new StringValidator() {
+            public Set<TokenFormat> getAcceptedFormats() {
+                return EnumSet.of(TokenFormat.AES_GCM);
+            }
+        };
+
+        // when
+        thrown.expect(TokenValidationException.class);
+        tampered.validateAndDecrypt(key, gcmValidator);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void verifyAesGcmTokenCannotBeReinterpretedAsFernet() {
+        // given
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+        // a 52 byte payload results in a token that has a valid length for the Fernet format
+        final Token token = Token.generate(random, key, new byte[52], TokenFormat.AES_GCM);
+        final byte[] bytes = java.util.Base64.getUrlDecoder().decode(token.serialise());
+        bytes[0] = (byte) 0x80;
+
+        // when
+        final Token reinterpreted = Token.fromBytes(bytes);
+
+        // then
+        assertFalse(reinterpreted.isValidSignature(key));
+    }
+
+    @Test
+    public final void testAesGcmKeyRotation() {
+        // given
+        final Random random = new Random();
+        final List<? extends Key> decryptionKeys =
+                IntStream.range(0, 4).mapToObj(i -> Key.generateKey(random)).collect(toList());
+        final Token token = Token.generate(random, decryptionKeys.get(2), "rotated", TokenFormat.AES_GCM);
+        final Validator<String> mixedValidator = new StringValidator() {
+            public Set<TokenFormat> getAcceptedFormats() {
+                return EnumSet.allOf(TokenFormat.class);
+            }
+        };
+
+        // when
+        final String result = token.validateAndDecrypt(decryptionKeys, mixedValidator);
+
+        // then
+        assertEquals("rotated", result);
+        assertTrue(token.isValidSignature(decryptionKeys.get(2)));
+        assertFalse(token.isValidSignature(decryptionKeys.get(1)));
+    }
+
+    @Test
+    public final void verifyAesGcmPayloadIsDecryptedOnceWithMatchingKey() {
+        // given
+        final Random random = new Random();
+        final AtomicInteger decryptions = new AtomicInteger();
+        final List<Key> decryptionKeys = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final Key generated = Key.generateKey(random);
+            decryptionKeys.add(new Key(generated.getSigningKey(), generated.getEncryptionKey()) {
+                public byte[] decrypt(final TokenFormat format, final byte[] nonce, final byte[] associatedData,
+                        final byte[] cipherText, final byte[] tag) throws TokenValidationException {
+                    decryptions.incrementAndGet();
+                    return super.decrypt(format, nonce, associatedData, cipherText, tag);
+                }
+            });
+        }
+        final Token token = Token.generate(random, decryptionKeys.get(1), "rotated", TokenFormat.AES_GCM);
+        final Validator<String> mixedValidator = new StringValidator() {
+            public Set<TokenFormat> getAcceptedFormats() {
+                return EnumSet.allOf(TokenFormat.class);
+            }
+        };
+
+        // when
+        final String result = token.validateAndDecrypt(decryptionKeys, mixedValidator);
+
+        // then
+        assertEquals("rotated", result);
+        // one failed attempt with the first key and one successful attempt with the second
+        assertEquals(2, decryptions.get());
+    }
+
+    @Test
+    public final void verifyAesGcmTokenExpires() {
+        // given
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+        final Token token = Token.generate(random, key, "Hello, world!", TokenFormat.AES_GCM);
+        final Validator<String> gcmValidator = new StringValidator() {
+            public Set<TokenFormat> getAcceptedFormats() {
+                return EnumSet.of(TokenFormat.AES_GCM);
+            }
+
+            public Clock getClock() {
+                return Clock.offset(Clock.systemUTC(), Duration.ofMinutes(5));
+            }
+        };
+
+        // when
+        thrown.expect(TokenExpiredException.class);
+        token.validateAndDecrypt(key, gcmValidator);
+
+        // then (nothing)
+    }
+
+    @Test
+    public final void testGenerateChaCha20Poly1305() {
+        assumeTrue(TokenFormat.CHACHA20_POLY1305.isAvailable());
+        // given
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+        final Validator<String> chaChaValidator = new StringValidator() {
+            public Set<TokenFormat> getAcceptedFormats() {
+                return EnumSet.of(TokenFormat.CHACHA20_POLY1305);
+            }
+        };
+
+        // when
+        final Token token = Token.fromString(
+                Token.generate(random, key, "Hello, world!", TokenFormat.CHACHA20_POLY1305).serialise());
+
+        // then
+        assertEquals((byte) 0x82, token.getVersion());
+        assertEquals("Hello, world!", token.validateAndDecrypt(key, chaChaValidator));
+        assertFalse(token.isValidSignature(Key.generateKey(random)));
+    }
+
+    @Test
+    public final void verifyUnavailableFormatIsReported() {
+        assumeFalse(TokenFormat.CHACHA20_POLY1305.isAvailable());
+        // given
+        final Random random = new Random();
+        final Key key = Key.generateKey(random);
+
+        // when
+        thrown.expect(UnsupportedOperationException.class);
+        Token.generate(random, key, "Hello, world!", TokenFormat.CHACHA20_POLY1305);
+
+        // then (nothing)
+    }
+
+}
@@ -1,11 +1,15 @@
 package com.macasaet.fernet.example.rotation;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 import java.io.IOException;
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -16,6 +20,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.Mock;
 
+import com.macasaet.fernet.CachingKeyRepository;
 import com.macasaet.fernet.TokenValidationException;
 
 import redis.clients.jedis.Jedis;
@@ -37,6 +42,7 @@ public class KeyRotationExampleIT {
     private RedisKeyRepository repository;
     private RedisKeyManager manager;
     private ProtectedResource resource;
+    private Random random;
 
     @Mock
     private HttpServletResponse servletResponse;
@@ -47,7 +53,7 @@ public class KeyRotationExampleIT {
     @Before
     public void setUp() throws IOException {
         initMocks(this);
-        final Random random = new SecureRandom();
+        random = new SecureRandom();
         redisServer = new RedisServer();
         redisServer.start();
 
@@ -70,7 +76,7 @@ public class KeyRotationExampleIT {
 
     protected void clearData() {
         try (final Jedis jedis = pool.getResource()) {
-            jedis.del("fernet_keys");
+            jedis.del("fernet_keys", RedisKeyManager.versionKey);
         }
     }
 
@@ -88,4 +94,65 @@ public class KeyRotationExampleIT {
         resource.getSecret(initialToken);
     }
 
-}
\ No newline at end of file
+    @Test
+    public final void demonstrateCachedKeyRotation() {
+        try (final CachingKeyRepository cache = new CachingKeyRepository(repository, Duration.ofMinutes(5))) {
+            final ProtectedResource cachedResource = new ProtectedResource(cache, random);
+            final String initialToken = cachedResource.issueToken("username", "password");
+
+            manager.rotate();
+            cache.refresh();
+            assertEquals("secret", cachedResource.getSecret(initialToken));
+
+            manager.rotate();
+            cache.refresh();
+            thrown.expect(TokenValidationException.class);
+            cachedResource.getSecret(initialToken);
+        }
+    }
+
+    @Test
+    public final void demonstrateCachedKeysSurviveOutage() throws IOException {
+        try (final CachingKeyRepository cache = new CachingKeyRepository(repository, Duration.ofMinutes(5))) {
+            final ProtectedResource cachedResource = new ProtectedResource(cache, random);
+            final String token = cachedResource.issueToken("username", "password");
+
+            redisServer.stop();
+            try {
+                assertFalse(cache.refresh());
+                assertEquals("secret", cachedResource.getSecret(token));
+            } finally {
+                redisServer.start();
+            }
+        }
+    }
+
+    @Test
+    public final void demonstratePushedRotation() throws InterruptedException {
+        // poll rarely, announcements deliver rotations promptly
+        try (final CachingKeyRepository cache = new CachingKeyRepository(repository, Duration.ofHours(1));
+                final RedisKeyRotationSubscriber subscriber = new RedisKeyRotationSubscriber(pool, cache)) {
+            assertTrue(subscriber.start(10, TimeUnit.SECONDS));
+            final ProtectedResource cachedResource = new ProtectedResource(cache, random);
+            final String initialToken = cachedResource.issueToken("username", "password");
+
+            manager.rotate();
+            final long version = manager.rotate();
+            awaitVersion(subscriber, version);
+
+            assertEquals(version, subscriber.getVersion());
+            assertEquals(repository.getPrimaryKey().serialise(), cache.getPrimaryKey().serialise());
+            thrown.expect(TokenValidationException.class);
+            cachedResource.getSecret(initialToken);
+        }
+    }
+
+    protected void awaitVersion(final RedisKeyRotationSubscriber subscriber, final long version)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (subscriber.getVersion() < version && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+}
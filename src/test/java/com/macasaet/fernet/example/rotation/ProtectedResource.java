@@ -10,6 +10,7 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 
 import com.macasaet.fernet.Key;
+import com.macasaet.fernet.KeyRepository;
 import com.macasaet.fernet.StringValidator;
 import com.macasaet.fernet.Token;
 import com.macasaet.fernet.TokenValidationException;
@@ -24,7 +25,7 @@ import com.macasaet.fernet.Validator;
 @Path("resource")
 public class ProtectedResource {
 
-    private final RedisKeyRepository keyRepository;
+    private final KeyRepository keyRepository;
     private final Random random;
 
     private final Validator<String> validator = new StringValidator() {
@@ -35,7 +36,7 @@ public class ProtectedResource {
      * @param random a source of entropy for generating new tokens
      */
     @Inject
-    public ProtectedResource(final RedisKeyRepository keyRepository, final Random random) {
+    public ProtectedResource(final KeyRepository keyRepository, final Random random) {
         if (keyRepository == null) {
             throw new IllegalArgumentException("keyRepository cannot be null");
         }
@@ -77,7 +78,7 @@ public class ProtectedResource {
         throw new NotAuthorizedException("Basic realm=\"secrets\"");
     }
 
-    protected RedisKeyRepository getKeyRepository() {
+    protected KeyRepository getKeyRepository() {
         return keyRepository;
     }
 
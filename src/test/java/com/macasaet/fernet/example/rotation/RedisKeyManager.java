@@ -10,6 +10,7 @@ import com.macasaet.fernet.Token;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.Transaction;
 
 /**
@@ -21,6 +22,15 @@ import redis.clients.jedis.Transaction;
  */
 public class RedisKeyManager {
 
+    /**
+     * The channel on which each rotation is announced. The message is the new key version.
+     */
+    public static final String rotationChannel = "fernet_key_rotations";
+    /**
+     * The counter that is incremented on each rotation.
+     */
+    public static final String versionKey = "fernet_keys_version";
+
     private final Random random;
     private final JedisPool pool;
     private final RedisKeyRepository repository;
@@ -50,19 +60,27 @@ public class RedisKeyManager {
 
     /**
      * This makes the staged key the new primary key, makes the primary key a validation-only key, deletes the oldest
-     * validation-only key, and generates a new staged key. Note that this class is unaware of the TTL your application
-     * uses to validate {@link Token Tokens}. So be mindful not to over-rotate your keys.
+     * validation-only key, and generates a new staged key. Then it announces the new key version to subscribers, such
+     * as {@link RedisKeyRotationSubscriber}, so that they need not poll for changes. Note that this class is unaware of
+     * the TTL your application uses to validate {@link Token Tokens}. So be mindful not to over-rotate your keys.
+     *
+     * @return the new key version
      */
-    public void rotate() {
+    public long rotate() {
         final Key newStaged = Key.generateKey(getRandom());
         try (final Jedis jedis = getPool().getResource()) {
+            final Response<Long> version;
             try (final Transaction transaction = jedis.multi()) {
                 transaction.lpush("fernet_keys", newStaged.serialise());
                 transaction.ltrim("fernet_keys", 0, getMaxActiveKeys() - 1);
+                version = transaction.incr(versionKey);
                 transaction.exec();
             } catch (final IOException ioe) {
                 throw new RuntimeException("Unable to rotate keys: " + ioe.getMessage(), ioe);
             }
+            // publish after the transaction commits so that subscribers retrieve the new keys
+            jedis.publish(rotationChannel, String.valueOf(version.get()));
+            return version.get();
         }
     }
 
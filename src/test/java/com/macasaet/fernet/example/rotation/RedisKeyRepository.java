@@ -7,19 +7,22 @@ import javax.annotation.PreDestroy;
 import javax.crypto.spec.IvParameterSpec;
 import javax.inject.Inject;
 
+import com.macasaet.fernet.CachingKeyRepository;
 import com.macasaet.fernet.Key;
+import com.macasaet.fernet.KeyRepository;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 
 /**
- * An example utility for managing keys in a key rotation environment. 
+ * An example utility for managing keys in a key rotation environment. Each call is a round trip to Redis, so wrap it
+ * in a {@link CachingKeyRepository} to serve requests.
  *
  * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
  *
  * @author Carlos Macasaet
  */
-public class RedisKeyRepository {
+public class RedisKeyRepository implements KeyRepository {
 
     private final JedisPool pool;
 
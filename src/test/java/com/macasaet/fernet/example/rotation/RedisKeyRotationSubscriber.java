@@ -0,0 +1,127 @@
+package com.macasaet.fernet.example.rotation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import com.macasaet.fernet.CachingKeyRepository;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * An example utility that refreshes cached keys as soon as {@link RedisKeyManager} announces a rotation, rather than
+ * waiting for the next scheduled refresh. The scheduled refreshes of the {@link CachingKeyRepository} remain as a
+ * safety net in case an announcement is missed, so their interval can be long.
+ *
+ * <p>Copyright &copy; 2017 Carlos Macasaet.</p>
+ *
+ * @author Carlos Macasaet
+ */
+public class RedisKeyRotationSubscriber implements AutoCloseable {
+
+    private final JedisPool pool;
+    private final CachingKeyRepository repository;
+    private final AtomicLong version = new AtomicLong();
+    private final CountDownLatch subscribed = new CountDownLatch(1);
+    private final Thread listener;
+    private final JedisPubSub pubSub = new JedisPubSub() {
+        public void onSubscribe(final String channel, final int subscribedChannels) {
+            if (closed) {
+                unsubscribe();
+                return;
+            }
+            // announcements may have been missed while disconnected
+            getRepository().refresh();
+            subscribed.countDown();
+        }
+
+        public void onMessage(final String channel, final String message) {
+            final long announced = Long.parseLong(message);
+            // skip announcements that are duplicated or overtaken by a later rotation, and only report a version once
+            // it is being served so that a failed refresh is retried on the next announcement
+            if (announced > version.get() && getRepository().refresh()) {
+                version.accumulateAndGet(announced, Math::max);
+            }
+        }
+    };
+
+    private volatile boolean closed;
+
+    /**
+     * @param pool connection to Redis
+     * @param repository the cached keys to refresh
+     */
+    @Inject
+    public RedisKeyRotationSubscriber(final JedisPool pool, final CachingKeyRepository repository) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool cannot be null");
+        }
+        if (repository == null) {
+            throw new IllegalArgumentException("repository cannot be null");
+        }
+        this.pool = pool;
+        this.repository = repository;
+        this.listener = new Thread(this::listen, "fernet-key-rotation-listener");
+        this.listener.setDaemon(true);
+    }
+
+    /**
+     * Start listening for rotations.
+     *
+     * @param timeout the maximum time to wait for the subscription to be established
+     * @param unit the unit of <em>timeout</em>
+     * @return true if and only if the subscription was established in time
+     * @throws InterruptedException if interrupted while waiting for the subscription
+     */
+    public boolean start(final long timeout, final TimeUnit unit) throws InterruptedException {
+        listener.start();
+        return subscribed.await(timeout, unit);
+    }
+
+    /**
+     * @return the most recent key version announced and successfully retrieved
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    @PreDestroy
+    public void close() {
+        closed = true;
+        if (pubSub.isSubscribed()) {
+            pubSub.unsubscribe();
+        }
+        listener.interrupt();
+    }
+
+    protected void listen() {
+        while (!closed) {
+            try (final Jedis jedis = getPool().getResource()) {
+                // blocks until unsubscribed or disconnected
+                jedis.subscribe(pubSub, RedisKeyManager.rotationChannel);
+            } catch (final JedisConnectionException jce) {
+                try {
+                    Thread.sleep(1000);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    protected JedisPool getPool() {
+        return pool;
+    }
+
+    protected CachingKeyRepository getRepository() {
+        return repository;
+    }
+
+}